@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.bbm.sdk.bbmds.internal.Existence;
+import com.bbm.sdk.reactive.Observer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures the initial load of 10k users into the UserManager, one event per user versus a single batch.
+ * The list observer copies the list like the sorted users list does on every change.
+ * Results are written to logcat with the tag UserManagerBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserManagerLoadBenchmark {
+
+    private static final String TAG = "UserManagerBenchmark";
+    private static final int USER_COUNT = 10000;
+
+    /**
+     * Delivers a fixed set of users either the way the sources did before, or as one initial load batch.
+     */
+    private static class FakeUserSource extends AppSourceNotifier {
+        @Override
+        public void requestUser(@NonNull String uid) {
+        }
+
+        void loadOneByOne(List<AppUser> users) {
+            for (AppUser user : users) {
+                notifyAppUserListeners(EventToNotify.ADD, user);
+            }
+        }
+
+        void loadBatched(List<AppUser> users) {
+            beginInitialLoad();
+            for (AppUser user : users) {
+                queueAppUserChange(EventToNotify.ADD, user);
+            }
+            endInitialLoad();
+        }
+    }
+
+    private static class CountingObserver implements Observer {
+        int mNotifications;
+
+        @Override
+        public void changed() {
+            ++mNotifications;
+            UserManager.getInstance().getUsers().get();
+        }
+    }
+
+    private static List<AppUser> createUsers() {
+        ArrayList<AppUser> users = new ArrayList<>(USER_COUNT);
+        for (int i = 1; i <= USER_COUNT; ++i) {
+            AppUser user = new AppUser(i, "uid" + i, "User " + i, "user" + i + "@example.com", "");
+            user.setExists(Existence.YES);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private long load(final boolean batched, final CountingObserver observer) {
+        final List<AppUser> users = createUsers();
+        final long[] elapsed = new long[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                UserManager userManager = UserManager.getInstance();
+                userManager.clear();
+                FakeUserSource source = new FakeUserSource();
+                source.addListener(userManager);
+                userManager.getUsers().addObserver(observer);
+
+                long start = SystemClock.elapsedRealtimeNanos();
+                if (batched) {
+                    source.loadBatched(users);
+                } else {
+                    source.loadOneByOne(users);
+                }
+                elapsed[0] = SystemClock.elapsedRealtimeNanos() - start;
+
+                userManager.getUsers().removeObserver(observer);
+                source.removeListener(userManager);
+                assertEquals(USER_COUNT, userManager.getUsers().size());
+                assertFalse(userManager.getUsers().isPending());
+                userManager.clear();
+            }
+        });
+        return elapsed[0] / 1000000;
+    }
+
+    @Test
+    public void initialLoadOneByOneVersusBatched() {
+        CountingObserver oneByOne = new CountingObserver();
+        long oneByOneMs = load(false, oneByOne);
+        CountingObserver batched = new CountingObserver();
+        long batchedMs = load(true, batched);
+
+        Log.i(TAG, USER_COUNT + " users one by one: " + oneByOneMs + "ms, " + oneByOne.mNotifications + " list notifications");
+        Log.i(TAG, USER_COUNT + " users batched: " + batchedMs + "ms, " + batched.mNotifications + " list notifications");
+        //setPending(true) and the single insert, setPending(false) notifies again
+        assertEquals(3, batched.mNotifications);
+    }
+}
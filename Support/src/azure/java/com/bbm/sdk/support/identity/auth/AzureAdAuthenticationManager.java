@@ -16,8 +16,11 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.bbm.sdk.BBMEnterprise;
 import com.bbm.sdk.bbmds.GlobalAuthTokenState;
@@ -26,16 +29,24 @@ import com.bbm.sdk.bbmds.outbound.AuthToken;
 import com.bbm.sdk.reactive.Mutable;
 import com.bbm.sdk.reactive.ObservableMonitor;
 import com.bbm.sdk.reactive.SingleshotMonitor;
+import com.bbm.sdk.support.util.Clock;
 import com.bbm.sdk.support.util.Logger;
+import com.bbm.sdk.support.util.MetricsRegistry;
+import com.bbm.sdk.support.util.SchedulerUtil;
 import com.microsoft.identity.client.AuthenticationCallback;
 import com.microsoft.identity.client.AuthenticationResult;
 import com.microsoft.identity.client.MsalClientException;
 import com.microsoft.identity.client.MsalException;
+import com.microsoft.identity.client.MsalUiRequiredException;
 import com.microsoft.identity.client.PublicClientApplication;
 import com.microsoft.identity.client.User;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Handles authenticating users with an Azure AD SDK and providing the authentication token to the BBM Enterprise SDK.
@@ -45,26 +56,103 @@ public class AzureAdAuthenticationManager {
     private static final String ACTIVE_DIRECTORY_CURRENT_USER_ID = "ad_current_user";
     private static final String TOKEN_USER_ID = "token_user_id";
     private static final String[] MS_GRAPH_SCOPES = {"User.ReadWrite", "User.ReadBasic.All"};
+    //The keys the tokens are cached and their metrics are named under
+    private static final String GRAPH_SCOPE_KEY = "graph";
+    private static final String BBME_SCOPE_KEY = "bbme";
+    //How long to wait for MSAL to return a token silently before trying again
+    private static final long SILENT_TOKEN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
 
     private PublicClientApplication mPublicClientApplication;
     private static AzureAdAuthenticationManager sInstance;
     private SharedPreferences mPreferences;
-    private User mUser;
+    private volatile User mUser;
     private Mutable<String> mUserUid = new Mutable<>("");
     private WeakReference<Activity> mActivity = new WeakReference<>(null);
     private String mAdTenantId;
     private String mBbmeAuthScope;
     private String mLoginAuthority;
-    private boolean mTokenRequestInProgress = false;
-    private boolean mNeedToPromptUserSignIn = false;
+    private volatile boolean mNeedToPromptUserSignIn = false;
+    private boolean mSignInInProgress = false;
 
-    private ArrayList<TokenCallback> mBBMESDKScopeTokenListeners = new ArrayList<>();
-    private ArrayList<TokenCallback> mGraphServicesTokenListeners = new ArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final MetricsRegistry mMetricsRegistry = new MetricsRegistry("AzureAdTokens");
+    //A token cache for each scope so Graph and BBM Enterprise SDK requests don't wait on each other
+    private final ScopedTokenCache mTokenCache;
+    //Token requests that failed because the user needs to sign in, made again after they do
+    private final ArrayList<Runnable> mRequestsAfterSignIn = new ArrayList<>();
 
     public interface TokenCallback {
         void onToken(AuthenticationResult authResult);
     }
 
+    /**
+     * A token that keeps the MSAL result, callers need the user and unique id along with the access token.
+     */
+    private static final class AzureToken extends TokenManager.Token {
+        private final AuthenticationResult mResult;
+
+        AzureToken(@NonNull AuthenticationResult result) {
+            super(result.getAccessToken(), result.getUniqueId(), result.getExpiresOn().getTime());
+            mResult = result;
+        }
+    }
+
+    /**
+     * Gets tokens silently from MSAL for the cached user. Runs on the token cache threads, which wait for MSAL.
+     */
+    private final ScopedTokenCache.ScopedTokenSource mSilentTokenSource = new ScopedTokenCache.ScopedTokenSource() {
+        @Nullable
+        @Override
+        public TokenManager.Token fetchToken(@NonNull String scope, @Nullable TokenManager.Token rejected) throws Exception {
+            final User user = mUser;
+            if (user == null) {
+                //The user needs to sign in
+                return null;
+            }
+
+            final CountDownLatch done = new CountDownLatch(1);
+            final AuthenticationResult[] result = new AuthenticationResult[1];
+            final MsalException[] error = new MsalException[1];
+            callAcquireTokenSilent(user, new AuthenticationCallback() {
+                @Override
+                public void onSuccess(AuthenticationResult authenticationResult) {
+                    result[0] = authenticationResult;
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(MsalException exception) {
+                    error[0] = exception;
+                    done.countDown();
+                }
+
+                @Override
+                public void onCancel() {
+                    done.countDown();
+                }
+            }, getScopes(scope), rejected != null);
+
+            if (!done.await(SILENT_TOKEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Timed out getting " + scope + " token");
+            }
+            if (result[0] != null) {
+                Logger.d("Retrieved " + scope + " Authentication Token");
+                final AuthenticationResult authenticationResult = result[0];
+                mHandler.post(() -> onAuthenticated(authenticationResult));
+                return new AzureToken(authenticationResult);
+            }
+            if (error[0] instanceof MsalUiRequiredException) {
+                Logger.i("User must sign in to get " + scope + " token");
+                return null;
+            }
+            if (error[0] != null) {
+                //Service and network errors, the token cache tries again
+                throw error[0];
+            }
+            return null;
+        }
+    };
+
     /**
      * Monitor the {@link GlobalAuthTokenState} and trigger requests for tokens when necessary
      */
@@ -121,6 +209,8 @@ public class AzureAdAuthenticationManager {
             mUserUid.set(userUid);
         }
         mPublicClientApplication = new PublicClientApplication(context);
+        mTokenCache = new ScopedTokenCache(mSilentTokenSource, SchedulerUtil.newScheduler("AzureAdTokens", 2),
+                mHandler::post, Clock.SYSTEM, new Random(), mMetricsRegistry);
 
         //If we previously logged in we should have a user id saved
         try {
@@ -189,6 +279,13 @@ public class AzureAdAuthenticationManager {
         return new String[]{mBbmeAuthScope};
     }
 
+    /**
+     * @return the scopes to request for the scope key
+     */
+    private String[] getScopes(String scopeKey) {
+        return BBME_SCOPE_KEY.equals(scopeKey) ? getBBMESdkScope() : MS_GRAPH_SCOPES;
+    }
+
     /**
      * Get the authority URL for requesting tokens
      */
@@ -204,34 +301,67 @@ public class AzureAdAuthenticationManager {
     }
 
     /**
-     * Request a token from the MSAL library
-     * If we have a cached 'user' we can attempt to request the token silently.
-     * @param callback called with the authentication result
-     * @param scope the scopes that should be included in the token
-     * @param forceRefresh true if the token should be force refreshed ignoring any cached values
-     * @param forceLogin true if the user should be forced to provide credentials
+     * @return the age of the cached tokens, the time taken to get them and fetch counts for each scope
      */
-    private void requestToken(AuthenticationCallback callback, String[] scope, boolean forceRefresh, boolean forceLogin) {
-        if (mUser != null && !forceLogin) {
-            //Perform a silent token request
-            callAcquireTokenSilent(mUser, callback, scope, forceRefresh);
-        } else {
-            if (mActivity != null && mActivity.get() != null) {
-                //Do an interactive token request (prompt user)
-                mPublicClientApplication.acquireToken(
-                        mActivity.get(),
-                        scope,
-                        "",
-                        null,
-                        "",
-                        null,
-                        getAuthorityUrl(),
-                        callback
-                );
-            } else {
-                mNeedToPromptUserSignIn = true;
+    @NonNull
+    public MetricsRegistry.Snapshot getTokenMetrics() {
+        return mMetricsRegistry.snapshot();
+    }
+
+    /**
+     * Get a token for the scope from the cache, or silently from MSAL.
+     * If the user needs to sign in the request is made again after they do.
+     *
+     * @param scopeKey      the scope
+     * @param tokenCallback called on the main thread with the authentication result
+     * @param forceRefresh  true if the token should be force refreshed ignoring any cached values
+     */
+    private void getToken(final String scopeKey, final TokenCallback tokenCallback, boolean forceRefresh) {
+        if (forceRefresh) {
+            mTokenCache.invalidate(scopeKey);
+        }
+        mTokenCache.getToken(scopeKey, new TokenManager.Callback() {
+            @Override
+            public void onToken(@NonNull TokenManager.Token token) {
+                tokenCallback.onToken(((AzureToken) token).mResult);
             }
+
+            @Override
+            public void onFailure() {
+                Logger.i("Unable to get " + scopeKey + " token silently, prompting user");
+                synchronized (mRequestsAfterSignIn) {
+                    mRequestsAfterSignIn.add(() -> getToken(scopeKey, tokenCallback, false));
+                }
+                promptUserSignIn();
+            }
+        });
+    }
+
+    /**
+     * Do an interactive token request if there is an activity, otherwise wait for {@link #setActivity(Activity)}.
+     * Called on the main thread.
+     */
+    private void promptUserSignIn() {
+        final Activity activity = mActivity.get();
+        if (activity == null) {
+            mNeedToPromptUserSignIn = true;
+            return;
         }
+        if (mSignInInProgress) {
+            return;
+        }
+        mSignInInProgress = true;
+        //Always get a BBME SDK Token, the graph services token is then got silently
+        mPublicClientApplication.acquireToken(
+                activity,
+                getBBMESdkScope(),
+                "",
+                null,
+                "",
+                null,
+                getAuthorityUrl(),
+                mSignInCallback
+        );
     }
 
     /**
@@ -240,13 +370,8 @@ public class AzureAdAuthenticationManager {
      * @param tokenCallback the callback will be notified when the token is obtained
      * @param forceRefresh true if the token should be force refreshed ignoring any cached values
      */
-    public synchronized void getGraphAccessToken(TokenCallback tokenCallback, boolean forceRefresh) {
-        mGraphServicesTokenListeners.add(tokenCallback);
-        //If we already have a token request in progress then don't create another
-        if (!mTokenRequestInProgress) {
-            mTokenRequestInProgress = true;
-            requestToken(getMsGraphAuthCallback(), MS_GRAPH_SCOPES, forceRefresh, false);
-        }
+    public void getGraphAccessToken(TokenCallback tokenCallback, boolean forceRefresh) {
+        getToken(GRAPH_SCOPE_KEY, tokenCallback, forceRefresh);
     }
 
     /**
@@ -255,13 +380,8 @@ public class AzureAdAuthenticationManager {
      * @param tokenCallback the callback will be notified when the token is obtained
      * @param forceRefresh true if the token should be force refreshed ignoring any cached values
      */
-    public synchronized void getBBMScopeToken(TokenCallback tokenCallback, boolean forceRefresh) {
-        mBBMESDKScopeTokenListeners.add(tokenCallback);
-        if (!mTokenRequestInProgress) {
-            //If we already have a token request in progress then don't create another
-            mTokenRequestInProgress = true;
-            requestToken(getBbmeSdkAuthCallback(), getBBMESdkScope(), forceRefresh, false);
-        }
+    public void getBBMScopeToken(TokenCallback tokenCallback, boolean forceRefresh) {
+        getToken(BBME_SCOPE_KEY, tokenCallback, forceRefresh);
     }
 
     /**
@@ -303,10 +423,9 @@ public class AzureAdAuthenticationManager {
      */
     public void setActivity(Activity activity) {
         mActivity = new WeakReference<>(activity);
-        if (mNeedToPromptUserSignIn) {
-            //Always get a BBME SDK Token and then if necessary we will also get a graph services token
-            requestToken(getBbmeSdkAuthCallback(), getBBMESdkScope(), false, false);
+        if (mNeedToPromptUserSignIn && activity != null) {
             mNeedToPromptUserSignIn = false;
+            promptUserSignIn();
         }
     }
 
@@ -343,9 +462,10 @@ public class AzureAdAuthenticationManager {
         preferences.edit().remove(TOKEN_USER_ID).apply();
         preferences.edit().commit();
         mUser = null;
-        mGraphServicesTokenListeners.clear();
-        mTokenRequestInProgress = false;
-        mBBMESDKScopeTokenListeners.clear();
+        mTokenCache.clear();
+        synchronized (mRequestsAfterSignIn) {
+            mRequestsAfterSignIn.clear();
+        }
     }
 
     /**
@@ -368,94 +488,52 @@ public class AzureAdAuthenticationManager {
     }
 
     /**
-     * Callback method for acquireToken calls.
-     * If a token is retrieved it will be provided to the BBM Enterprise SDK.
+     * Save the user from a token so tokens can be got silently from now on.
      */
-    private AuthenticationCallback getBbmeSdkAuthCallback() {
-        return new AuthenticationCallback() {
-            @Override
-            public void onSuccess(AuthenticationResult authenticationResult) {
-                /* Successfully got a token, call Graph now */
-                Logger.d("Retreived BBME SDK Authentication Token");
-                notifyTokenListener(true, authenticationResult, mBBMESDKScopeTokenListeners);
-                mUser = authenticationResult.getUser();
-                //Save the user identifier
-                mPreferences.edit().putString(ACTIVE_DIRECTORY_CURRENT_USER_ID, authenticationResult.getUser().getUserIdentifier()).apply();
-                mPreferences.edit().putString(TOKEN_USER_ID, authenticationResult.getUniqueId()).apply();
-                if (mGraphServicesTokenListeners.size() > 0) {
-                    requestToken(getMsGraphAuthCallback(), MS_GRAPH_SCOPES, false, false);
-                } else {
-                    mTokenRequestInProgress = false;
-                }
-            }
-
-            @Override
-            public void onError(MsalException exception) {
-                //Could not acquire token
-                Logger.e(exception, "BBM Scope Token Authentication failed");
-                //Reset the user to null and prompt for token again, this will force credentials to be requested from the user
-                mUser = null;
-                requestToken(getBbmeSdkAuthCallback(), getBBMESdkScope(), true, true);
-            }
-
-            @Override
-            public void onCancel() {
-                //Authentication request was cancelled.
-                mTokenRequestInProgress = false;
-                Logger.i("User cancelled login.");
-            }
-        };
+    private void onAuthenticated(AuthenticationResult authenticationResult) {
+        mUser = authenticationResult.getUser();
+        //Save the user identifier (which is a combination of the uid and some other value)
+        mPreferences.edit().putString(ACTIVE_DIRECTORY_CURRENT_USER_ID, authenticationResult.getUser().getUserIdentifier()).apply();
+        //Save just the user UID
+        mPreferences.edit().putString(TOKEN_USER_ID, authenticationResult.getUniqueId()).apply();
+        mUserUid.set(authenticationResult.getUniqueId());
     }
 
     /**
-     * Callback method for aquiring an MS Graph token.
-     * If a token is retrieved it will trigger us to sync the local user and contact list from the active directory
+     * Callback for the interactive token request.
+     * The BBME SDK token is cached and the requests waiting for the user to sign in are made again.
      */
-    private AuthenticationCallback getMsGraphAuthCallback() {
-        return new AuthenticationCallback() {
-            @Override
-            public void onSuccess(AuthenticationResult authenticationResult) {
-                /* Successfully got a token, call Graph now */
-                Logger.d("Retreived MSGraph Authentication Token");
-                notifyTokenListener(false, authenticationResult, mGraphServicesTokenListeners);
-                mUser = authenticationResult.getUser();
-                //Save the user identifier (which is a combination of the uid and some other value)
-                mPreferences.edit().putString(ACTIVE_DIRECTORY_CURRENT_USER_ID, authenticationResult.getUser().getUserIdentifier()).apply();
-                //Save just the user UID
-                mPreferences.edit().putString(TOKEN_USER_ID, authenticationResult.getUniqueId()).apply();
-                mUserUid.set(authenticationResult.getUniqueId());
-                if (mBBMESDKScopeTokenListeners.size() > 0) {
-                    requestToken(getBbmeSdkAuthCallback(), getBBMESdkScope(), false, false);
-                } else {
-                    mTokenRequestInProgress = false;
-                }
+    private final AuthenticationCallback mSignInCallback = new AuthenticationCallback() {
+        @Override
+        public void onSuccess(AuthenticationResult authenticationResult) {
+            Logger.d("Retrieved BBME SDK Authentication Token");
+            mSignInInProgress = false;
+            onAuthenticated(authenticationResult);
+            mTokenCache.setToken(BBME_SCOPE_KEY, new AzureToken(authenticationResult));
+
+            final ArrayList<Runnable> requests;
+            synchronized (mRequestsAfterSignIn) {
+                requests = new ArrayList<>(mRequestsAfterSignIn);
+                mRequestsAfterSignIn.clear();
             }
-
-            @Override
-            public void onError(MsalException exception) {
-                //Could not acquire token
-                Logger.e(exception, "MS Graph Token Scope Authentication failed");
-                //Request a new token (still silently, if this fails we will prompt the user for credentials)
-                requestToken(getMsGraphAuthCallback(), MS_GRAPH_SCOPES, true, true);
+            for (Runnable request : requests) {
+                request.run();
             }
+        }
 
-            @Override
-            public void onCancel() {
-                //Authentication request was cancelled.
-                mTokenRequestInProgress = false;
-                Logger.i("User cancelled login.");
-            }
-        };
-    }
+        @Override
+        public void onError(MsalException exception) {
+            //Could not acquire token, prompt again the next time there is an activity
+            Logger.e(exception, "BBM Scope Token Authentication failed");
+            mSignInInProgress = false;
+            mNeedToPromptUserSignIn = true;
+        }
 
-    /**
-     * Notify token listeners of
-     */
-    private synchronized void notifyTokenListener(boolean bbmToken, AuthenticationResult result, ArrayList<TokenCallback> tokenCallbacks) {
-        for (TokenCallback callback : tokenCallbacks) {
-            callback.onToken(result);
+        @Override
+        public void onCancel() {
+            //Authentication request was cancelled, the waiting requests are made again if the user signs in later
+            mSignInInProgress = false;
+            Logger.i("User cancelled login.");
         }
-        //After informing the token callbacks they can be removed
-        tokenCallbacks.clear();
-    }
-}
\ No newline at end of file
+    };
+}
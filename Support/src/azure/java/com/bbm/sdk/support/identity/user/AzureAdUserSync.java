@@ -43,6 +43,11 @@ public class AzureAdUserSync extends AppSourceNotifier {
 
     private static AzureAdUserSync sInstance;
 
+    //True once the users list has been received and a regId lookup started for each user in it
+    private boolean mUsersListReceived;
+    //The regId lookups for the users list that haven't completed yet, the initial load ends when there are none
+    private int mPendingRegIdLookups;
+
     /**
      * Observe the local user and sync any time it changes
      */
@@ -80,6 +85,8 @@ public class AzureAdUserSync extends AppSourceNotifier {
      * Stop the AzureAdUserSync
      */
     public void stop() {
+        //deliver anything held from an initial load that did not complete
+        endInitialLoad();
         removeListener(UserManager.getInstance());
         mLocalBbmUserObserver.dispose();
     }
@@ -153,10 +160,16 @@ public class AzureAdUserSync extends AppSourceNotifier {
                     public void success(IUserCollectionPage iUserCollectionPage) {
                         List<User> users = iUserCollectionPage.getCurrentPage();
 
+                        //Hold the users until all their regIds are looked up and deliver them as the initial load,
+                        //users left in the snapshot that are not in the list were removed from the directory
+                        mUsersListReceived = false;
+                        beginInitialLoad();
+
                         //For each user
                         for (com.microsoft.graph.extensions.User user : users) {
                             //Check if the uid is ourselves (ignore)
                             if (!user.id.equals(UserManager.getInstance().getLocalAppUser().get().getUid())) {
+                                ++mPendingRegIdLookups;
                                 //Add the user to the UserManager
                                 SingleshotMonitor.run(new SingleshotMonitor.RunUntilTrue() {
                                     @Override
@@ -166,21 +179,26 @@ public class AzureAdUserSync extends AppSourceNotifier {
                                         if (result.existence == Existence.MAYBE) {
                                             return false;
                                         }
+                                        --mPendingRegIdLookups;
                                         if (result.existence == Existence.YES) {
                                             AppUser appUser = new AppUser(result.regId, user.id, user.displayName, user.mail, "");
                                             appUser.setExists(Existence.YES);
                                             Logger.d("Add user " + appUser.toString());
-                                            notifyAppUserListeners(EventToNotify.ADD, appUser);
+                                            queueAppUserChange(EventToNotify.ADD, appUser);
                                         }
+                                        endInitialLoadIfDone();
                                         return true;
                                     }
                                 });
                             }
                         }
+                        mUsersListReceived = true;
+                        endInitialLoadIfDone();
                     }
 
                     @Override
                     public void failure(ClientException ex) {
+                        //The initial load isn't started, the users from the snapshot are kept until a list is read
                         Logger.e(ex,"Failure to read user list from MicrosoftGraph");
                     }
                 });
@@ -188,6 +206,12 @@ public class AzureAdUserSync extends AppSourceNotifier {
         }, false);
     }
 
+    private void endInitialLoadIfDone() {
+        if (mUsersListReceived && mPendingRegIdLookups == 0 && isInitialLoadInProgress()) {
+            endInitialLoad();
+        }
+    }
+
     @Override
     public void requestUser(@NonNull String uid) {
         AzureAdAuthenticationManager.getInstance().getGraphAccessToken(new AzureAdAuthenticationManager.TokenCallback() {
@@ -21,6 +21,7 @@ import com.bbm.sdk.support.identity.auth.AzureAdAuthenticationManager;
 import com.bbm.sdk.support.protect.EncryptedManagementKeys;
 import com.bbm.sdk.support.protect.EncryptedPayload;
 import com.bbm.sdk.support.protect.EncryptedProfileKeys;
+import com.bbm.sdk.support.protect.KeyDerivationParams;
 import com.bbm.sdk.support.protect.KeyPair;
 import com.bbm.sdk.support.protect.KeyStorageProvider;
 import com.bbm.sdk.support.protect.KeyStorageResponse;
@@ -56,6 +57,7 @@ public class AzureKeyStorageProvider implements KeyStorageProvider {
     private static final String REPLACE = "replace";
     public static final String SIGN = "sign";
     public static final String ENCRYPT = "encrypt";
+    public static final String KDF = "kdf";
     public static final String KEY = "key";
 
     private JSONObject mCachedKeys;
@@ -266,6 +268,9 @@ public class AzureKeyStorageProvider implements KeyStorageProvider {
             JSONObject managementKeysJSON = new JSONObject();
             managementKeysJSON.put(SIGN, encryptedPayloadToJSON(managementKeys.getSign()));
             managementKeysJSON.put(ENCRYPT, encryptedPayloadToJSON(managementKeys.getEncrypt()));
+            if (managementKeys.getKeyDerivation() != null) {
+                managementKeysJSON.put(KDF, keyDerivationToJSON(managementKeys.getKeyDerivation()));
+            }
             privateKeys.put(MANAGE, managementKeysJSON);
 
             //Create public keys object
@@ -574,7 +579,10 @@ public class AzureKeyStorageProvider implements KeyStorageProvider {
                 EncryptedPayload signing = new EncryptedPayload(managementKeysJSON.optJSONObject(SIGN));
                 EncryptedPayload encryption = new EncryptedPayload(managementKeysJSON.optJSONObject(ENCRYPT));
                 PrivateKeyPair keyPair = new PrivateKeyPair(encryption, signing);
-                return new EncryptedManagementKeys(keyPair);
+                //Keys written before key derivation parameters were stored have no kdf
+                JSONObject keyDerivationJSON = managementKeysJSON.optJSONObject(KDF);
+                return new EncryptedManagementKeys(keyPair,
+                        keyDerivationJSON != null ? new KeyDerivationParams(keyDerivationJSON) : null);
             }
         }
         //No keys exist in the data
@@ -595,6 +603,13 @@ public class AzureKeyStorageProvider implements KeyStorageProvider {
      *                 payload: "payload",
      *                 mac: "mac"
      *                 nonce: "nonce"
+     *             },
+     *             kdf: {
+     *                 algorithm: "pbkdf2-sha256",
+     *                 cost: 100000,
+     *                 blockSize: 0,
+     *                 parallelism: 0,
+     *                 salt: "hex salt"
      *             }
      *          }
      *      }
@@ -610,6 +625,9 @@ public class AzureKeyStorageProvider implements KeyStorageProvider {
             JSONObject managementKeysJSON = new JSONObject();
             managementKeysJSON.put(SIGN, encryptedPayloadToJSON(encryptedManagementKeys.getSign()));
             managementKeysJSON.put(ENCRYPT, encryptedPayloadToJSON(encryptedManagementKeys.getEncrypt()));
+            if (encryptedManagementKeys.getKeyDerivation() != null) {
+                managementKeysJSON.put(KDF, keyDerivationToJSON(encryptedManagementKeys.getKeyDerivation()));
+            }
             privateKeys.put(MANAGE, managementKeysJSON);
             keys.put(PRIVATE, privateKeys);
             writeToKeyStorage(keys, false, writeResponse);
@@ -627,6 +645,16 @@ public class AzureKeyStorageProvider implements KeyStorageProvider {
         return asJSON;
     }
 
+    private JSONObject keyDerivationToJSON(KeyDerivationParams params) throws JSONException {
+        JSONObject asJSON = new JSONObject();
+        asJSON.put(KeyDerivationParams.ALGORITHM, params.getAlgorithm());
+        asJSON.put(KeyDerivationParams.COST, params.getCost());
+        asJSON.put(KeyDerivationParams.BLOCK_SIZE, params.getBlockSize());
+        asJSON.put(KeyDerivationParams.PARALLELISM, params.getParallelism());
+        asJSON.put(KeyDerivationParams.SALT, params.getSalt());
+        return asJSON;
+    }
+
     /**
      * Convert the public key pair in a format suitable for storage in a Key-management-system
      */
@@ -61,6 +61,8 @@ public class AuthIdentityHelper {
     public static void handleEndpointDeregistered(Context context) {
         //Stop the identity provider
         stopIdentityProvider();
+        //The push token needs to be sent again for the new endpoint
+        IdentityUtils.getPushTokenRegistrar(context).reset();
         if (KeySourceManager.getKeySource() != null) {
             KeySourceManager.getKeySource().stop();
         }
@@ -23,21 +23,28 @@ import com.bbm.sdk.bbmds.internal.Existence;
 import com.bbm.sdk.bbmds.outbound.AuthToken;
 import com.bbm.sdk.reactive.ObservableValue;
 import com.bbm.sdk.reactive.Observer;
+import com.bbm.sdk.support.util.Clock;
 import com.bbm.sdk.support.util.Logger;
+import com.bbm.sdk.support.util.SchedulerUtil;
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
 import com.google.android.gms.auth.api.signin.GoogleSignInResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 
+import java.util.Random;
+
 /**
  * Manages the updating the AuthToken and informing BBM Core. Once started, by default this will be running unless
  * paused. It will not post UI to login a device user, that will be the responsibility of
  * the implementing UI.
+ * The access token is cached by a {@link TokenManager}, which refreshes it before it expires and retries failed
+ * fetches on its own thread.
  */
 public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSignResultCallback, GoogleGetAccessTokenTask.OnGetAccessTokenResult {
     private static GoogleAccessTokenUpdater mInstance;
 
     private static final int MAX_ATTEMPT = 5;
     private static final int DELAY = 15000;
+    private static final int MAX_DELAY = 120000;
 
     private boolean mForced;
     private int mAttemptCount = 0;
@@ -46,7 +53,10 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
     private GoogleApiClient mGoogleApiClient;
     private Context mContext;
     private String mClientServerId;
-    private boolean mClearToken;
+    private final Random mRandom = new Random();
+
+    private final GoogleTokenSource mTokenSource;
+    private final TokenManager mTokenManager;
 
     private GoogleAuthHelper.SilentSignResultCallback mExtraSilentSignResultCallback;
 
@@ -77,7 +87,6 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
                 case Ok:
                     Logger.i("BBM SDK indicates auth token is ok!");
                     mAttemptCount = 0;
-                    mClearToken = false;
 
                     if (mExtraSilentSignResultCallback != null && !mSignInRequested) {
                         //we have not yet requested sign in, we don't need it for auth, but the other callback might need it
@@ -87,7 +96,14 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
 
                     break;
                 case Needed: {
-                    if (mAttemptCount < MAX_ATTEMPT) {
+                    final TokenManager.Token cachedToken = mTokenManager.getCachedToken();
+                    if (mAttemptCount == 0 && cachedToken != null) {
+                        //No need to sign in again for a token we already have, if it isn't accepted the next
+                        //attempt signs in
+                        Logger.i("Need a new access token for BBM SDK, sending the cached token");
+                        mAttemptCount++;
+                        BBMEnterprise.getInstance().getBbmdsProtocol().send(new AuthToken(cachedToken.getValue(), cachedToken.getAccountId()));
+                    } else if (mAttemptCount < MAX_ATTEMPT) {
                         scheduleUpdate();
                         Logger.i("Need a new access token for BBM SDK");
                     } else {
@@ -97,7 +113,7 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
                 }
                 case Rejected: {
                     if (mAttemptCount < MAX_ATTEMPT) {
-                        mClearToken = true;
+                        mTokenManager.invalidate();
                         scheduleUpdate();
                         Logger.i("Token has been rejected. Need a new access token for BBM SDK");
                     } else {
@@ -118,6 +134,9 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
         mClientServerId = clientServerId;
         mAuthTokenState = BBMEnterprise.getInstance().getBbmdsProtocol().getGlobalAuthTokenState();
         mHandler = new Handler(Looper.myLooper());
+        mTokenSource = new GoogleTokenSource(context, Clock.SYSTEM);
+        mTokenManager = new TokenManager(mTokenSource, SchedulerUtil.newScheduler("GoogleAccessTokenUpdater"),
+                mHandler::post, Clock.SYSTEM, mRandom);
         resume();
     }
 
@@ -150,7 +169,7 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
 
     /**
      * Schedule an update attempt for new new access token. If the attempted
-     * failed, schedule a new attempt in the future.
+     * failed, schedule a new attempt in the future, with a jittered delay that grows with each attempt.
      */
     private void scheduleUpdate() {
         if (mAttemptCount == 0) {
@@ -161,7 +180,7 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
                 public void run() {
                     start(GoogleAccessTokenUpdater.this);
                 }
-            }, DELAY * mAttemptCount);
+            }, SchedulerUtil.getRetryDelayMs(DELAY, MAX_DELAY, mAttemptCount, mRandom));
         }
 
         mAttemptCount++;
@@ -213,7 +232,6 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
 
         //reset the count and check the state right away
         mAttemptCount = 0;
-        mClearToken = false;
         mAuthTokenStateObserver.changed();
     }
 
@@ -226,6 +244,22 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
         mAuthTokenStateObserver.changed();
     }
 
+    /**
+     * Gets the token from the token manager, on the handler thread.
+     */
+    private final TokenManager.Callback mTokenCallback = new TokenManager.Callback() {
+        @Override
+        public void onToken(@NonNull TokenManager.Token token) {
+            Logger.i("Non-Empty access token has been provided!");
+            onSuccess(new AuthToken(token.getValue(), token.getAccountId()));
+        }
+
+        @Override
+        public void onFailure() {
+            onFail();
+        }
+    };
+
     @Override
     public void onSilentSignResult(@NonNull GoogleSignInResult googleSignInResult) {
         Logger.d("Got new google sign in result");
@@ -233,8 +267,8 @@ public final class GoogleAccessTokenUpdater implements GoogleAuthHelper.SilentSi
             // Signed in successfully, show authenticated UI.
             GoogleSignInAccount acct = googleSignInResult.getSignInAccount();
             if (acct != null) {
-                GoogleGetAccessTokenTask task = new GoogleGetAccessTokenTask(mContext, acct, this, mClearToken);
-                task.execute();
+                mTokenSource.setSignInAccount(acct);
+                mTokenManager.getToken(mTokenCallback);
             } else {
                 Logger.w("Unable to fetch google account");
             }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.Logger;
+import com.google.android.gms.auth.GoogleAuthException;
+import com.google.android.gms.auth.GoogleAuthUtil;
+import com.google.android.gms.auth.UserRecoverableAuthException;
+import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets access tokens for the signed in Google account, for the {@link TokenManager}.
+ */
+final class GoogleTokenSource implements TokenManager.TokenSource {
+
+    private static final String SCOPE = "oauth2:openid";
+    //GoogleAuthUtil doesn't give the expiry, Google access tokens are valid for an hour
+    private static final long TOKEN_LIFETIME_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final Context mContext;
+    private final Clock mClock;
+    private volatile GoogleSignInAccount mSignInAccount;
+
+    GoogleTokenSource(@NonNull Context context, @NonNull Clock clock) {
+        mContext = context.getApplicationContext();
+        mClock = clock;
+    }
+
+    /**
+     * @param signInAccount the account to get tokens for, from the last sign in
+     */
+    void setSignInAccount(@Nullable GoogleSignInAccount signInAccount) {
+        mSignInAccount = signInAccount;
+    }
+
+    /**
+     * @throws IOException if Google couldn't be reached, the token manager tries again later
+     */
+    @Nullable
+    @Override
+    public TokenManager.Token fetchToken(@Nullable TokenManager.Token rejected) throws IOException {
+        final GoogleSignInAccount signInAccount = mSignInAccount;
+        final Account account = signInAccount != null ? signInAccount.getAccount() : null;
+        if (account == null) {
+            Logger.w("Could not get the user account from Google Sign-in");
+            return null;
+        }
+
+        try {
+            if (rejected != null) {
+                // The previous auth token has expired or been rejected, clear it so Google doesn't return it again.
+                Logger.i("Clearing rejected auth token");
+                GoogleAuthUtil.clearToken(mContext, rejected.getValue());
+            }
+            final String accessToken = GoogleAuthUtil.getToken(mContext, account, SCOPE);
+            if (TextUtils.isEmpty(accessToken)) {
+                Logger.w("Empty access token has been provided");
+                return null;
+            }
+            return new TokenManager.Token(accessToken, signInAccount.getId(), mClock.currentTimeMillis() + TOKEN_LIFETIME_MS);
+        } catch (UserRecoverableAuthException e) {
+            Logger.e(e, "Could not recover user. Unable to get access token");
+        } catch (GoogleAuthException e) {
+            Logger.e(e, "Sign-in error. Unable to get access token");
+        }
+        return null;
+    }
+}
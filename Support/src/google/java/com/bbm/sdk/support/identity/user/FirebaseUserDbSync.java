@@ -11,6 +11,8 @@
 
 package com.bbm.sdk.support.identity.user;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
@@ -42,6 +44,10 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Example implementation of a app storing its app user data in a Firebase DB.
  * This will automatically sync the necessary local BBM SDK User data to the remote Firebase DB when it changes.
@@ -64,6 +70,9 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
 
     private boolean mInitDone;
     private boolean mListeningToDb;
+    private boolean mInitialLoadReceived;
+    //users read from the DB that are waiting for their regId before they can be delivered
+    private int mPendingRegIdLookups;
     //the values that we sent to firebase DB for local user
     private ObservableValue<User> mLocalBbmUser;
     private AuthenticatedAccountData mAccountData;
@@ -78,6 +87,30 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
 
     private ObservableFirebaseUser mObservableFirebaseUser = new ObservableFirebaseUser();
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    //requested users are looked up in batches, found users are added like users from the DB listener
+    private final UserLookupCoalescer<UserData> mUserLookups = new UserLookupCoalescer<>(
+            new FirebaseUserLookupBackend(),
+            new UserLookupCoalescer.Listener<UserData>() {
+                @Override
+                public void onUserFound(@NonNull String uid, @NonNull UserData userData) {
+                    notifyAppUserListeners(EventToNotify.ADD, uid, userData);
+                }
+
+                @Override
+                public void onUserNotFound(@NonNull String uid) {
+                    Logger.d("requested user not found uid=" + uid);
+                }
+            });
+
+    private final Runnable mUserLookupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduleUserLookups();
+        }
+    };
+
     //Create an Observable to track the FirebaseUser
     private class ObservableFirebaseUser extends AbstractObservableValue<FirebaseUser> {
         private FirebaseUser mFirebaseUser = null;
@@ -127,6 +160,25 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
         }
     };
 
+    //Firebase delivers a single value event for a location after the child added events for its existing children,
+    //so this marks the end of the initial load
+    private ValueEventListener mInitialLoadListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            Logger.d("initial users load received, waiting for " + mPendingRegIdLookups + " regId lookups");
+            mInitialLoadReceived = true;
+            endInitialLoadIfDone();
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            Logger.i("onCancelled: initial load databaseError=" + databaseError);
+            //deliver whatever was loaded instead of holding it forever
+            mInitialLoadReceived = true;
+            endInitialLoadIfDone();
+        }
+    };
+
     private ValueEventListener mDatabaseConnectionStateListener = new ValueEventListener() {
         @Override
         public void onDataChange(DataSnapshot snapshot) {
@@ -256,6 +308,8 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
 
     /**
      * Request a user from firebase.
+     * Requests made close together are looked up together, and users that were recently not found are not
+     * looked up again.
      * @param uid the user identifier for the requested user.
      */
     @Override
@@ -269,23 +323,66 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
                     return false;
                 }
 
-                mFirebaseDatabase.getReference(USERS_DB_PATH).child(uid).addListenerForSingleValueEvent(new ValueEventListener() {
+                if (mUserLookups.request(uid)) {
+                    scheduleUserLookups();
+                }
+                return true;
+            }
+        });
+
+    }
+
+    private void scheduleUserLookups() {
+        mHandler.removeCallbacks(mUserLookupRunnable);
+        final long delayMs = mUserLookups.flushDue();
+        if (delayMs >= 0) {
+            mHandler.postDelayed(mUserLookupRunnable, delayMs);
+        }
+    }
+
+    /**
+     * Looks up users in the DB. The realtime DB has no multi key read, but the single value reads for a batch are
+     * issued together and pipelined over the one DB connection so the batch costs a single round trip.
+     */
+    private class FirebaseUserLookupBackend implements UserLookupCoalescer.Backend<UserData> {
+        @Override
+        public void lookup(@NonNull Set<String> uids, @NonNull UserLookupCoalescer.Callback<UserData> callback) {
+            final HashMap<String, UserData> found = new HashMap<>();
+            final HashSet<String> failed = new HashSet<>();
+            final int[] remaining = {uids.size()};
+            DatabaseReference usersRef = mFirebaseDatabase.getReference(USERS_DB_PATH);
+            for (String uid : uids) {
+                usersRef.child(uid).addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(DataSnapshot dataSnapshot) {
                         Logger.priv("onDataChange: dataSnapshot=" + dataSnapshot);
-                        notifyAppUserListeners(EventToNotify.ADD, dataSnapshot);
+                        try {
+                            UserData userData = dataSnapshot.getValue(UserData.class);
+                            if (userData != null) {
+                                found.put(dataSnapshot.getKey(), userData);
+                            }
+                        } catch (DatabaseException ex) {
+                            Logger.i(ex, "Firebase error reading database user");
+                        }
+                        complete();
                     }
 
                     @Override
                     public void onCancelled(DatabaseError databaseError) {
                         Logger.e("onCancelled: databaseError=" + databaseError);
+                        //only this user failed, the others in the batch are still reported
+                        failed.add(uid);
+                        complete();
                     }
-                });
 
-                return true;
+                    private void complete() {
+                        if (--remaining[0] == 0) {
+                            callback.onResult(found, failed);
+                        }
+                    }
+                });
             }
-        });
-
+        }
     }
 
     public ObservableValue<FirebaseUser> getFireBaseUser() {
@@ -317,7 +414,10 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
         if (mFirebaseDatabase != null) {
             DatabaseReference dbRef = mFirebaseDatabase.getReference(USERS_DB_PATH);
             dbRef.removeEventListener(mDatabaseEventListener);
+            dbRef.removeEventListener(mInitialLoadListener);
         }
+        //deliver anything held from an initial load that did not complete
+        endInitialLoad();
 
         mListeningToDb = false;
         mInitDone = false;
@@ -330,53 +430,69 @@ public class FirebaseUserDbSync extends AppSourceNotifier implements LocalAuthDa
             DatabaseReference dbRef = mFirebaseDatabase.getReference(USERS_DB_PATH);
 
             Logger.d("listenToDb dbRef=" + dbRef + " local UID=" + localFirebaseUser.getUid());
+            //hold the users from the initial load and deliver them to the listeners as one batch
+            mInitialLoadReceived = false;
+            beginInitialLoad();
             dbRef.addChildEventListener(mDatabaseEventListener);
+            dbRef.addListenerForSingleValueEvent(mInitialLoadListener);
             mListeningToDb = true;
         }
     }
 
+    private void endInitialLoadIfDone() {
+        if (mInitialLoadReceived && mPendingRegIdLookups == 0 && isInitialLoadInProgress()) {
+            endInitialLoad();
+        }
+    }
+
     private void notifyAppUserListeners(EventToNotify event, DataSnapshot dataSnapshot) {
         try {
             UserData userData = dataSnapshot.getValue(UserData.class);
             if (userData != null) {
-                String uid = dataSnapshot.getKey();
-                if (!TextUtils.isEmpty(uid)) {
-                    if (mAccountData.getId().equals(uid)) {
-                        Logger.d("skipping local user from DB");
-                    } else {
-                        //Request the regId for the UID of the user data
-                        ObservableValue<UserIdentityMapper.IdentityMapResult> mapResult =
-                                UserIdentityMapper.getInstance().getRegIdForUid(uid, false);
-                        SingleshotMonitor.run(new SingleshotMonitor.RunUntilTrue() {
-                            @Override
-                            public boolean run() {
-                                if (mapResult.get().existence == Existence.MAYBE) {
-                                    return false;
-                                }
-                                //If we found the regId we can add this user to the list
-                                if (mapResult.get().existence == Existence.YES) {
-                                    AppUser appUser = new AppUser(
-                                            mapResult.get().regId,
-                                            uid, userData.getName(),
-                                            userData.getEmail(),
-                                            userData.getAvatarUrl()
-                                    );
-                                    //exists isn't stored in DB, so we need to set it here
-                                    appUser.setExists(Existence.YES);
-                                    notifyAppUserListeners(event, appUser);
-                                } else {
-                                    Logger.e("Failed to retrieve regId for uid " + uid);
-                                }
-                                return true;
-                            }
-                        });
-                    }
-                } else {
-                    Logger.i("Ignoring invalid appUser=" + dataSnapshot);
-                }
+                notifyAppUserListeners(event, dataSnapshot.getKey(), userData);
             }
         } catch (DatabaseException ex) {
             Logger.i(ex, "Firebase error reading database user");
         }
     }
+
+    private void notifyAppUserListeners(EventToNotify event, String uid, UserData userData) {
+        if (!TextUtils.isEmpty(uid)) {
+            if (mAccountData.getId().equals(uid)) {
+                Logger.d("skipping local user from DB");
+            } else {
+                //Request the regId for the UID of the user data
+                ObservableValue<UserIdentityMapper.IdentityMapResult> mapResult =
+                        UserIdentityMapper.getInstance().getRegIdForUid(uid, false);
+                ++mPendingRegIdLookups;
+                SingleshotMonitor.run(new SingleshotMonitor.RunUntilTrue() {
+                    @Override
+                    public boolean run() {
+                        if (mapResult.get().existence == Existence.MAYBE) {
+                            return false;
+                        }
+                        --mPendingRegIdLookups;
+                        //If we found the regId we can add this user to the list
+                        if (mapResult.get().existence == Existence.YES) {
+                            AppUser appUser = new AppUser(
+                                    mapResult.get().regId,
+                                    uid, userData.getName(),
+                                    userData.getEmail(),
+                                    userData.getAvatarUrl()
+                            );
+                            //exists isn't stored in DB, so we need to set it here
+                            appUser.setExists(Existence.YES);
+                            queueAppUserChange(event, appUser);
+                        } else {
+                            Logger.e("Failed to retrieve regId for uid " + uid);
+                        }
+                        endInitialLoadIfDone();
+                        return true;
+                    }
+                });
+            }
+        } else {
+            Logger.i("Ignoring invalid appUser uid=" + uid);
+        }
+    }
 }
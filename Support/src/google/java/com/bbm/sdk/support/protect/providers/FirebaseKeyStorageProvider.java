@@ -18,6 +18,7 @@ import android.util.Base64;
 import com.bbm.sdk.support.protect.EncryptedManagementKeys;
 import com.bbm.sdk.support.protect.EncryptedPayload;
 import com.bbm.sdk.support.protect.EncryptedProfileKeys;
+import com.bbm.sdk.support.protect.KeyDerivationParams;
 import com.bbm.sdk.support.protect.KeyPair;
 import com.bbm.sdk.support.protect.KeyStorageProvider;
 import com.bbm.sdk.support.protect.KeyStorageResponse;
@@ -44,6 +45,7 @@ public class FirebaseKeyStorageProvider implements KeyStorageProvider {
     private static final String MAILBOXES_DB_KEY = "mailboxes";
     private static final String PRIVATE_KEYS_DB_KEY = "private";
     private static final String MANAGEMENT_DB_KEY = "manage";
+    private static final String KEY_DERIVATION_DB_KEY = "kdf";
 
     private FirebaseDatabase mFirebaseDatabase;
     private FirebaseUser mFirebaseUser;
@@ -70,7 +72,11 @@ public class FirebaseKeyStorageProvider implements KeyStorageProvider {
 
         //Add the management keys and private profile keys to a new map
         HashMap<String, Object> privateKeysMap = new HashMap<>();
-        privateKeysMap.put("manage", managementKeys.getPrivateKeyPair());
+        HashMap<String, Object> managementKeysMap = new HashMap<>();
+        managementKeysMap.put("sign", managementKeys.getSign());
+        managementKeysMap.put("encrypt", managementKeys.getEncrypt());
+        managementKeysMap.put(KEY_DERIVATION_DB_KEY, managementKeys.getKeyDerivation());
+        privateKeysMap.put("manage", managementKeysMap);
         privateKeysMap.put("profile", keys.getPrivateKeyPair());
 
         HashMap<String, Object> keysMap = new HashMap<>();
@@ -277,8 +283,10 @@ public class FirebaseKeyStorageProvider implements KeyStorageProvider {
             @Override
             public void onDataChange(DataSnapshot dataSnapshot) {
                 PrivateKeyPair keyPair = dataSnapshot.getValue(PrivateKeyPair.class);
+                //Keys written before key derivation parameters were stored have no kdf
+                KeyDerivationParams keyDerivation = dataSnapshot.child(KEY_DERIVATION_DB_KEY).getValue(KeyDerivationParams.class);
                 EncryptedManagementKeys managementKeys = keyPair != null ?
-                        new EncryptedManagementKeys(keyPair) : null;
+                        new EncryptedManagementKeys(keyPair, keyDerivation) : null;
                 managementKeysKeyStorageResponse.onSuccess(managementKeys);
             }
 
@@ -305,6 +313,7 @@ public class FirebaseKeyStorageProvider implements KeyStorageProvider {
         HashMap<String, Object> valuesToUpdate = new HashMap<>();
         valuesToUpdate.put("sign", encryptedManagementKeys.getSign());
         valuesToUpdate.put("encrypt", encryptedManagementKeys.getEncrypt());
+        valuesToUpdate.put(KEY_DERIVATION_DB_KEY, encryptedManagementKeys.getKeyDerivation());
         keyStoreDbRef.child(mLocalUserUid).child(PRIVATE_KEYS_DB_KEY).child(MANAGEMENT_DB_KEY)
                 .updateChildren(valuesToUpdate, new DatabaseReference.CompletionListener() {
             @Override
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.LongHashMap;
+
+import java.util.HashMap;
+
+/**
+ * Cache of identity lookups that can be found by regId or by uid.
+ * <p>
+ * Found mappings are kept for a long time, mappings that were not found are kept for a short time so unknown ids
+ * aren't looked up on every request. When full the least recently used entry is dropped.
+ * An entry that is read close to its expiry is handed to the {@link Refresher} so hot entries are looked up again
+ * before they expire.
+ * <p>
+ * Not thread safe.
+ *
+ * @param <V> the cached value
+ */
+public class IdentityCache<V> {
+
+    /**
+     * Called when an entry that is in use should be looked up again.
+     */
+    public interface Refresher<V> {
+        void refresh(long regId, String uid, @NonNull V value);
+    }
+
+    public static final long DEFAULT_TTL_MS = 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_NEGATIVE_TTL_MS = 5 * 60 * 1000;
+    public static final long DEFAULT_REFRESH_AHEAD_MS = 2 * 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_SIZE = 5000;
+
+    private static class Entry<V> {
+        final long regId;
+        final String uid;
+        final V value;
+        final boolean found;
+        final long expiresAt;
+        boolean refreshing;
+        //least recently used list
+        Entry<V> prev;
+        Entry<V> next;
+
+        Entry(long regId, String uid, V value, boolean found, long expiresAt) {
+            this.regId = regId;
+            this.uid = uid;
+            this.value = value;
+            this.found = found;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Clock mClock;
+    private final long mTtlMs;
+    private final long mNegativeTtlMs;
+    private final long mRefreshAheadMs;
+    private final int mMaxSize;
+    private final Refresher<V> mRefresher;
+
+    private final LongHashMap<Entry<V>> mByRegId = new LongHashMap<>();
+    private final HashMap<String, Entry<V>> mByUid = new HashMap<>();
+    //most recently used at the head, evict from the tail
+    private Entry<V> mHead;
+    private Entry<V> mTail;
+    private int mSize;
+
+    public IdentityCache(@NonNull Refresher<V> refresher) {
+        this(refresher, Clock.SYSTEM, DEFAULT_TTL_MS, DEFAULT_NEGATIVE_TTL_MS, DEFAULT_REFRESH_AHEAD_MS,
+                DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param ttlMs          how long a found mapping is kept
+     * @param negativeTtlMs  how long a mapping that was not found is kept
+     * @param refreshAheadMs a found mapping read within this time of its expiry is refreshed
+     * @param maxSize        the most entries to keep
+     */
+    public IdentityCache(@NonNull Refresher<V> refresher, @NonNull Clock clock, long ttlMs, long negativeTtlMs,
+                         long refreshAheadMs, int maxSize) {
+        mRefresher = refresher;
+        mClock = clock;
+        mTtlMs = ttlMs;
+        mNegativeTtlMs = negativeTtlMs;
+        mRefreshAheadMs = refreshAheadMs;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return the cached value for the regId, or null if there is none or it expired
+     */
+    public V getByRegId(long regId) {
+        return use(mByRegId.get(regId));
+    }
+
+    /**
+     * @return the cached value for the uid, or null if there is none or it expired
+     */
+    public V getByUid(String uid) {
+        return use(mByUid.get(uid));
+    }
+
+    /**
+     * Add or replace a mapping, any entries for either id are replaced.
+     *
+     * @param regId the regId or 0 if not known
+     * @param uid   the uid or null if not known
+     * @param found false if the lookup found no mapping
+     */
+    public void put(long regId, String uid, @NonNull V value, boolean found) {
+        if (uid != null && uid.isEmpty()) {
+            uid = null;
+        }
+        if (regId == 0 && uid == null) {
+            return;
+        }
+        if (regId != 0) {
+            remove(mByRegId.get(regId));
+        }
+        if (uid != null) {
+            remove(mByUid.get(uid));
+        }
+
+        final Entry<V> entry = new Entry<>(regId, uid, value, found,
+                mClock.currentTimeMillis() + (found ? mTtlMs : mNegativeTtlMs));
+        if (regId != 0) {
+            mByRegId.put(regId, entry);
+        }
+        if (uid != null) {
+            mByUid.put(uid, entry);
+        }
+        addFirst(entry);
+        ++mSize;
+
+        while (mSize > mMaxSize) {
+            remove(mTail);
+        }
+    }
+
+    /**
+     * Remove the entry for the regId, along with its uid.
+     *
+     * @return the removed value or null
+     */
+    public V removeByRegId(long regId) {
+        final Entry<V> entry = mByRegId.get(regId);
+        remove(entry);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Remove the entry for the uid, along with its regId.
+     *
+     * @return the removed value or null
+     */
+    public V removeByUid(String uid) {
+        final Entry<V> entry = mByUid.get(uid);
+        remove(entry);
+        return entry != null ? entry.value : null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mByRegId.clear();
+        mByUid.clear();
+        mHead = null;
+        mTail = null;
+        mSize = 0;
+    }
+
+    private V use(Entry<V> entry) {
+        if (entry == null) {
+            return null;
+        }
+        final long now = mClock.currentTimeMillis();
+        if (now >= entry.expiresAt) {
+            remove(entry);
+            return null;
+        }
+        if (entry != mHead) {
+            unlink(entry);
+            addFirst(entry);
+        }
+        if (entry.found && !entry.refreshing && now >= entry.expiresAt - mRefreshAheadMs) {
+            //only ask once, the entry is replaced when the refresh completes
+            entry.refreshing = true;
+            mRefresher.refresh(entry.regId, entry.uid, entry.value);
+        }
+        return entry.value;
+    }
+
+    private void remove(Entry<V> entry) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.regId != 0 && mByRegId.get(entry.regId) == entry) {
+            mByRegId.remove(entry.regId);
+        }
+        if (entry.uid != null && mByUid.get(entry.uid) == entry) {
+            mByUid.remove(entry.uid);
+        }
+        unlink(entry);
+        --mSize;
+    }
+
+    private void addFirst(Entry<V> entry) {
+        entry.prev = null;
+        entry.next = mHead;
+        if (mHead != null) {
+            mHead.prev = entry;
+        }
+        mHead = entry;
+        if (mTail == null) {
+            mTail = entry;
+        }
+    }
+
+    private void unlink(Entry<V> entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            mHead = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            mTail = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+}
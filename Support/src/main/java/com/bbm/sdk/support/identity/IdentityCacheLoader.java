@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bbm.sdk.support.util.IOUtils;
+import com.bbm.sdk.support.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Reads the identity map cache file in chunks, handing each chunk to the {@link Sink} as soon as it is parsed so
+ * lookups can use the entries already read without waiting for the whole file.
+ * Each line of the file is a regId and uid separated by a space, later lines replace earlier lines for the same ids.
+ */
+class IdentityCacheLoader implements Runnable {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * A regId and uid read from the file.
+     */
+    static final class Entry {
+        final long regId;
+        final String uid;
+
+        Entry(long regId, @NonNull String uid) {
+            this.regId = regId;
+            this.uid = uid;
+        }
+    }
+
+    interface Sink {
+        /**
+         * Called on the loading thread with the entries of each chunk, in file order.
+         */
+        void onChunk(@NonNull List<Entry> entries);
+
+        /**
+         * Called on the loading thread once the whole file was read, or couldn't be.
+         *
+         * @param count the number of entries read
+         */
+        void onLoaded(int count);
+    }
+
+    private final File mFile;
+    private final int mChunkSize;
+    private final Sink mSink;
+
+    IdentityCacheLoader(@NonNull File file, int chunkSize, @NonNull Sink sink) {
+        mFile = file;
+        mChunkSize = Math.max(1, chunkSize);
+        mSink = sink;
+    }
+
+    @Override
+    public void run() {
+        Logger.d("IdentityCacheLoader - loading " + mFile.getName());
+        int count = 0;
+        BufferedReader reader = null;
+        try {
+            if (mFile.exists()) {
+                reader = new BufferedReader(new FileReader(mFile));
+                ArrayList<Entry> chunk = new ArrayList<>(mChunkSize);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final Entry entry = parseLine(line);
+                    if (entry != null) {
+                        chunk.add(entry);
+                    }
+                    if (chunk.size() == mChunkSize) {
+                        count += chunk.size();
+                        mSink.onChunk(chunk);
+                        chunk = new ArrayList<>(mChunkSize);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    count += chunk.size();
+                    mSink.onChunk(chunk);
+                }
+            }
+        } catch (IOException e) {
+            Logger.e(e, "IdentityCacheLoader - unable to read " + mFile.getName());
+        } finally {
+            IOUtils.safeClose(reader);
+            Logger.d("IdentityCacheLoader - loaded " + count + " entries");
+            mSink.onLoaded(count);
+        }
+    }
+
+    /**
+     * @return the entry for a line of the file, or null if the line isn't valid
+     */
+    @Nullable
+    static Entry parseLine(@NonNull String line) {
+        final StringTokenizer tokenizer = new StringTokenizer(line, " ");
+        if (tokenizer.countTokens() != 2) {
+            return null;
+        }
+        try {
+            final long regId = Long.parseLong(tokenizer.nextToken());
+            return new Entry(regId, tokenizer.nextToken());
+        } catch (NumberFormatException nfe) {
+            Logger.e("Invalid identity map cache entry " + line);
+            return null;
+        }
+    }
+}
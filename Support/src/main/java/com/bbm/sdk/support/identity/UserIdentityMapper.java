@@ -14,6 +14,7 @@ package com.bbm.sdk.support.identity;
 import android.content.Context;
 import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 
 import com.bbm.sdk.BBMEnterprise;
@@ -24,20 +25,23 @@ import com.bbm.sdk.reactive.Mutable;
 import com.bbm.sdk.reactive.ObservableMonitor;
 import com.bbm.sdk.reactive.ObservableValue;
 import com.bbm.sdk.service.InboundMessageObservable;
+import com.bbm.sdk.support.util.Clock;
 import com.bbm.sdk.support.util.IOUtils;
 import com.bbm.sdk.support.util.Logger;
+import com.bbm.sdk.support.util.LongHashMap;
+import com.bbm.sdk.support.util.Scheduler;
+import com.bbm.sdk.support.util.SchedulerUtil;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * Maps application user ids to BBM Enterprise SDK registration ids.
@@ -46,6 +50,8 @@ public class UserIdentityMapper {
 
     private static int MAX_ITEMS_PER_REQUEST = 50;
     private static String IDENTITY_CACHE_FILENAME = "identity_map_cache";
+    //How long each lookup waits for the file cache before it is requested from bbmcore
+    static final long MAX_FILE_CACHE_WAIT_MS = 500;
 
     /**
      * Represents an Identity mapping result.
@@ -94,20 +100,55 @@ public class UserIdentityMapper {
         }
     }
 
+    /**
+     * Sends the lookups to bbmcore, the results arrive in {@link #onIdentities(boolean, List)}.
+     */
+    interface IdentitiesRequester {
+        void requestRegIds(@NonNull List<String> uids);
+
+        void requestUids(@NonNull List<Long> regIds);
+    }
+
     private static UserIdentityMapper sInstance;
     private File mCacheFile;
     private boolean mRequestInProgress = false;
-    private boolean mPopulatedFromFileCache = false;
-    private final Map<String, Mutable<IdentityMapResult>> mMappedResults = new HashMap<>();
-    private final Map<String, Mutable<IdentityMapResult>> mPendingRequestMapResults = new HashMap<>();
-    private final Map<String, Mutable<IdentityMapResult>> mRequestedMapResults = new HashMap<>();
+    //True while the file cache is being read, lookups not found yet wait for it until their deadline
+    private boolean mFileCacheLoading = false;
+    //When each lookup made while the file cache is loading stops waiting for it, by the id being looked up
+    private final LongHashMap<Long> mFileCacheDeadlineByRegId = new LongHashMap<>();
+    private final HashMap<String, Long> mFileCacheDeadlineByUid = new HashMap<>();
+    //The deadlines in the order they were added, a timeout is scheduled for the first one
+    private final ArrayDeque<Long> mFileCacheDeadlines = new ArrayDeque<>();
+    private boolean mFileCacheTimeoutScheduled;
+    //Mappings added from the file cache while it loads, these can be replaced by later entries in the file
+    private final HashSet<Mutable<IdentityMapResult>> mFileCacheResults = new HashSet<>();
+    //lookups waiting to be sent, and lookups sent to bbmcore waiting for a result, by the id being looked up
+    private final LongHashMap<Mutable<IdentityMapResult>> mPendingByRegId = new LongHashMap<>();
+    private final HashMap<String, Mutable<IdentityMapResult>> mPendingByUid = new HashMap<>();
+    private final LongHashMap<Mutable<IdentityMapResult>> mRequestedByRegId = new LongHashMap<>();
+    private final HashMap<String, Mutable<IdentityMapResult>> mRequestedByUid = new HashMap<>();
+
+    //completed lookups, also used as the lock for all the lookup maps
+    private final IdentityCache<Mutable<IdentityMapResult>> mMappedResults = new IdentityCache<>(
+            new IdentityCache.Refresher<Mutable<IdentityMapResult>>() {
+                @Override
+                public void refresh(long regId, String uid, @NonNull Mutable<IdentityMapResult> obsMapResult) {
+                    //look it up again using the same observable so anyone watching it gets the new result
+                    if (!isPendingOrRequested(regId, uid)) {
+                        Logger.d("Refreshing identity mapping for regId " + regId);
+                        addPending(regId, obsMapResult);
+                        requestUids();
+                    }
+                }
+            });
 
     private static final String IDENTITIES_REQUEST_COOKIE = UUID.randomUUID().toString();
-    private final InboundMessageObservable<Identities> mIdentitiesObservable = new InboundMessageObservable<>(
-            new Identities(),
-            IDENTITIES_REQUEST_COOKIE,
-            BBMEnterprise.getInstance().getBbmdsProtocolConnector()
-    );
+    //null when created for tests, which hand the results to onIdentities
+    private final InboundMessageObservable<Identities> mIdentitiesObservable;
+    private final IdentitiesRequester mRequester;
+    private final Executor mRequestExecutor;
+    private final Scheduler mScheduler;
+    private final Clock mClock;
 
     private final ObservableMonitor mMapResultMonitor = new ObservableMonitor() {
         @Override
@@ -116,87 +157,84 @@ public class UserIdentityMapper {
             if (identities.exists == Existence.MAYBE) {
                 return;
             }
+            ArrayList<IdentityCacheLoader.Entry> found = new ArrayList<>();
             if (identities.result == Identities.Result.Success) {
-                FileWriter writer = null;
-                try {
-                    if (mCacheFile != null) {
-                        writer = new FileWriter(mCacheFile, true);
-                    }
-                } catch (IOException e) {
-                    Logger.e(e);
-                }
-
-                Logger.d("UserIdentityMapper - handle results " + mIdentitiesObservable.get().info.size());
-
-                for (Identities.Info info : mIdentitiesObservable.get().info) {
-                    IdentityMapResult updatedResult = new IdentityMapResult(info.regId, info.appUserId);
-                    updatedResult.existence = Existence.YES;
-
-                    updateMappedValue(mRequestedMapResults, updatedResult);
-                    updateMappedValue(mPendingRequestMapResults, updatedResult);
-
-                    //Check for a pending request using the uid
-                    Mutable<IdentityMapResult> observableMapResult = mRequestedMapResults.remove(getUidKey(info.appUserId));
-                    if (observableMapResult == null) {
-                        //Check for a pending request using the regid
-                        observableMapResult = mRequestedMapResults.remove(getRegIdKey(info.regId));
-                    }
-
-                    //Shouldn't really happen but if somehow we don't have a pending request create a new observable value
-                    if (observableMapResult == null) {
-                        observableMapResult = new Mutable<>(updatedResult);
-                    }
-
-                    addMapping(observableMapResult);
-
-                    if (writer != null) {
-                        try {
-                            //Write the regId and uid as a new entry
-                            writer.append(Long.toString(info.regId)).append(' ').append(info.appUserId).append('\n');
-                        } catch (IOException e) {
-                            Logger.e(e);
-                        }
-                    }
-                }
-
-                if (writer != null) {
-                    IOUtils.safeClose(writer);
+                for (Identities.Info info : identities.info) {
+                    found.add(new IdentityCacheLoader.Entry(info.regId, info.appUserId));
                 }
             }
+            onIdentities(identities.result == Identities.Result.Success, found);
+        }
+    };
 
-            for (Mutable<IdentityMapResult> pendingMapResult : mRequestedMapResults.values()) {
-                //No result was found for any map result left in the requested list
-                pendingMapResult.get().existence = Existence.NO;
-                if (identities.result == Identities.Result.Failure) {
-                    pendingMapResult.get().failed = true;
-                }
-                synchronized (mMappedResults) {
-                    if (pendingMapResult.get().regId != 0) {
-                        mMappedResults.put(
-                                getRegIdKey(pendingMapResult.get().regId),
-                                pendingMapResult
-                        );
-                    }
-
-                    if (!TextUtils.isEmpty(pendingMapResult.get().uid)) {
-                        mMappedResults.put(getUidKey(pendingMapResult.get().uid), pendingMapResult);
-                    }
+    /**
+     * Adds the entries from the file cache as they are read, and completes the lookups waiting for them.
+     */
+    private final IdentityCacheLoader.Sink mFileCacheSink = new IdentityCacheLoader.Sink() {
+        @Override
+        public void onChunk(@NonNull List<IdentityCacheLoader.Entry> entries) {
+            synchronized (mMappedResults) {
+                for (IdentityCacheLoader.Entry entry : entries) {
+                    addFileCacheEntry(entry.regId, entry.uid);
                 }
-                pendingMapResult.dirty();
             }
+            //Send the lookups that were waiting for an entry that came in this chunk
+            requestUids();
+        }
 
-            //Clear the requested map
-            mRequestedMapResults.clear();
-            mRequestInProgress = false;
-            //We might be waiting to request again
+        @Override
+        public void onLoaded(int count) {
+            synchronized (mMappedResults) {
+                mFileCacheLoading = false;
+                mFileCacheDeadlineByRegId.clear();
+                mFileCacheDeadlineByUid.clear();
+                mFileCacheDeadlines.clear();
+                mFileCacheResults.clear();
+            }
+            //Request the lookups that weren't in the file
             requestUids();
         }
     };
 
     private UserIdentityMapper() {
+        mIdentitiesObservable = new InboundMessageObservable<>(
+                new Identities(),
+                IDENTITIES_REQUEST_COOKIE,
+                BBMEnterprise.getInstance().getBbmdsProtocolConnector()
+        );
+        mRequester = new IdentitiesRequester() {
+            @Override
+            public void requestRegIds(@NonNull List<String> uids) {
+                BBMEnterprise.getInstance().getBbmdsProtocol().send(
+                        new IdentitiesGet(IDENTITIES_REQUEST_COOKIE).appUserIds(uids));
+            }
+
+            @Override
+            public void requestUids(@NonNull List<Long> regIds) {
+                BBMEnterprise.getInstance().getBbmdsProtocol().send(
+                        new IdentitiesGet(IDENTITIES_REQUEST_COOKIE).regIds(regIds));
+            }
+        };
+        mRequestExecutor = AsyncTask::execute;
+        mScheduler = SchedulerUtil.newScheduler("UserIdentityMapper");
+        mClock = Clock.SYSTEM;
         mMapResultMonitor.activate();
     }
 
+    /**
+     * A mapper that sends its lookups to the requester instead of bbmcore, the results are given to
+     * {@link #onIdentities(boolean, List)}.
+     */
+    @VisibleForTesting
+    UserIdentityMapper(@NonNull IdentitiesRequester requester, @NonNull Executor requestExecutor,
+                       @NonNull Scheduler scheduler, @NonNull Clock clock) {
+        mIdentitiesObservable = null;
+        mRequester = requester;
+        mRequestExecutor = requestExecutor;
+        mScheduler = scheduler;
+        mClock = clock;
+    }
+
     public synchronized static UserIdentityMapper getInstance() {
         if (sInstance == null) {
             sInstance = new UserIdentityMapper();
@@ -225,56 +263,148 @@ public class UserIdentityMapper {
      * @param context android app context
      */
     public void initializeFileCache(Context context) {
-        Logger.d("UserIdentityMapper - Initialize file cache");
-        mCacheFile = new File(context.getFilesDir(), IDENTITY_CACHE_FILENAME);
-    }
-
-    private String getRegIdKey(long regId) {
-        return "regId." + regId;
-    }
-
-    private String getUidKey(String uid) {
-        return "uid." + uid;
+        //Read the file in chunks on its own thread, entries can be looked up as soon as their chunk is read
+        initializeFileCache(new File(context.getFilesDir(), IDENTITY_CACHE_FILENAME),
+                loader -> new Thread(loader, "UserIdentityMapper-cache").start());
     }
 
-    private void addMapping(Mutable<IdentityMapResult> obsResult) {
+    /**
+     * @param loaderExecutor runs the {@link IdentityCacheLoader} reading the file
+     */
+    @VisibleForTesting
+    void initializeFileCache(@NonNull File cacheFile, @NonNull Executor loaderExecutor) {
+        if (mCacheFile != null) {
+            return;
+        }
+        Logger.d("UserIdentityMapper - Initialize file cache");
+        mCacheFile = cacheFile;
         synchronized (mMappedResults) {
-            mMappedResults.put(getRegIdKey(obsResult.get().regId), obsResult);
-            mMappedResults.put(getUidKey(obsResult.get().uid), obsResult);
+            mFileCacheLoading = true;
         }
+        loaderExecutor.execute(new IdentityCacheLoader(mCacheFile, IdentityCacheLoader.DEFAULT_CHUNK_SIZE, mFileCacheSink));
     }
 
-    private void updateMappedValue(Map<String, Mutable<IdentityMapResult>> mapToUpdate, IdentityMapResult updatedResult) {
-        //Update
-        Mutable<IdentityMapResult> observableMapResult = mapToUpdate.remove(getUidKey(updatedResult.uid));
-        if (observableMapResult != null) {
-            observableMapResult.set(updatedResult);
+    /**
+     * Handle the result of a lookup sent to bbmcore.
+     * @param success false if the lookup failed, the requested ids are then marked as failed
+     * @param found   the mappings found, ids that were requested and aren't in the list don't exist
+     */
+    @VisibleForTesting
+    void onIdentities(boolean success, @NonNull List<IdentityCacheLoader.Entry> found) {
+        if (success) {
+            FileWriter writer = null;
+            try {
+                if (mCacheFile != null) {
+                    writer = new FileWriter(mCacheFile, true);
+                }
+            } catch (IOException e) {
+                Logger.e(e);
+            }
+
+            Logger.d("UserIdentityMapper - handle results " + found.size());
+
+            synchronized (mMappedResults) {
+                for (IdentityCacheLoader.Entry info : found) {
+                    IdentityMapResult updatedResult = new IdentityMapResult(info.regId, info.uid);
+                    updatedResult.existence = Existence.YES;
+
+                    //Update the requests for either id, keeping the first observable as the mapping
+                    Mutable<IdentityMapResult> observableMapResult = null;
+                    observableMapResult = updateMappedValue(mRequestedByUid.remove(info.uid), updatedResult, observableMapResult);
+                    observableMapResult = updateMappedValue(mRequestedByRegId.remove(info.regId), updatedResult, observableMapResult);
+                    observableMapResult = updateMappedValue(mPendingByUid.remove(info.uid), updatedResult, observableMapResult);
+                    observableMapResult = updateMappedValue(mPendingByRegId.remove(info.regId), updatedResult, observableMapResult);
+
+                    //Shouldn't really happen but if somehow we don't have a pending request create a new observable value
+                    if (observableMapResult == null) {
+                        observableMapResult = new Mutable<>(updatedResult);
+                    }
+
+                    mMappedResults.put(info.regId, info.uid, observableMapResult, true);
+                    //bbmcore's answer is newer than anything still to be read from the file
+                    mFileCacheResults.remove(observableMapResult);
+
+                    if (writer != null) {
+                        try {
+                            //Write the regId and uid as a new entry
+                            writer.append(Long.toString(info.regId)).append(' ').append(info.uid).append('\n');
+                        } catch (IOException e) {
+                            Logger.e(e);
+                        }
+                    }
+                }
+            }
+
+            if (writer != null) {
+                IOUtils.safeClose(writer);
+            }
         }
 
-        //Check for a pending request using the regid
-        observableMapResult = mapToUpdate.remove(getRegIdKey(updatedResult.regId));
-        if (observableMapResult != null) {
-            observableMapResult.set(updatedResult);
+        synchronized (mMappedResults) {
+            ArrayList<Mutable<IdentityMapResult>> notFound = new ArrayList<>(mRequestedByUid.values());
+            notFound.addAll(mRequestedByRegId.values());
+            for (Mutable<IdentityMapResult> pendingMapResult : notFound) {
+                IdentityMapResult mapResult = pendingMapResult.get();
+                if (!success && mapResult.existence == Existence.YES) {
+                    //Only a refresh of a mapping we already have failed, keep using it until it expires
+                    continue;
+                }
+                //No result was found for any map result left in the requested list
+                mapResult.existence = Existence.NO;
+                if (!success) {
+                    mapResult.failed = true;
+                }
+                //Remember the miss for a short time so unknown ids aren't requested over and over
+                mMappedResults.put(mapResult.regId, mapResult.uid, pendingMapResult, false);
+                mFileCacheResults.remove(pendingMapResult);
+                pendingMapResult.dirty();
+            }
+
+            //Clear the requested maps
+            mRequestedByUid.clear();
+            mRequestedByRegId.clear();
+            mRequestInProgress = false;
         }
+        //We might be waiting to request again
+        requestUids();
     }
 
-    private Mutable<IdentityMapResult> getExistingMapResult(String key) {
-        Mutable<IdentityMapResult> mResult = mPendingRequestMapResults.get(key);
-        if (mResult == null) {
-            mResult = mRequestedMapResults.get(key);
+    private boolean isPendingOrRequested(long regId, String uid) {
+        if (regId != 0 && (mPendingByRegId.containsKey(regId) || mRequestedByRegId.containsKey(regId))) {
+            return true;
         }
-        if (mResult == null) {
-            mResult = mMappedResults.get(key);
+        return !TextUtils.isEmpty(uid) && (mPendingByUid.containsKey(uid) || mRequestedByUid.containsKey(uid));
+    }
+
+    /**
+     * Set the result on a request.
+     * @return the observable to keep as the mapping, the first request updated for the result
+     */
+    private Mutable<IdentityMapResult> updateMappedValue(Mutable<IdentityMapResult> observableMapResult,
+                                                         IdentityMapResult updatedResult,
+                                                         Mutable<IdentityMapResult> mapping) {
+        if (observableMapResult == null) {
+            return mapping;
         }
+        observableMapResult.set(updatedResult);
+        return mapping != null ? mapping : observableMapResult;
+    }
 
-        return mResult;
+    /**
+     * Check if a lookup that found no mapping should be sent again now.
+     */
+    private boolean shouldRetry(Mutable<IdentityMapResult> obsMapResult, boolean retryMapping) {
+        //A user that doesn't exist is only looked up again once the miss expires from the cache,
+        //a lookup that failed can be retried right away
+        return retryMapping && obsMapResult.get().existence == Existence.NO && obsMapResult.get().failed;
     }
 
     /**
      * Find the application user identifier for a provided BBM Enterprise SDK registration id.
      * The UidResult will be populated with the Uid when it becomes known.
      * @param regId a BBM Enterprise SDK registration id
-     * @param retryMapping retry the map request if an IdentityMapResult with Existence.NO is found
+     * @param retryMapping retry the map request if an IdentityMapResult with Existence.NO is found because the
+     *                     lookup failed. A regId that was not found is looked up again after a short time regardless.
      * @return an ObservableValue of type {@link IdentityMapResult}.
      */
     @NonNull
@@ -287,15 +417,23 @@ public class UserIdentityMapper {
         }
         Logger.d("Requesting uid for regId " + regId + ", forceRetry " + retryMapping);
         synchronized (mMappedResults) {
-            String regIdKey = getRegIdKey(regId);
-            Mutable<IdentityMapResult> obsMapResult = getExistingMapResult(regIdKey);
+            Mutable<IdentityMapResult> obsMapResult = mPendingByRegId.get(regId);
+            if (obsMapResult == null) {
+                obsMapResult = mRequestedByRegId.get(regId);
+            }
+            if (obsMapResult == null) {
+                obsMapResult = mMappedResults.getByRegId(regId);
+                if (obsMapResult != null && shouldRetry(obsMapResult, retryMapping)) {
+                    mMappedResults.removeByRegId(regId);
+                    addPending(regId, obsMapResult);
+                    requestUids();
+                }
+            }
             if (obsMapResult == null) {
                 //If we don't have a matching valid map entry or pending request then create a new request
                 IdentityMapResult mapResult = new IdentityMapResult(regId, "");
                 obsMapResult = new Mutable<>(mapResult);
-                mPendingRequestMapResults.put(regIdKey, obsMapResult);
-                requestUids();
-            } else if (retryMapping) {
+                addPending(regId, obsMapResult);
                 requestUids();
             }
 
@@ -307,22 +445,31 @@ public class UserIdentityMapper {
      * Find the BBM Enterprise SDK registration id for the provided application user identifier.
      * The RegIdResult will be populated with the registration id when it becomes known.
      * @param uid an application user identifier
-     * @param retryMapping retry the map request if an IdentityMapResult with Existence.NO is found
+     * @param retryMapping retry the map request if an IdentityMapResult with Existence.NO is found because the
+     *                     lookup failed. A uid that was not found is looked up again after a short time regardless.
      * @return an ObservableValue of type {@link IdentityMapResult}.
      */
     @NonNull
     public ObservableValue<IdentityMapResult> getRegIdForUid(String uid, boolean retryMapping) {
         Logger.d("Requesting regId for uid " + uid + ", forceRetry " + retryMapping);
         synchronized (mMappedResults) {
-            String uidKey = getUidKey(uid);
-            Mutable<IdentityMapResult> obsMapResult = getExistingMapResult(uidKey);
+            Mutable<IdentityMapResult> obsMapResult = mPendingByUid.get(uid);
+            if (obsMapResult == null) {
+                obsMapResult = mRequestedByUid.get(uid);
+            }
+            if (obsMapResult == null) {
+                obsMapResult = mMappedResults.getByUid(uid);
+                if (obsMapResult != null && shouldRetry(obsMapResult, retryMapping)) {
+                    mMappedResults.removeByUid(uid);
+                    addPending(uid, obsMapResult);
+                    requestUids();
+                }
+            }
             if (obsMapResult == null) {
                 //If we don't have a matching valid map entry or pending request then create a new request
                 IdentityMapResult mapResult = new IdentityMapResult(0, uid);
                 obsMapResult = new Mutable<>(mapResult);
-                mPendingRequestMapResults.put(uidKey, obsMapResult);
-                requestUids();
-            } else if (retryMapping) {
+                addPending(uid, obsMapResult);
                 requestUids();
             }
 
@@ -330,116 +477,196 @@ public class UserIdentityMapper {
         }
     }
 
-    private void requestUids() {
-        //Check to see if there are still any pending map lookups to complete
-        if (!mRequestInProgress && mPendingRequestMapResults.size() > 0) {
-            mRequestInProgress = true;
-            AsyncTask.execute(() -> {
-                //First check if we should populate our map from the file cache
-                if (!mPopulatedFromFileCache && mCacheFile != null) {
-                    populateCache();
+    /**
+     * Add a lookup to send to bbmcore. While the file cache is loading the lookup first waits for the file to have
+     * the mapping, up to {@link #MAX_FILE_CACHE_WAIT_MS}. Called with the mMappedResults lock held.
+     */
+    private void addPending(long regId, @NonNull Mutable<IdentityMapResult> obsMapResult) {
+        mPendingByRegId.put(regId, obsMapResult);
+        if (mFileCacheLoading) {
+            final long deadline = mClock.currentTimeMillis() + MAX_FILE_CACHE_WAIT_MS;
+            mFileCacheDeadlineByRegId.put(regId, deadline);
+            addFileCacheDeadline(deadline);
+        }
+    }
+
+    /**
+     * See {@link #addPending(long, Mutable)}.
+     */
+    private void addPending(@NonNull String uid, @NonNull Mutable<IdentityMapResult> obsMapResult) {
+        mPendingByUid.put(uid, obsMapResult);
+        if (mFileCacheLoading) {
+            final long deadline = mClock.currentTimeMillis() + MAX_FILE_CACHE_WAIT_MS;
+            mFileCacheDeadlineByUid.put(uid, deadline);
+            addFileCacheDeadline(deadline);
+        }
+    }
+
+    /**
+     * Make sure a timeout runs at the deadline. Called with the mMappedResults lock held.
+     */
+    private void addFileCacheDeadline(long deadline) {
+        mFileCacheDeadlines.add(deadline);
+        if (!mFileCacheTimeoutScheduled) {
+            mFileCacheTimeoutScheduled = true;
+            mScheduler.schedule(mFileCacheTimeout, Math.max(0, deadline - mClock.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Sends the lookups that waited for the file cache until their deadline, then waits for the next deadline.
+     */
+    private final Runnable mFileCacheTimeout = new Runnable() {
+        @Override
+        public void run() {
+            requestUids();
+            synchronized (mMappedResults) {
+                mFileCacheTimeoutScheduled = false;
+                final long now = mClock.currentTimeMillis();
+                //Lookups past their deadline that couldn't be sent yet go out when the current request completes
+                while (!mFileCacheDeadlines.isEmpty() && mFileCacheDeadlines.peek() <= now) {
+                    mFileCacheDeadlines.poll();
                 }
+                if (mFileCacheLoading && !mFileCacheDeadlines.isEmpty()) {
+                    mFileCacheTimeoutScheduled = true;
+                    mScheduler.schedule(this, mFileCacheDeadlines.peek() - now);
+                }
+            }
+        }
+    };
 
-                synchronized (mMappedResults) {
-                    List<Long> regIds = new ArrayList<>();
-                    List<String> uids = new ArrayList<>();
-                    for (Mutable<IdentityMapResult> obsMapResult : mPendingRequestMapResults.values()) {
-                        IdentityMapResult mapResult = obsMapResult.get();
-                        if (mapResult.regId != 0) {
-                            regIds.add(mapResult.regId);
-                        } else if (!TextUtils.isEmpty(mapResult.uid)) {
-                            uids.add(mapResult.uid);
-                        }
+    /**
+     * Check if a pending lookup can be sent, it can't while it is still waiting for the file cache.
+     * Called with the mMappedResults lock held.
+     */
+    private boolean canRequest(Long fileCacheDeadline, long now) {
+        return !mFileCacheLoading || fileCacheDeadline == null || fileCacheDeadline <= now;
+    }
+
+    /**
+     * @return true if there are pending lookups that can be sent. Called with the mMappedResults lock held.
+     */
+    private boolean hasLookupsToRequest() {
+        if (!mFileCacheLoading) {
+            return !mPendingByUid.isEmpty() || !mPendingByRegId.isEmpty();
+        }
+        final long now = mClock.currentTimeMillis();
+        for (String uid : mPendingByUid.keySet()) {
+            if (canRequest(mFileCacheDeadlineByUid.get(uid), now)) {
+                return true;
+            }
+        }
+        for (long regId : mPendingByRegId.keys()) {
+            if (canRequest(mFileCacheDeadlineByRegId.get(regId), now)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-                        //If we reach the max requests then stop, we will send another request when this one has completed.
-                        if (regIds.size() == MAX_ITEMS_PER_REQUEST || uids.size() == MAX_ITEMS_PER_REQUEST) {
+    private void requestUids() {
+        synchronized (mMappedResults) {
+            //Check to see if there are still any pending map lookups to complete, lookups still waiting for the
+            //file cache are requested by their timeout
+            if (mRequestInProgress || !hasLookupsToRequest()) {
+                return;
+            }
+            mRequestInProgress = true;
+        }
+        mRequestExecutor.execute(() -> {
+            synchronized (mMappedResults) {
+                final long now = mClock.currentTimeMillis();
+                //Perform any regId lookups
+                if (!mPendingByUid.isEmpty()) {
+                    //If we reach the max requests then stop, we will send another request when this one has completed.
+                    List<String> uids = new ArrayList<>(Math.min(mPendingByUid.size(), MAX_ITEMS_PER_REQUEST));
+                    for (String uid : mPendingByUid.keySet()) {
+                        if (!canRequest(mFileCacheDeadlineByUid.get(uid), now)) {
+                            continue;
+                        }
+                        uids.add(uid);
+                        if (uids.size() == MAX_ITEMS_PER_REQUEST) {
                             break;
                         }
                     }
-
-                    //Perform any regId lookups
                     if (!uids.isEmpty()) {
                         Logger.d("Requesting " + uids.size() + " regIds");
                         //Move observable result from the pending map to the requested map
                         for (String uid : uids) {
-                            String key = getUidKey(uid);
-                            mRequestedMapResults.put(key, mPendingRequestMapResults.remove(key));
+                            mRequestedByUid.put(uid, mPendingByUid.remove(uid));
+                            mFileCacheDeadlineByUid.remove(uid);
                         }
-                        IdentitiesGet getIdentities = new IdentitiesGet(IDENTITIES_REQUEST_COOKIE).appUserIds(uids);
-                        BBMEnterprise.getInstance().getBbmdsProtocol().send(getIdentities);
+                        mRequester.requestRegIds(uids);
                         //Only request one type (regid or uid at a time)
                         return;
                     }
+                }
 
-                    //If we have any uid lookups to perform
+                //If we have any uid lookups to perform
+                if (!mPendingByRegId.isEmpty()) {
+                    long[] pendingRegIds = mPendingByRegId.keys();
+                    List<Long> regIds = new ArrayList<>(Math.min(pendingRegIds.length, MAX_ITEMS_PER_REQUEST));
+                    for (int i = 0; i < pendingRegIds.length && regIds.size() < MAX_ITEMS_PER_REQUEST; ++i) {
+                        if (canRequest(mFileCacheDeadlineByRegId.get(pendingRegIds[i]), now)) {
+                            regIds.add(pendingRegIds[i]);
+                        }
+                    }
                     if (!regIds.isEmpty()) {
                         Logger.d("Requesting " + regIds.size() + " uids");
                         //Move observable result from the pending map to the requested map
                         for (Long regId : regIds) {
-                            String key = getRegIdKey(regId);
-                            mRequestedMapResults.put(key, mPendingRequestMapResults.remove(key));
+                            mRequestedByRegId.put(regId, mPendingByRegId.remove(regId));
+                            mFileCacheDeadlineByRegId.remove(regId);
                         }
-                        IdentitiesGet getIdentities = new IdentitiesGet(IDENTITIES_REQUEST_COOKIE).regIds(regIds);
-                        BBMEnterprise.getInstance().getBbmdsProtocol().send(getIdentities);
+                        mRequester.requestUids(regIds);
                         //Only request one type (regid or uid at a time)
                         return;
                     }
-
-                    //If we didn't request either regIds or uids set requestInProgress to false
-                    mRequestInProgress = false;
                 }
-            });
-        }
-    }
 
-    private void populateCache() {
-        Logger.d("UserIdentityMapper - populate file cache");
-        BufferedReader reader = null;
-        try {
-            if (!mCacheFile.exists()) {
-                mCacheFile.createNewFile();
-            }
-            reader = new BufferedReader(new FileReader(mCacheFile));
-            String line;
-            while ((line = reader.readLine()) != null){
-                parseCacheLine(line);
+                //If we didn't request either regIds or uids set requestInProgress to false
+                mRequestInProgress = false;
             }
-        } catch (IOException e) {
-            Logger.e(e);
-        } finally {
-            IOUtils.safeClose(reader);
-        }
-
-        mPopulatedFromFileCache = true;
+        });
     }
 
-    private void parseCacheLine(String line) {
-        StringTokenizer tokenizer = new StringTokenizer(line, " ");
-        if (tokenizer.countTokens() == 2) {
-            try {
-                String regIdString = tokenizer.nextToken();
-                long regId = Long.parseLong(regIdString);
-                String uid = tokenizer.nextToken();
-                IdentityMapResult mapResult = new IdentityMapResult(regId, uid);
-                mapResult.existence = Existence.YES;
-                synchronized (mMappedResults) {
-                    String regIdKey = getRegIdKey(regId);
-                    String uidKey = getUidKey(mapResult.uid);
-                    Mutable<IdentityMapResult> obsMapResult = mPendingRequestMapResults.remove(regIdKey);
-                    if (obsMapResult == null) {
-                        obsMapResult = mPendingRequestMapResults.remove(uidKey);
-                    }
-                    if (obsMapResult == null) {
-                        obsMapResult = new Mutable<>(mapResult);
-                    } else {
-                        obsMapResult.set(mapResult);
-                    }
-                    mMappedResults.put(regIdKey, obsMapResult);
-                    mMappedResults.put(uidKey, obsMapResult);
-                }
-            } catch (NumberFormatException nfe) {
-                Logger.e("Invalid identity map cache entry " + line);
-            }
+    /**
+     * Add an entry read from the file cache. The file only fills in mappings bbmcore hasn't answered, an id that
+     * bbmcore found, didn't find, or is being asked for already has a newer answer than the file.
+     * Called with the mMappedResults lock held.
+     */
+    private void addFileCacheEntry(long regId, String uid) {
+        if (mRequestedByRegId.containsKey(regId) || mRequestedByUid.containsKey(uid)) {
+            //Already sent to bbmcore while the file was loading, its result will update the lookup
+            return;
+        }
+        //Keep the observable of an earlier entry in the file for the same user
+        Mutable<IdentityMapResult> cached = mMappedResults.getByRegId(regId);
+        if (cached == null) {
+            cached = mMappedResults.getByUid(uid);
+        }
+        if (cached != null && !mFileCacheResults.contains(cached)) {
+            //bbmcore has answered for this user since the file was written
+            return;
+        }
+
+        IdentityMapResult mapResult = new IdentityMapResult(regId, uid);
+        mapResult.existence = Existence.YES;
+        Mutable<IdentityMapResult> obsMapResult = mPendingByRegId.remove(regId);
+        if (obsMapResult == null) {
+            obsMapResult = mPendingByUid.remove(uid);
+        }
+        if (obsMapResult == null) {
+            obsMapResult = cached;
+        }
+        mFileCacheDeadlineByRegId.remove(regId);
+        mFileCacheDeadlineByUid.remove(uid);
+        if (obsMapResult == null) {
+            obsMapResult = new Mutable<>(mapResult);
+        } else {
+            obsMapResult.set(mapResult);
         }
+        mMappedResults.put(regId, uid, obsMapResult, true);
+        mFileCacheResults.add(obsMapResult);
     }
 }
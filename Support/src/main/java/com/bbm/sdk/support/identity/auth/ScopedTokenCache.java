@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.MetricsRegistry;
+import com.bbm.sdk.support.util.Scheduler;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Caches access tokens for several scopes, with a {@link TokenManager} for each scope.
+ * Each scope has its own cache, in flight fetch and background refresh, so getting a token for one scope never
+ * waits on another.
+ * Token age, refresh latency, fetch and cache hit counts are recorded in the metrics registry for each scope,
+ * named "&lt;scope&gt;.token_age_ms" etc.
+ * Thread safe.
+ */
+public final class ScopedTokenCache {
+
+    /**
+     * Gets new tokens for a scope, for example from an identity provider SDK.
+     */
+    public interface ScopedTokenSource {
+        /**
+         * Get a new token, see {@link TokenManager.TokenSource#fetchToken(TokenManager.Token)}.
+         */
+        @Nullable
+        TokenManager.Token fetchToken(@NonNull String scope, @Nullable TokenManager.Token rejected) throws Exception;
+    }
+
+    private final ScopedTokenSource mSource;
+    private final Scheduler mScheduler;
+    private final Executor mCallbackExecutor;
+    private final Clock mClock;
+    private final Random mRandom;
+    private final MetricsRegistry mMetrics;
+
+    private final ConcurrentHashMap<String, TokenManager> mManagers = new ConcurrentHashMap<>();
+
+    /**
+     * @param scheduler        runs the fetches, use a scheduler with a thread per scope so scopes can be fetched
+     *                         at the same time
+     * @param callbackExecutor the executor callbacks are made on
+     * @param metrics          the registry to record metrics in, or null to not record them
+     */
+    public ScopedTokenCache(@NonNull ScopedTokenSource source, @NonNull Scheduler scheduler,
+                            @NonNull Executor callbackExecutor, @NonNull Clock clock, @NonNull Random random,
+                            @Nullable MetricsRegistry metrics) {
+        mSource = source;
+        mScheduler = scheduler;
+        mCallbackExecutor = callbackExecutor;
+        mClock = clock;
+        mRandom = random;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Get a token for the scope, see {@link TokenManager#getToken(TokenManager.Callback)}.
+     */
+    public void getToken(@NonNull String scope, @NonNull TokenManager.Callback callback) {
+        getManager(scope).getToken(callback);
+    }
+
+    /**
+     * @return the cached token for the scope if it hasn't expired
+     */
+    @Nullable
+    public TokenManager.Token getCachedToken(@NonNull String scope) {
+        final TokenManager manager = mManagers.get(scope);
+        return manager != null ? manager.getCachedToken() : null;
+    }
+
+    /**
+     * The cached token for the scope was rejected, the next request fetches a new one.
+     */
+    public void invalidate(@NonNull String scope) {
+        final TokenManager manager = mManagers.get(scope);
+        if (manager != null) {
+            manager.invalidate();
+        }
+    }
+
+    /**
+     * Cache a token for the scope that was got outside the cache, for example by asking the user to sign in.
+     */
+    public void setToken(@NonNull String scope, @NonNull TokenManager.Token token) {
+        getManager(scope).setToken(token);
+    }
+
+    /**
+     * Forget the tokens for all scopes, for example when the user signs out.
+     */
+    public void clear() {
+        for (TokenManager manager : mManagers.values()) {
+            manager.clear();
+        }
+    }
+
+    /**
+     * @return how long ago the token for the scope was fetched, or -1 if there is no token
+     */
+    public long getTokenAgeMs(@NonNull String scope) {
+        final TokenManager manager = mManagers.get(scope);
+        return manager != null ? manager.getTokenAgeMs() : -1;
+    }
+
+    /**
+     * @return the time the last successful fetch for the scope took including retries, or -1 if there hasn't been one
+     */
+    public long getLastFetchLatencyMs(@NonNull String scope) {
+        final TokenManager manager = mManagers.get(scope);
+        return manager != null ? manager.getLastFetchLatencyMs() : -1;
+    }
+
+    /**
+     * @return the manager for the scope, created the first time the scope is used
+     */
+    @NonNull
+    TokenManager getManager(@NonNull final String scope) {
+        TokenManager manager = mManagers.get(scope);
+        if (manager == null) {
+            final TokenManager created = new TokenManager(rejected -> mSource.fetchToken(scope, rejected),
+                    mScheduler, mCallbackExecutor, mClock, mRandom);
+            manager = mManagers.putIfAbsent(scope, created);
+            if (manager == null) {
+                manager = created;
+                if (mMetrics != null) {
+                    created.setMetrics(mMetrics, scope + ".");
+                }
+            }
+        }
+        return manager;
+    }
+}
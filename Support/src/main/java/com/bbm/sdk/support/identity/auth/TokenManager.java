@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.Logger;
+import com.bbm.sdk.support.util.MetricsRegistry;
+import com.bbm.sdk.support.util.Scheduler;
+import com.bbm.sdk.support.util.SchedulerUtil;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches an access token and gets a new one from a {@link TokenSource} when needed.
+ * <ul>
+ * <li>Callers asking for a token while one is being fetched wait for that fetch instead of starting another.</li>
+ * <li>A cached token is returned until it expires, and a new token is fetched in the background shortly before
+ * it expires.</li>
+ * <li>Fetches that fail with an exception are tried again after a growing, jittered delay.</li>
+ * </ul>
+ * Fetches run on the {@link Scheduler}, one at a time, and callbacks are made on the callback executor.
+ * Thread safe.
+ */
+public final class TokenManager {
+
+    /**
+     * The refresh is started this long before the token expires
+     */
+    public static final long DEFAULT_REFRESH_AHEAD_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(15);
+    public static final long DEFAULT_MAX_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * Metric names, prefixed with the prefix given to {@link #setMetrics(MetricsRegistry, String)}
+     */
+    public static final String METRIC_FETCHES = "token_fetches";
+    public static final String METRIC_FETCH_FAILURES = "token_fetch_failures";
+    public static final String METRIC_CACHE_HITS = "token_cache_hits";
+    public static final String METRIC_COALESCED = "token_coalesced";
+    public static final String METRIC_REFRESH_LATENCY = "token_refresh_latency";
+    public static final String METRIC_TOKEN_AGE = "token_age_ms";
+
+    /**
+     * An access token and when it expires. Token sources can extend this to pass along more of their result.
+     */
+    public static class Token {
+        private final String mValue;
+        private final String mAccountId;
+        private final long mExpiresAtMs;
+
+        /**
+         * @param value       the access token
+         * @param accountId   the id of the account the token is for, if known
+         * @param expiresAtMs when the token expires, in {@link Clock} time
+         */
+        public Token(@NonNull String value, @Nullable String accountId, long expiresAtMs) {
+            mValue = value;
+            mAccountId = accountId;
+            mExpiresAtMs = expiresAtMs;
+        }
+
+        @NonNull
+        public String getValue() {
+            return mValue;
+        }
+
+        @Nullable
+        public String getAccountId() {
+            return mAccountId;
+        }
+
+        public long getExpiresAtMs() {
+            return mExpiresAtMs;
+        }
+
+        public boolean isValid(long nowMs) {
+            return nowMs < mExpiresAtMs;
+        }
+    }
+
+    /**
+     * Gets new tokens, for example from an identity provider SDK.
+     */
+    public interface TokenSource {
+        /**
+         * Get a new token. Called on the scheduler thread, this can block.
+         *
+         * @param rejected the last token, if it was rejected, the source should not return it again
+         * @return the new token, or null if a token can't be got without the user, for example if they need to
+         * sign in again. Failures that might succeed later, such as network errors, should throw.
+         */
+        @Nullable
+        Token fetchToken(@Nullable Token rejected) throws Exception;
+    }
+
+    public interface Callback {
+        void onToken(@NonNull Token token);
+
+        /**
+         * No token could be got, after any retries.
+         */
+        void onFailure();
+    }
+
+    private final TokenSource mSource;
+    private final Scheduler mScheduler;
+    private final Executor mCallbackExecutor;
+    private final Clock mClock;
+    private final Random mRandom;
+
+    private long mRefreshAheadMs = DEFAULT_REFRESH_AHEAD_MS;
+    private long mRetryDelayMs = DEFAULT_RETRY_DELAY_MS;
+    private long mMaxRetryDelayMs = DEFAULT_MAX_RETRY_DELAY_MS;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private Token mToken;
+    private long mTokenFetchedAtMs;
+    //When the current fetch was started, for the refresh latency
+    private long mFetchStartMs;
+    private long mLastFetchLatencyMs = -1;
+    //The token that was rejected, until a new token is fetched
+    private Token mRejected;
+    private boolean mFetching;
+    private int mAttempt;
+    //Changed when the token is invalidated, a fetch started before then is done again
+    private int mGeneration;
+    private final ArrayList<Callback> mWaiting = new ArrayList<>();
+
+    private int mFetchCount;
+    private int mCacheHitCount;
+    private int mCoalescedCount;
+    private int mRetryCount;
+
+    private MetricsRegistry.Counter mFetchCounter;
+    private MetricsRegistry.Counter mFailureCounter;
+    private MetricsRegistry.Counter mCacheHitCounter;
+    private MetricsRegistry.Counter mCoalescedCounter;
+    private MetricsRegistry.Histogram mLatencyHistogram;
+
+    private final Runnable mFetch = new Runnable() {
+        @Override
+        public void run() {
+            fetch();
+        }
+    };
+
+    /**
+     * @param source           gets new tokens
+     * @param scheduler        runs the fetches, see {@link SchedulerUtil#newScheduler(String)}
+     * @param callbackExecutor the callbacks are made on this, normally the main thread
+     * @param clock            the clock the token expiry is in
+     * @param random           picks the retry delays
+     */
+    public TokenManager(@NonNull TokenSource source, @NonNull Scheduler scheduler, @NonNull Executor callbackExecutor,
+                        @NonNull Clock clock, @NonNull Random random) {
+        mSource = source;
+        mScheduler = scheduler;
+        mCallbackExecutor = callbackExecutor;
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /**
+     * @param refreshAheadMs how long before the token expires to fetch a new one
+     */
+    public synchronized void setRefreshAheadMs(long refreshAheadMs) {
+        mRefreshAheadMs = refreshAheadMs;
+    }
+
+    /**
+     * @param retryDelayMs    the delay after the first failure, doubled after each failure
+     * @param maxRetryDelayMs the longest delay
+     * @param maxAttempts     the number of fetches to try before failing
+     */
+    public synchronized void setRetryPolicy(long retryDelayMs, long maxRetryDelayMs, int maxAttempts) {
+        mRetryDelayMs = retryDelayMs;
+        mMaxRetryDelayMs = maxRetryDelayMs;
+        mMaxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Record the fetches, cache hits, refresh latency and token age in the registry.
+     *
+     * @param prefix added to the start of each metric name, to tell managers in the same registry apart
+     */
+    public synchronized void setMetrics(@NonNull MetricsRegistry metrics, @NonNull String prefix) {
+        mFetchCounter = metrics.counter(prefix + METRIC_FETCHES);
+        mFailureCounter = metrics.counter(prefix + METRIC_FETCH_FAILURES);
+        mCacheHitCounter = metrics.counter(prefix + METRIC_CACHE_HITS);
+        mCoalescedCounter = metrics.counter(prefix + METRIC_COALESCED);
+        mLatencyHistogram = metrics.histogram(prefix + METRIC_REFRESH_LATENCY);
+        metrics.gauge(prefix + METRIC_TOKEN_AGE, this::getTokenAgeMs);
+    }
+
+    /**
+     * Get a token, the cached token if it hasn't expired or else a new token.
+     * The callback is always made on the callback executor.
+     */
+    public void getToken(@NonNull final Callback callback) {
+        final Token token;
+        synchronized (this) {
+            final long now = mClock.currentTimeMillis();
+            if (mToken != null && mToken.isValid(now)) {
+                ++mCacheHitCount;
+                count(mCacheHitCounter);
+                token = mToken;
+                if (now >= mToken.getExpiresAtMs() - mRefreshAheadMs) {
+                    startFetch();
+                }
+            } else {
+                token = null;
+                if (mFetching) {
+                    ++mCoalescedCount;
+                    count(mCoalescedCounter);
+                }
+                mWaiting.add(callback);
+                startFetch();
+            }
+        }
+
+        if (token != null) {
+            mCallbackExecutor.execute(() -> callback.onToken(token));
+        }
+    }
+
+    /**
+     * @return the cached token if it hasn't expired, without fetching
+     */
+    @Nullable
+    public synchronized Token getCachedToken() {
+        return mToken != null && mToken.isValid(mClock.currentTimeMillis()) ? mToken : null;
+    }
+
+    /**
+     * The cached token was rejected, the next {@link #getToken(Callback)} fetches a new one.
+     */
+    public synchronized void invalidate() {
+        if (mToken != null) {
+            mRejected = mToken;
+        }
+        mToken = null;
+        ++mGeneration;
+    }
+
+    /**
+     * Cache a token got outside the manager, for example by asking the user to sign in.
+     * Callers waiting for a fetch are given this token and the result of the fetch is dropped.
+     */
+    public void setToken(@NonNull Token token) {
+        final ArrayList<Callback> waiting;
+        synchronized (this) {
+            mToken = token;
+            mTokenFetchedAtMs = mClock.currentTimeMillis();
+            mRejected = null;
+            ++mGeneration;
+            scheduleRefresh(token);
+            waiting = new ArrayList<>(mWaiting);
+            mWaiting.clear();
+        }
+        notifyWaiting(waiting, token);
+    }
+
+    /**
+     * Forget the cached token, for example when the user signs out.
+     * Callers waiting for a fetch fail and the result of the fetch is dropped.
+     */
+    public void clear() {
+        final ArrayList<Callback> waiting;
+        synchronized (this) {
+            mToken = null;
+            mRejected = null;
+            ++mGeneration;
+            waiting = new ArrayList<>(mWaiting);
+            mWaiting.clear();
+        }
+        notifyWaiting(waiting, null);
+    }
+
+    /**
+     * @return how long ago the cached token was fetched, or -1 if there is no token
+     */
+    public synchronized long getTokenAgeMs() {
+        return mToken != null ? mClock.currentTimeMillis() - mTokenFetchedAtMs : -1;
+    }
+
+    /**
+     * @return the time the last successful fetch took including retries, or -1 if there hasn't been one
+     */
+    public synchronized long getLastFetchLatencyMs() {
+        return mLastFetchLatencyMs;
+    }
+
+    /**
+     * @return the number of fetches from the token source, including retries
+     */
+    public synchronized int getFetchCount() {
+        return mFetchCount;
+    }
+
+    /**
+     * @return the number of callers given the cached token
+     */
+    public synchronized int getCacheHitCount() {
+        return mCacheHitCount;
+    }
+
+    /**
+     * @return the number of callers that waited for a fetch another caller started
+     */
+    public synchronized int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * @return the number of fetches tried again after failing
+     */
+    public synchronized int getRetryCount() {
+        return mRetryCount;
+    }
+
+    private void startFetch() {
+        if (!mFetching) {
+            mFetching = true;
+            mAttempt = 0;
+            mFetchStartMs = mClock.currentTimeMillis();
+            mScheduler.schedule(mFetch, 0);
+        }
+    }
+
+    private void fetch() {
+        final Token rejected;
+        final int generation;
+        synchronized (this) {
+            if (mWaiting.isEmpty() && mToken == null) {
+                //Cleared or invalidated since the fetch was started, no one needs it
+                mFetching = false;
+                return;
+            }
+            rejected = mRejected;
+            generation = mGeneration;
+            ++mAttempt;
+            ++mFetchCount;
+            count(mFetchCounter);
+        }
+
+        Token token = null;
+        Exception error = null;
+        try {
+            token = mSource.fetchToken(rejected);
+        } catch (Exception e) {
+            error = e;
+        }
+
+        final ArrayList<Callback> waiting;
+        synchronized (this) {
+            if (token != null && generation != mGeneration) {
+                //Invalidated, replaced or cleared while fetching, the token could be the one that was rejected.
+                //Fetch again only if someone is still waiting for it.
+                if (mWaiting.isEmpty()) {
+                    mFetching = false;
+                } else {
+                    mAttempt = 0;
+                    mScheduler.schedule(mFetch, 0);
+                }
+                return;
+            }
+
+            if (token == null) {
+                count(mFailureCounter);
+            }
+            if (token == null && error != null && mAttempt < mMaxAttempts) {
+                final long delayMs = SchedulerUtil.getRetryDelayMs(mRetryDelayMs, mMaxRetryDelayMs, mAttempt, mRandom);
+                Logger.w(error, "TokenManager - fetch " + mAttempt + " failed, trying again in " + delayMs + "ms");
+                ++mRetryCount;
+                mScheduler.schedule(mFetch, delayMs);
+                return;
+            }
+
+            mFetching = false;
+            waiting = new ArrayList<>(mWaiting);
+            mWaiting.clear();
+            if (token != null) {
+                mToken = token;
+                mTokenFetchedAtMs = mClock.currentTimeMillis();
+                mRejected = null;
+                mLastFetchLatencyMs = mTokenFetchedAtMs - mFetchStartMs;
+                if (mLatencyHistogram != null) {
+                    mLatencyHistogram.record(mLastFetchLatencyMs);
+                }
+                scheduleRefresh(token);
+            } else if (error != null) {
+                Logger.e(error, "TokenManager - unable to get a token after " + mAttempt + " attempts");
+            } else {
+                Logger.w("TokenManager - the token source has no token");
+            }
+        }
+
+        notifyWaiting(waiting, token);
+    }
+
+    private void notifyWaiting(ArrayList<Callback> waiting, final Token token) {
+        for (final Callback callback : waiting) {
+            mCallbackExecutor.execute(() -> {
+                if (token != null) {
+                    callback.onToken(token);
+                } else {
+                    callback.onFailure();
+                }
+            });
+        }
+    }
+
+    private static void count(MetricsRegistry.Counter counter) {
+        if (counter != null) {
+            counter.inc();
+        }
+    }
+
+    private void scheduleRefresh(final Token token) {
+        final long delayMs = token.getExpiresAtMs() - mRefreshAheadMs - mClock.currentTimeMillis();
+        if (delayMs <= 0) {
+            //Expires too soon to refresh ahead, the next caller after it expires will fetch
+            return;
+        }
+        mScheduler.schedule(() -> {
+            synchronized (TokenManager.this) {
+                //Only if the token wasn't replaced or rejected since
+                if (mToken == token) {
+                    startFetch();
+                }
+            }
+        }, delayMs);
+    }
+}
@@ -11,12 +11,20 @@
 
 package com.bbm.sdk.support.identity.user;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Base class for notifying the UserManager of users being added or changed
+ * Base class for notifying the UserManager of users being added or changed.
+ * Sources that receive many users at once should use {@link #queueAppUserChange(EventToNotify, AppUser)} so the
+ * changes are delivered to the listeners in batches, and wrap their initial load in
+ * {@link #beginInitialLoad()} and {@link #endInitialLoad()} so it is delivered as a single batch.
+ * The queue methods must be called from the main UI thread.
  */
 public abstract class AppSourceNotifier implements AppUserSource {
 
@@ -26,6 +34,19 @@ public abstract class AppSourceNotifier implements AppUserSource {
 
     private ArrayList<AppUserListener> mAppUserListeners = new ArrayList<>();
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private ArrayList<AppUserChange> mQueuedChanges = new ArrayList<>();
+    private boolean mInitialLoadInProgress;
+    private boolean mFlushPosted;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFlushPosted = false;
+            flushAppUserChanges();
+        }
+    };
+
     @Override
     public void addListener(@NonNull AppUserListener listener) {
         if (!mAppUserListeners.contains(listener)) {
@@ -58,4 +79,83 @@ public abstract class AppSourceNotifier implements AppUserSource {
         }
     }
 
+    /**
+     * Queue a remote user change. Changes queued during the same main thread message are delivered together,
+     * changes queued during the initial load are held until {@link #endInitialLoad()}.
+     * The local user is not batched, use {@link #notifyAppUserListeners(EventToNotify, AppUser)} for it.
+     */
+    protected void queueAppUserChange(EventToNotify event, AppUser appUser) {
+        final AppUserChange.Type type;
+        switch (event) {
+            case ADD:
+                type = AppUserChange.Type.ADDED;
+                break;
+            case CHANGE:
+                type = AppUserChange.Type.CHANGED;
+                break;
+            case REMOVE:
+                type = AppUserChange.Type.REMOVED;
+                break;
+            default:
+                notifyAppUserListeners(event, appUser);
+                return;
+        }
+        mQueuedChanges.add(new AppUserChange(type, appUser));
+        if (!mInitialLoadInProgress && !mFlushPosted) {
+            mFlushPosted = true;
+            mHandler.post(mFlushRunnable);
+        }
+    }
+
+    /**
+     * Start holding the queued changes until the initial load is complete.
+     */
+    protected void beginInitialLoad() {
+        if (!mInitialLoadInProgress) {
+            mInitialLoadInProgress = true;
+            for (AppUserListener listener : mAppUserListeners) {
+                listener.remoteUsersLoading();
+            }
+        }
+    }
+
+    /**
+     * Deliver everything queued during the initial load as one batch.
+     */
+    protected void endInitialLoad() {
+        if (mInitialLoadInProgress) {
+            mInitialLoadInProgress = false;
+            deliver(true);
+        }
+    }
+
+    /**
+     * @return true between {@link #beginInitialLoad()} and {@link #endInitialLoad()}
+     */
+    protected boolean isInitialLoadInProgress() {
+        return mInitialLoadInProgress;
+    }
+
+    /**
+     * Deliver the queued changes now instead of waiting for the posted flush.
+     * This does nothing during the initial load.
+     */
+    protected void flushAppUserChanges() {
+        if (!mInitialLoadInProgress) {
+            deliver(false);
+        }
+    }
+
+    private void deliver(boolean initialLoadComplete) {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushPosted = false;
+        if (mQueuedChanges.isEmpty() && !initialLoadComplete) {
+            return;
+        }
+        final List<AppUserChange> changes = Collections.unmodifiableList(mQueuedChanges);
+        mQueuedChanges = new ArrayList<>();
+        for (AppUserListener listener : mAppUserListeners) {
+            listener.remoteUsersChanged(changes, initialLoadComplete);
+        }
+    }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A single remote app user change, delivered in batches to {@link AppUserListener#remoteUsersChanged}
+ */
+public final class AppUserChange {
+
+    public enum Type {
+        ADDED, CHANGED, REMOVED
+    }
+
+    private final Type mType;
+    private final AppUser mAppUser;
+
+    public AppUserChange(@NonNull Type type, @NonNull AppUser appUser) {
+        mType = type;
+        mAppUser = appUser;
+    }
+
+    @NonNull
+    public Type getType() {
+        return mType;
+    }
+
+    @NonNull
+    public AppUser getAppUser() {
+        return mAppUser;
+    }
+
+    @Override
+    public String toString() {
+        return "AppUserChange{" + mType + " " + mAppUser + "}";
+    }
+}
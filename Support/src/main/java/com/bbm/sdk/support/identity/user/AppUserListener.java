@@ -11,6 +11,10 @@
 
 package com.bbm.sdk.support.identity.user;
 
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
 /**
  * This interface is used to listen for changes to the remote app users and local app user
  * from the {@Link AppUserSource}
@@ -44,6 +48,22 @@ public interface AppUserListener {
      */
     void remoteUserRemoved(AppUser remoteAppUser);
 
+    /**
+     * Called when the source starts loading its initial set of remote users.
+     * The changes for the initial load are delivered together in a call to
+     * {@link #remoteUsersChanged(List, boolean)} with initialLoadComplete set.
+     */
+    void remoteUsersLoading();
+
+    /**
+     * Called with a batch of remote app user changes, in the order they happened.
+     * This should be applied as a single update instead of one update per user.
+     *
+     * @param changes             the added, changed and removed remote users
+     * @param initialLoadComplete true if this batch completes the initial load started by {@link #remoteUsersLoading()}
+     */
+    void remoteUsersChanged(@NonNull List<AppUserChange> changes, boolean initialLoadComplete);
+
     /**
      * Called when the app user source has changed.
      * @param source the source of app users
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.support.annotation.NonNull;
+import android.support.v4.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local copy of the remote user directory so users are available at startup before the source has synced.
+ * Each record keeps a version, a fingerprint of its contents, so changes from the source can be compared with the
+ * snapshot and only the users that actually differ are applied.
+ * All methods are thread safe.
+ */
+public class UserDirectorySnapshot {
+
+    private static final int FILE_MAGIC = 0x55534452; //"USDR"
+    private static final int FILE_VERSION = 1;
+
+    private static final class Record {
+        final AppUser user;
+        final long version;
+
+        Record(AppUser user, long version) {
+            this.user = user;
+            this.version = version;
+        }
+    }
+
+    //by uid, in the order users were added
+    private final LinkedHashMap<String, Record> mRecords = new LinkedHashMap<>();
+
+    /**
+     * @return the version of a user record, this changes when any of the stored fields change
+     */
+    public static long version(@NonNull AppUser user) {
+        //64 bit FNV-1a over the fields that are stored
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, user.getRegId());
+        hash = fnv(hash, user.getUid());
+        hash = fnv(hash, user.getName());
+        hash = fnv(hash, user.getEmail());
+        hash = fnv(hash, user.getAvatarUrl());
+        return hash;
+    }
+
+    private static long fnv(long hash, long value) {
+        for (int i = 0; i < 8; ++i) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        if (value == null) {
+            //distinguish null from empty
+            return fnv(hash, -1L);
+        }
+        hash = fnv(hash, value.length());
+        for (int i = 0; i < value.length(); ++i) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the users in the snapshot
+     */
+    @NonNull
+    public synchronized List<AppUser> getUsers() {
+        ArrayList<AppUser> users = new ArrayList<>(mRecords.size());
+        for (Record record : mRecords.values()) {
+            users.add(record.user);
+        }
+        return users;
+    }
+
+    public synchronized int size() {
+        return mRecords.size();
+    }
+
+    public synchronized void clear() {
+        mRecords.clear();
+    }
+
+    /**
+     * Add users loaded from the file, users already in the snapshot (updated by the source before the file was
+     * read) are kept.
+     *
+     * @return the users that were added
+     */
+    @NonNull
+    public synchronized List<AppUser> addLoaded(@NonNull List<AppUser> users) {
+        ArrayList<AppUser> added = new ArrayList<>(users.size());
+        for (AppUser user : users) {
+            if (!mRecords.containsKey(user.getUid())) {
+                mRecords.put(user.getUid(), new Record(user, version(user)));
+                added.add(user);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Update the snapshot with changes from the source.
+     *
+     * @return the changes that differ from the snapshot, an added or changed user with the same version is dropped
+     */
+    @NonNull
+    public synchronized List<AppUserChange> apply(@NonNull List<AppUserChange> changes) {
+        ArrayList<AppUserChange> applied = new ArrayList<>();
+        for (AppUserChange change : changes) {
+            final AppUser user = change.getAppUser();
+            if (user.getUid() == null) {
+                //not something that can be stored, pass it on unchanged
+                applied.add(change);
+                continue;
+            }
+            if (change.getType() == AppUserChange.Type.REMOVED) {
+                if (mRecords.remove(user.getUid()) != null) {
+                    applied.add(change);
+                }
+                continue;
+            }
+            final long version = version(user);
+            final Record existing = mRecords.get(user.getUid());
+            if (existing == null) {
+                mRecords.put(user.getUid(), new Record(user, version));
+                applied.add(new AppUserChange(AppUserChange.Type.ADDED, user));
+            } else if (existing.version != version) {
+                mRecords.put(user.getUid(), new Record(user, version));
+                applied.add(new AppUserChange(AppUserChange.Type.CHANGED, user));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Update the snapshot with the complete initial load from the source.
+     * Users in the snapshot that are not in the load were removed while the app was not running.
+     *
+     * @return the changes that differ from the snapshot, including removals
+     */
+    @NonNull
+    public synchronized List<AppUserChange> reconcile(@NonNull List<AppUserChange> initialLoad) {
+        final HashSet<String> loaded = new HashSet<>();
+        for (AppUserChange change : initialLoad) {
+            if (change.getType() == AppUserChange.Type.REMOVED) {
+                loaded.remove(change.getAppUser().getUid());
+            } else {
+                loaded.add(change.getAppUser().getUid());
+            }
+        }
+        final List<AppUserChange> applied = apply(initialLoad);
+        final Iterator<Map.Entry<String, Record>> iterator = mRecords.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Record> entry = iterator.next();
+            if (!loaded.contains(entry.getKey())) {
+                applied.add(new AppUserChange(AppUserChange.Type.REMOVED, entry.getValue().user));
+                iterator.remove();
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Save the snapshot, a failed write leaves the previous copy intact.
+     */
+    public void save(@NonNull File file) throws IOException {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream stream = atomicFile.startWrite();
+        try {
+            write(new BufferedOutputStream(stream));
+            atomicFile.finishWrite(stream);
+        } catch (IOException e) {
+            atomicFile.failWrite(stream);
+            throw e;
+        }
+    }
+
+    /**
+     * Read the users from a saved snapshot. This does not change this snapshot, pass the result to
+     * {@link #addLoaded(List)}.
+     */
+    @NonNull
+    public static List<AppUser> load(@NonNull File file) throws IOException {
+        InputStream in;
+        try {
+            in = new BufferedInputStream(new AtomicFile(file).openRead());
+        } catch (FileNotFoundException e) {
+            //never saved
+            return Collections.emptyList();
+        }
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    void write(OutputStream stream) throws IOException {
+        final ArrayList<Record> records;
+        synchronized (this) {
+            records = new ArrayList<>(mRecords.values());
+        }
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeInt(records.size());
+        for (Record record : records) {
+            AppUser user = record.user;
+            out.writeLong(user.getRegId());
+            writeString(out, user.getUid());
+            writeString(out, user.getName());
+            writeString(out, user.getEmail());
+            writeString(out, user.getAvatarUrl());
+            out.writeLong(record.version);
+        }
+        out.flush();
+    }
+
+    static List<AppUser> read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != FILE_MAGIC) {
+            throw new IOException("Not a user directory snapshot");
+        }
+        int fileVersion = in.readInt();
+        if (fileVersion != FILE_VERSION) {
+            throw new IOException("Unsupported user directory snapshot version " + fileVersion);
+        }
+        int count = in.readInt();
+        ArrayList<AppUser> users = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            long regId = in.readLong();
+            AppUser user = new AppUser(regId, readString(in), readString(in), readString(in), readString(in));
+            if (in.readLong() != version(user)) {
+                throw new IOException("User directory snapshot record " + i + " is corrupt");
+            }
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        try {
+            return in.readBoolean() ? in.readUTF() : null;
+        } catch (EOFException e) {
+            throw new IOException("User directory snapshot is truncated", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.BatchDebouncer;
+import com.bbm.sdk.support.util.Clock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gathers user lookups made over a short window and resolves them with as few {@link Backend} round trips as
+ * possible.
+ * A uid that is already waiting or in flight is not requested again, and a uid the backend did not find is not
+ * requested again until the negative result expires.
+ *
+ * @param <T> the user data returned by the backend
+ */
+public class UserLookupCoalescer<T> extends BatchDebouncer<Boolean> {
+
+    /**
+     * The remote user directory.
+     */
+    public interface Backend<T> {
+        /**
+         * Look up a set of users in one round trip, the callback must be called exactly once.
+         */
+        void lookup(@NonNull Set<String> uids, @NonNull Callback<T> callback);
+    }
+
+    /**
+     * Result of a {@link Backend#lookup(Set, Callback)}.
+     */
+    public interface Callback<T> {
+        /**
+         * @param found  the users that were found
+         * @param failed the uids that could not be looked up, they are not cached and can be requested again.
+         *               Uids that are in neither don't exist.
+         */
+        void onResult(@NonNull Map<String, T> found, @NonNull Set<String> failed);
+
+        /**
+         * The whole lookup failed, nothing is cached so the users can be requested again.
+         */
+        void onError(@NonNull Exception e);
+    }
+
+    /**
+     * Notified of each requested user that was resolved.
+     */
+    public interface Listener<T> {
+        void onUserFound(@NonNull String uid, @NonNull T user);
+
+        void onUserNotFound(@NonNull String uid);
+    }
+
+    public static final long DEFAULT_WINDOW_MS = 50;
+    public static final long DEFAULT_NEGATIVE_TTL_MS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    private final Backend<T> mBackend;
+    private final Listener<T> mListener;
+    private final Clock mClock;
+    private final long mNegativeTtlMs;
+    private final int mMaxBatchSize;
+
+    private final HashSet<String> mInFlight = new HashSet<>();
+    //uid to the time the negative result expires
+    private final HashMap<String, Long> mNotFound = new HashMap<>();
+
+    public UserLookupCoalescer(@NonNull Backend<T> backend, @NonNull Listener<T> listener) {
+        this(backend, listener, Clock.SYSTEM, DEFAULT_WINDOW_MS, DEFAULT_NEGATIVE_TTL_MS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public UserLookupCoalescer(@NonNull Backend<T> backend, @NonNull Listener<T> listener, @NonNull Clock clock,
+                               long windowMs, long negativeTtlMs, int maxBatchSize) {
+        //the same quiet period and max delay, the window is measured from the first request
+        super(clock, windowMs, windowMs);
+        mBackend = backend;
+        mListener = listener;
+        mClock = clock;
+        mNegativeTtlMs = negativeTtlMs;
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Ask for a user to be looked up.
+     *
+     * @return true if the uid was queued and {@link #flushDue()} needs to be scheduled, false if it is already
+     * queued, in flight, or recently not found
+     */
+    public synchronized boolean request(@NonNull String uid) {
+        final Long notFoundUntil = mNotFound.get(uid);
+        if (notFoundUntil != null) {
+            if (mClock.currentTimeMillis() < notFoundUntil) {
+                return false;
+            }
+            mNotFound.remove(uid);
+        }
+        if (mInFlight.contains(uid) || getPending(uid) != null) {
+            return false;
+        }
+        putPending(uid, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * @return the number of uids sent to the backend without a result yet
+     */
+    public synchronized int getInFlightCount() {
+        return mInFlight.size();
+    }
+
+    @Override
+    protected void onBatchTaken(@NonNull Map<String, Boolean> batch) {
+        mInFlight.addAll(batch.keySet());
+        //drop expired negative results while here so the map doesn't grow forever
+        final long now = mClock.currentTimeMillis();
+        final Iterator<Long> expiries = mNotFound.values().iterator();
+        while (expiries.hasNext()) {
+            if (expiries.next() <= now) {
+                expiries.remove();
+            }
+        }
+    }
+
+    @Override
+    protected void onFlush(@NonNull Map<String, Boolean> batch) {
+        Set<String> uids = null;
+        for (String uid : batch.keySet()) {
+            if (uids == null || uids.size() == mMaxBatchSize) {
+                if (uids != null) {
+                    send(uids);
+                }
+                uids = new HashSet<>();
+            }
+            uids.add(uid);
+        }
+        send(uids);
+    }
+
+    private void send(@NonNull Set<String> batch) {
+        final Set<String> uids = Collections.unmodifiableSet(batch);
+        mBackend.lookup(uids, new Callback<T>() {
+            @Override
+            public void onResult(@NonNull Map<String, T> found, @NonNull Set<String> failed) {
+                final ArrayList<String> notFound = new ArrayList<>();
+                synchronized (UserLookupCoalescer.this) {
+                    final long expiry = mClock.currentTimeMillis() + mNegativeTtlMs;
+                    for (String uid : uids) {
+                        mInFlight.remove(uid);
+                        if (found.get(uid) == null && !failed.contains(uid)) {
+                            mNotFound.put(uid, expiry);
+                            notFound.add(uid);
+                        }
+                    }
+                }
+                for (String uid : uids) {
+                    final T user = found.get(uid);
+                    if (user != null) {
+                        mListener.onUserFound(uid, user);
+                    }
+                }
+                for (String uid : notFound) {
+                    mListener.onUserNotFound(uid);
+                }
+            }
+
+            @Override
+            public void onError(@NonNull Exception e) {
+                synchronized (UserLookupCoalescer.this) {
+                    mInFlight.removeAll(uids);
+                }
+            }
+        });
+    }
+}
@@ -11,6 +11,11 @@
 
 package com.bbm.sdk.support.identity.user;
 
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 import android.text.TextUtils;
 import android.util.LongSparseArray;
@@ -25,11 +30,15 @@ import com.bbm.sdk.support.reactive.ArrayObservableList;
 import com.bbm.sdk.support.reactive.StateAwareComputedList;
 import com.bbm.sdk.support.util.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -61,10 +70,47 @@ public class UserManager implements AppUserListener {
      */
     private ArrayObservableList<AppUser> mUserList = new ArrayObservableList<>();
 
+    /**
+     * Index of the users in mUserList by name, email and uid, built on the first search and then updated with the list
+     */
+    private final UserSearchIndex mSearchIndex = new UserSearchIndex();
+    private boolean mSearchIndexBuilt;
+
     private Mutable<AppUser> mLocalAppUser = new Mutable<>(new AppUser());
 
     private AppUserSource mAppUserSource;
 
+    private static final String USER_DIRECTORY_FILENAME = "user_directory.dat";
+    private static final long SNAPSHOT_SAVE_DELAY_MS = 2000;
+
+    //local copy of the users so they are available before the source syncs, null until initializeFileCache
+    private UserDirectorySnapshot mSnapshot;
+    private File mSnapshotFile;
+    private boolean mInitialLoadComplete;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mSnapshotExecutor = Executors.newSingleThreadExecutor();
+
+    private final Runnable mSaveSnapshotRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final UserDirectorySnapshot snapshot = mSnapshot;
+            final File file = mSnapshotFile;
+            if (snapshot == null || file == null) {
+                return;
+            }
+            mSnapshotExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshot.save(file);
+                    } catch (IOException e) {
+                        Logger.e(e, "Failed to save user directory snapshot");
+                    }
+                }
+            });
+        }
+    };
+
     private UserManager() {
     }
 
@@ -75,7 +121,88 @@ public class UserManager implements AppUserListener {
     public void clear() {
         mRegIdToUserMap.clear();
         mUidToUserMap.clear();
+        mSearchIndex.clear();
+        mSearchIndexBuilt = false;
         mUserList.clear();
+        mInitialLoadComplete = false;
+        if (mSnapshot != null) {
+            mHandler.removeCallbacks(mSaveSnapshotRunnable);
+            mSnapshot.clear();
+            final File file = mSnapshotFile;
+            mSnapshotExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (file.exists() && !file.delete()) {
+                        Logger.w("Failed to delete user directory snapshot");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Keep a copy of the users in a file so they can be shown at startup before the app user source has synced.
+     * The saved users are loaded in the background and added as soon as they are read, the source then only
+     * updates the users that changed since the copy was saved.
+     *
+     * @param context android app context
+     */
+    @UiThread
+    public void initializeFileCache(Context context) {
+        if (mSnapshot != null) {
+            return;
+        }
+        mSnapshot = new UserDirectorySnapshot();
+        mSnapshotFile = new File(context.getFilesDir(), USER_DIRECTORY_FILENAME);
+        final File file = mSnapshotFile;
+        mSnapshotExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<AppUser> loaded;
+                try {
+                    loaded = UserDirectorySnapshot.load(file);
+                } catch (IOException e) {
+                    Logger.w(e, "Ignoring unreadable user directory snapshot");
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        addSnapshotUsers(loaded);
+                    }
+                });
+            }
+        });
+    }
+
+    private void addSnapshotUsers(List<AppUser> loaded) {
+        if (mSnapshot == null || mInitialLoadComplete) {
+            //the source already has the current users
+            return;
+        }
+        final List<AppUser> added = mSnapshot.addLoaded(loaded);
+        final ArrayList<AppUserChange> changes = new ArrayList<>(added.size());
+        for (AppUser appUser : added) {
+            changes.add(new AppUserChange(AppUserChange.Type.ADDED, appUser));
+        }
+        applyChanges(changes);
+        Logger.d("addSnapshotUsers: added " + added.size() + " saved users");
+    }
+
+    /**
+     * Pass the changes through the snapshot so only the users that differ from it are applied, and save the snapshot
+     * when it changed.
+     */
+    private List<AppUserChange> updateSnapshot(List<AppUserChange> changes, boolean initialLoadComplete) {
+        if (mSnapshot == null) {
+            return changes;
+        }
+        final List<AppUserChange> applied = initialLoadComplete ? mSnapshot.reconcile(changes) : mSnapshot.apply(changes);
+        if (!applied.isEmpty()) {
+            mHandler.removeCallbacks(mSaveSnapshotRunnable);
+            mHandler.postDelayed(mSaveSnapshotRunnable, SNAPSHOT_SAVE_DELAY_MS);
+        }
+        return applied;
     }
 
     @UiThread
@@ -111,69 +238,193 @@ public class UserManager implements AppUserListener {
         mAppUserSource = source;
     }
 
+    @UiThread
+    @Override
+    public void remoteUsersLoading() {
+        //the list is incomplete until the initial load batch arrives
+        mUserList.setPending(true);
+    }
+
+    @UiThread
+    @Override
+    public void remoteUsersChanged(@NonNull List<AppUserChange> changes, boolean initialLoadComplete) {
+        applyChanges(updateSnapshot(changes, initialLoadComplete));
+        if (initialLoadComplete) {
+            mInitialLoadComplete = true;
+            Logger.d("remoteUsersChanged: initial load complete, have " + mUserList.size() + " users");
+            mUserList.setPending(false);
+        }
+    }
+
     @UiThread
     public void remoteUserUpdated(AppUser appUser) {
+        applyChanges(updateSnapshot(Collections.singletonList(new AppUserChange(AppUserChange.Type.CHANGED, appUser)), false));
+    }
+
+    @UiThread
+    public void removeUser(AppUser appUser) {
+        Logger.d("remove appUser="+appUser);
+        applyChanges(updateSnapshot(Collections.singletonList(new AppUserChange(AppUserChange.Type.REMOVED, appUser)), false));
+    }
+
+    /**
+     * The change to one observable user while applying a batch.
+     */
+    private static class PendingUser {
+        //the value before the batch, null if the observable was created by the batch
+        final AppUser original;
+        final boolean wasInList;
+        //the value after the batch, null if removed
+        AppUser value;
+        //true if it is mapped by regId and belongs in the user list
+        boolean listed;
+
+        PendingUser(AppUser original) {
+            this.original = original;
+            //placeholders created for getUser/getUserByUid are not in the list
+            wasInList = original != null && original.getExists() != Existence.MAYBE;
+        }
+    }
+
+    /**
+     * Apply the changes as one update. The maps are updated first, then the user list, and finally the new values are
+     * set in the observable users. Users already in the list are replaced or removed where they are, new users are
+     * appended with a single notification so a large batch does not cause a list notification per user.
+     * Observers are only notified after the maps are updated so they never see the maps and list disagree.
+     */
+    private void applyChanges(List<AppUserChange> changes) {
+        //Mutable doesn't define equals so each observable user is tracked by identity
+        final IdentityHashMap<Mutable<AppUser>, PendingUser> pending = new IdentityHashMap<>();
+        final ArrayList<Mutable<AppUser>> order = new ArrayList<>();
+
         synchronized (mRegIdToUserMap) {
-            final long regId = appUser.getRegId();
-            if (regId == 0 || TextUtils.isEmpty(appUser.getUid())) {
-                Logger.w("Ignoring invalid (missing regId or uid) AppUser="+appUser);
-            } else {
-                //Get any existing user from the regId map and uid map
-                Mutable<AppUser> regIdAppUserOv = mRegIdToUserMap.get(regId);
-                Mutable<AppUser> uidAppUserOv = mUidToUserMap.get(appUser.getUid());
-
-                if (regIdAppUserOv == null && uidAppUserOv == null) {
-                    //it wasn't in map, so create new one and add to end of list
-                    Mutable<AppUser> appUserOv = new Mutable<>(appUser);
-                    mRegIdToUserMap.put(regId, appUserOv);
-                    mUidToUserMap.put(appUser.getUid(), appUserOv);
-                    mUserList.add(appUser);
-                    Logger.d("add: added, have " + mUserList.size() + " users. " + appUser);
-                } else {
-                    //it was already in map, so just set the new value in it
-                    //This updates the same OV in both the map and list, and will trigger notifications for any listeners
-                    if (regIdAppUserOv != null) {
-                        //If the existing AppUser had existence "maybe" then we need to add it to the user list
-                        if (regIdAppUserOv.get().getExists() == Existence.MAYBE) {
-                            mUserList.add(appUser);
-                        }
-                        regIdAppUserOv.set(appUser);
+            for (AppUserChange change : changes) {
+                final AppUser appUser = change.getAppUser();
+                if (change.getType() == AppUserChange.Type.REMOVED) {
+                    Mutable<AppUser> toBeRemoved = mRegIdToUserMap.get(appUser.getRegId());
+                    if (toBeRemoved == null) {
+                        toBeRemoved = mUidToUserMap.get(appUser.getUid());
                     }
-                    if (uidAppUserOv != null) {
-                        uidAppUserOv.set(appUser);
+                    mRegIdToUserMap.remove(appUser.getRegId());
+                    mUidToUserMap.remove(appUser.getUid());
+                    if (toBeRemoved != null) {
+                        getPending(pending, order, toBeRemoved, false).value = null;
                     }
-                    Logger.d("add: updated, have " + mUserList.size() + " users. " + appUser);
+                    continue;
+                }
+
+                final long regId = appUser.getRegId();
+                if (regId == 0 || TextUtils.isEmpty(appUser.getUid())) {
+                    Logger.w("Ignoring invalid (missing regId or uid) AppUser="+appUser);
+                    continue;
+                }
+
+                //Get any existing user from the regId map and uid map
+                final Mutable<AppUser> regIdAppUserOv = mRegIdToUserMap.get(regId);
+                final Mutable<AppUser> uidAppUserOv = mUidToUserMap.get(appUser.getUid());
+                Mutable<AppUser> appUserOv = regIdAppUserOv != null ? regIdAppUserOv : uidAppUserOv;
+                final boolean created = appUserOv == null;
+                if (created) {
+                    appUserOv = new Mutable<>(appUser);
+                }
+                mRegIdToUserMap.put(regId, appUserOv);
+                mUidToUserMap.put(appUser.getUid(), appUserOv);
+
+                final PendingUser pendingUser = getPending(pending, order, appUserOv, created);
+                pendingUser.value = appUser;
+                pendingUser.listed = true;
+
+                if (uidAppUserOv != null && uidAppUserOv != appUserOv) {
+                    //a separate placeholder requested by uid, update it as well so its observers get the user
+                    getPending(pending, order, uidAppUserOv, false).value = appUser;
                 }
             }
 
-            if (TextUtils.isEmpty(appUser.getUid())) {
-                Logger.w("Ignoring appUser with empty regId AppUser="+appUser);
-            } else {
-                Mutable<AppUser> appUserOv = mUidToUserMap.get(appUser.getUid());
-                if (appUserOv == null) {
+            //replace or remove the users already in the list and append the new ones
+            final IdentityHashMap<AppUser, PendingUser> inList = new IdentityHashMap<>();
+            final ArrayList<AppUser> added = new ArrayList<>();
+            for (Mutable<AppUser> appUserOv : order) {
+                final PendingUser pendingUser = pending.get(appUserOv);
+                updateSearchIndex(pendingUser);
+                if (pendingUser.wasInList) {
+                    inList.put(pendingUser.original, pendingUser);
+                } else if (pendingUser.listed && pendingUser.value != null) {
+                    added.add(pendingUser.value);
+                }
+            }
 
+            //the list observers are notified once for all the users replaced, removed and added
+            mUserList.beginBatch();
+            //from the end so removing a user doesn't move the ones still to be found
+            int remaining = inList.size();
+            for (int i = mUserList.size() - 1; i >= 0 && remaining > 0; --i) {
+                final PendingUser pendingUser = inList.get(mUserList.get(i));
+                if (pendingUser == null) {
+                    continue;
+                }
+                --remaining;
+                if (pendingUser.value == null) {
+                    mUserList.remove(i);
+                } else if (pendingUser.value != pendingUser.original) {
+                    mUserList.set(i, pendingUser.value);
+                }
+            }
+            mUserList.addAll(added);
+            mUserList.endBatch();
+
+            //This updates the same OV in both the maps, and will trigger notifications for any listeners
+            for (Mutable<AppUser> appUserOv : order) {
+                final PendingUser pendingUser = pending.get(appUserOv);
+                if (pendingUser.value != null && pendingUser.value != appUserOv.get()) {
+                    appUserOv.set(pendingUser.value);
                 }
             }
+            Logger.d("applyChanges: applied " + changes.size() + " changes, have " + mUserList.size() + " users");
         }
     }
 
-    @UiThread
-    public void removeUser(AppUser appUser) {
-        ObservableValue<AppUser> toBeRemoved;
-        Logger.d("remove appUser="+appUser);
-        synchronized (mRegIdToUserMap) {
-            toBeRemoved = mRegIdToUserMap.get(appUser.getRegId());
-            if (toBeRemoved == null) {
-                toBeRemoved = mUidToUserMap.get(appUser.getUid());
-            }
-            mRegIdToUserMap.remove(appUser.getRegId());
-            mUidToUserMap.remove(appUser.getUid());
-            if (toBeRemoved != null) {
-                if (!mUserList.remove(toBeRemoved.get())) {
-                    Logger.e("remove: Failed to find remove user in list old=" + toBeRemoved.get());
-                }
+    /**
+     * Update the search index with the user before the list observers are notified, so searches they run find it
+     */
+    private void updateSearchIndex(PendingUser pendingUser) {
+        if (!mSearchIndexBuilt) {
+            return;
+        }
+        //the same condition as the user list update below
+        final boolean inListAfter = pendingUser.value != null && (pendingUser.wasInList || pendingUser.listed);
+        if (pendingUser.wasInList && (!inListAfter || !TextUtils.equals(pendingUser.original.getUid(), pendingUser.value.getUid()))) {
+            mSearchIndex.remove(pendingUser.original.getUid());
+        }
+        if (inListAfter) {
+            mSearchIndex.put(pendingUser.value);
+        }
+    }
+
+    /**
+     * @return the search index, built from the user list if this is the first search
+     */
+    private UserSearchIndex getSearchIndex() {
+        if (!mSearchIndexBuilt) {
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < mUserList.size(); ++i) {
+                mSearchIndex.put(mUserList.get(i));
             }
+            mSearchIndexBuilt = true;
+            Logger.d("getSearchIndex: indexed " + mSearchIndex.size() + " users in " + (System.currentTimeMillis() - start) + "ms");
         }
+        return mSearchIndex;
+    }
+
+    private static PendingUser getPending(IdentityHashMap<Mutable<AppUser>, PendingUser> pending,
+                                          ArrayList<Mutable<AppUser>> order,
+                                          Mutable<AppUser> appUserOv, boolean created) {
+        PendingUser pendingUser = pending.get(appUserOv);
+        if (pendingUser == null) {
+            pendingUser = new PendingUser(created ? null : appUserOv.get());
+            pending.put(appUserOv, pendingUser);
+            order.add(appUserOv);
+        }
+        return pendingUser;
     }
 
     /**
@@ -263,7 +514,8 @@ public class UserManager implements AppUserListener {
     }
 
     /**
-     * The list of users sorted alphabetically.
+     * The list of users sorted alphabetically, the same users as {@link #getUsers()}.
+     * Both lists only hold users with a regId and a uid, changes missing either are ignored.
      * @return sorted list of users
      */
     public StateAwareComputedList<AppUser> getSortedUsers() {
@@ -275,15 +527,49 @@ public class UserManager implements AppUserListener {
 
             @Override
             protected List<AppUser> compute() {
-                List<AppUser> sortedList = new ArrayList<>(mUserList.size());
-                sortedList.addAll(mUserList.get());
-                Collections.sort(sortedList, new Comparator<AppUser>() {
-                    @Override
-                    public int compare(AppUser user1, AppUser user2) {
-                        return user1.getName().compareToIgnoreCase(user2.getName());
-                    }
-                });
-                return sortedList;
+                //track the list so this is computed again when the users change
+                mUserList.size();
+                //the index keeps the users in name order between changes
+                return getSearchIndex().search(null, null);
+            }
+        };
+    }
+
+    /**
+     * Search the users by name, email and uid. Each word of the query matches the start of a word of the user,
+     * ignoring case and accents, so "jo sm" finds "John Smith" and "Zoë" is found by "zoe".
+     *
+     * @param query  the text to search for, all users are returned if it has no words
+     * @param filter an optional extra condition the users must match
+     * @return the matching users, sorted alphabetically
+     */
+    @UiThread
+    @NonNull
+    public List<AppUser> searchUsers(@Nullable String query, @Nullable AppUserFilter filter) {
+        return getSearchIndex().search(query, filter);
+    }
+
+    /**
+     * Search the users as the query changes, for example as it is typed into a contact picker.
+     * The results are computed again when the query or the users change.
+     *
+     * @param query  the text to search for, see {@link #searchUsers(String, AppUserFilter)}
+     * @param filter an optional extra condition the users must match
+     * @return the matching users, sorted alphabetically
+     */
+    public StateAwareComputedList<AppUser> searchUsers(@NonNull final ObservableValue<String> query,
+                                                       @Nullable final AppUserFilter filter) {
+        return new StateAwareComputedList<AppUser>() {
+            @Override
+            public boolean isPending() {
+                return mUserList.isPending();
+            }
+
+            @Override
+            protected List<AppUser> compute() {
+                //track the list so this is computed again when the users change
+                mUserList.size();
+                return getSearchIndex().search(query.get(), filter);
             }
         };
     }
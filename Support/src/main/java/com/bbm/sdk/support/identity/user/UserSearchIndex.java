@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bbm.sdk.support.search.SearchTerms;
+import com.bbm.sdk.support.search.SearchTerms.Postings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Search index over the name, email and uid of the app users, kept by {@link UserManager}.
+ * Every word of the query must be the start of a word of the user ("jo sm" finds "John Smith" and
+ * "joanna@smithco.com"), case and accents are ignored so "zoe" finds "Zoë".
+ * Results are in name order, the same order as {@link UserManager#getSortedUsers()}.
+ * <p>
+ * Words are split and normalized by {@link SearchTerms}, like the message search.
+ * The words are kept sorted so the words starting with a query word are a range of the index. The users matching the
+ * query word with the fewest users are then checked against the other query words.
+ * The users are sorted by name once, on the first query, after that each change moves just the users it changed,
+ * so typing a query does not sort the directory on every keystroke.
+ * All methods are thread safe.
+ */
+public class UserSearchIndex {
+
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+    private final HashMap<String, Integer> mUidToDoc = new HashMap<>();
+
+    //per user data, indexed by user number. Numbers of removed users are reused.
+    private AppUser[] mDocUser = new AppUser[16];
+    private String[][] mDocTerms = new String[16][];
+    private String[] mDocSortKey = new String[16];
+    private int mDocCount;
+    private int[] mFreeDocs = new int[4];
+    private int mFreeCount;
+
+    //user numbers in name order, null until the first query. mRank is the position of each user in it.
+    private int[] mOrder;
+    private int mOrderSize;
+    private int[] mRank;
+    private boolean mRankValid;
+
+    private final Comparator<Integer> mNameOrder = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return compareDocs(a, b);
+        }
+    };
+
+    //scratch space for queries, the generation avoids clearing it between queries
+    private int[] mQueryGeneration = new int[0];
+    private int mGeneration;
+
+    /**
+     * Add or replace a user, users are identified by their uid.
+     * A user without a uid is not added, it could never be replaced or removed. {@link UserManager} doesn't list users
+     * without a uid so none are missing from its sorted users.
+     */
+    public synchronized void put(@NonNull AppUser appUser) {
+        final String uid = appUser.getUid();
+        if (uid == null) {
+            return;
+        }
+        final Integer existing = mUidToDoc.get(uid);
+        final String[] terms = termsOf(appUser);
+        final String sortKey = SearchTerms.normalize(appUser.getName());
+        if (existing != null) {
+            final int doc = existing;
+            mDocUser[doc] = appUser;
+            if (!Arrays.equals(terms, mDocTerms[doc])) {
+                removeTerms(doc);
+                addTerms(doc, terms);
+            }
+            if (!sortKey.equals(mDocSortKey[doc])) {
+                removeFromOrder(doc);
+                mDocSortKey[doc] = sortKey;
+                insertInOrder(doc);
+            }
+        } else {
+            final int doc = allocateDoc();
+            mUidToDoc.put(uid, doc);
+            mDocUser[doc] = appUser;
+            mDocSortKey[doc] = sortKey;
+            addTerms(doc, terms);
+            insertInOrder(doc);
+        }
+    }
+
+    /**
+     * Remove the user with the uid
+     */
+    public synchronized void remove(@Nullable String uid) {
+        final Integer doc = uid != null ? mUidToDoc.remove(uid) : null;
+        if (doc == null) {
+            return;
+        }
+        removeTerms(doc);
+        removeFromOrder(doc);
+        mDocUser[doc] = null;
+        mDocTerms[doc] = null;
+        mDocSortKey[doc] = null;
+        if (mFreeCount == mFreeDocs.length) {
+            mFreeDocs = Arrays.copyOf(mFreeDocs, mFreeCount * 2);
+        }
+        mFreeDocs[mFreeCount++] = doc;
+    }
+
+    /**
+     * Remove all users
+     */
+    public synchronized void clear() {
+        mTerms.clear();
+        mUidToDoc.clear();
+        Arrays.fill(mDocUser, null);
+        Arrays.fill(mDocTerms, null);
+        Arrays.fill(mDocSortKey, null);
+        mDocCount = 0;
+        mFreeCount = 0;
+        mOrder = null;
+        mOrderSize = 0;
+    }
+
+    /**
+     * @return the number of users in the index
+     */
+    public synchronized int size() {
+        return mUidToDoc.size();
+    }
+
+    /**
+     * Find the users with a word starting with each word of the query.
+     *
+     * @param query  the text typed by the user, all users are returned if it has no words
+     * @param filter an optional extra condition the users must match
+     * @return the matching users in name order
+     */
+    @NonNull
+    public synchronized List<AppUser> search(@Nullable String query, @Nullable AppUserFilter filter) {
+        final List<String> tokens = SearchTerms.tokenize(query);
+        updateOrder();
+        final ArrayList<AppUser> results = new ArrayList<>();
+
+        if (tokens.isEmpty()) {
+            for (int i = 0; i < mOrderSize; ++i) {
+                addIfMatches(results, mDocUser[mOrder[i]], filter);
+            }
+            return results;
+        }
+
+        //the query word with the fewest users gives the candidates, the other words are checked on each candidate
+        final int tokenCount = tokens.size();
+        List<Postings> candidates = null;
+        int candidateCount = Integer.MAX_VALUE;
+        int candidateToken = 0;
+        for (int t = 0; t < tokenCount; ++t) {
+            final ArrayList<Postings> termPostings = new ArrayList<>();
+            int total = 0;
+            for (Postings postings : SearchTerms.prefixRange(mTerms, tokens.get(t)).values()) {
+                termPostings.add(postings);
+                total += postings.size();
+            }
+            if (total == 0) {
+                //no user has a word starting with this one
+                return results;
+            }
+            if (total < candidateCount) {
+                candidates = termPostings;
+                candidateCount = total;
+                candidateToken = t;
+            }
+        }
+
+        if (mQueryGeneration.length < mDocCount) {
+            mQueryGeneration = new int[mDocUser.length];
+        }
+        final int generation = ++mGeneration;
+        int matched = 0;
+        for (Postings postings : candidates) {
+            for (int i = 0; i < postings.size(); ++i) {
+                final int doc = postings.get(i);
+                //a user with several words starting with the query word is only checked once
+                if (mQueryGeneration[doc] != generation && mQueryGeneration[doc] != -generation) {
+                    if (matchesOtherTokens(mDocTerms[doc], tokens, candidateToken)) {
+                        mQueryGeneration[doc] = generation;
+                        ++matched;
+                    } else {
+                        //checked and rejected, don't check again
+                        mQueryGeneration[doc] = -generation;
+                    }
+                }
+            }
+        }
+
+        results.ensureCapacity(matched);
+        if (matched > mOrderSize / 16) {
+            //many matches, walk the name order rather than sorting them
+            for (int i = 0; i < mOrderSize; ++i) {
+                final int doc = mOrder[i];
+                if (mQueryGeneration[doc] == generation) {
+                    addIfMatches(results, mDocUser[doc], filter);
+                }
+            }
+        } else {
+            //few matches, sort them by their position in the name order
+            updateRank();
+            final long[] ranked = new long[matched];
+            int count = 0;
+            for (Postings postings : candidates) {
+                for (int i = 0; i < postings.size(); ++i) {
+                    final int doc = postings.get(i);
+                    if (mQueryGeneration[doc] == generation) {
+                        mQueryGeneration[doc] = 0;
+                        ranked[count++] = (long) mRank[doc] << 32 | doc;
+                    }
+                }
+            }
+            Arrays.sort(ranked);
+            for (long rankedDoc : ranked) {
+                addIfMatches(results, mDocUser[(int) rankedDoc], filter);
+            }
+        }
+        return results;
+    }
+
+    private static void addIfMatches(List<AppUser> results, AppUser appUser, AppUserFilter filter) {
+        if (filter == null || filter.matches(appUser)) {
+            results.add(appUser);
+        }
+    }
+
+    private static boolean matchesOtherTokens(String[] terms, List<String> tokens, int skip) {
+        for (int t = 0; t < tokens.size(); ++t) {
+            if (t == skip) {
+                continue;
+            }
+            final String token = tokens.get(t);
+            boolean found = false;
+            for (String term : terms) {
+                if (term.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the distinct words of the name, email and uid, sorted
+     */
+    private static String[] termsOf(AppUser appUser) {
+        final ArrayList<String> terms = new ArrayList<>();
+        terms.addAll(SearchTerms.tokenize(appUser.getName()));
+        terms.addAll(SearchTerms.tokenize(appUser.getEmail()));
+        terms.addAll(SearchTerms.tokenize(appUser.getUid()));
+        Collections.sort(terms);
+        int distinct = 0;
+        for (int i = 0; i < terms.size(); ++i) {
+            if (distinct == 0 || !terms.get(i).equals(terms.get(distinct - 1))) {
+                terms.set(distinct++, terms.get(i));
+            }
+        }
+        return terms.subList(0, distinct).toArray(new String[distinct]);
+    }
+
+    private void addTerms(int doc, String[] terms) {
+        mDocTerms[doc] = terms;
+        for (String term : terms) {
+            Postings postings = mTerms.get(term);
+            if (postings == null) {
+                postings = new Postings();
+                mTerms.put(term, postings);
+            }
+            postings.add(doc);
+        }
+    }
+
+    private void removeTerms(int doc) {
+        for (String term : mDocTerms[doc]) {
+            final Postings postings = mTerms.get(term);
+            if (postings != null) {
+                postings.remove(doc);
+                if (postings.size() == 0) {
+                    mTerms.remove(term);
+                }
+            }
+        }
+    }
+
+    private int allocateDoc() {
+        if (mFreeCount > 0) {
+            return mFreeDocs[--mFreeCount];
+        }
+        if (mDocCount == mDocUser.length) {
+            final int capacity = mDocCount * 2;
+            mDocUser = Arrays.copyOf(mDocUser, capacity);
+            mDocTerms = Arrays.copyOf(mDocTerms, capacity);
+            mDocSortKey = Arrays.copyOf(mDocSortKey, capacity);
+        }
+        return mDocCount++;
+    }
+
+    private int compareDocs(int a, int b) {
+        final int result = mDocSortKey[a].compareTo(mDocSortKey[b]);
+        return result != 0 ? result : mDocUser[a].getUid().compareTo(mDocUser[b].getUid());
+    }
+
+    /**
+     * @return the position of the user in the name order, or where it would be inserted as -(position + 1)
+     */
+    private int findInOrder(int doc) {
+        int low = 0;
+        int high = mOrderSize - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int result = compareDocs(mOrder[mid], doc);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertInOrder(int doc) {
+        if (mOrder == null) {
+            //sorted on the first query
+            return;
+        }
+        final int position = -(findInOrder(doc) + 1);
+        if (mOrderSize == mOrder.length) {
+            mOrder = Arrays.copyOf(mOrder, Math.max(16, mOrderSize * 2));
+        }
+        System.arraycopy(mOrder, position, mOrder, position + 1, mOrderSize - position);
+        mOrder[position] = doc;
+        ++mOrderSize;
+        mRankValid = false;
+    }
+
+    private void removeFromOrder(int doc) {
+        if (mOrder == null) {
+            return;
+        }
+        final int position = findInOrder(doc);
+        if (position >= 0) {
+            System.arraycopy(mOrder, position + 1, mOrder, position, mOrderSize - position - 1);
+            --mOrderSize;
+            mRankValid = false;
+        }
+    }
+
+    private void updateOrder() {
+        if (mOrder != null) {
+            return;
+        }
+        final Integer[] order = new Integer[mUidToDoc.size()];
+        int count = 0;
+        for (int doc = 0; doc < mDocCount; ++doc) {
+            if (mDocUser[doc] != null) {
+                order[count++] = doc;
+            }
+        }
+        Arrays.sort(order, mNameOrder);
+
+        mOrder = new int[Math.max(16, count)];
+        for (int i = 0; i < count; ++i) {
+            mOrder[i] = order[i];
+        }
+        mOrderSize = count;
+        mRankValid = false;
+    }
+
+    private void updateRank() {
+        if (mRankValid) {
+            return;
+        }
+        if (mRank == null || mRank.length < mDocUser.length) {
+            mRank = new int[mDocUser.length];
+        }
+        for (int i = 0; i < mOrderSize; ++i) {
+            mRank[mOrder[i]] = i;
+        }
+        mRankValid = true;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bbm.sdk.bbmds.internal.lists.IncrementalListObserver;
+import com.bbm.sdk.support.util.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Index of the chats in the chat list by mailbox id, kept up to date from the chat list change notifications.
+ * <p>
+ * Add the index as an {@link IncrementalListObserver} of the chat list, only the chats in the range of each
+ * notification are read. A chat moved within the list is reported as removed then inserted, subclasses that act on
+ * removed chats should check {@link #containsChat(String)} once the notifications are done.
+ * <p>
+ * Not thread safe, all calls must be made on the thread the chat list notifies on, normally the main thread.
+ */
+public class ChatMailboxIndex implements IncrementalListObserver, ChatMailboxLookup {
+
+    /**
+     * Read access to the chats in the chat list.
+     */
+    public interface ChatSource {
+        int size();
+
+        String getChatId(int position);
+
+        /**
+         * @return the mailbox of the chat, or empty if the chat has no mailbox yet
+         */
+        String getMailboxId(int position);
+    }
+
+    private final ChatSource mSource;
+
+    private boolean mStarted;
+    //The chatId and mailboxId of each chat, in the same order as the chat list
+    private final ArrayList<String> mChatIds = new ArrayList<>();
+    private final ArrayList<String> mMailboxIds = new ArrayList<>();
+    //Number of positions each chat is at, a moved chat can briefly be at two positions or none
+    private final HashMap<String, Integer> mChatIdCounts = new HashMap<>();
+    private final HashMap<String, String> mChatIdByMailbox = new HashMap<>();
+
+    public ChatMailboxIndex(@NonNull ChatSource source) {
+        mSource = source;
+    }
+
+    /**
+     * Read the whole chat list. The list must not be pending.
+     */
+    public void start() {
+        clear();
+        mStarted = true;
+        insert(0, mSource.size());
+    }
+
+    /**
+     * Forget all chats.
+     */
+    public void stop() {
+        mStarted = false;
+        clear();
+    }
+
+    @Override
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * @return the number of chats in the index
+     */
+    @Override
+    public int getChatCount() {
+        return mChatIds.size();
+    }
+
+    /**
+     * @return the chat with the mailbox, or null if no chat in the list has the mailbox or the index isn't started
+     */
+    @Override
+    @Nullable
+    public String getChatId(@NonNull String mailboxId) {
+        return mChatIdByMailbox.get(mailboxId);
+    }
+
+    /**
+     * @return true if the chat is in the list
+     */
+    @Override
+    public boolean containsChat(@NonNull String chatId) {
+        return mChatIdCounts.containsKey(chatId);
+    }
+
+    /**
+     * Called when a chat is added to the index, or its mailbox is changed.
+     */
+    protected void onChatPresent(@NonNull String chatId, String mailboxId) {
+    }
+
+    /**
+     * Called when a chat is removed from a position in the index, it might still be at another position.
+     */
+    protected void onChatRemoved(@NonNull String chatId, String mailboxId) {
+    }
+
+    /**
+     * Called at the end of each notification that removed or changed chats.
+     */
+    protected void onChatsChanged() {
+    }
+
+    @Override
+    public void onItemsInserted(int position, int count) {
+        if (!mStarted) {
+            return;
+        }
+        if (position < 0 || position > mChatIds.size()) {
+            resync("insert at " + position);
+            return;
+        }
+        insert(position, count);
+        checkSize();
+    }
+
+    @Override
+    public void onItemsRemoved(int position, int count) {
+        if (!mStarted) {
+            return;
+        }
+        if (position < 0 || count < 0 || position + count > mChatIds.size()) {
+            resync("remove " + count + " at " + position);
+            return;
+        }
+        for (int i = position; i < position + count; ++i) {
+            removed(mChatIds.get(i), mMailboxIds.get(i));
+        }
+        mChatIds.subList(position, position + count).clear();
+        mMailboxIds.subList(position, position + count).clear();
+        checkSize();
+        onChatsChanged();
+    }
+
+    @Override
+    public void onItemsChanged(int position, int count) {
+        if (!mStarted) {
+            return;
+        }
+        if (position < 0 || count < 0 || position + count > mChatIds.size()) {
+            resync("change " + count + " at " + position);
+            return;
+        }
+        for (int i = position; i < position + count; ++i) {
+            final String chatId = mSource.getChatId(i);
+            final String mailboxId = mSource.getMailboxId(i);
+            final String oldChatId = mChatIds.get(i);
+            final String oldMailboxId = mMailboxIds.get(i);
+            if (!oldChatId.equals(chatId)) {
+                removed(oldChatId, oldMailboxId);
+                added(chatId, mailboxId);
+                mChatIds.set(i, chatId);
+            } else {
+                if (!equals(oldMailboxId, mailboxId)) {
+                    //The mailbox might not have been known when the chat was added
+                    unmapMailbox(oldMailboxId, chatId);
+                    mapMailbox(mailboxId, chatId);
+                }
+                onChatPresent(chatId, mailboxId);
+            }
+            mMailboxIds.set(i, mailboxId);
+        }
+        onChatsChanged();
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        if (!mStarted) {
+            return;
+        }
+        for (int i = 0; i < mChatIds.size(); ++i) {
+            removed(mChatIds.get(i), mMailboxIds.get(i));
+        }
+        mChatIds.clear();
+        mMailboxIds.clear();
+        insert(0, mSource.size());
+        onChatsChanged();
+    }
+
+    private void insert(int position, int count) {
+        final ArrayList<String> chatIds = new ArrayList<>(count);
+        final ArrayList<String> mailboxIds = new ArrayList<>(count);
+        for (int i = position; i < position + count; ++i) {
+            final String chatId = mSource.getChatId(i);
+            final String mailboxId = mSource.getMailboxId(i);
+            chatIds.add(chatId);
+            mailboxIds.add(mailboxId);
+            added(chatId, mailboxId);
+        }
+        //Shift the chats after the insert once
+        mChatIds.addAll(position, chatIds);
+        mMailboxIds.addAll(position, mailboxIds);
+    }
+
+    private void added(String chatId, String mailboxId) {
+        final Integer chatIdCount = mChatIdCounts.get(chatId);
+        mChatIdCounts.put(chatId, chatIdCount == null ? 1 : chatIdCount + 1);
+        mapMailbox(mailboxId, chatId);
+        onChatPresent(chatId, mailboxId);
+    }
+
+    private void removed(String chatId, String mailboxId) {
+        final Integer chatIdCount = mChatIdCounts.get(chatId);
+        if (chatIdCount == null || chatIdCount <= 1) {
+            mChatIdCounts.remove(chatId);
+            unmapMailbox(mailboxId, chatId);
+        } else {
+            //Still at another position while it is moved
+            mChatIdCounts.put(chatId, chatIdCount - 1);
+        }
+        onChatRemoved(chatId, mailboxId);
+    }
+
+    private void mapMailbox(String mailboxId, String chatId) {
+        if (!isEmpty(mailboxId)) {
+            mChatIdByMailbox.put(mailboxId, chatId);
+        }
+    }
+
+    private void unmapMailbox(String mailboxId, String chatId) {
+        if (!isEmpty(mailboxId) && chatId.equals(mChatIdByMailbox.get(mailboxId))) {
+            mChatIdByMailbox.remove(mailboxId);
+        }
+    }
+
+    /**
+     * The notifications should keep the index the same size as the list, if not start over.
+     */
+    private void checkSize() {
+        if (mChatIds.size() != mSource.size()) {
+            resync("tracking " + mChatIds.size() + " chats, list has " + mSource.size());
+        }
+    }
+
+    private void resync(String reason) {
+        Logger.w(getClass().getSimpleName() + " - out of sync with the chat list (" + reason + "), reading all chats");
+        onDataSetChanged();
+    }
+
+    /**
+     * Forget all chats, subclasses clear their own state as well.
+     */
+    protected void clear() {
+        mChatIds.clear();
+        mMailboxIds.clear();
+        mChatIdCounts.clear();
+        mChatIdByMailbox.clear();
+    }
+
+    static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
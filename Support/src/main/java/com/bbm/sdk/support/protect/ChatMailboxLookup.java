@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Read access to the chats of the chat list by mailbox id, see {@link ProtectedManager#getChatMailboxIndex()}.
+ */
+public interface ChatMailboxLookup {
+
+    /**
+     * @return true once the whole chat list has been read, until the index is stopped
+     */
+    boolean isStarted();
+
+    /**
+     * @return the number of chats in the index
+     */
+    int getChatCount();
+
+    /**
+     * @return the chat with the mailbox, or null if no chat in the list has the mailbox or the index isn't started
+     */
+    @Nullable
+    String getChatId(@NonNull String mailboxId);
+
+    /**
+     * @return true if the chat is in the list
+     */
+    boolean containsChat(@NonNull String chatId);
+}
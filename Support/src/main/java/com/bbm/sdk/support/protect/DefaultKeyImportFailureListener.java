@@ -12,6 +12,7 @@
 package com.bbm.sdk.support.protect;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 
 import com.bbm.sdk.BBMEnterprise;
 import com.bbm.sdk.bbmds.Chat;
@@ -22,18 +23,56 @@ import com.bbm.sdk.bbmds.outbound.ChatLeave;
 import com.bbm.sdk.support.util.Logger;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * A default implementation of the KeyImportFailureListener.
  * This listener will force a new export of ProfileKeys when a ProfileKeysImportFailure occurs.
- * No action will be taken on UserKeysImportFailures or ChatKeysImportFailures.
+ * No action will be taken on UserKeysImportFailures.
+ * The chats of mailboxes in a ChatKeysImportFailure are left, the chats are found using the
+ * {@link ProtectedManager#getChatMailboxIndex()}.
  */
 public class DefaultKeyImportFailureListener implements KeyImportFailureListener {
 
+    /**
+     * The most chats left with a single ChatLeave, a failure for many mailboxes is split into several requests.
+     */
+    static final int MAX_CHATS_PER_LEAVE = 100;
+
+    /**
+     * Sends the request to leave chats.
+     */
+    interface ChatLeaveSender {
+        void leave(@NonNull List<String> chatIds);
+    }
+
+    private static final ChatLeaveSender PROTOCOL_SENDER = new ChatLeaveSender() {
+        @Override
+        public void leave(@NonNull List<String> chatIds) {
+            BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatLeave(chatIds));
+        }
+    };
+
     private KeyStorageProvider mKeyStorageProvider;
+    private final ChatMailboxLookup mChatMailboxIndex;
+    private final ChatLeaveSender mChatLeaveSender;
 
     public DefaultKeyImportFailureListener(@NonNull KeyStorageProvider keyStorageProvider) {
+        this(keyStorageProvider, null, PROTOCOL_SENDER);
+    }
+
+    /**
+     * @param chatMailboxIndex the index to find chats in, or null to use the index from the ProtectedManager
+     */
+    @VisibleForTesting
+    DefaultKeyImportFailureListener(@NonNull KeyStorageProvider keyStorageProvider,
+                                    ChatMailboxLookup chatMailboxIndex,
+                                    @NonNull ChatLeaveSender chatLeaveSender) {
         mKeyStorageProvider = keyStorageProvider;
+        mChatMailboxIndex = chatMailboxIndex;
+        mChatLeaveSender = chatLeaveSender;
     }
 
     @Override
@@ -67,18 +106,61 @@ public class DefaultKeyImportFailureListener implements KeyImportFailureListener
         Logger.e("Failure to import keys for mailboxes " + chatKeysImportFailure.mailboxIds.toString());
         //If a chat key failed to import then we should leave the chat.
         //We can be re-invited to the chat to restore the content.
-        ArrayList<String> chatsToLeave = new ArrayList<>();
-        for (String mailboxId : chatKeysImportFailure.mailboxIds) {
-            for (Chat chat : BBMEnterprise.getInstance().getBbmdsProtocol().getChatList().get()) {
-                if (chat.mailboxId.equals(mailboxId)) {
-                    Logger.d("Failed to import chatId " + chat.chatId + " mailboxId " + mailboxId);
-                    chatsToLeave.add(chat.chatId);
-                }
+        leaveChats(chatKeysImportFailure.mailboxIds);
+    }
+
+    /**
+     * Leave the chats with the mailboxes, at most {@link #MAX_CHATS_PER_LEAVE} chats per ChatLeave.
+     * Must be called on the main thread where the index is updated.
+     */
+    @VisibleForTesting
+    void leaveChats(@NonNull Collection<String> mailboxIds) {
+        ChatMailboxLookup index = mChatMailboxIndex != null ? mChatMailboxIndex : ProtectedManager.getInstance().getChatMailboxIndex();
+        if (!index.isStarted()) {
+            //The chat list isn't in the index yet, index the list once instead of reading the list for each mailbox
+            final ChatMailboxIndex listIndex = new ChatMailboxIndex(
+                    new ListChatSource(BBMEnterprise.getInstance().getBbmdsProtocol().getChatList().get()));
+            listIndex.start();
+            index = listIndex;
+        }
+
+        //Keep the order of the failure, a mailbox listed twice only leaves its chat once
+        final LinkedHashSet<String> chatsToLeave = new LinkedHashSet<>();
+        for (String mailboxId : mailboxIds) {
+            final String chatId = index.getChatId(mailboxId);
+            if (chatId != null) {
+                Logger.d("Failed to import chatId " + chatId + " mailboxId " + mailboxId);
+                chatsToLeave.add(chatId);
             }
         }
 
-        if (chatsToLeave.size() > 0) {
-            BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatLeave(chatsToLeave));
+        final ArrayList<String> chatIds = new ArrayList<>(chatsToLeave);
+        for (int start = 0; start < chatIds.size(); start += MAX_CHATS_PER_LEAVE) {
+            final int end = Math.min(chatIds.size(), start + MAX_CHATS_PER_LEAVE);
+            mChatLeaveSender.leave(new ArrayList<>(chatIds.subList(start, end)));
+        }
+    }
+
+    private static final class ListChatSource implements ChatMailboxIndex.ChatSource {
+        private final List<Chat> mChats;
+
+        ListChatSource(List<Chat> chats) {
+            mChats = chats;
+        }
+
+        @Override
+        public int size() {
+            return mChats.size();
+        }
+
+        @Override
+        public String getChatId(int position) {
+            return mChats.get(position).chatId;
+        }
+
+        @Override
+        public String getMailboxId(int position) {
+            return mChats.get(position).mailboxId;
         }
     }
 }
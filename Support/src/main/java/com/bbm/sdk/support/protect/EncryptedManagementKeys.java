@@ -13,6 +13,7 @@ package com.bbm.sdk.support.protect;
 
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.lang.annotation.Retention;
 
@@ -33,6 +34,7 @@ public class EncryptedManagementKeys {
     }
 
     private PrivateKeyPair managementKeyPair;
+    private KeyDerivationParams keyDerivation;
     private transient @State int state = PENDING;
 
     public EncryptedManagementKeys() {
@@ -46,6 +48,17 @@ public class EncryptedManagementKeys {
         this.managementKeyPair = managementKeyPair;
     }
 
+    /**
+     * Create EncryptedManagementKeys
+     * @param managementKeyPair the management key pair (encryption/signing)
+     * @param keyDerivation how the key protecting the management keys was derived from the passcode,
+     *                      null if the keys were protected with the original single SHA-512 pass
+     */
+    public EncryptedManagementKeys(@NonNull PrivateKeyPair managementKeyPair, @Nullable KeyDerivationParams keyDerivation) {
+        this.managementKeyPair = managementKeyPair;
+        this.keyDerivation = keyDerivation;
+    }
+
     public EncryptedPayload getEncrypt() {
         return managementKeyPair.getEncrypt();
     }
@@ -58,6 +71,14 @@ public class EncryptedManagementKeys {
         return managementKeyPair;
     }
 
+    /**
+     * @return the key derivation parameters, or null if the keys were protected with the original single SHA-512 pass
+     */
+    @Nullable
+    public KeyDerivationParams getKeyDerivation() {
+        return keyDerivation;
+    }
+
     public void setState(@State int state) {
         this.state = state;
     }
@@ -20,9 +20,13 @@ import android.security.KeyPairGeneratorSpec;
 import android.security.keystore.KeyProperties;
 import android.security.keystore.KeyProtection;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.util.Base64;
 
+import com.bbm.sdk.support.util.Clock;
 import com.bbm.sdk.support.util.Logger;
+import com.google.common.io.BaseEncoding;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -73,6 +77,7 @@ public class EncryptionHelper {
             114, 101, 45, 75, 77, 83, 32, 68, 82, 75};
     private static final String MANAGEMENT_ENCRYPTION_KEY_ID = "MANAGEMENT_ENCRYPTION_KEY";
     private static final String MANAGEMENT_HMAC_KEY_ID = "MANAGEMENT_HMAC_KEY";
+    private static final String KEY_DERIVATION_COST_ID = "KEY_DERIVATION_COST_";
 
     private static final String RSA_KEY_PAIR_ID = "RSA_KEY_PAIR_ID";
     private static final String RSA_KEY_ALGORITHM = "RSA";
@@ -492,9 +497,67 @@ public class EncryptionHelper {
      */
     public static DerivedRootKey createDerivedKey(@NonNull String password, @NonNull String regId, @NonNull String userDomain)
             throws UnsupportedEncodingException, NoSuchAlgorithmException {
+        byte[] data = diversify(password.getBytes("UTF-8"), regId, userDomain);
+
+        MessageDigest sha512Digest = MessageDigest.getInstance("SHA-512");
+
+        //Create a SHA512 digest using the combined data
+        return toDerivedRootKey(sha512Digest.digest(data));
+    }
+
+    /**
+     * Create a derived root key from the provided password and diversifier with the key derivation function in params.
+     * @param password the user supplied password
+     * @param regId the users registration id
+     * @param params the key derivation function and cost stored with the keys,
+     *               or null for keys created with the original single SHA-512 pass
+     * @return a DerivedRootKey containing an encryption key and an hmac key
+     * @throws UnsupportedEncodingException if the UTF-8 encoding cannot be found
+     * @throws GeneralSecurityException if the key derivation function is unknown or the parameters are invalid
+     */
+    public static DerivedRootKey createDerivedKey(@NonNull String password, @NonNull String regId, @NonNull String userDomain,
+                                                  @Nullable KeyDerivationParams params)
+            throws UnsupportedEncodingException, GeneralSecurityException {
+        if (params == null) {
+            return createDerivedKey(password, regId, userDomain);
+        }
+        KeyDerivationFunction function = KeyDerivation.get(params.getAlgorithm());
+        //Salt with the stored random salt in place of the secret, the password is passed to the function on its own
+        byte[] salt = diversify(KeyDerivation.fromHex(params.getSalt()), regId, userDomain);
+        return toDerivedRootKey(function.derive(password.getBytes("UTF-8"), salt, params, 64));
+    }
+
+    /**
+     * Return the cost at which the key derivation function takes about targetMs on this device.
+     * The first call for a function and target calibrates the function, which takes a few times targetMs,
+     * the result is saved in the shared preferences. Calls wait for a calibration in progress on another thread,
+     * so this must not be called on the main thread.
+     * @param context application context
+     * @param function the key derivation function
+     * @param targetMs how long a derivation should take
+     * @return the cost to create new key derivation parameters with
+     * @throws GeneralSecurityException if the function fails during calibration
+     */
+    @WorkerThread
+    public static synchronized int getKeyDerivationCost(@NonNull Context context, @NonNull KeyDerivationFunction function,
+                                                        long targetMs) throws GeneralSecurityException {
+        SharedPreferences sharedPreferences = context.getSharedPreferences("com.bbm.sdk.support.protect", Context.MODE_PRIVATE);
+        String costKey = KEY_DERIVATION_COST_ID + function.getAlgorithm() + "_" + targetMs;
+        int cost = sharedPreferences.getInt(costKey, 0);
+        if (cost < function.getMinimumCost()) {
+            cost = KeyDerivation.calibrate(function, targetMs, Clock.SYSTEM);
+            sharedPreferences.edit().putInt(costKey, cost).apply();
+        }
+        return cost;
+    }
+
+    /**
+     * Append together the regId, domain, secret, separator and diversifier
+     */
+    private static byte[] diversify(@NonNull byte[] secretBytes, @NonNull String regId, @NonNull String userDomain)
+            throws UnsupportedEncodingException {
         byte[] prefixBytes = regId.getBytes("UTF-8");
         byte[] domainBytes = userDomain.getBytes("UTF-8");
-        byte[] secretBytes = password.getBytes("UTF-8");
         byte[] separator = {0, 0, 0, 1};
         int length = prefixBytes.length + domainBytes.length + secretBytes.length + DERIVED_KEY_DIVERSIFIER.length + 4;
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream(length);
@@ -505,14 +568,13 @@ public class EncryptionHelper {
         byteStream.write(secretBytes, 0, secretBytes.length);
         byteStream.write(separator, 0, separator.length);
         byteStream.write(DERIVED_KEY_DIVERSIFIER, 0, DERIVED_KEY_DIVERSIFIER.length);
-        byte[] data = byteStream.toByteArray();
-
-        MessageDigest sha512Digest = MessageDigest.getInstance("SHA-512");
-
-        //Create a SHA512 digest using the combined data
-        byte[] keyData = sha512Digest.digest(data);
+        return byteStream.toByteArray();
+    }
 
-        //Use the first 32 bytes as the encryption key and the next 32 bytes as the HMAC key
+    /**
+     * Use the first 32 bytes as the encryption key and the next 32 bytes as the HMAC key
+     */
+    private static DerivedRootKey toDerivedRootKey(@NonNull byte[] keyData) {
         DerivedRootKey drk = new DerivedRootKey();
         byte[] encryptionKeyBytes = new byte[32];
         byte[] hmacKeyBytes = new byte[32];
@@ -532,7 +594,7 @@ public class EncryptionHelper {
      */
     private static String toBase64(@NonNull byte[] bytes) {
         if (bytes.length > 0) {
-            return Base64.encodeToString(bytes, Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+            return BaseEncoding.base64Url().omitPadding().encode(bytes);
         }
         return "";
     }
@@ -544,7 +606,8 @@ public class EncryptionHelper {
      */
     private static byte[] fromBase64(@NonNull String s) {
         if (s.length() > 0) {
-            return Base64.decode(s, Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+            //Accepts the padded strings stored by earlier versions
+            return BaseEncoding.base64Url().decode(s);
         }
         return new byte[]{};
     }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.Logger;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+
+/**
+ * The registered {@link KeyDerivationFunction}s, and helpers to pick their cost and create their parameters.
+ */
+public final class KeyDerivation {
+
+    public static final String PBKDF2_HMAC_SHA256 = "pbkdf2-sha256";
+    public static final String SCRYPT = "scrypt";
+
+    /**
+     * How long deriving a key from the passcode should take on this device
+     */
+    public static final long DEFAULT_TARGET_MS = 300;
+
+    static final int SALT_LENGTH = 16;
+
+    private static final HashMap<String, KeyDerivationFunction> sFunctions = new HashMap<>();
+
+    static {
+        register(new Pbkdf2KeyDerivation());
+        register(new ScryptKeyDerivation());
+    }
+
+    private KeyDerivation() {
+    }
+
+    /**
+     * Add a function, replacing any function with the same algorithm name.
+     */
+    public static synchronized void register(@NonNull KeyDerivationFunction function) {
+        sFunctions.put(function.getAlgorithm(), function);
+    }
+
+    /**
+     * @return the function for the algorithm
+     * @throws NoSuchAlgorithmException if no function is registered for the algorithm
+     */
+    @NonNull
+    public static synchronized KeyDerivationFunction get(@NonNull String algorithm) throws NoSuchAlgorithmException {
+        final KeyDerivationFunction function = sFunctions.get(algorithm);
+        if (function == null) {
+            throw new NoSuchAlgorithmException("No key derivation function " + algorithm);
+        }
+        return function;
+    }
+
+    /**
+     * Find the cost at which the function takes about the target time on this device.
+     * Derivation at the cost found takes around targetMs, this should be run in the background and the result saved.
+     *
+     * @param clock used to time the derivations
+     * @return the cost, between the minimum and maximum cost of the function
+     */
+    public static int calibrate(@NonNull KeyDerivationFunction function, long targetMs, @NonNull Clock clock)
+            throws GeneralSecurityException {
+        final byte[] password = new byte[16];
+        final byte[] salt = new byte[SALT_LENGTH];
+        int cost = function.getMinimumCost();
+        //Warm up
+        time(function, password, salt, cost, clock);
+
+        //Increase the cost until the time is long enough to extrapolate from
+        long elapsed = time(function, password, salt, cost, clock);
+        while (elapsed < targetMs / 4 && cost < function.getMaximumCost()) {
+            final int nextCost = function.scaleCost(cost, 4);
+            if (nextCost <= cost) {
+                break;
+            }
+            cost = nextCost;
+            elapsed = time(function, password, salt, cost, clock);
+        }
+
+        if (elapsed > 0) {
+            cost = function.scaleCost(cost, (double) targetMs / elapsed);
+        }
+        Logger.i("KeyDerivation - calibrated " + function.getAlgorithm() + " to cost " + cost + " for " + targetMs + "ms");
+        return cost;
+    }
+
+    private static long time(KeyDerivationFunction function, byte[] password, byte[] salt, int cost, Clock clock)
+            throws GeneralSecurityException {
+        final long start = clock.currentTimeMillis();
+        function.derive(password, salt, function.createParams(cost, ""), 64);
+        return clock.currentTimeMillis() - start;
+    }
+
+    /**
+     * @return parameters for the function at the cost with a new random salt
+     */
+    @NonNull
+    public static KeyDerivationParams newParams(@NonNull KeyDerivationFunction function, int cost) {
+        final byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        return function.createParams(Math.max(cost, function.getMinimumCost()), toHex(salt));
+    }
+
+    /**
+     * Check if keys protected with the stored parameters should be protected again with the preferred function.
+     *
+     * @param params    the stored parameters, null for keys protected with the original single SHA-512 pass
+     * @param preferred the function new keys are protected with
+     * @return true if the stored keys use another function or less than its minimum cost
+     */
+    public static boolean needsMigration(@Nullable KeyDerivationParams params, @NonNull KeyDerivationFunction preferred) {
+        return params == null
+                || !preferred.getAlgorithm().equals(params.getAlgorithm())
+                || params.getCost() < preferred.getMinimumCost();
+    }
+
+    @NonNull
+    static String toHex(@NonNull byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    @NonNull
+    static byte[] fromHex(@Nullable String hex) {
+        if (hex == null) {
+            return new byte[0];
+        }
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * A password based key derivation function with a tunable cost.
+ * Register implementations with {@link KeyDerivation#register(KeyDerivationFunction)} so keys stored with their
+ * {@link KeyDerivationParams} can be derived again.
+ */
+public interface KeyDerivationFunction {
+
+    /**
+     * @return the name stored in {@link KeyDerivationParams#getAlgorithm()}
+     */
+    @NonNull
+    String getAlgorithm();
+
+    /**
+     * @return the lowest cost accepted, {@link #derive} rejects parameters with a lower cost
+     */
+    int getMinimumCost();
+
+    /**
+     * @return the highest cost accepted, calibration picks at most this and {@link #derive} rejects a higher cost
+     */
+    int getMaximumCost();
+
+    /**
+     * @return the supported cost nearest to cost * factor, between the minimum and maximum cost
+     */
+    int scaleCost(int cost, double factor);
+
+    /**
+     * @param cost the work factor
+     * @param salt random salt, hex encoded
+     * @return the parameters to store with keys derived at the cost
+     */
+    @NonNull
+    KeyDerivationParams createParams(int cost, @NonNull String salt);
+
+    /**
+     * @param password the secret
+     * @param salt     the salt, the stored random salt combined with any fixed diversifier
+     * @param params   the stored parameters, the salt in the parameters has already been added to salt
+     * @param length   the number of bytes to derive
+     * @return the derived key material
+     * @throws GeneralSecurityException if the parameters are not valid for the function, including a cost outside
+     *                                  the minimum and maximum cost
+     */
+    @NonNull
+    byte[] derive(@NonNull byte[] password, @NonNull byte[] salt, @NonNull KeyDerivationParams params, int length)
+            throws GeneralSecurityException;
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+
+/**
+ * The key derivation function and parameters used to create the derived key that protects the management keys.
+ * Stored with the {@link EncryptedManagementKeys} so the same key can be derived again from the passcode.
+ * Management keys stored without parameters were protected with the original single SHA-512 pass.
+ */
+public class KeyDerivationParams {
+
+    public static final String ALGORITHM = "algorithm";
+    public static final String COST = "cost";
+    public static final String BLOCK_SIZE = "blockSize";
+    public static final String PARALLELISM = "parallelism";
+    public static final String SALT = "salt";
+
+    private String algorithm;
+    private int cost;
+    private int blockSize;
+    private int parallelism;
+    private String salt;
+
+    /**
+     * @param algorithm   the name of the {@link KeyDerivationFunction}
+     * @param cost        the work factor, iterations for PBKDF2 or N for scrypt
+     * @param blockSize   the block size (r) for scrypt, 0 if not used
+     * @param parallelism the parallelism (p) for scrypt, 0 if not used
+     * @param salt        random salt, hex encoded
+     */
+    public KeyDerivationParams(@NonNull String algorithm, int cost, int blockSize, int parallelism, @NonNull String salt) {
+        this.algorithm = algorithm;
+        this.cost = cost;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+        this.salt = salt;
+    }
+
+    public KeyDerivationParams(@NonNull JSONObject paramsAsJSON) {
+        this.algorithm = paramsAsJSON.optString(ALGORITHM);
+        this.cost = paramsAsJSON.optInt(COST);
+        this.blockSize = paramsAsJSON.optInt(BLOCK_SIZE);
+        this.parallelism = paramsAsJSON.optInt(PARALLELISM);
+        this.salt = paramsAsJSON.optString(SALT);
+    }
+
+    public KeyDerivationParams() {
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public String getSalt() {
+        return salt;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (algorithm == null ? 0 : algorithm.hashCode());
+        result = prime * result + cost;
+        result = prime * result + blockSize;
+        result = prime * result + parallelism;
+        result = prime * result + (salt == null ? 0 : salt.hashCode());
+
+        return result;
+    }
+
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (this.getClass() != obj.getClass()) {
+            return false;
+        }
+        KeyDerivationParams other = (KeyDerivationParams) obj;
+        if (algorithm == null ? other.algorithm != null : !algorithm.equals(other.algorithm)) {
+            return false;
+        }
+        if (cost != other.cost || blockSize != other.blockSize || parallelism != other.parallelism) {
+            return false;
+        }
+        if (salt == null ? other.salt != null : !salt.equals(other.salt)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + " cost=" + cost + " r=" + blockSize + " p=" + parallelism;
+    }
+}
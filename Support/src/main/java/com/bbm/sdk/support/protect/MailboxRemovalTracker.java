@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.bbmds.internal.lists.IncrementalListObserver;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tracks the chats in the chat list and collects the mailboxes of chats that are removed, so their chat keys can be
+ * removed from the key storage.
+ * <p>
+ * Add the tracker as an {@link IncrementalListObserver} of the chat list, only the chats in the range of each
+ * notification are read. A chat moved within the list is reported as removed then inserted, so removed chats are
+ * only confirmed when the mailboxes to remove are read with {@link #getMailboxesToRemove()}.
+ * <p>
+ * Not thread safe, all calls must be made on the thread the chat list notifies on, normally the main thread.
+ */
+public class MailboxRemovalTracker extends ChatMailboxIndex {
+
+    private final Runnable mOnRemovalsPending;
+
+    //ChatId to mailboxId of chats removed since the mailboxes to remove were last read
+    private final HashMap<String, String> mRemovedChats = new HashMap<>();
+    //MailboxId to chatId of the mailboxes whose key needs removing
+    private final LinkedHashMap<String, String> mMailboxesToRemove = new LinkedHashMap<>();
+
+    /**
+     * @param source            the chat list
+     * @param onRemovalsPending called when a chat was removed, read the mailboxes to remove after the current list
+     *                          notifications are done (for example from a posted runnable)
+     */
+    public MailboxRemovalTracker(@NonNull ChatSource source, @NonNull Runnable onRemovalsPending) {
+        super(source);
+        mOnRemovalsPending = onRemovalsPending;
+    }
+
+    /**
+     * @return the number of mailboxes confirmed to need their key removed, not counting chats removed since the
+     * mailboxes to remove were last read
+     */
+    public int getPendingRemovalCount() {
+        return mMailboxesToRemove.size();
+    }
+
+    /**
+     * Confirm the chats removed since the last call and get every mailbox whose key still needs removing.
+     * Mailboxes stay in the result until {@link #onMailboxRemoved(String)} is called.
+     *
+     * @return mailboxId to the chatId it belonged to
+     */
+    @NonNull
+    public Map<String, String> getMailboxesToRemove() {
+        for (Map.Entry<String, String> removed : mRemovedChats.entrySet()) {
+            //Chats that were moved are back in the list
+            if (!containsChat(removed.getKey())) {
+                mMailboxesToRemove.put(removed.getValue(), removed.getKey());
+            }
+        }
+        mRemovedChats.clear();
+        return new LinkedHashMap<>(mMailboxesToRemove);
+    }
+
+    /**
+     * The key for the mailbox was removed from the key storage.
+     */
+    public void onMailboxRemoved(@NonNull String mailboxId) {
+        mMailboxesToRemove.remove(mailboxId);
+    }
+
+    @Override
+    protected void onChatPresent(@NonNull String chatId, String mailboxId) {
+        if (!isEmpty(mailboxId)) {
+            //The chat is back, or its mailbox wasn't known when it was added, keep its key
+            mMailboxesToRemove.remove(mailboxId);
+        }
+    }
+
+    @Override
+    protected void onChatRemoved(@NonNull String chatId, String mailboxId) {
+        if (!isEmpty(mailboxId)) {
+            mRemovedChats.put(chatId, mailboxId);
+        }
+    }
+
+    @Override
+    protected void onChatsChanged() {
+        if (!mRemovedChats.isEmpty()) {
+            mOnRemovalsPending.run();
+        }
+    }
+
+    @Override
+    protected void clear() {
+        super.clear();
+        mRemovedChats.clear();
+        mMailboxesToRemove.clear();
+    }
+}
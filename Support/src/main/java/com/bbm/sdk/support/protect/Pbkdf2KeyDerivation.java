@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PBKDF2 with HMAC-SHA256 (RFC 8018), the cost is the iteration count.
+ * Implemented on {@link Mac} since the PBKDF2WithHmacSHA256 SecretKeyFactory needs API 26.
+ */
+public class Pbkdf2KeyDerivation implements KeyDerivationFunction {
+
+    public static final int MIN_ITERATIONS = 10000;
+    public static final int MAX_ITERATIONS = 10000000;
+
+    @NonNull
+    @Override
+    public String getAlgorithm() {
+        return KeyDerivation.PBKDF2_HMAC_SHA256;
+    }
+
+    @Override
+    public int getMinimumCost() {
+        return MIN_ITERATIONS;
+    }
+
+    @Override
+    public int getMaximumCost() {
+        return MAX_ITERATIONS;
+    }
+
+    @Override
+    public int scaleCost(int cost, double factor) {
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, Math.round(cost * factor)));
+    }
+
+    @NonNull
+    @Override
+    public KeyDerivationParams createParams(int cost, @NonNull String salt) {
+        return new KeyDerivationParams(getAlgorithm(), cost, 0, 0, salt);
+    }
+
+    @NonNull
+    @Override
+    public byte[] derive(@NonNull byte[] password, @NonNull byte[] salt, @NonNull KeyDerivationParams params, int length)
+            throws GeneralSecurityException {
+        //The parameters come from storage, bound the cost so they can't make the derivation weak or endless
+        if (params.getCost() < MIN_ITERATIONS || params.getCost() > MAX_ITERATIONS) {
+            throw new InvalidAlgorithmParameterException("PBKDF2 iterations " + params.getCost() + " not between "
+                    + MIN_ITERATIONS + " and " + MAX_ITERATIONS);
+        }
+        return pbkdf2(password, salt, params.getCost(), length);
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256, also used by scrypt.
+     */
+    static byte[] pbkdf2(@NonNull byte[] password, @NonNull byte[] salt, int iterations, int length)
+            throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(EncryptionHelper.KEYSPEC_HMACSHA256);
+        //SecretKeySpec rejects an empty key, HMAC pads the key with zeros so a single zero byte is the same key
+        mac.init(new SecretKeySpec(password.length > 0 ? password : new byte[1], EncryptionHelper.KEYSPEC_HMACSHA256));
+        final int hashLength = mac.getMacLength();
+        final byte[] result = new byte[length];
+        final byte[] u = new byte[hashLength];
+        final byte[] t = new byte[hashLength];
+        final byte[] blockIndex = new byte[4];
+
+        for (int block = 1, offset = 0; offset < length; ++block, offset += hashLength) {
+            blockIndex[0] = (byte) (block >>> 24);
+            blockIndex[1] = (byte) (block >>> 16);
+            blockIndex[2] = (byte) (block >>> 8);
+            blockIndex[3] = (byte) block;
+            mac.update(salt);
+            mac.update(blockIndex);
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, t, 0, hashLength);
+            for (int i = 1; i < iterations; ++i) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < hashLength; ++j) {
+                    t[j] ^= u[j];
+                }
+            }
+            System.arraycopy(t, 0, result, offset, Math.min(hashLength, length - offset));
+        }
+        return result;
+    }
+}
@@ -17,6 +17,9 @@ import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 import android.widget.Toast;
 
@@ -56,6 +59,7 @@ import com.bbm.sdk.service.ProtocolMessageConsumer;
 import com.bbm.sdk.support.R;
 import com.bbm.sdk.support.identity.UserIdentityMapper;
 import com.bbm.sdk.support.util.Logger;
+import com.bbm.sdk.support.util.MetricsRegistry;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -66,7 +70,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.crypto.Mac;
 
@@ -106,15 +114,16 @@ import javax.crypto.Mac;
  */
 public class ProtectedManager implements ProtocolMessageConsumer {
 
-    private static final String READ_PRIVATE_KEY_REQUEST = "ReadPrivateKeyRequest";
-    private static final String READ_PUBLIC_KEY_REQUEST = "ReadPublicKeyRequest";
-    private static final String WRITE_PROFILE_KEY_REQUEST = "WritePrivateKeyRequest";
-    private static final String READ_CHAT_KEY_REQUEST = "ReadChatKeyRequest";
-    private static final String WRITE_CHAT_KEY_REQUEST = "WriteChatKeyRequest";
-    private static final String REMOVE_CHAT_KEY_REQUEST = "RemoveChatKeyRequest";
-    private static final String REMOVE_PROFILE_KEYS = "RemoveProfileKeys";
-    private static final String READ_MANAGEMENT_KEY_REQUEST = "ReadManagementKeysRequest";
-    private static final String WRITE_MANAGEMENT_KEY_REQUEST = "WriteManagementKeysRequest";
+    //The storage request names, also the names of their latency metrics
+    static final String READ_PRIVATE_KEY_REQUEST = "ReadPrivateKeyRequest";
+    static final String READ_PUBLIC_KEY_REQUEST = "ReadPublicKeyRequest";
+    static final String WRITE_PROFILE_KEY_REQUEST = "WritePrivateKeyRequest";
+    static final String READ_CHAT_KEY_REQUEST = "ReadChatKeyRequest";
+    static final String WRITE_CHAT_KEY_REQUEST = "WriteChatKeyRequest";
+    static final String REMOVE_CHAT_KEY_REQUEST = "RemoveChatKeyRequest";
+    static final String REMOVE_PROFILE_KEYS = "RemoveProfileKeys";
+    static final String READ_MANAGEMENT_KEY_REQUEST = "ReadManagementKeysRequest";
+    static final String WRITE_MANAGEMENT_KEY_REQUEST = "WriteManagementKeysRequest";
 
     /**
      * Challenge for the existing password
@@ -147,6 +156,12 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     //Management MAC used to validate private profile keys and chat keys
     private Mac mManagementMac;
 
+    //Derives the key protecting the management keys from the passcode, tuned to take about mKeyDerivationTargetMs
+    private KeyDerivationFunction mKeyDerivation = new Pbkdf2KeyDerivation();
+    private long mKeyDerivationTargetMs = KeyDerivation.DEFAULT_TARGET_MS;
+    //Calibrates and runs the key derivation off the main thread, one at a time
+    private final Executor mKeyDerivationExecutor;
+
     private Mutable<ProfileKeys> mProfileKeys = new Mutable<>(new ProfileKeys());
     private Mutable<EncryptedManagementKeys> mEncryptedManagementKeys = new Mutable<>(new EncryptedManagementKeys());
     private KeyStorageProvider mStorageProvider;
@@ -164,11 +179,18 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     //List of users pending key import
     private HashSet<String> mUsersPendingKeyImport = new HashSet<>();
 
-    //ChatId to Mailbox mapping. Used to track deletion of chats
-    private HashMap<String, String> mChatIdToMailbox = new HashMap<>();
-
     private Handler mHandler = new Handler(Looper.getMainLooper());
 
+    //Posts to the main thread, runs the storage requests and sends to bbmcore
+    private final Platform mPlatform;
+
+    //Counters, gauges and storage latencies, published to observers at most every METRICS_PUBLISH_DELAY_MS
+    private static final long METRICS_PUBLISH_DELAY_MS = 500;
+    private final MetricsRegistry mMetricsRegistry;
+    private final AtomicBoolean mMetricsPublishScheduled = new AtomicBoolean();
+    private final Runnable mPublishMetrics = this::publishMetrics;
+    private final ProtectedManagerMetrics mMetrics;
+
     private KeyImportFailureListener mKeyImportFailureListener;
 
     //List of storage requests that are in progress
@@ -215,6 +237,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     private ObservableMonitor mKeyStateMonitor = new ObservableMonitor() {
         @Override
         protected void run() {
+            mMetrics.monitorRan(ProtectedManagerMetrics.MONITOR_KEY_STATE);
             BbmdsProtocol protocol = BBMEnterprise.getInstance().getBbmdsProtocol();
             final GlobalProfileKeysState profileKeysState = protocol.getGlobalProfileKeysState().get();
 
@@ -240,8 +263,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     case EncryptedManagementKeys.DECRYPTION_REQUIRED:
                         //We found existing keys and we need to decrypt and verify the keys
                         //Prompt the user for their password to generate the derived key and decrypt the management keys
-                        mPasswordRequestType = PASSWORD_REQUEST_CHALLENGE;
-                        mPasscodeProvider.provideExistingPasscode(false, mPreviousPasscodeError);
+                        requestExistingPasscode();
                         return;
                     case EncryptedManagementKeys.NO_KEYS_AVAILABLE:
                         //There are no management keys in the cloud storage
@@ -286,51 +308,68 @@ public class ProtectedManager implements ProtocolMessageConsumer {
         }
     };
 
-    public void setPasscode(String password) {
+    /**
+     * Prompt the user for the passcode the management keys read from the key storage are protected with.
+     */
+    @VisibleForTesting
+    void requestExistingPasscode() {
+        mPasswordRequestType = PASSWORD_REQUEST_CHALLENGE;
+        mPasscodeProvider.provideExistingPasscode(false, mPreviousPasscodeError);
+    }
+
+    public void setPasscode(final String password) {
         switch (mPasswordRequestType) {
             case PASSWORD_REQUEST_CHALLENGE:
                 //Attempt to decrypt the management keys, if we succeed update the state of the encrypted management keys
-                boolean success = decryptManagementKeys(password, mEncryptedManagementKeys.get());
-                if (success) {
-                    mEncryptedManagementKeys.get().setState(EncryptedManagementKeys.COMPLETED);
-                    mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
-                } else {
-                    mPreviousPasscodeError = PasscodeProvider.PasscodeError.IncorrectPasscode;
-                }
-                //Notify any observers of the changes (or trigger another password prompt)
-                mHandler.post(() -> mEncryptedManagementKeys.dirty());
+                deriveKey(password, false, (keyDerivation, rootKey) -> {
+                    if (decryptManagementKeys(rootKey, mEncryptedManagementKeys.get())) {
+                        mEncryptedManagementKeys.get().setState(EncryptedManagementKeys.COMPLETED);
+                        mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
+                        migrateKeyDerivation(password);
+                    } else {
+                        mPreviousPasscodeError = PasscodeProvider.PasscodeError.IncorrectPasscode;
+                    }
+                    //Notify any observers of the changes (or trigger another password prompt)
+                    mEncryptedManagementKeys.dirty();
+                });
                 break;
             case PASSWORD_REQUEST_SET:
                 //Attempt to encrypt the management keys, if we succeed update the state of the encrypted management keys
-                encryptManagementKeys(password);
-                mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
-                //Mark the encrypted management keys state as completed
-                //After successfully creating the management keys we can move on to storing the keys
-                mEncryptedManagementKeys.get().setState(EncryptedManagementKeys.COMPLETED);
-                //Notify any observers of the changes
-                mHandler.post(() -> mEncryptedManagementKeys.dirty());
+                deriveKey(password, true, (keyDerivation, rootKey) -> {
+                    encryptManagementKeys(keyDerivation, rootKey);
+                    mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
+                    //Mark the encrypted management keys state as completed
+                    //After successfully creating the management keys we can move on to storing the keys
+                    mEncryptedManagementKeys.get().setState(EncryptedManagementKeys.COMPLETED);
+                    //Notify any observers of the changes
+                    mEncryptedManagementKeys.dirty();
+                });
                 break;
             case PASSWORD_REQUEST_CHANGE:
                 //Re-encrypt the management keys with the newly provided password
-                encryptManagementKeys(password);
-                //Write the management keys back to the cloud storage provider
-                writeManagementKeys();
-                mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
+                deriveKey(password, true, (keyDerivation, rootKey) -> {
+                    if (encryptManagementKeys(keyDerivation, rootKey)) {
+                        //Write the management keys back to the cloud storage provider
+                        writeManagementKeys();
+                    }
+                    mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
+                });
                 break;
             case PASSWORD_REQUEST_CHANGE_CHALLENGE:
                 //Challenge the user for the existing password
                 //This is required so we can obtain an un-encrypted version of the management keys
-                success = decryptManagementKeys(password, mEncryptedManagementKeys.get());
-                if (success) {
-                    //Prompt the user for a new password
-                    mPasswordRequestType = PASSWORD_REQUEST_CHANGE;
-                    mPasscodeProvider.requestNewPasscode(true, mPreviousPasscodeError);
-                    mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
-                } else {
-                    mPreviousPasscodeError = PasscodeProvider.PasscodeError.IncorrectPasscode;
-                    mPasswordRequestType = PASSWORD_REQUEST_CHANGE_CHALLENGE;
-                    mPasscodeProvider.provideExistingPasscode(true, mPreviousPasscodeError);
-                }
+                deriveKey(password, false, (keyDerivation, rootKey) -> {
+                    if (decryptManagementKeys(rootKey, mEncryptedManagementKeys.get())) {
+                        //Prompt the user for a new password
+                        mPasswordRequestType = PASSWORD_REQUEST_CHANGE;
+                        mPasscodeProvider.requestNewPasscode(true, mPreviousPasscodeError);
+                        mPreviousPasscodeError = PasscodeProvider.PasscodeError.None;
+                    } else {
+                        mPreviousPasscodeError = PasscodeProvider.PasscodeError.IncorrectPasscode;
+                        mPasswordRequestType = PASSWORD_REQUEST_CHANGE_CHALLENGE;
+                        mPasscodeProvider.provideExistingPasscode(true, mPreviousPasscodeError);
+                    }
+                });
                 break;
         }
     }
@@ -396,7 +435,8 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     EncryptedProfileKeys encProfileKeys = new EncryptedProfileKeys(privateKeyPair, publicKeyPair);
 
                     //Write the profile keys to cloud storage
-                    mStorageProvider.writeProfileKeys(encProfileKeys, mEncryptedManagementKeys.get(), this);
+                    mStorageProvider.writeProfileKeys(encProfileKeys, mEncryptedManagementKeys.get(),
+                            mMetrics.timed(WRITE_PROFILE_KEY_REQUEST, this));
                 } catch (GeneralSecurityException | UnsupportedEncodingException e) {
                     Logger.e(e, "Unable to encrypt profile keys for storage");
                     onError(ErrorHandler.ENCRYPTION_ERROR);
@@ -412,6 +452,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     private ObservableMonitor mUserKeysImportMonitor = new ObservableMonitor() {
         @Override
         protected void run() {
+            mMetrics.monitorRan(ProtectedManagerMetrics.MONITOR_USER_KEY_IMPORT);
             UserCriteria criteria = new UserCriteria();
             criteria.keyState(User.KeyState.Import);
             ObservableList<User> observableUserList = BBMEnterprise.getInstance().getBbmdsProtocol().getUserList(criteria);
@@ -421,6 +462,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             }
 
             List<User> usersRequiringKeyImport = observableUserList.get();
+            mMetrics.setUserKeysImportPending(usersRequiringKeyImport.size());
 
             for (final User user : usersRequiringKeyImport) {
                 executePublicKeyRequestForUser(user.regId);
@@ -436,6 +478,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     private ObservableMonitor mChatKeyImportMonitor = new ObservableMonitor() {
         @Override
         protected void run() {
+            mMetrics.monitorRan(ProtectedManagerMetrics.MONITOR_CHAT_KEY_IMPORT);
             ChatCriteria criteria = new ChatCriteria().keyState(Chat.KeyState.Import);
             ObservableList<Chat> observableChatList = BBMEnterprise.getInstance().getBbmdsProtocol().getChatList(criteria);
 
@@ -444,54 +487,73 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             }
 
             List<Chat> chatsRequiringKeyImport = observableChatList.get();
+            mMetrics.setChatKeysImportPending(chatsRequiringKeyImport.size());
             for (final Chat chat : chatsRequiringKeyImport) {
-                String taskKey = READ_CHAT_KEY_REQUEST + chat.mailboxId;
-                if (!TextUtils.isEmpty(chat.mailboxId) && !mPendingTasks.containsKey(taskKey)) {
-                    @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<EncryptedPayload> chatKeyRequest =
-                            new AsyncTaskStorageRequest<EncryptedPayload>(taskKey, mPendingTasks) {
-
-                        @Override
-                        public void run() {
-                            if (mStorageProvider != null) {
-                                mStorageProvider.readChatKey(chat.mailboxId, this);
-                            }
-                        }
+                if (!TextUtils.isEmpty(chat.mailboxId)) {
+                    readChatKey(chat.chatId, chat.mailboxId);
+                }
+            }
+        }
+    };
 
-                        @Override
-                        public void onSuccess(EncryptedPayload value) {
-                            // Tell core about the new key
-                            if (value != null && value.getPayload() != null) {
-                                try {
-                                    String chatKey = EncryptionHelper.unprotectToString(value, mManagementEncryptionKey, mManagementMac);
-                                    ArrayList<ChatKeysImport.Keys> keys = new ArrayList<>();
-                                    keys.add(new ChatKeysImport.Keys(chatKey, chat.mailboxId));
-                                    BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatKeysImport(keys));
-                                    return;
-                                } catch (GeneralSecurityException e) {
-                                    Logger.e(e, "Unable to decrypt chat key for chatId " + chat.chatId);
-                                    onError(ErrorHandler.DECRYPTION_ERROR);
-                                }
-                            } else {
-                                Logger.w("ProtectedManager - No key found for mailbox id " + chat.mailboxId);
-                            }
-                            //If we don't have the keys in storage we should leave this chat.
-                            //This gives an opportunity for remaining chat participants to re-invite us
-                            Logger.w("ProtectedManager - Leaving chat with missing keys " + chat.chatId);
-                            BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatLeave(Collections.singletonList(chat.chatId)));
-                        }
+    /**
+     * Read the key of a chat from the key storage and give it to bbmcore.
+     * If the key is missing or can't be decrypted the chat is left so the other participants can re-invite us.
+     * Nothing is done while the key of the mailbox is already being read.
+     * @param chatId the chat to leave if there is no key
+     * @param mailboxId the mailbox of the chat
+     */
+    @VisibleForTesting
+    void readChatKey(final String chatId, final String mailboxId) {
+        String taskKey = READ_CHAT_KEY_REQUEST + mailboxId;
+        if (mPendingTasks.containsKey(taskKey)) {
+            return;
+        }
+        @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<EncryptedPayload> chatKeyRequest =
+                new AsyncTaskStorageRequest<EncryptedPayload>(taskKey, mPendingTasks) {
 
-                        @Override
-                        public void onFailure() {
-                            Logger.e("ProtectedManager - Failed to read chat key for chatId " + chat.chatId);
-                            onError(ErrorHandler.KEY_STORAGE_PROVIDER_ERROR);
-                        }
+            @Override
+            public void run() {
+                if (mStorageProvider != null) {
+                    mStorageProvider.readChatKey(mailboxId, mMetrics.timed(READ_CHAT_KEY_REQUEST, this));
+                }
+            }
 
-                    };
-                    executeTask(chatKeyRequest);
+            @Override
+            public void onSuccess(EncryptedPayload value) {
+                // Tell core about the new key
+                if (value != null && value.getPayload() != null) {
+                    try {
+                        String chatKey = EncryptionHelper.unprotectToString(value, mManagementEncryptionKey, mManagementMac);
+                        mPlatform.importChatKey(mailboxId, chatKey);
+                        mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORTED);
+                        return;
+                    } catch (GeneralSecurityException e) {
+                        Logger.e(e, "Unable to decrypt chat key for chatId " + chatId);
+                        mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_FAILED);
+                        onError(ErrorHandler.DECRYPTION_ERROR);
+                    }
+                } else {
+                    Logger.w("ProtectedManager - No key found for mailbox id " + mailboxId);
+                    mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_MISSING);
                 }
+                //If we don't have the keys in storage we should leave this chat.
+                //This gives an opportunity for remaining chat participants to re-invite us
+                Logger.w("ProtectedManager - Leaving chat with missing keys " + chatId);
+                mPlatform.leaveChat(chatId);
+            }
+
+            @Override
+            public void onFailure() {
+                Logger.e("ProtectedManager - Failed to read chat key for chatId " + chatId);
+                mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_FAILED);
+                onError(ErrorHandler.KEY_STORAGE_PROVIDER_ERROR);
             }
-        }
-    };
+
+        };
+        mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REQUESTED);
+        executeTask(chatKeyRequest);
+    }
 
     /**
      * Monitor the list of chats which have keyState = Export
@@ -500,6 +562,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     private ObservableMonitor mChatKeyExportMonitor = new ObservableMonitor() {
         @Override
         protected void run() {
+            mMetrics.monitorRan(ProtectedManagerMetrics.MONITOR_CHAT_KEY_EXPORT);
             ChatCriteria criteria = new ChatCriteria().keyState(Chat.KeyState.Export);
             ObservableList<Chat> observableChatList = BBMEnterprise.getInstance().getBbmdsProtocol().getChatList(criteria);
 
@@ -508,6 +571,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             }
 
             List<Chat> chatsRequiringKeyExport = observableChatList.get();
+            mMetrics.setChatKeysExportPending(chatsRequiringKeyExport.size());
             for (final Chat chat : chatsRequiringKeyExport) {
                 final String taskKey = WRITE_CHAT_KEY_REQUEST + chat.mailboxId;
                 if (!TextUtils.isEmpty(chat.mailboxId) && !mChatsPendingKeyExportResponse.containsKey(chat.chatId) && !mPendingTasks.containsKey(taskKey)) {
@@ -524,42 +588,13 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                         protected boolean runUntilTrue() {
                             final ChatKey chatKey = chatKeyObserver.get();
                             if (chatKey.exists == Existence.YES) {
-                                //Create a request to write the new chat key
-                                @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<Void> request =
-                                        new AsyncTaskStorageRequest<Void>(taskKey, mPendingTasks) {
-
-                                    @Override
-                                    public void run() {
-                                        if (mStorageProvider != null) {
-                                            try {
-                                                //Encrypt the chat key
-                                                EncryptedPayload encChatKey = EncryptionHelper.protect(chatKey.key, mManagementEncryptionKey, mManagementMac);
-                                                mStorageProvider.writeChatKey(chat.mailboxId, encChatKey, this);
-                                            } catch (GeneralSecurityException| UnsupportedEncodingException e) {
-                                                Logger.e(e, "Error encrypting chat key for storage");
-                                                onError(ErrorHandler.ENCRYPTION_ERROR);
-                                            }
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onSuccess(Void value) {
-                                        mHandler.post(() -> {
-                                            mChatsPendingKeyExportResponse.remove(chat.chatId);
-                                            //Update chat key state to synced
-                                            Chat.AttributesBuilder keyStateChange = new Chat.AttributesBuilder();
-                                            keyStateChange.keyState(Chat.KeyState.Synced);
-                                            BBMEnterprise.getInstance().getBbmdsProtocol().send(chat.requestListChange(keyStateChange));
-                                        });
-                                    }
-
-                                    @Override
-                                    public void onFailure() {
-                                        Logger.e("ProtectedManager - Failed to write chat key for chat " + chat.chatId);
-                                        onError(ErrorHandler.KEY_STORAGE_PROVIDER_ERROR);
-                                    }
-                                };
-                                executeTask(request);
+                                writeChatKey(chat.chatId, chat.mailboxId, chatKey.key, () -> {
+                                    mChatsPendingKeyExportResponse.remove(chat.chatId);
+                                    //Update chat key state to synced
+                                    Chat.AttributesBuilder keyStateChange = new Chat.AttributesBuilder();
+                                    keyStateChange.keyState(Chat.KeyState.Synced);
+                                    BBMEnterprise.getInstance().getBbmdsProtocol().send(chat.requestListChange(keyStateChange));
+                                });
                             } else {
                                 return false;
                             }
@@ -568,9 +603,10 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     };
 
                     mChatsPendingKeyExportResponse.put(chat.chatId, monitorChatKeyExport);
+                    mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_EXPORT_REQUESTED);
 
                     // Start this from a new runnable to avoid tracking the result in this monitor
-                    mHandler.post(() -> {
+                    mPlatform.post(() -> {
                         monitorChatKeyExport.activate();
                         BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatKeyExport(chat.chatId, cookie));
                     });
@@ -579,68 +615,317 @@ public class ProtectedManager implements ProtocolMessageConsumer {
         }
     };
 
+    /**
+     * Encrypt the key of a chat exported by bbmcore and write it to the key storage.
+     * @param chatId the chat the key belongs to
+     * @param mailboxId the mailbox of the chat
+     * @param chatKey the chat key from bbmcore
+     * @param onWritten posted to the main thread once the key is stored
+     */
+    @VisibleForTesting
+    void writeChatKey(final String chatId, final String mailboxId, final String chatKey, final Runnable onWritten) {
+        //Create a request to write the new chat key
+        @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<Void> request =
+                new AsyncTaskStorageRequest<Void>(WRITE_CHAT_KEY_REQUEST + mailboxId, mPendingTasks) {
+
+            @Override
+            public void run() {
+                if (mStorageProvider != null) {
+                    try {
+                        //Encrypt the chat key
+                        EncryptedPayload encChatKey = EncryptionHelper.protect(chatKey, mManagementEncryptionKey, mManagementMac);
+                        mStorageProvider.writeChatKey(mailboxId, encChatKey,
+                                mMetrics.timed(WRITE_CHAT_KEY_REQUEST, this));
+                    } catch (GeneralSecurityException| UnsupportedEncodingException e) {
+                        Logger.e(e, "Error encrypting chat key for storage");
+                        mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_EXPORT_FAILED);
+                        onError(ErrorHandler.ENCRYPTION_ERROR);
+                    }
+                }
+            }
+
+            @Override
+            public void onSuccess(Void value) {
+                mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_EXPORTED);
+                mPlatform.post(onWritten);
+            }
+
+            @Override
+            public void onFailure() {
+                Logger.e("ProtectedManager - Failed to write chat key for chat " + chatId);
+                mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_EXPORT_FAILED);
+                onError(ErrorHandler.KEY_STORAGE_PROVIDER_ERROR);
+            }
+        };
+        executeTask(request);
+    }
 
     /**
-     * Monitor the list of chats, when a chat is removed then remove the corresponding mailbox from the key storage.
+     * Read the chat list for the mailbox removal tracker.
      */
-    private ObservableMonitor mChatsRequiringMailboxRemovalMonitor = new ObservableMonitor() {
+    private final ChatMailboxIndex.ChatSource mChatSource = new ChatMailboxIndex.ChatSource() {
         @Override
-        protected void run() {
-            // Get the list of chats
-            ObservableList<Chat> chatList = BBMEnterprise.getInstance().getBbmdsProtocol().getChatList();
+        public int size() {
+            return mChatList.size();
+        }
+
+        @Override
+        public String getChatId(int position) {
+            return mChatList.get(position).chatId;
+        }
+
+        @Override
+        public String getMailboxId(int position) {
+            return mChatList.get(position).mailboxId;
+        }
+    };
+
+    /**
+     * Track the list of chats, when a chat is removed then remove the corresponding mailbox from the key storage.
+     * Only the chats in the range of each chat list change are checked.
+     * The tracker also indexes the chats by mailbox, see {@link #getChatMailboxIndex()}.
+     */
+    private final MailboxRemovalTracker mMailboxRemovalTracker = new MailboxRemovalTracker(mChatSource, this::scheduleMailboxRemovals);
+
+    //The chat list observed by the mailbox removal tracker, a hard reference is kept so the list isn't released
+    private ObservableList<Chat> mChatList;
+    private boolean mMailboxRemovalsScheduled;
 
-            if (chatList == null || chatList.isPending()) {
+    /**
+     * Remove the chat keys for all mailboxes of chats that are no longer in the chat list.
+     */
+    private final Runnable mRemoveMailboxes = new Runnable() {
+        @Override
+        public void run() {
+            mMailboxRemovalsScheduled = false;
+            if (!mStarted || !mMailboxRemovalTracker.isStarted()) {
                 return;
             }
+            mMetrics.monitorRan(ProtectedManagerMetrics.MONITOR_MAILBOX_REMOVAL);
+
+            // We want to remove the mailboxes of chats that are no longer in the chat list from our cloud storage.
+            for (Map.Entry<String, String> mailbox : mMailboxRemovalTracker.getMailboxesToRemove().entrySet()) {
+                final String mailboxId = mailbox.getKey();
+                final String chatId = mailbox.getValue();
+                String removeChatKey = REMOVE_CHAT_KEY_REQUEST + mailboxId;
+                if (!mPendingTasks.containsKey(removeChatKey)) {
+                    @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<Void> request =
+                            new AsyncTaskStorageRequest<Void>(removeChatKey, mPendingTasks) {
+                        @Override
+                        public void onSuccess(Void result) {
+                            mPlatform.post(() -> {
+                                mMailboxRemovalTracker.onMailboxRemoved(mailboxId);
+                                updateMailboxMetrics();
+                            });
+                        }
 
-            // Create a list of known chatIds
-            HashMap<String, String> knownChatIdToMailbox = new HashMap<>(chatList.size());
-            for (Chat chat : chatList.get()) {
-                if (!TextUtils.isEmpty(chat.mailboxId)) {
-                    knownChatIdToMailbox.put(chat.chatId, chat.mailboxId);
-                    //Remove all of the known chatIds from the chatId to mailbox map
-                    mChatIdToMailbox.remove(chat.chatId);
+                        @Override
+                        public void onFailure() {
+                            //The mailbox is kept and tried again by retryFailedEvents
+                            Logger.e("ProtectedManager - Failed to remove chat key for chatId " + chatId);
+                            mMetrics.count(ProtectedManagerMetrics.MAILBOX_REMOVALS_FAILED);
+                        }
+
+                        @Override
+                        public void run() {
+                            if (mStorageProvider != null) {
+                                mStorageProvider.removeChatKey(mailboxId, mMetrics.timed(REMOVE_CHAT_KEY_REQUEST, this));
+                            }
+                        }
+                    };
+                    mMetrics.count(ProtectedManagerMetrics.MAILBOX_REMOVALS_REQUESTED);
+                    executeTask(request);
                 }
             }
+            updateMailboxMetrics();
+        }
+    };
 
-            // We are left with the list of chat ids that are no longer in the chat list
-            // We want to remove those mailboxes from our cloud storage.
-            if (mChatIdToMailbox.size() > 0) {
-                for (final String chatId : mChatIdToMailbox.keySet()) {
-                    final String mailboxId = mChatIdToMailbox.get(chatId);
-                    String removeChatKey = REMOVE_CHAT_KEY_REQUEST + mailboxId;
-                    if (!mPendingTasks.containsKey(removeChatKey)) {
-                        @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<Void> request =
-                                new AsyncTaskStorageRequest<Void>(removeChatKey, mPendingTasks) {
-                            @Override
-                            public void onSuccess(Void result) {
-                                //Nothing to do
-                            }
+    /**
+     * Called by the tracker when chats were removed, the removals are made once the current list changes are done.
+     */
+    private void scheduleMailboxRemovals() {
+        if (!mMailboxRemovalsScheduled) {
+            mMailboxRemovalsScheduled = true;
+            mHandler.post(mRemoveMailboxes);
+        }
+    }
 
-                            @Override
-                            public void onFailure() {
-                                Logger.e("ProtectedManager - Failed to remove chat key for chatId " + chatId);
-                            }
+    private void updateMailboxMetrics() {
+        mMetrics.setMailboxesTracked(mMailboxRemovalTracker.getChatCount());
+        mMetrics.setMailboxRemovalsPending(mMailboxRemovalTracker.getPendingRemovalCount());
+    }
 
-                            @Override
-                            public void run() {
-                                if (mStorageProvider != null) {
-                                    mStorageProvider.removeChatKey(mailboxId, this);
-                                }
-                            }
-                        };
-                        executeTask(request);
-                    }
-                }
+    /**
+     * Start tracking the chat list once it is no longer pending.
+     */
+    private void startMailboxRemovalTracking() {
+        mChatList = BBMEnterprise.getInstance().getBbmdsProtocol().getChatList();
+        final ObservableList<Chat> chatList = mChatList;
+        SingleshotMonitor.run(() -> {
+            if (!mStarted || chatList != mChatList) {
+                //Stopped before the list was loaded
+                return true;
+            }
+            if (chatList.isPending()) {
+                return false;
             }
+            mMailboxRemovalTracker.start();
+            chatList.addIncrementalListObserver(mMailboxRemovalTracker);
+            updateMailboxMetrics();
+            return true;
+        });
+    }
 
-            mChatIdToMailbox.clear();
-            // Repopulate the chatId to mailbox mapping
-            mChatIdToMailbox.putAll(knownChatIdToMailbox);
+    private void stopMailboxRemovalTracking() {
+        if (mChatList != null) {
+            mChatList.removeIncrementalListObserver(mMailboxRemovalTracker);
+            mChatList = null;
         }
-    };
+        mMailboxRemovalTracker.stop();
+        mHandler.removeCallbacks(mRemoveMailboxes);
+        mMailboxRemovalsScheduled = false;
+        updateMailboxMetrics();
+    }
+
+    /**
+     * What the protected manager needs from the device and bbmcore, replaced in tests.
+     */
+    @VisibleForTesting
+    interface Platform {
+        /**
+         * Run on the main thread.
+         */
+        void post(Runnable runnable);
+
+        /**
+         * Start a key storage request.
+         */
+        void execute(AsyncTaskStorageRequest<?> request);
+
+        /**
+         * Give bbmcore the key of a chat mailbox.
+         */
+        void importChatKey(String mailboxId, String chatKey);
+
+        /**
+         * Leave a chat whose key can't be imported.
+         */
+        void leaveChat(String chatId);
+
+        /**
+         * @return the registration id of the local user, part of the input of the key derivation
+         */
+        String getRegId();
+
+        /**
+         * @return the user domain, part of the input of the key derivation
+         */
+        String getUserDomain();
+
+        /**
+         * Get the cost calibrated for this device, see {@link EncryptionHelper#getKeyDerivationCost(Context, KeyDerivationFunction, long)}.
+         */
+        @WorkerThread
+        int getKeyDerivationCost(KeyDerivationFunction function, long targetMs) throws GeneralSecurityException;
+
+        /**
+         * Keep the decrypted management encryption key on this device.
+         */
+        Key saveManagementEncryptionKey(byte[] keyBytes) throws GeneralSecurityException, IOException;
+
+        /**
+         * Keep the decrypted management hmac key on this device.
+         */
+        Key saveManagementHmacKey(byte[] keyBytes) throws GeneralSecurityException, IOException;
+    }
+
+    private class DevicePlatform implements Platform {
+
+        @Override
+        public void post(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+
+        @Override
+        public void execute(AsyncTaskStorageRequest<?> request) {
+            request.execute();
+        }
+
+        @Override
+        public void importChatKey(String mailboxId, String chatKey) {
+            ArrayList<ChatKeysImport.Keys> keys = new ArrayList<>();
+            keys.add(new ChatKeysImport.Keys(chatKey, mailboxId));
+            BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatKeysImport(keys));
+        }
+
+        @Override
+        public void leaveChat(String chatId) {
+            BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatLeave(Collections.singletonList(chatId)));
+        }
+
+        @Override
+        public String getRegId() {
+            return Long.toString(mLocalUser.get().regId);
+        }
+
+        @Override
+        public String getUserDomain() {
+            return BBMEConfig.getInstance(mContext).getClientOptions().getUserDomain();
+        }
+
+        @Override
+        public int getKeyDerivationCost(KeyDerivationFunction function, long targetMs) throws GeneralSecurityException {
+            return EncryptionHelper.getKeyDerivationCost(mContext, function, targetMs);
+        }
+
+        @Override
+        public Key saveManagementEncryptionKey(byte[] keyBytes) throws GeneralSecurityException, IOException {
+            return EncryptionHelper.saveManagementEncryptionKey(mContext, keyBytes);
+        }
+
+        @Override
+        public Key saveManagementHmacKey(byte[] keyBytes) throws GeneralSecurityException, IOException {
+            return EncryptionHelper.saveHMACManagementKey(mContext, keyBytes);
+        }
+    }
 
     private ProtectedManager() {
+        mPlatform = new DevicePlatform();
+        mKeyDerivationExecutor = Executors.newSingleThreadExecutor();
+        mMetricsRegistry = new MetricsRegistry("ProtectedManager");
+        mMetrics = createMetrics();
+    }
+
+    /**
+     * Create a protected manager for tests, the providers are set but it isn't started.
+     * @param keyDerivationExecutor runs the key derivations, one at a time
+     */
+    @VisibleForTesting
+    ProtectedManager(Platform platform, Executor keyDerivationExecutor, MetricsRegistry metricsRegistry,
+                     KeyStorageProvider provider, PasscodeProvider passcodeProvider, ErrorHandler errorHandler) {
+        mPlatform = platform;
+        mKeyDerivationExecutor = keyDerivationExecutor;
+        mMetricsRegistry = metricsRegistry;
+        mMetrics = createMetrics();
+        mStorageProvider = provider;
+        mPasscodeProvider = passcodeProvider;
+        mErrorHandler = errorHandler;
+    }
+
+    private ProtectedManagerMetrics createMetrics() {
+        ProtectedManagerMetrics metrics = new ProtectedManagerMetrics(mMetricsRegistry, () -> {
+            if (mMetricsPublishScheduled.compareAndSet(false, true)) {
+                mHandler.postDelayed(mPublishMetrics, METRICS_PUBLISH_DELAY_MS);
+            }
+        });
+        mMetricsRegistry.gauge(ProtectedManagerMetrics.PENDING_TASKS, mPendingTasks::size);
+        return metrics;
+    }
+
+    private void publishMetrics() {
+        mMetricsPublishScheduled.set(false);
+        mMetricsRegistry.publish();
     }
 
     /**
@@ -672,13 +957,23 @@ public class ProtectedManager implements ProtocolMessageConsumer {
         mUserUid = userUid;
         //Get the management encryption keys
         getManagementKeys(false);
-        mHandler.post(() -> {
+        //Calibrate now on the key derivation thread so deriving the passcode key finds the cost saved
+        final KeyDerivationFunction keyDerivation = mKeyDerivation;
+        final long keyDerivationTargetMs = mKeyDerivationTargetMs;
+        mKeyDerivationExecutor.execute(() -> {
+            try {
+                mPlatform.getKeyDerivationCost(keyDerivation, keyDerivationTargetMs);
+            } catch (GeneralSecurityException e) {
+                Logger.e(e, "ProtectedManager - Unable to calibrate key derivation");
+            }
+        });
+        mPlatform.post(() -> {
             mStarted = true;
             mKeyStateMonitor.activate();
             mChatKeyExportMonitor.activate();
             mChatKeyImportMonitor.activate();
             mUserKeysImportMonitor.activate();
-            mChatsRequiringMailboxRemovalMonitor.activate();
+            startMailboxRemovalTracking();
         });
         BBMEnterprise.getInstance().getBbmdsProtocolConnector().addMessageConsumer(this);
     }
@@ -699,16 +994,16 @@ public class ProtectedManager implements ProtocolMessageConsumer {
      */
     public void stop() {
         Logger.i("ProtectedManager - stop");
+        mMetricsRegistry.dump();
         mStarted = false;
         mProfileKeysObservable = null;
         mKeyStateMonitor.dispose();
         mChatKeyExportMonitor.dispose();
         mChatKeyImportMonitor.dispose();
         mUserKeysImportMonitor.dispose();
-        mChatsRequiringMailboxRemovalMonitor.dispose();
+        stopMailboxRemovalTracking();
         mChatsPendingKeyExportResponse.clear();
         mUsersPendingKeyImport.clear();
-        mChatIdToMailbox.clear();
         //Reset the saved profile keys for the local user.
         mProfileKeys.set(new ProfileKeys());
         mEncryptedManagementKeys.set(new EncryptedManagementKeys());
@@ -721,6 +1016,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
      */
     public void retryFailedEvents() {
         if (mStorageProvider != null && mStarted) {
+            mMetrics.count(ProtectedManagerMetrics.RETRIES);
             //Clear any pending tasks
             mChatsPendingKeyExportResponse.clear();
             mUsersPendingKeyImport.clear();
@@ -733,7 +1029,8 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             mUserKeysImportMonitor.activate();
             mChatKeyImportMonitor.activate();
             mChatKeyExportMonitor.activate();
-            mChatsRequiringMailboxRemovalMonitor.activate();
+            //Try again to remove the keys of any mailboxes that failed
+            scheduleMailboxRemovals();
         }
     }
 
@@ -759,23 +1056,79 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     }
 
     /**
-     * Return the users registration id as a string.
+     * Use management keys that aren't from the device keystore.
+     */
+    @VisibleForTesting
+    void setManagementKeys(Key encryptionKey, Key hmacKey) throws GeneralSecurityException {
+        mManagementEncryptionKey = encryptionKey;
+        mManagementHmacKey = hmacKey;
+        mManagementMac = EncryptionHelper.createHMAC(hmacKey);
+    }
+
+    /**
+     * Called on the main thread with the key derived from the passcode.
      */
-    private String getRegIdAsString() {
-        return Long.toString(mLocalUser.get().regId);
+    private interface DerivedKeyCallback {
+        /**
+         * @param keyDerivation the parameters the key was derived with
+         * @param rootKey       the derived key, or null if the key derivation failed
+         */
+        void onKeyDerived(@Nullable KeyDerivationParams keyDerivation, @Nullable EncryptionHelper.DerivedRootKey rootKey);
+    }
+
+    /**
+     * Derive the key protecting the management keys from the passcode. The key derivation is tuned to take about
+     * mKeyDerivationTargetMs so it runs on the key derivation thread, the result is posted back to the main thread.
+     * The result is dropped if the management keys are replaced in the meantime, for example by {@link #stop()}.
+     * @param password the user provided password
+     * @param newKeyDerivation true for a new salt and the cost calibrated for this device, to encrypt the management
+     *                         keys, false for the key derivation of the current management keys, to decrypt them
+     * @param callback called on the main thread with the derived key
+     */
+    private void deriveKey(final String password, final boolean newKeyDerivation, final DerivedKeyCallback callback) {
+        final EncryptedManagementKeys encryptedManagementKeys = mEncryptedManagementKeys.get();
+        final KeyDerivationFunction function = mKeyDerivation;
+        final long targetMs = mKeyDerivationTargetMs;
+        final String regId = mPlatform.getRegId();
+        final String userDomain = mPlatform.getUserDomain();
+        mKeyDerivationExecutor.execute(() -> {
+            KeyDerivationParams keyDerivation = encryptedManagementKeys.getKeyDerivation();
+            EncryptionHelper.DerivedRootKey rootKey = null;
+            try {
+                if (newKeyDerivation) {
+                    keyDerivation = KeyDerivation.newParams(function,
+                            mPlatform.getKeyDerivationCost(function, targetMs));
+                }
+                rootKey = EncryptionHelper.createDerivedKey(password, regId, userDomain, keyDerivation);
+            } catch (UnsupportedEncodingException | GeneralSecurityException e) {
+                Logger.e(e, "ProtectedManager - Unable to derive the key from the passcode");
+            }
+
+            final KeyDerivationParams derivedWith = keyDerivation;
+            final EncryptionHelper.DerivedRootKey derivedKey = rootKey;
+            mPlatform.post(() -> {
+                if (mEncryptedManagementKeys.get() != encryptedManagementKeys) {
+                    Logger.i("ProtectedManager - management keys changed while deriving the key, ignoring the key");
+                    return;
+                }
+                callback.onKeyDerived(derivedWith, derivedKey);
+            });
+        });
     }
 
     /**
      * Decrypt the management keys recovered from the storage provider.
-     * @param password the users provided password
+     * @param rootKey the key derived from the users provided password with the key derivation of the management keys,
+     *                null if the key derivation failed
      * @param encryptedManagementKeys the encrypted management and hmac key
      * @return true if the management keys were successfully decrypted
      */
-    private boolean decryptManagementKeys(String password, EncryptedManagementKeys encryptedManagementKeys) {
+    private boolean decryptManagementKeys(@Nullable EncryptionHelper.DerivedRootKey rootKey,
+                                          EncryptedManagementKeys encryptedManagementKeys) {
+        if (rootKey == null) {
+            return false;
+        }
         try {
-            //First create a derived key from the password
-            String userDomain = BBMEConfig.getInstance(mContext).getClientOptions().getUserDomain();
-            EncryptionHelper.DerivedRootKey rootKey = EncryptionHelper.createDerivedKey(password, getRegIdAsString(), userDomain);
             Mac derivedMac = EncryptionHelper.createHMAC(rootKey.derivedHmacKey);
 
             //Decrypt the management encryption key
@@ -791,8 +1144,8 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     derivedMac);
 
             //Create new security keys using the decrypted key content
-            mManagementEncryptionKey = EncryptionHelper.saveManagementEncryptionKey(mContext, managementKeyBytes);
-            mManagementHmacKey = EncryptionHelper.saveHMACManagementKey(mContext, hmacKeyBytes);
+            mManagementEncryptionKey = mPlatform.saveManagementEncryptionKey(managementKeyBytes);
+            mManagementHmacKey = mPlatform.saveManagementHmacKey(hmacKeyBytes);
             mManagementMac = EncryptionHelper.createHMAC(mManagementHmacKey);
             return true;
         } catch (GeneralSecurityException | IOException e) {
@@ -803,14 +1156,18 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     }
 
     /**
-     * Encrypt the management keys using the provided password to create a derived key.
-     * @param password the user provided password
+     * Encrypt the management keys with a key derived from the user provided password.
+     * @param keyDerivation the new key derivation parameters the key was derived with
+     * @param rootKey the derived key, null if the key derivation failed
+     * @return true if the management keys were encrypted
      */
-    private void encryptManagementKeys(String password) {
+    private boolean encryptManagementKeys(KeyDerivationParams keyDerivation,
+                                          @Nullable EncryptionHelper.DerivedRootKey rootKey) {
+        if (rootKey == null) {
+            onError(ErrorHandler.ENCRYPTION_ERROR);
+            return false;
+        }
         try {
-            //First create a derived key from the password
-            String userDomain = BBMEConfig.getInstance(mContext).getClientOptions().getUserDomain();
-            EncryptionHelper.DerivedRootKey rootKey = EncryptionHelper.createDerivedKey(password, getRegIdAsString(), userDomain);
             Mac derivedMac = EncryptionHelper.createHMAC(rootKey.derivedHmacKey);
 
             //Encrypt the management key
@@ -822,12 +1179,76 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     EncryptionHelper.protect(mManagementHmacKey.getEncoded(), rootKey.derivedEncryptionKey, derivedMac);
 
             final EncryptedManagementKeys combinedKeys =
-                    new EncryptedManagementKeys(new PrivateKeyPair(encryptedManagementKey, encryptedHmacKey));
+                    new EncryptedManagementKeys(new PrivateKeyPair(encryptedManagementKey, encryptedHmacKey), keyDerivation);
+            //The management keys are decrypted, the replaced keys were either completed or about to be
+            combinedKeys.setState(EncryptedManagementKeys.COMPLETED);
             mEncryptedManagementKeys.set(combinedKeys);
+            return true;
         } catch (UnsupportedEncodingException | GeneralSecurityException e) {
             Logger.e(e, "Unable to encrypt management keys");
             onError(ErrorHandler.ENCRYPTION_ERROR);
         }
+        return false;
+    }
+
+    /**
+     * Management keys protected with an older or weaker key derivation are protected again with the current
+     * key derivation function and written back to the cloud storage.
+     * Must be called after the management keys were decrypted with the password.
+     * @param password the user provided password
+     */
+    private void migrateKeyDerivation(String password) {
+        final KeyDerivationParams current = mEncryptedManagementKeys.get().getKeyDerivation();
+        if (KeyDerivation.needsMigration(current, mKeyDerivation)) {
+            Logger.i("ProtectedManager - migrating management keys from " + (current != null ? current : "SHA-512")
+                    + " to " + mKeyDerivation.getAlgorithm());
+            deriveKey(password, true, (keyDerivation, rootKey) -> {
+                if (encryptManagementKeys(keyDerivation, rootKey)) {
+                    writeManagementKeys();
+                }
+            });
+        }
+    }
+
+    /**
+     * Set the key derivation function used to protect the management keys with the passcode.
+     * The cost of the function is calibrated on the device to take about targetMs.
+     * Management keys protected with another function are migrated the next time the passcode is provided.
+     * Must be called before {@link #start(Context, String, KeyStorageProvider, PasscodeProvider, ErrorHandler)}.
+     * @param function the function, {@link Pbkdf2KeyDerivation} by default
+     * @param targetMs how long deriving the key should take, {@link KeyDerivation#DEFAULT_TARGET_MS} by default
+     */
+    public void setKeyDerivation(@NonNull KeyDerivationFunction function, long targetMs) {
+        KeyDerivation.register(function);
+        mKeyDerivation = function;
+        mKeyDerivationTargetMs = targetMs;
+    }
+
+    /**
+     * Get the key sync metrics, such as the number of chat keys imported or how long the storage provider takes.
+     * The metric names are in {@link ProtectedManagerMetrics}.
+     * @return the metrics, updated shortly after they change
+     */
+    public ObservableValue<MetricsRegistry.Snapshot> getMetrics() {
+        return mMetricsRegistry.getObservableSnapshot();
+    }
+
+    /**
+     * Get the index of the chats in the chat list by mailbox id, kept up to date while the protected manager is started.
+     * Only read the index on the main thread, check {@link ChatMailboxLookup#isStarted()} before relying on it since
+     * the chat list might not have loaded yet.
+     * @return the chat mailbox index, read only as the protected manager keeps it up to date
+     */
+    @NonNull
+    public ChatMailboxLookup getChatMailboxIndex() {
+        return mMailboxRemovalTracker;
+    }
+
+    /**
+     * Write the current key sync metrics to the log.
+     */
+    public void dumpMetrics() {
+        mMetricsRegistry.dump();
     }
 
     public void setKeyImportFailureListener(KeyImportFailureListener failureListener) {
@@ -851,6 +1272,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
 
                     if (mapResult.get().existence == Existence.NO) {
                         Logger.e("ProtectedManager - unable to sync keys, could not get uid for regId " + regId);
+                        mMetrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORT_MISSING);
                         return true;
                     }
 
@@ -860,6 +1282,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                             regId,
                             taskKey
                     );
+                    mMetrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORT_REQUESTED);
                     executeTask(publicKeyRequest);
 
                     return true;
@@ -880,13 +1303,14 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             public void run() {
                 if (mStorageProvider != null) {
                     //Request the public keys from the storage provider
-                    mStorageProvider.readPublicKeys(uid, this);
+                    mStorageProvider.readPublicKeys(uid, mMetrics.timed(READ_PUBLIC_KEY_REQUEST, this));
                 }
             }
 
             @Override
             public void onSuccess(KeyPair value) {
                 if (value != null) {
+                    mMetrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORTED);
                     //Send keys to core
                     synchronized (mUserKeysImportBatch) {
                         mUserKeysImportBatch.add(new UserKeysImport.Keys(
@@ -902,12 +1326,14 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     // The cloud storage service doesn't have any keys for the given user uri
                     // This shouldn't really happen...
                     Logger.e("ProtectedManager - No keys found in cloud storage for regId=" + regId + ", uid=" + uid);
+                    mMetrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORT_MISSING);
                 }
             }
 
             @Override
             public void onFailure() {
                 Logger.e("ProtectedManager - Failed to read publics keys for regId " +  regId);
+                mMetrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORT_FAILED);
             }
         };
     }
@@ -934,7 +1360,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             ArrayList<User> allUsersToResync = new ArrayList<>(importUsers.size() + syncedUsers.size());
             allUsersToResync.addAll(importUsers.get());
             allUsersToResync.addAll(syncedUsers.get());
-            mHandler.post(() -> {
+            mPlatform.post(() -> {
                 for (User user : allUsersToResync) {
                     executePublicKeyRequestForUser(user.regId);
                 }
@@ -976,7 +1402,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             @Override
             public void run() {
                 if (mStorageProvider != null) {
-                    mStorageProvider.readManagementKeys(this);
+                    mStorageProvider.readManagementKeys(mMetrics.timed(READ_MANAGEMENT_KEY_REQUEST, this));
                 }
             }
         };
@@ -1005,11 +1431,12 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     @Override
                     public void run() {
                         if (mStorageProvider != null) {
-                            mStorageProvider.writeManagementKeys(mEncryptedManagementKeys.get(), this);
+                            mStorageProvider.writeManagementKeys(mEncryptedManagementKeys.get(),
+                                    mMetrics.timed(WRITE_MANAGEMENT_KEY_REQUEST, this));
                         }
                     }
                 };
-        request.execute();
+        executeTask(request);
     }
 
     /**
@@ -1025,7 +1452,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                         @Override
                         public void run() {
                             if (mStorageProvider != null) {
-                                mStorageProvider.removeProfileKeys(this);
+                                mStorageProvider.removeProfileKeys(mMetrics.timed(REMOVE_PROFILE_KEYS, this));
                             }
                         }
 
@@ -1039,7 +1466,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                             final InboundMessageObservable<Endpoints> endpointsObserver = new InboundMessageObservable<>(
                                     new Endpoints(), requestCookie, BBMEnterprise.getInstance().getBbmdsProtocolConnector());
 
-                            mHandler.post(() ->
+                            mPlatform.post(() ->
                                     SingleshotMonitor.run(() -> {
                                         Endpoints endpoints = endpointsObserver.get();
                                         if (endpoints.exists == Existence.MAYBE) {
@@ -1073,7 +1500,8 @@ public class ProtectedManager implements ProtocolMessageConsumer {
      * Fetch the encrypted management (symmetric key and hmac key) values from cloud storage.
      * These keys still need to be decrypted using a derived key from a user supplied password.
      */
-    private void readManagementKeys() {
+    @VisibleForTesting
+    void readManagementKeys() {
         if (!mPendingTasks.containsKey(READ_MANAGEMENT_KEY_REQUEST)) {
             @SuppressLint("StaticFieldLeak") AsyncTaskStorageRequest<EncryptedManagementKeys> managementKeysRequest =
                     new AsyncTaskStorageRequest<EncryptedManagementKeys>(READ_MANAGEMENT_KEY_REQUEST, mPendingTasks) {
@@ -1099,7 +1527,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                 @Override
                 public void run() {
                     if (mStorageProvider != null) {
-                        mStorageProvider.readManagementKeys(this);
+                        mStorageProvider.readManagementKeys(mMetrics.timed(READ_MANAGEMENT_KEY_REQUEST, this));
                     }
                 }
             };
@@ -1125,13 +1553,13 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                     //Fetch the private keys
                     if (mStorageProvider != null) {
                         Logger.i("ProtectedManager - Fetch local user private keys from key storage provider");
-                        mStorageProvider.readPrivateKeys(this);
+                        mStorageProvider.readPrivateKeys(mMetrics.timed(READ_PRIVATE_KEY_REQUEST, this));
                     }
                 }
 
                 @Override
                 public void onSuccess(final PrivateKeyPair keys) {
-                    mHandler.post(() -> {
+                    mPlatform.post(() -> {
                         if (keys != null && keys.getEncrypt() != null && keys.getSign() != null) {
                             Logger.i("ProtectedManager - Found private keys for local user");
                             //Decrypt the keys
@@ -1195,7 +1623,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
                 public void run() {
                     if (mStorageProvider != null) {
                         Logger.i("ProtectedManager - Fetch local user public keys from key storage provider");
-                        mStorageProvider.readPublicKeys(mUserUid, this);
+                        mStorageProvider.readPublicKeys(mUserUid, mMetrics.timed(READ_PUBLIC_KEY_REQUEST, this));
                     }
                 }
 
@@ -1206,7 +1634,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
 
                 @Override
                 public void onSuccess(final KeyPair keys) {
-                    mHandler.post(() -> {
+                    mPlatform.post(() -> {
                         if (keys != null) {
                             Logger.i("ProtectedManager - Found public keys for local user");
                             //Add the public keys we read from the key storage
@@ -1236,8 +1664,9 @@ public class ProtectedManager implements ProtocolMessageConsumer {
         }
     }
 
-    private void executeTask(AsyncTask<Void, Void, Void> task) {
-        task.execute();
+    private void executeTask(AsyncTaskStorageRequest<?> task) {
+        mPlatform.execute(task);
+        mMetrics.pendingTasksAdded(mPendingTasks.size());
     }
 
     @Override
@@ -1247,6 +1676,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             case "profileKeysImportFailure":
                 ProfileKeysImportFailure pkif = new ProfileKeysImportFailure();
                 pkif.setAttributes(protocolMessage.getJSON().optJSONObject("profileKeysImportFailure"));
+                mMetrics.count(ProtectedManagerMetrics.PROFILE_KEYS_IMPORT_REJECTED);
                 if (mKeyImportFailureListener != null) {
                     mKeyImportFailureListener.onProfileKeysImportFailure(pkif);
                 } else {
@@ -1256,6 +1686,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             case "userKeysImportFailure":
                 UserKeysImportFailure ukif = new UserKeysImportFailure();
                 ukif.setAttributes(protocolMessage.getJSON().optJSONObject("userKeysImportFailure"));
+                mMetrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORT_REJECTED, ukif.regIds.size());
                 if (mKeyImportFailureListener != null) {
                     mKeyImportFailureListener.onUserKeysImportFailure(ukif);
                 } else {
@@ -1265,6 +1696,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
             case "chatKeysImportFailure":
                 ChatKeysImportFailure ckif = new ChatKeysImportFailure();
                 ckif.setAttributes(protocolMessage.getJSON().optJSONObject("chatKeysImportFailure"));
+                mMetrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REJECTED, ckif.mailboxIds.size());
                 if (mKeyImportFailureListener != null) {
                     mKeyImportFailureListener.onChatKeysImportFailure(ckif);
                 } else {
@@ -1280,7 +1712,7 @@ public class ProtectedManager implements ProtocolMessageConsumer {
     }
 
     private void onError(@ErrorHandler.ErrorType int error) {
-        mHandler.post(() -> mErrorHandler.onError(error));
+        mPlatform.post(() -> mErrorHandler.onError(error));
     }
 
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Names of the metrics kept by the {@link ProtectedManager} and the helpers it uses to record them.
+ * Read the values from {@link ProtectedManager#getMetrics()}.
+ */
+public class ProtectedManagerMetrics {
+
+    //Chat keys read from the storage provider and given to bbmcore
+    public static final String CHAT_KEYS_IMPORT_REQUESTED = "chatKeys.import.requested";
+    public static final String CHAT_KEYS_IMPORTED = "chatKeys.import.imported";
+    public static final String CHAT_KEYS_IMPORT_MISSING = "chatKeys.import.missing";
+    public static final String CHAT_KEYS_IMPORT_FAILED = "chatKeys.import.failed";
+    public static final String CHAT_KEYS_IMPORT_REJECTED = "chatKeys.import.rejected";
+    public static final String CHAT_KEYS_IMPORT_PENDING = "chatKeys.import.pending";
+
+    //Chat keys exported from bbmcore and written to the storage provider
+    public static final String CHAT_KEYS_EXPORT_REQUESTED = "chatKeys.export.requested";
+    public static final String CHAT_KEYS_EXPORTED = "chatKeys.export.exported";
+    public static final String CHAT_KEYS_EXPORT_FAILED = "chatKeys.export.failed";
+    public static final String CHAT_KEYS_EXPORT_PENDING = "chatKeys.export.pending";
+
+    //Public keys of other users read from the storage provider and given to bbmcore
+    public static final String USER_KEYS_IMPORT_REQUESTED = "userKeys.import.requested";
+    public static final String USER_KEYS_IMPORTED = "userKeys.import.imported";
+    public static final String USER_KEYS_IMPORT_MISSING = "userKeys.import.missing";
+    public static final String USER_KEYS_IMPORT_FAILED = "userKeys.import.failed";
+    public static final String USER_KEYS_IMPORT_REJECTED = "userKeys.import.rejected";
+    public static final String USER_KEYS_IMPORT_PENDING = "userKeys.import.pending";
+
+    public static final String PROFILE_KEYS_IMPORT_REJECTED = "profileKeys.import.rejected";
+
+    //Keys of chats that were removed, deleted from the storage provider
+    public static final String MAILBOX_REMOVALS_REQUESTED = "mailboxRemoval.requested";
+    public static final String MAILBOX_REMOVALS_FAILED = "mailboxRemoval.failed";
+    public static final String MAILBOXES_TRACKED = "mailboxRemoval.tracked";
+    public static final String MAILBOX_REMOVALS_PENDING = "mailboxRemoval.pending";
+
+    public static final String RETRIES = "keySync.retries";
+
+    //Storage provider requests waiting for a response, and the most seen at once
+    public static final String STORAGE_IN_FLIGHT = "storage.inFlight";
+    public static final String STORAGE_IN_FLIGHT_MAX = "storage.inFlight.max";
+    //Storage tasks the ProtectedManager is tracking to avoid duplicate requests, and the most seen at once
+    public static final String PENDING_TASKS = "storage.tasks";
+    public static final String PENDING_TASKS_MAX = "storage.tasks.max";
+
+    public static final String MONITOR_KEY_STATE = "keyState";
+    public static final String MONITOR_CHAT_KEY_IMPORT = "chatKeyImport";
+    public static final String MONITOR_CHAT_KEY_EXPORT = "chatKeyExport";
+    public static final String MONITOR_USER_KEY_IMPORT = "userKeyImport";
+    public static final String MONITOR_MAILBOX_REMOVAL = "mailboxRemoval";
+
+    /**
+     * @return the counter of storage requests of the type that succeeded
+     */
+    public static String storageSuccess(@NonNull String request) {
+        return "storage." + request + ".success";
+    }
+
+    /**
+     * @return the counter of storage requests of the type that failed
+     */
+    public static String storageFailure(@NonNull String request) {
+        return "storage." + request + ".failure";
+    }
+
+    /**
+     * @return the histogram of how long storage requests of the type took
+     */
+    public static String storageLatency(@NonNull String request) {
+        return "storage." + request + ".latencyMs";
+    }
+
+    /**
+     * @return the counter of how many times the monitor ran
+     */
+    public static String monitorRuns(@NonNull String monitor) {
+        return "monitor." + monitor + ".runs";
+    }
+
+    private final MetricsRegistry mRegistry;
+    private final Runnable mOnChanged;
+    private final AtomicLong mStorageInFlight = new AtomicLong();
+    private final AtomicLong mStorageInFlightMax = new AtomicLong();
+    private volatile long mPendingTasksMax;
+    private volatile long mChatKeysImportPending;
+    private volatile long mChatKeysExportPending;
+    private volatile long mUserKeysImportPending;
+    private volatile long mMailboxesTracked;
+    private volatile long mMailboxRemovalsPending;
+
+    /**
+     * @param onChanged called on the thread that recorded a metric, so a new snapshot can be published
+     */
+    ProtectedManagerMetrics(@NonNull MetricsRegistry registry, @NonNull Runnable onChanged) {
+        mRegistry = registry;
+        mOnChanged = onChanged;
+        registry.gauge(STORAGE_IN_FLIGHT, mStorageInFlight::get);
+        registry.gauge(STORAGE_IN_FLIGHT_MAX, mStorageInFlightMax::get);
+        registry.gauge(PENDING_TASKS_MAX, () -> mPendingTasksMax);
+        registry.gauge(CHAT_KEYS_IMPORT_PENDING, () -> mChatKeysImportPending);
+        registry.gauge(CHAT_KEYS_EXPORT_PENDING, () -> mChatKeysExportPending);
+        registry.gauge(USER_KEYS_IMPORT_PENDING, () -> mUserKeysImportPending);
+        registry.gauge(MAILBOXES_TRACKED, () -> mMailboxesTracked);
+        registry.gauge(MAILBOX_REMOVALS_PENDING, () -> mMailboxRemovalsPending);
+    }
+
+    @NonNull
+    MetricsRegistry getRegistry() {
+        return mRegistry;
+    }
+
+    void count(@NonNull String counter) {
+        mRegistry.counter(counter).inc();
+        mOnChanged.run();
+    }
+
+    void count(@NonNull String counter, long count) {
+        if (count > 0) {
+            mRegistry.counter(counter).add(count);
+            mOnChanged.run();
+        }
+    }
+
+    void monitorRan(@NonNull String monitor) {
+        count(monitorRuns(monitor));
+    }
+
+    void setChatKeysImportPending(int count) {
+        mChatKeysImportPending = count;
+    }
+
+    void setChatKeysExportPending(int count) {
+        mChatKeysExportPending = count;
+    }
+
+    void setUserKeysImportPending(int count) {
+        mUserKeysImportPending = count;
+    }
+
+    void setMailboxesTracked(int count) {
+        mMailboxesTracked = count;
+    }
+
+    void setMailboxRemovalsPending(int count) {
+        mMailboxRemovalsPending = count;
+    }
+
+    /**
+     * Track the most storage tasks pending at once, the {@link #PENDING_TASKS} gauge is registered by the owner of
+     * the tasks. Only called from the main thread.
+     */
+    void pendingTasksAdded(int count) {
+        if (count > mPendingTasksMax) {
+            mPendingTasksMax = count;
+        }
+    }
+
+    /**
+     * Wrap the response given to the storage provider to record how long the request took and whether it succeeded.
+     *
+     * @param request  the type of request, used in the metric names
+     * @param response the response the result is passed on to
+     */
+    <T> KeyStorageResponse<T> timed(@NonNull String request, @NonNull KeyStorageResponse<T> response) {
+        final long start = mRegistry.getClock().currentTimeMillis();
+        final long inFlight = mStorageInFlight.incrementAndGet();
+        long max;
+        while (inFlight > (max = mStorageInFlightMax.get()) && !mStorageInFlightMax.compareAndSet(max, inFlight)) {
+            //retry until the max is at least this
+        }
+        //some providers might report more than once, only the first counts
+        final AtomicBoolean completed = new AtomicBoolean();
+        return new KeyStorageResponse<T>() {
+            @Override
+            public void onSuccess(T value) {
+                if (complete()) {
+                    count(storageSuccess(request));
+                }
+                response.onSuccess(value);
+            }
+
+            @Override
+            public void onFailure() {
+                if (complete()) {
+                    count(storageFailure(request));
+                }
+                response.onFailure();
+            }
+
+            private boolean complete() {
+                if (!completed.compareAndSet(false, true)) {
+                    return false;
+                }
+                mStorageInFlight.decrementAndGet();
+                mRegistry.histogram(storageLatency(request)).record(mRegistry.getClock().currentTimeMillis() - start);
+                return true;
+            }
+        };
+    }
+}
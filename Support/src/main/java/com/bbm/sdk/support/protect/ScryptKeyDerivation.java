@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+
+/**
+ * scrypt (RFC 7914), the cost is N. Memory use is 128 * r * N bytes, so the maximum N is kept low enough for the
+ * heap of older devices.
+ */
+public class ScryptKeyDerivation implements KeyDerivationFunction {
+
+    public static final int MIN_COST = 1 << 14;
+    public static final int MAX_COST = 1 << 15;
+    public static final int BLOCK_SIZE = 8;
+    public static final int PARALLELISM = 1;
+
+    @NonNull
+    @Override
+    public String getAlgorithm() {
+        return KeyDerivation.SCRYPT;
+    }
+
+    @Override
+    public int getMinimumCost() {
+        return MIN_COST;
+    }
+
+    @Override
+    public int getMaximumCost() {
+        return MAX_COST;
+    }
+
+    @Override
+    public int scaleCost(int cost, double factor) {
+        //N must be a power of two, round down so the target isn't exceeded
+        final double scaled = Math.max(MIN_COST, Math.min(MAX_COST, cost * factor));
+        return Integer.highestOneBit((int) scaled);
+    }
+
+    @NonNull
+    @Override
+    public KeyDerivationParams createParams(int cost, @NonNull String salt) {
+        return new KeyDerivationParams(getAlgorithm(), cost, BLOCK_SIZE, PARALLELISM, salt);
+    }
+
+    @NonNull
+    @Override
+    public byte[] derive(@NonNull byte[] password, @NonNull byte[] salt, @NonNull KeyDerivationParams params, int length)
+            throws GeneralSecurityException {
+        //The parameters come from storage, bound the cost and memory so they can't make the derivation weak or fail
+        if (params.getCost() < MIN_COST || params.getCost() > MAX_COST) {
+            throw new InvalidAlgorithmParameterException("scrypt N " + params.getCost() + " not between " + MIN_COST
+                    + " and " + MAX_COST);
+        }
+        if (params.getBlockSize() != BLOCK_SIZE || params.getParallelism() != PARALLELISM) {
+            throw new InvalidAlgorithmParameterException("Unsupported scrypt parameters r=" + params.getBlockSize()
+                    + " p=" + params.getParallelism());
+        }
+        return scrypt(password, salt, params.getCost(), params.getBlockSize(), params.getParallelism(), length);
+    }
+
+    static byte[] scrypt(@NonNull byte[] password, @NonNull byte[] salt, int n, int r, int p, int length)
+            throws GeneralSecurityException {
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new InvalidAlgorithmParameterException("scrypt N must be a power of 2 greater than 1, was " + n);
+        }
+        if (r < 1 || p < 1 || n > Integer.MAX_VALUE / 128 / r || p > Integer.MAX_VALUE / 128 / r) {
+            throw new InvalidAlgorithmParameterException("Invalid scrypt parameters N=" + n + " r=" + r + " p=" + p);
+        }
+
+        final int blockWords = 32 * r;
+        final byte[] b = Pbkdf2KeyDerivation.pbkdf2(password, salt, 1, p * 128 * r);
+        final int[] x = new int[blockWords];
+        final int[] y = new int[blockWords];
+        final int[] v = new int[blockWords * n];
+        final int[] salsa = new int[16];
+        final int[] work = new int[16];
+
+        for (int i = 0; i < p; ++i) {
+            final int offset = i * 128 * r;
+            for (int k = 0; k < blockWords; ++k) {
+                final int at = offset + k * 4;
+                x[k] = (b[at] & 0xff) | (b[at + 1] & 0xff) << 8 | (b[at + 2] & 0xff) << 16 | (b[at + 3] & 0xff) << 24;
+            }
+            roMix(x, y, v, n, r, salsa, work);
+            for (int k = 0; k < blockWords; ++k) {
+                final int at = offset + k * 4;
+                b[at] = (byte) x[k];
+                b[at + 1] = (byte) (x[k] >>> 8);
+                b[at + 2] = (byte) (x[k] >>> 16);
+                b[at + 3] = (byte) (x[k] >>> 24);
+            }
+        }
+
+        return Pbkdf2KeyDerivation.pbkdf2(password, b, 1, length);
+    }
+
+    /**
+     * Mix the block in x, leaving the result in x.
+     */
+    private static void roMix(int[] x, int[] y, int[] v, int n, int r, int[] salsa, int[] work) {
+        final int blockWords = 32 * r;
+        for (int i = 0; i < n; ++i) {
+            System.arraycopy(x, 0, v, i * blockWords, blockWords);
+            blockMix(x, y, r, salsa, work);
+            System.arraycopy(y, 0, x, 0, blockWords);
+        }
+        for (int i = 0; i < n; ++i) {
+            final int j = x[(2 * r - 1) * 16] & (n - 1);
+            final int vOffset = j * blockWords;
+            for (int k = 0; k < blockWords; ++k) {
+                x[k] ^= v[vOffset + k];
+            }
+            blockMix(x, y, r, salsa, work);
+            System.arraycopy(y, 0, x, 0, blockWords);
+        }
+    }
+
+    /**
+     * BlockMix of the 2 * r 64 byte blocks in in, written to out with the even blocks first then the odd blocks.
+     */
+    private static void blockMix(int[] in, int[] out, int r, int[] salsa, int[] work) {
+        System.arraycopy(in, (2 * r - 1) * 16, salsa, 0, 16);
+        for (int i = 0; i < 2 * r; ++i) {
+            for (int k = 0; k < 16; ++k) {
+                salsa[k] ^= in[i * 16 + k];
+            }
+            salsa20_8(salsa, work);
+            final int outBlock = (i & 1) == 0 ? i / 2 : r + i / 2;
+            System.arraycopy(salsa, 0, out, outBlock * 16, 16);
+        }
+    }
+
+    private static void salsa20_8(int[] b, int[] x) {
+        System.arraycopy(b, 0, x, 0, 16);
+        for (int i = 0; i < 8; i += 2) {
+            //Columns
+            x[4] ^= Integer.rotateLeft(x[0] + x[12], 7);
+            x[8] ^= Integer.rotateLeft(x[4] + x[0], 9);
+            x[12] ^= Integer.rotateLeft(x[8] + x[4], 13);
+            x[0] ^= Integer.rotateLeft(x[12] + x[8], 18);
+            x[9] ^= Integer.rotateLeft(x[5] + x[1], 7);
+            x[13] ^= Integer.rotateLeft(x[9] + x[5], 9);
+            x[1] ^= Integer.rotateLeft(x[13] + x[9], 13);
+            x[5] ^= Integer.rotateLeft(x[1] + x[13], 18);
+            x[14] ^= Integer.rotateLeft(x[10] + x[6], 7);
+            x[2] ^= Integer.rotateLeft(x[14] + x[10], 9);
+            x[6] ^= Integer.rotateLeft(x[2] + x[14], 13);
+            x[10] ^= Integer.rotateLeft(x[6] + x[2], 18);
+            x[3] ^= Integer.rotateLeft(x[15] + x[11], 7);
+            x[7] ^= Integer.rotateLeft(x[3] + x[15], 9);
+            x[11] ^= Integer.rotateLeft(x[7] + x[3], 13);
+            x[15] ^= Integer.rotateLeft(x[11] + x[7], 18);
+            //Rows
+            x[1] ^= Integer.rotateLeft(x[0] + x[3], 7);
+            x[2] ^= Integer.rotateLeft(x[1] + x[0], 9);
+            x[3] ^= Integer.rotateLeft(x[2] + x[1], 13);
+            x[0] ^= Integer.rotateLeft(x[3] + x[2], 18);
+            x[6] ^= Integer.rotateLeft(x[5] + x[4], 7);
+            x[7] ^= Integer.rotateLeft(x[6] + x[5], 9);
+            x[4] ^= Integer.rotateLeft(x[7] + x[6], 13);
+            x[5] ^= Integer.rotateLeft(x[4] + x[7], 18);
+            x[11] ^= Integer.rotateLeft(x[10] + x[9], 7);
+            x[8] ^= Integer.rotateLeft(x[11] + x[10], 9);
+            x[9] ^= Integer.rotateLeft(x[8] + x[11], 13);
+            x[10] ^= Integer.rotateLeft(x[9] + x[8], 18);
+            x[12] ^= Integer.rotateLeft(x[15] + x[14], 7);
+            x[13] ^= Integer.rotateLeft(x[12] + x[15], 9);
+            x[14] ^= Integer.rotateLeft(x[13] + x[12], 13);
+            x[15] ^= Integer.rotateLeft(x[14] + x[13], 18);
+        }
+        for (int i = 0; i < 16; ++i) {
+            b[i] += x[i];
+        }
+    }
+}
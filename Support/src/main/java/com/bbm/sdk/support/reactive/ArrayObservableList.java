@@ -15,6 +15,7 @@ import com.bbm.sdk.reactive.ObservableTracker;
 import com.bbm.sdk.reactive.TrackedGetter;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -22,7 +23,8 @@ import java.util.List;
  * WARNING: This implementation isn't thread safe, avoid modifying and accessing
  *           from multiple threads concurrently without synchronization.
  * WARNING: The methods that modify the contents (add, remove, set) will automatically
- *           notify the observers in the callers thread.
+ *           notify the observers in the callers thread, or once when {@link #endBatch()} is called
+ *           if they were made after {@link #beginBatch()}.
  *           Normally observers expect to be notified in the main UI thread, if that is the
  *           case then this should only be modified in that thread.
  *           Also, a simple action like calling add() could be slower than normal if an
@@ -37,38 +39,154 @@ public class ArrayObservableList<T> extends AbstractObservableList<T> {
 
     private boolean mPending;
 
+    //The changes made since beginBatch, notified as one when the batch ends
+    private int mBatchDepth;
+    private int mBatchChangedFrom = -1;
+    private int mBatchChangedTo = -1;
+    private int mBatchInsertedFrom = -1;
+    private int mBatchInsertedCount;
+    private int mBatchRemovedFrom = -1;
+    private int mBatchRemovedCount;
+    private boolean mBatchDataSetChanged;
+
     public T set(int index, T element) {
         T old = mList.set(index, element);
         //calling the itemsChanged (or the other ObservableList *Changed methods) will also call the notifyObservers()
-        itemsChanged(index, 1);
+        onItemsChanged(index, 1);
         return old;
     }
 
     public void add(T element) {
         mList.add(element);
-        itemsInserted(size() - 1, 1);
+        onItemsInserted(mList.size() - 1, 1);
     }
 
     public void add(int index, T element) {
         mList.add(index, element);
-        itemsInserted(index, 1);
+        onItemsInserted(index, 1);
+    }
+
+    /**
+     * Add all the elements to the end of the list with a single notification.
+     */
+    public void addAll(Collection<? extends T> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        final int start = mList.size();
+        mList.addAll(elements);
+        onItemsInserted(start, elements.size());
     }
 
     public T remove(int index) {
         T old = mList.remove(index);
-        itemsRemoved(index, 1);
+        onItemsRemoved(index, 1);
         return old;
     }
 
     public boolean remove(Object o) {
         boolean found = mList.remove(o);
-        itemsRemoved(size(), 1);
+        onItemsRemoved(size(), 1);
         return found;
     }
 
     public void clear() {
         mList.clear();
-        dataSetChanged();
+        onDataSetChanged();
+    }
+
+    /**
+     * Hold the notifications for the changes made until {@link #endBatch()}, which notifies the observers once.
+     * Batches can be nested, the notification is made when the outermost one ends.
+     */
+    public void beginBatch() {
+        ++mBatchDepth;
+    }
+
+    /**
+     * Notify the observers of the changes made since {@link #beginBatch()} with a single notification.
+     * The changes are reported as one range when they are all of the same kind and next to each other, otherwise
+     * as a data set change.
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch called without beginBatch");
+        }
+        if (--mBatchDepth > 0) {
+            return;
+        }
+        final boolean changed = mBatchChangedFrom >= 0;
+        final boolean inserted = mBatchInsertedFrom >= 0;
+        final boolean removed = mBatchRemovedFrom >= 0;
+        final int kinds = (changed ? 1 : 0) + (inserted ? 1 : 0) + (removed ? 1 : 0);
+        if (mBatchDataSetChanged || kinds > 1) {
+            dataSetChanged();
+        } else if (changed) {
+            itemsChanged(mBatchChangedFrom, mBatchChangedTo - mBatchChangedFrom + 1);
+        } else if (inserted) {
+            itemsInserted(mBatchInsertedFrom, mBatchInsertedCount);
+        } else if (removed) {
+            itemsRemoved(mBatchRemovedFrom, mBatchRemovedCount);
+        }
+        mBatchChangedFrom = -1;
+        mBatchChangedTo = -1;
+        mBatchInsertedFrom = -1;
+        mBatchInsertedCount = 0;
+        mBatchRemovedFrom = -1;
+        mBatchRemovedCount = 0;
+        mBatchDataSetChanged = false;
+    }
+
+    private void onItemsChanged(int index, int count) {
+        if (mBatchDepth == 0) {
+            itemsChanged(index, count);
+        } else if (mBatchChangedFrom < 0) {
+            mBatchChangedFrom = index;
+            mBatchChangedTo = index + count - 1;
+        } else {
+            mBatchChangedFrom = Math.min(mBatchChangedFrom, index);
+            mBatchChangedTo = Math.max(mBatchChangedTo, index + count - 1);
+        }
+    }
+
+    private void onItemsInserted(int index, int count) {
+        if (mBatchDepth == 0) {
+            itemsInserted(index, count);
+        } else if (mBatchInsertedFrom < 0) {
+            mBatchInsertedFrom = index;
+            mBatchInsertedCount = count;
+        } else if (index >= mBatchInsertedFrom && index <= mBatchInsertedFrom + mBatchInsertedCount) {
+            //inside or right after the range inserted so far
+            mBatchInsertedCount += count;
+        } else {
+            mBatchDataSetChanged = true;
+        }
+    }
+
+    private void onItemsRemoved(int index, int count) {
+        if (mBatchDepth == 0) {
+            itemsRemoved(index, count);
+        } else if (mBatchRemovedFrom < 0) {
+            mBatchRemovedFrom = index;
+            mBatchRemovedCount = count;
+        } else if (index == mBatchRemovedFrom) {
+            //the items after the range removed so far
+            mBatchRemovedCount += count;
+        } else if (index + count == mBatchRemovedFrom) {
+            //the items before it
+            mBatchRemovedFrom = index;
+            mBatchRemovedCount += count;
+        } else {
+            mBatchDataSetChanged = true;
+        }
+    }
+
+    private void onDataSetChanged() {
+        if (mBatchDepth == 0) {
+            dataSetChanged();
+        } else {
+            mBatchDataSetChanged = true;
+        }
     }
 
     /**
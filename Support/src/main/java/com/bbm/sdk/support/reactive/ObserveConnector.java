@@ -11,12 +11,17 @@
 
 package com.bbm.sdk.support.reactive;
 
-import com.bbm.sdk.bbmds.internal.WeakReferenceSet;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
 import com.bbm.sdk.reactive.Observable;
 import com.bbm.sdk.reactive.Observer;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Set;
 
 /**
  * Helper class to help keep a hard reference to observers so that they are not garbage collected before they
@@ -24,19 +29,96 @@ import java.util.Set;
  * To ensure that the memory for the observer is not kept longer than needed the owner of this instance should
  * either call the remove() method when the observer is no longer needed or an instance of this class should be
  * kept as a member variable of any activity, fragment, or other object that owns the observer.
+ * <p>
+ * Each observer and observable pair is a {@link Connection} that can be disconnected on its own in constant time.
+ * Observers are only kept reachable by connections made with {@link #connect(Observable, Observer)}, the
+ * connector's own bookkeeping only references observers weakly and is cleaned up when they are collected.
+ * {@link #newScope()} groups the connections of a fragment or view holder so they can be dropped together,
+ * and are dropped along with the connections of the parent.
+ * Not thread safe, use from the main thread.
  */
 public class ObserveConnector {
     private static final ObserveConnector sSharedInstance = new ObserveConnector();
 
     /**
-     * Keep strong reference of the observers until the owner of this object is garbage collected.
-     * The observer implementation would need to keep a strong reference (final local...) to the observable
-     * if needed.
-     * This only keeps weak reference to the observables since they are only needed to be able to
-     * remove the observer from them if needed later, but if they are garbage collect then no action would be
-     * needed, and we don't want to prevent them from being garbage collected due to this class.
+     * An observer connected to an observable.
+     */
+    public static final class Connection {
+        private final ObserveConnector mConnector;
+        private final ObserverKey mKey;
+        //Keeps the observer from being collected, null for weak connections
+        private Observer mObserver;
+        //Only needed to remove the observer from it, it isn't kept from being collected
+        private final WeakReference<Observable> mObservable;
+        private boolean mConnected = true;
+
+        //All the connections of the connector
+        private Connection mPrev;
+        private Connection mNext;
+        //The connections of the observer
+        private Connection mPrevForObserver;
+        private Connection mNextForObserver;
+
+        private Connection(ObserveConnector connector, ObserverKey key, Observer observer, Observable observable) {
+            mConnector = connector;
+            mKey = key;
+            mObserver = observer;
+            mObservable = new WeakReference<>(observable);
+        }
+
+        /**
+         * @return false once disconnected, or once the observer was collected for a weak connection
+         */
+        public boolean isConnected() {
+            return mConnected && mKey.get() != null;
+        }
+
+        /**
+         * Remove the observer from the observable and drop the connector's reference to it.
+         */
+        public void disconnect() {
+            if (mConnected) {
+                mConnector.disconnect(this, true);
+            }
+        }
+    }
+
+    /**
+     * Identifies an observer without keeping it reachable, and heads the list of its connections.
      */
-    private final HashMap<Observer, WeakReferenceSet<Observable>> mObservers = new HashMap();
+    private static final class ObserverKey extends WeakReference<Observer> {
+        private final int mHash;
+        private Connection mFirst;
+
+        ObserverKey(Observer observer, ReferenceQueue<Observer> queue) {
+            super(observer, queue);
+            mHash = System.identityHashCode(observer);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ObserverKey)) {
+                return false;
+            }
+            final Observer observer = get();
+            return observer != null && observer == ((ObserverKey) o).get();
+        }
+    }
+
+    private final ReferenceQueue<Observer> mCollectedObservers = new ReferenceQueue<>();
+    private final HashMap<ObserverKey, ObserverKey> mObservers = new HashMap<>();
+    private Connection mFirst;
+    private int mConnectionCount;
+    //Scopes made from this connector, dropped when the owner of the scope collects it
+    private final ArrayList<WeakReference<ObserveConnector>> mScopes = new ArrayList<>();
 
     /**
      * Get a shared instance.
@@ -99,8 +181,8 @@ public class ObserveConnector {
      * @param observable the observer to be notified of changes to
      * @param observer the observer implementation to be notified when the observer changes.
      */
-    public void connect(Observable observable, Observer observer) {
-        connect(observable, observer, false);
+    public Connection connect(Observable observable, Observer observer) {
+        return connect(observable, observer, false);
     }
 
     /**
@@ -117,12 +199,28 @@ public class ObserveConnector {
      *                               needs to run right away (update UI...).  It avoids duplicating code that is already in the changed
      *                               method that would otherwise be need to called immediately after this method.
      */
-    public void connect(Observable observable, Observer observer, final  boolean callChangedImmediately) {
-        add(observer, observable);
+    public Connection connect(Observable observable, Observer observer, final  boolean callChangedImmediately) {
+        final Connection connection = add(observer, observable, true);
         observable.addObserver(observer);
         if (callChangedImmediately) {
             observer.changed();
         }
+        return connection;
+    }
+
+    /**
+     * Connect the observer to the observable without keeping a hard reference to the observer.
+     * The caller must keep the observer reachable, for example as a member variable, for as long as it is needed.
+     * The connection can still be removed with {@link #remove(Observer)} and {@link #removeObservers()}, and is
+     * dropped when the observer is garbage collected.
+     *
+     * @param observable the observable to be notified of changes to
+     * @param observer the observer implementation to be notified when the observable changes.
+     */
+    public Connection connectWeakly(Observable observable, Observer observer) {
+        final Connection connection = add(observer, observable, false);
+        observable.addObserver(observer);
+        return connection;
     }
 
     /**
@@ -142,52 +240,167 @@ public class ObserveConnector {
     public void connectMultiple(Observer observer, final  boolean callChangedImmediately, Observable... observables) {
         for (int i=0;i<observables.length;++i) {
             observables[i].addObserver(observer);
-            add(observer, observables[i]);
+            add(observer, observables[i], true);
         }
         if (callChangedImmediately) {
             observer.changed();
         }
     }
 
-    private void add(Observer observer, Observable observable) {
-        WeakReferenceSet observables = mObservers.get(observer);
-        if (observables == null) {
-            observables = new WeakReferenceSet();
-            mObservers.put(observer, observables);
+    /**
+     * Create a scope for the connections of a fragment, view holder or other object owned by the owner of this
+     * connector. The scope's connections are removed by the scope's {@link #removeObservers()} or by this
+     * connector's, and the scope only lives as long as its owner keeps it.
+     */
+    @NonNull
+    public ObserveConnector newScope() {
+        final ObserveConnector scope = new ObserveConnector();
+        for (int i = mScopes.size() - 1; i >= 0; --i) {
+            if (mScopes.get(i).get() == null) {
+                mScopes.remove(i);
+            }
+        }
+        mScopes.add(new WeakReference<>(scope));
+        return scope;
+    }
+
+    /**
+     * @return the number of connections, not counting scopes
+     */
+    public int size() {
+        expungeCollected();
+        return mConnectionCount;
+    }
+
+    private Connection add(Observer observer, Observable observable, boolean keepObserver) {
+        expungeCollected();
+        final ObserverKey lookup = new ObserverKey(observer, null);
+        ObserverKey key = mObservers.get(lookup);
+        if (key == null) {
+            key = new ObserverKey(observer, mCollectedObservers);
+            mObservers.put(key, key);
+        } else {
+            for (Connection connection = key.mFirst; connection != null; connection = connection.mNextForObserver) {
+                if (connection.mObservable.get() == observable) {
+                    //Already connected
+                    if (keepObserver) {
+                        connection.mObserver = observer;
+                    }
+                    return connection;
+                }
+            }
+        }
+
+        final Connection connection = new Connection(this, key, keepObserver ? observer : null, observable);
+        connection.mNextForObserver = key.mFirst;
+        if (key.mFirst != null) {
+            key.mFirst.mPrevForObserver = connection;
+        }
+        key.mFirst = connection;
+        connection.mNext = mFirst;
+        if (mFirst != null) {
+            mFirst.mPrev = connection;
+        }
+        mFirst = connection;
+        ++mConnectionCount;
+        return connection;
+    }
+
+    private void disconnect(Connection connection, boolean removeFromObservable) {
+        connection.mConnected = false;
+        if (connection.mPrev != null) {
+            connection.mPrev.mNext = connection.mNext;
+        } else {
+            mFirst = connection.mNext;
+        }
+        if (connection.mNext != null) {
+            connection.mNext.mPrev = connection.mPrev;
+        }
+        connection.mPrev = null;
+        connection.mNext = null;
+        --mConnectionCount;
+
+        final ObserverKey key = connection.mKey;
+        if (connection.mPrevForObserver != null) {
+            connection.mPrevForObserver.mNextForObserver = connection.mNextForObserver;
+        } else {
+            key.mFirst = connection.mNextForObserver;
+        }
+        if (connection.mNextForObserver != null) {
+            connection.mNextForObserver.mPrevForObserver = connection.mPrevForObserver;
+        }
+        connection.mPrevForObserver = null;
+        connection.mNextForObserver = null;
+        if (key.mFirst == null) {
+            mObservers.remove(key);
+        }
+
+        if (removeFromObservable) {
+            final Observable observable = connection.mObservable.get();
+            final Observer observer = key.get();
+            if (observable != null && observer != null) {
+                observable.removeObserver(observer);
+            }
+        }
+        connection.mObserver = null;
+    }
+
+    /**
+     * Drop the connections of observers that were garbage collected, the observables already forgot them.
+     */
+    private void expungeCollected() {
+        Reference<? extends Observer> collected;
+        while ((collected = mCollectedObservers.poll()) != null) {
+            final ObserverKey key = (ObserverKey) collected;
+            while (key.mFirst != null) {
+                disconnect(key.mFirst, false);
+            }
         }
-        observables.add(observable);
     }
 
     /**
      * Remove the hard reference to this observer.
      * This does not remove this observer from the observable since the observable only keeps a weak reference to the observer
      * which will be cleaned up automatically when the observer is garbage collected.
+     * Use {@link Connection#disconnect()} to also remove it from the observable.
+     *
+     * @return true if the observer was connected
      */
-    public boolean remove(Observer observer) {
-        return mObservers.remove(observer) != null;
+    public boolean remove(@Nullable Observer observer) {
+        if (observer == null) {
+            return false;
+        }
+        expungeCollected();
+        final ObserverKey key = mObservers.get(new ObserverKey(observer, null));
+        if (key == null) {
+            return false;
+        }
+        while (key.mFirst != null) {
+            disconnect(key.mFirst, false);
+        }
+        return true;
     }
 
     /**
      * Remove all observers hard references which will allow them to be automatically removed from any
-     * observables that only keep weak references
+     * observables that only keep weak references, along with the connections of the scopes made from this connector.
      */
     public void removeObservers() {
-        //if we just cleared the map the observers would still be connected for some time until garbage collection ran
-        //which would allow for potential unexpected behaviour of old observers still being notified
-        //so get all the observers and remove them from each of their observables
-        Set<Observer> observers = mObservers.keySet();
-        for (Observer observer : observers) {
-            WeakReferenceSet<Observable> observables = mObservers.get(observer);
-            if (observables != null && observables.size() > 0) {
-                for (Observable observable : observables) {
-                    if (observable != null) {
-                        observable.removeObserver(observer);
-                    }
-                }
-            }
+        //if we just dropped the references the observers would still be connected for some time until garbage
+        //collection ran which would allow for potential unexpected behaviour of old observers still being notified
+        //so remove them from each of their observables
+        expungeCollected();
+        while (mFirst != null) {
+            disconnect(mFirst, true);
         }
 
-        //now we can just simply clear it
-        mObservers.clear();
+        for (int i = mScopes.size() - 1; i >= 0; --i) {
+            final ObserveConnector scope = mScopes.get(i).get();
+            if (scope != null) {
+                scope.removeObservers();
+            } else {
+                mScopes.remove(i);
+            }
+        }
     }
 }
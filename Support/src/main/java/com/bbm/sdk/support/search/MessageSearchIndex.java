@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.search;
+
+import android.support.annotation.NonNull;
+import android.support.v4.util.AtomicFile;
+
+import com.bbm.sdk.support.search.SearchTerms.Postings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Incremental full text index of chat messages across all chats.
+ * This is an inverted index from each word to the messages containing it, words are split and normalized by
+ * {@link SearchTerms} so case and accents are ignored. The words are kept sorted so that
+ * every query word also matches the words it is a prefix of ("choc" finds "chocolate").
+ * A message matches when it contains all the query words, hits are ranked by how rare the matched words are
+ * with newer messages first when scores are equal.
+ * Updating a message marks its old entry deleted and adds a new one. The index is compacted once there are at least
+ * COMPACT_MIN_DELETED (1000) deleted entries and they make up half of it. Saving leaves the deleted entries out of
+ * the file but doesn't compact the index in memory, a loaded index starts without them.
+ * All methods are thread safe.
+ */
+public class MessageSearchIndex {
+
+    //2 when words started being saved without accents
+    private static final int FILE_VERSION = 2;
+    //below this many deleted entries compacting isn't worth the rebuild
+    private static final int COMPACT_MIN_DELETED = 1000;
+
+    /**
+     * A message that matched a query.
+     */
+    public static final class SearchHit {
+        public final String chatId;
+        public final long messageId;
+        public final long timestamp;
+        public final float score;
+
+        SearchHit(String chatId, long messageId, long timestamp, float score) {
+            this.chatId = chatId;
+            this.messageId = messageId;
+            this.timestamp = timestamp;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return "SearchHit{chatId=" + chatId + ", messageId=" + messageId + ", score=" + score + "}";
+        }
+    }
+
+    /**
+     * Message id to document lookup for one chat. Message ids mostly arrive in increasing order so this is a
+     * sorted array with binary search rather than a map of boxed longs.
+     */
+    private static final class ChatDocs {
+        final int chatIndex;
+        long[] messageIds = new long[4];
+        int[] docs = new int[4];
+        int size;
+
+        ChatDocs(int chatIndex) {
+            this.chatIndex = chatIndex;
+        }
+
+        int find(long messageId) {
+            int pos = Arrays.binarySearch(messageIds, 0, size, messageId);
+            return pos >= 0 ? docs[pos] : -1;
+        }
+
+        void put(long messageId, int doc) {
+            int pos = Arrays.binarySearch(messageIds, 0, size, messageId);
+            if (pos >= 0) {
+                docs[pos] = doc;
+                return;
+            }
+            pos = -pos - 1;
+            if (size == messageIds.length) {
+                messageIds = Arrays.copyOf(messageIds, size * 2);
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            System.arraycopy(messageIds, pos, messageIds, pos + 1, size - pos);
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            messageIds[pos] = messageId;
+            docs[pos] = doc;
+            ++size;
+        }
+
+        int remove(long messageId) {
+            int pos = Arrays.binarySearch(messageIds, 0, size, messageId);
+            if (pos < 0) {
+                return -1;
+            }
+            int doc = docs[pos];
+            System.arraycopy(messageIds, pos + 1, messageIds, pos, size - pos - 1);
+            System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+            --size;
+            return doc;
+        }
+    }
+
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+    private final HashMap<String, ChatDocs> mChats = new HashMap<>();
+    private final ArrayList<String> mChatIds = new ArrayList<>();
+
+    //per document data, indexed by document number
+    private int[] mDocChat = new int[16];
+    private long[] mDocMessageId = new long[16];
+    private long[] mDocTimestamp = new long[16];
+    private int mDocCount;
+    private final BitSet mDeleted = new BitSet();
+    private int mDeletedCount;
+
+    //scratch space for queries, the generation avoids clearing it between queries
+    private int[] mQueryGeneration = new int[0];
+    private int[] mQueryMatched = new int[0];
+    private float[] mQueryScore = new float[0];
+    private float[] mQueryWordScore = new float[0];
+    private int mGeneration;
+
+    /**
+     * Add or replace the indexed text of a message.
+     *
+     * @param timestamp used to rank newer messages first
+     */
+    public synchronized void put(@NonNull String chatId, long messageId, long timestamp, String text) {
+        ChatDocs chat = mChats.get(chatId);
+        if (chat == null) {
+            chat = new ChatDocs(mChatIds.size());
+            mChatIds.add(chatId);
+            mChats.put(chatId, chat);
+        }
+        deleteDoc(chat.find(messageId));
+
+        List<String> tokens = SearchTerms.tokenize(text);
+        if (tokens.isEmpty()) {
+            chat.remove(messageId);
+            compactIfNeeded();
+            return;
+        }
+
+        int doc = addDoc(chat.chatIndex, messageId, timestamp);
+        chat.put(messageId, doc);
+        //each word is only recorded once per message
+        Collections.sort(tokens);
+        String previous = null;
+        for (String token : tokens) {
+            if (!token.equals(previous)) {
+                Postings postings = mTerms.get(token);
+                if (postings == null) {
+                    postings = new Postings();
+                    mTerms.put(token, postings);
+                }
+                postings.add(doc);
+                previous = token;
+            }
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove a message from the index
+     */
+    public synchronized void remove(@NonNull String chatId, long messageId) {
+        ChatDocs chat = mChats.get(chatId);
+        if (chat != null) {
+            deleteDoc(chat.remove(messageId));
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Remove all of the messages in a chat, for example when the chat is left
+     */
+    public synchronized void removeChat(@NonNull String chatId) {
+        ChatDocs chat = mChats.get(chatId);
+        if (chat != null) {
+            for (int i = 0; i < chat.size; ++i) {
+                deleteDoc(chat.docs[i]);
+            }
+            chat.size = 0;
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Remove the messages of a chat with ids outside of [firstMessageId, endMessageId), used when older messages
+     * have been deleted from the chat.
+     */
+    public synchronized void retainRange(@NonNull String chatId, long firstMessageId, long endMessageId) {
+        ChatDocs chat = mChats.get(chatId);
+        if (chat == null) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < chat.size; ++i) {
+            long messageId = chat.messageIds[i];
+            if (messageId >= firstMessageId && messageId < endMessageId) {
+                chat.messageIds[kept] = messageId;
+                chat.docs[kept] = chat.docs[i];
+                ++kept;
+            } else {
+                deleteDoc(chat.docs[i]);
+            }
+        }
+        chat.size = kept;
+        compactIfNeeded();
+    }
+
+    /**
+     * @return true if the message is in the index
+     */
+    public synchronized boolean contains(@NonNull String chatId, long messageId) {
+        ChatDocs chat = mChats.get(chatId);
+        return chat != null && chat.find(messageId) >= 0;
+    }
+
+    /**
+     * @return the number of messages in the index
+     */
+    public synchronized int size() {
+        return mDocCount - mDeletedCount;
+    }
+
+    private int addDoc(int chatIndex, long messageId, long timestamp) {
+        if (mDocCount == mDocChat.length) {
+            int capacity = mDocCount * 2;
+            mDocChat = Arrays.copyOf(mDocChat, capacity);
+            mDocMessageId = Arrays.copyOf(mDocMessageId, capacity);
+            mDocTimestamp = Arrays.copyOf(mDocTimestamp, capacity);
+        }
+        mDocChat[mDocCount] = chatIndex;
+        mDocMessageId[mDocCount] = messageId;
+        mDocTimestamp[mDocCount] = timestamp;
+        return mDocCount++;
+    }
+
+    private void deleteDoc(int doc) {
+        if (doc >= 0 && !mDeleted.get(doc)) {
+            mDeleted.set(doc);
+            ++mDeletedCount;
+        }
+    }
+
+    /**
+     * @return the number of deleted entries still taking up space in the index
+     */
+    synchronized int getDeletedCount() {
+        return mDeletedCount;
+    }
+
+    private void compactIfNeeded() {
+        if (mDeletedCount >= COMPACT_MIN_DELETED && mDeletedCount * 2 >= mDocCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Drop the deleted entries, documents are renumbered without the gaps like {@link #write(OutputStream)} does.
+     */
+    private void compact() {
+        int[] renumbered = new int[mDocCount];
+        int live = 0;
+        for (int doc = 0; doc < mDocCount; ++doc) {
+            if (mDeleted.get(doc)) {
+                renumbered[doc] = -1;
+            } else {
+                mDocChat[live] = mDocChat[doc];
+                mDocMessageId[live] = mDocMessageId[doc];
+                mDocTimestamp[live] = mDocTimestamp[doc];
+                renumbered[doc] = live++;
+            }
+        }
+
+        Iterator<Postings> terms = mTerms.values().iterator();
+        while (terms.hasNext()) {
+            Postings postings = terms.next();
+            postings.renumber(renumbered);
+            if (postings.size() == 0) {
+                //the word is no longer in any message
+                terms.remove();
+            }
+        }
+
+        //the chats only refer to live documents
+        for (ChatDocs chat : mChats.values()) {
+            for (int i = 0; i < chat.size; ++i) {
+                chat.docs[i] = renumbered[chat.docs[i]];
+            }
+        }
+
+        mDocCount = live;
+        mDeleted.clear();
+        mDeletedCount = 0;
+    }
+
+    /**
+     * Find the messages containing every word in the query, treating each word as a prefix.
+     *
+     * @param maxHits the maximum number of hits to return
+     * @return the best hits, best first
+     */
+    @NonNull
+    public synchronized List<SearchHit> search(String query, int maxHits) {
+        List<String> tokens = SearchTerms.tokenize(query);
+        if (tokens.isEmpty() || maxHits <= 0) {
+            return Collections.emptyList();
+        }
+
+        //collect the words each query word is a prefix of
+        final int tokenCount = tokens.size();
+        ArrayList<List<Postings>> matches = new ArrayList<>(tokenCount);
+        final long[] totals = new long[tokenCount];
+        Integer[] order = new Integer[tokenCount];
+        for (int t = 0; t < tokenCount; ++t) {
+            String token = tokens.get(t);
+            ArrayList<Postings> termPostings = new ArrayList<>();
+            for (Map.Entry<String, Postings> entry : SearchTerms.prefixRange(mTerms, token).entrySet()) {
+                termPostings.add(entry.getValue());
+                totals[t] += entry.getValue().size();
+            }
+            if (termPostings.isEmpty()) {
+                //one of the words is not in any message
+                return Collections.emptyList();
+            }
+            matches.add(termPostings);
+            order[t] = t;
+        }
+
+        //start with the rarest word, after that only documents matched by all previous words are considered
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(totals[a], totals[b]);
+            }
+        });
+
+        ensureQueryCapacity();
+        final int generation = ++mGeneration;
+        final int liveDocs = Math.max(1, mDocCount - mDeletedCount);
+        int candidates = 0;
+        for (int pass = 0; pass < tokenCount; ++pass) {
+            for (Postings postings : matches.get(order[pass])) {
+                final float idf = (float) Math.log(1 + (double) liveDocs / postings.size());
+                for (int i = 0; i < postings.size(); ++i) {
+                    final int doc = postings.get(i);
+                    if (pass == 0) {
+                        if (mQueryGeneration[doc] != generation) {
+                            if (mDeleted.get(doc)) {
+                                continue;
+                            }
+                            mQueryGeneration[doc] = generation;
+                            mQueryMatched[doc] = 0;
+                            mQueryScore[doc] = 0;
+                            ++candidates;
+                        }
+                    } else if (mQueryGeneration[doc] != generation || mQueryMatched[doc] < pass) {
+                        //didn't match all the previous words
+                        continue;
+                    }
+
+                    //each query word counts once, with the rarest of its words found in the message
+                    if (mQueryMatched[doc] == pass) {
+                        mQueryMatched[doc] = pass + 1;
+                        mQueryScore[doc] += idf;
+                        mQueryWordScore[doc] = idf;
+                    } else if (idf > mQueryWordScore[doc]) {
+                        mQueryScore[doc] += idf - mQueryWordScore[doc];
+                        mQueryWordScore[doc] = idf;
+                    }
+                }
+            }
+        }
+        if (candidates == 0) {
+            return Collections.emptyList();
+        }
+
+        //keep the best maxHits, the worst of them at the head of the queue
+        PriorityQueue<Integer> best = new PriorityQueue<>(maxHits + 1, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareDocs(a, b);
+            }
+        });
+        for (Postings postings : matches.get(order[0])) {
+            //newest first, older documents with the same score are then rejected without touching the queue
+            for (int i = postings.size() - 1; i >= 0; --i) {
+                final int doc = postings.get(i);
+                if (mQueryGeneration[doc] == generation && mQueryMatched[doc] == tokenCount) {
+                    //mark it so a document matched by several words of the first token is only added once
+                    mQueryMatched[doc] = -1;
+                    if (best.size() < maxHits) {
+                        best.add(doc);
+                    } else if (compareDocs(doc, best.peek()) > 0) {
+                        best.poll();
+                        best.add(doc);
+                    }
+                }
+            }
+        }
+
+        SearchHit[] hits = new SearchHit[best.size()];
+        for (int i = hits.length - 1; i >= 0; --i) {
+            int doc = best.poll();
+            hits[i] = new SearchHit(mChatIds.get(mDocChat[doc]), mDocMessageId[doc], mDocTimestamp[doc], mQueryScore[doc]);
+        }
+        return Arrays.asList(hits);
+    }
+
+    //orders by score, then by timestamp so newer messages rank higher
+    private int compareDocs(int a, int b) {
+        int result = Float.compare(mQueryScore[a], mQueryScore[b]);
+        return result != 0 ? result : Long.compare(mDocTimestamp[a], mDocTimestamp[b]);
+    }
+
+    private void ensureQueryCapacity() {
+        if (mQueryGeneration.length < mDocCount) {
+            int capacity = Math.max(mDocCount, mQueryGeneration.length * 2);
+            mQueryGeneration = Arrays.copyOf(mQueryGeneration, capacity);
+            mQueryMatched = Arrays.copyOf(mQueryMatched, capacity);
+            mQueryScore = Arrays.copyOf(mQueryScore, capacity);
+            mQueryWordScore = Arrays.copyOf(mQueryWordScore, capacity);
+        }
+    }
+
+    /**
+     * Save the index to a file, a failed write leaves the previous copy intact.
+     */
+    public void save(@NonNull File file) throws IOException {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream stream = atomicFile.startWrite();
+        try {
+            write(new BufferedOutputStream(stream));
+            atomicFile.finishWrite(stream);
+        } catch (IOException e) {
+            atomicFile.failWrite(stream);
+            throw e;
+        }
+    }
+
+    /**
+     * Replace the contents of this index with a saved one
+     *
+     * @throws java.io.FileNotFoundException if the index was never saved
+     */
+    public void load(@NonNull File file) throws IOException {
+        InputStream in = new BufferedInputStream(new AtomicFile(file).openRead());
+        try {
+            read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the live messages (deleted entries are left out) followed by the words and their postings.
+     * Document numbers are renumbered without the gaps of deleted entries, postings are delta encoded.
+     */
+    synchronized void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(FILE_VERSION);
+        out.writeInt(mChatIds.size());
+        for (String chatId : mChatIds) {
+            out.writeUTF(chatId);
+        }
+
+        int[] renumbered = new int[mDocCount];
+        int live = 0;
+        for (int doc = 0; doc < mDocCount; ++doc) {
+            renumbered[doc] = mDeleted.get(doc) ? -1 : live++;
+        }
+        out.writeInt(live);
+        for (int doc = 0; doc < mDocCount; ++doc) {
+            if (renumbered[doc] >= 0) {
+                out.writeInt(mDocChat[doc]);
+                out.writeLong(mDocMessageId[doc]);
+                out.writeLong(mDocTimestamp[doc]);
+            }
+        }
+
+        out.writeInt(mTerms.size());
+        for (Map.Entry<String, Postings> entry : mTerms.entrySet()) {
+            Postings postings = entry.getValue();
+            int count = 0;
+            for (int i = 0; i < postings.size(); ++i) {
+                if (renumbered[postings.get(i)] >= 0) {
+                    ++count;
+                }
+            }
+            out.writeUTF(entry.getKey());
+            out.writeInt(count);
+            int previous = 0;
+            for (int i = 0; i < postings.size(); ++i) {
+                int doc = renumbered[postings.get(i)];
+                if (doc >= 0) {
+                    writeVarInt(out, doc - previous);
+                    previous = doc;
+                }
+            }
+        }
+        out.flush();
+    }
+
+    synchronized void read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int version = in.readInt();
+        if (version != FILE_VERSION) {
+            throw new IOException("Unsupported search index version " + version);
+        }
+
+        mTerms.clear();
+        mChats.clear();
+        mChatIds.clear();
+        mDeleted.clear();
+        mDeletedCount = 0;
+        mDocCount = 0;
+
+        int chatCount = in.readInt();
+        for (int i = 0; i < chatCount; ++i) {
+            String chatId = in.readUTF();
+            mChatIds.add(chatId);
+            mChats.put(chatId, new ChatDocs(i));
+        }
+
+        int docCount = in.readInt();
+        mDocChat = new int[Math.max(16, docCount)];
+        mDocMessageId = new long[mDocChat.length];
+        mDocTimestamp = new long[mDocChat.length];
+        for (int i = 0; i < docCount; ++i) {
+            int chatIndex = in.readInt();
+            long messageId = in.readLong();
+            int doc = addDoc(chatIndex, messageId, in.readLong());
+            mChats.get(mChatIds.get(chatIndex)).put(messageId, doc);
+        }
+
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; ++i) {
+            String term = in.readUTF();
+            int count = in.readInt();
+            if (count == 0) {
+                continue;
+            }
+            int[] docs = new int[count];
+            int doc = 0;
+            for (int j = 0; j < count; ++j) {
+                doc += readVarInt(in);
+                docs[j] = doc;
+            }
+            mTerms.put(term, new Postings(docs, count));
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.search;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.bbmds.ChatMessage;
+import com.bbm.sdk.bbmds.internal.Existence;
+import com.bbm.sdk.bbmds.internal.lists.IncrementalListObserver;
+import com.bbm.sdk.support.reactive.ChatMessageList;
+import com.bbm.sdk.support.util.Logger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link MessageSearchIndex} up to date with the messages of the watched chats.
+ * Each watched chat is followed with a {@link ChatMessageList} and new, changed and removed messages are applied to
+ * the index as the list reports them, so the index never needs to be rebuilt.
+ * The index is loaded from and saved to a file on a background thread, saves are delayed so a burst of new messages
+ * only writes the file once. While the index is loading the watched chats wait and are indexed once it has loaded.
+ * This should be used from the main thread.
+ */
+public class MessageSearchIndexer {
+
+    private static final long SAVE_DELAY_MS = 5000;
+
+    private final MessageSearchIndex mIndex;
+    private final File mFile;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mIoExecutor = Executors.newSingleThreadExecutor();
+    private final HashMap<String, ChatWatcher> mWatchers = new HashMap<>();
+    private boolean mSaveScheduled;
+    private boolean mLoading;
+    //chats removed while the index was loading, removed again once it has loaded
+    private final HashSet<String> mRemovedWhileLoading = new HashSet<>();
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSaveScheduled = false;
+            mIoExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mIndex.save(mFile);
+                    } catch (IOException e) {
+                        Logger.e(e, "Failed to save search index to " + mFile);
+                    }
+                }
+            });
+        }
+    };
+
+    private final Runnable mLoadedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mLoading = false;
+            for (String chatId : mRemovedWhileLoading) {
+                mIndex.removeChat(chatId);
+            }
+            if (!mRemovedWhileLoading.isEmpty()) {
+                mRemovedWhileLoading.clear();
+                scheduleSave();
+            }
+            for (ChatWatcher watcher : mWatchers.values()) {
+                watcher.onIndexLoaded();
+            }
+        }
+    };
+
+    /**
+     * Follows the messages of one chat. The list only holds weak references to its observers so this
+     * object keeps the strong reference.
+     */
+    private final class ChatWatcher implements IncrementalListObserver {
+        final String mChatId;
+        final ChatMessageList mList;
+        //set when messages were changed or removed while the index was loading
+        boolean mMissedChanges;
+
+        ChatWatcher(String chatId) {
+            mChatId = chatId;
+            mList = new ChatMessageList(chatId);
+        }
+
+        @Override
+        public void onItemsInserted(int fromPosition, int itemCount) {
+            if (!mLoading) {
+                indexRange(fromPosition, itemCount, false);
+            }
+        }
+
+        @Override
+        public void onItemsRemoved(int fromPosition, int itemCount) {
+            if (mLoading) {
+                mMissedChanges = true;
+                return;
+            }
+            for (int i = fromPosition; i < fromPosition + itemCount; ++i) {
+                mIndex.remove(mChatId, mList.getId(i));
+            }
+            scheduleSave();
+        }
+
+        @Override
+        public void onItemsChanged(int fromPosition, int itemCount) {
+            //a message has loaded or been recalled
+            if (mLoading) {
+                mMissedChanges = true;
+                return;
+            }
+            indexRange(fromPosition, itemCount, true);
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            if (mLoading) {
+                //done once the index has loaded
+                return;
+            }
+            //the first message moved so older messages have been deleted
+            mIndex.retainRange(mChatId, mList.getId(0), mList.getId(mList.size()));
+            indexRange(0, mList.size(), false);
+        }
+
+        /**
+         * Index the messages in the range. Messages already in the index are skipped unless they changed, this
+         * avoids loading every message of the chat again after the index was loaded from the file.
+         */
+        void indexRange(int fromPosition, int itemCount, boolean changed) {
+            boolean modified = false;
+            for (int i = fromPosition; i < fromPosition + itemCount; ++i) {
+                if (!changed && mIndex.contains(mChatId, mList.getId(i))) {
+                    continue;
+                }
+                ChatMessage message = mList.get(i);
+                if (message.exists == Existence.MAYBE) {
+                    //onItemsChanged will be called once it is loaded
+                    continue;
+                }
+                if (message.exists == Existence.YES && ChatMessage.Tag.Text.equals(message.tag)) {
+                    mIndex.put(mChatId, message.messageId, message.timestamp, message.content);
+                } else {
+                    mIndex.remove(mChatId, mList.getId(i));
+                }
+                modified = true;
+            }
+            if (modified) {
+                scheduleSave();
+            }
+        }
+
+        /**
+         * Index the chat after the index has loaded.
+         */
+        void onIndexLoaded() {
+            if (mMissedChanges) {
+                //the loaded copy may still have messages that were changed or removed since, index the chat again
+                mMissedChanges = false;
+                mIndex.removeChat(mChatId);
+                scheduleSave();
+            }
+            if (mList.isInitialized()) {
+                onDataSetChanged();
+            }
+        }
+    }
+
+    /**
+     * @param file where the index is saved between runs
+     */
+    public MessageSearchIndexer(@NonNull File file) {
+        this(new MessageSearchIndex(), file);
+    }
+
+    MessageSearchIndexer(@NonNull MessageSearchIndex index, @NonNull File file) {
+        mIndex = index;
+        mFile = file;
+    }
+
+    /**
+     * Load the saved index in the background, chats can be watched before this completes and are indexed once it has.
+     */
+    public void load() {
+        mLoading = true;
+        mIoExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mIndex.load(mFile);
+                    Logger.d("Loaded search index with " + mIndex.size() + " messages");
+                } catch (FileNotFoundException e) {
+                    //nothing saved yet
+                } catch (IOException e) {
+                    //start over, the watched chats will index their messages again
+                    Logger.w(e, "Failed to load search index from " + mFile);
+                }
+                mHandler.post(mLoadedRunnable);
+            }
+        });
+    }
+
+    /**
+     * Start indexing the messages in a chat.
+     */
+    public void watchChat(@NonNull String chatId) {
+        if (mWatchers.containsKey(chatId)) {
+            return;
+        }
+        ChatWatcher watcher = new ChatWatcher(chatId);
+        mWatchers.put(chatId, watcher);
+        watcher.mList.addIncrementalListObserver(watcher);
+        watcher.mList.start();
+        if (!mLoading && watcher.mList.isInitialized()) {
+            watcher.indexRange(0, watcher.mList.size(), false);
+        }
+    }
+
+    /**
+     * Stop following a chat, its messages stay searchable.
+     */
+    public void unwatchChat(@NonNull String chatId) {
+        ChatWatcher watcher = mWatchers.remove(chatId);
+        if (watcher != null) {
+            watcher.mList.stop();
+            watcher.mList.removeIncrementalListObserver(watcher);
+        }
+    }
+
+    /**
+     * Stop following a chat and remove its messages from the index, for example after leaving the chat.
+     */
+    public void removeChat(@NonNull String chatId) {
+        unwatchChat(chatId);
+        if (mLoading) {
+            //the loading index would bring the messages back
+            mRemovedWhileLoading.add(chatId);
+            return;
+        }
+        mIndex.removeChat(chatId);
+        scheduleSave();
+    }
+
+    /**
+     * Search the messages of all chats.
+     *
+     * @see MessageSearchIndex#search(String, int)
+     */
+    @NonNull
+    public List<MessageSearchIndex.SearchHit> search(String query, int maxHits) {
+        return mIndex.search(query, maxHits);
+    }
+
+    /**
+     * Stop all watched chats and write any pending changes, should be called when the app no longer needs search.
+     */
+    public void stop() {
+        for (String chatId : mWatchers.keySet().toArray(new String[0])) {
+            unwatchChat(chatId);
+        }
+        if (mSaveScheduled) {
+            mHandler.removeCallbacks(mSaveRunnable);
+            mSaveRunnable.run();
+        }
+        mIoExecutor.shutdown();
+    }
+
+    private void scheduleSave() {
+        if (!mSaveScheduled) {
+            mSaveScheduled = true;
+            mHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+        }
+    }
+}
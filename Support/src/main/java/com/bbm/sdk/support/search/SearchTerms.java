@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The words and postings shared by the search indexes, so text is split and matched the same way in all of them.
+ * Words are lower case with accents removed, so "zoe" finds "Zoë", and a query word matches the words it is a prefix of.
+ */
+public final class SearchTerms {
+
+    //longer words are cut, query words are prefixes and nobody types one longer than this
+    public static final int MAX_TERM_LENGTH = 32;
+
+    /**
+     * The documents containing a word, as a growable array of document numbers.
+     * Documents appended in increasing order stay in order unless {@link #remove(int)} is used.
+     */
+    public static final class Postings {
+        private int[] mDocs;
+        private int mSize;
+
+        public Postings() {
+            mDocs = new int[2];
+        }
+
+        /**
+         * @param docs the document numbers, the array is used as is
+         * @param size the number of documents in docs
+         */
+        public Postings(@NonNull int[] docs, int size) {
+            mDocs = docs;
+            mSize = size;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public int get(int index) {
+            return mDocs[index];
+        }
+
+        public void add(int doc) {
+            if (mSize == mDocs.length) {
+                mDocs = Arrays.copyOf(mDocs, Math.max(2, mSize * 2));
+            }
+            mDocs[mSize++] = doc;
+        }
+
+        /**
+         * Remove a document by moving the last one into its place, this doesn't keep the order.
+         */
+        public void remove(int doc) {
+            for (int i = 0; i < mSize; ++i) {
+                if (mDocs[i] == doc) {
+                    mDocs[i] = mDocs[--mSize];
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Replace each document with its new number, keeping the order.
+         *
+         * @param renumbered the new number of each document, or -1 to drop it
+         */
+        public void renumber(@NonNull int[] renumbered) {
+            int kept = 0;
+            for (int i = 0; i < mSize; ++i) {
+                final int doc = renumbered[mDocs[i]];
+                if (doc >= 0) {
+                    mDocs[kept++] = doc;
+                }
+            }
+            mSize = kept;
+        }
+    }
+
+    private SearchTerms() {
+    }
+
+    /**
+     * Lower case the text and remove accents, "Zoë" becomes "zoe".
+     */
+    @NonNull
+    public static String normalize(@Nullable String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; ++i) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+
+        //split letters from their accents, then drop the accents
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        final StringBuilder normalized = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ++i) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Split text into normalized words of letters and digits, "Mary-Jo O'Brien" becomes mary, jo, o, brien.
+     */
+    @NonNull
+    public static List<String> tokenize(@Nullable String text) {
+        final String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); ++i) {
+            final boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the words of the index that start with the prefix, and their postings
+     */
+    @NonNull
+    public static SortedMap<String, Postings> prefixRange(@NonNull TreeMap<String, Postings> terms,
+                                                          @NonNull String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+}
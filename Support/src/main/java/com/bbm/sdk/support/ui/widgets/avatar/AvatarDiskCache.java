@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.bbm.sdk.support.util.IOUtils;
+import com.bbm.sdk.support.util.Logger;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size capped cache of downloaded avatar images in a directory, the least recently used files are deleted
+ * when the total size goes over the cap.
+ * The encoded images are kept rather than the decoded bitmaps, so one entry serves any requested size.
+ * The directory is read on first use, all methods are called from background threads.
+ */
+public class AvatarDiskCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    //file name -> file size, in access order
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(64, 0.75f, true);
+    private long mSize;
+    private boolean mLoaded;
+
+    /**
+     * @param directory the directory for the cache, only used by this cache
+     * @param maxBytes  the maximum total size of the cached files
+     */
+    public AvatarDiskCache(@NonNull File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached image for the url, or null if it isn't cached
+     */
+    @WorkerThread
+    @Nullable
+    public synchronized byte[] get(@NonNull String url) {
+        load();
+        final String name = fileName(url);
+        final Long length = mEntries.get(name);
+        if (length == null) {
+            return null;
+        }
+
+        final File file = new File(mDirectory, name);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            final byte[] data = new byte[length.intValue()];
+            in.readFully(data);
+            //Keep the order when the directory is read again
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            Logger.w(e, "AvatarDiskCache - failed to read " + file);
+            remove(name);
+            return null;
+        } finally {
+            IOUtils.safeClose(in);
+        }
+    }
+
+    /**
+     * Add the image to the cache, removing the least recently used images if needed.
+     */
+    @WorkerThread
+    public synchronized void put(@NonNull String url, @NonNull byte[] data) {
+        load();
+        if (data.length > mMaxBytes) {
+            return;
+        }
+
+        final String name = fileName(url);
+        final File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.close();
+            out = null;
+            //Rename so a partially written file is never read
+            if (!temp.renameTo(new File(mDirectory, name))) {
+                throw new IOException("Failed to rename " + temp);
+            }
+        } catch (IOException e) {
+            Logger.w(e, "AvatarDiskCache - failed to write " + temp);
+            IOUtils.safeClose(out);
+            temp.delete();
+            return;
+        }
+
+        final Long previous = mEntries.put(name, (long) data.length);
+        mSize += data.length - (previous != null ? previous : 0);
+        trim();
+    }
+
+    /**
+     * @return the total size of the cached images
+     */
+    public synchronized long getSize() {
+        load();
+        return mSize;
+    }
+
+    /**
+     * @return the number of cached images
+     */
+    public synchronized int getCount() {
+        load();
+        return mEntries.size();
+    }
+
+    /**
+     * Delete all cached images
+     */
+    @WorkerThread
+    public synchronized void clear() {
+        load();
+        for (String name : mEntries.keySet()) {
+            new File(mDirectory, name).delete();
+        }
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    private void remove(String name) {
+        final Long length = mEntries.remove(name);
+        if (length != null) {
+            mSize -= length;
+        }
+        new File(mDirectory, name).delete();
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.getValue();
+            new File(mDirectory, eldest.getKey()).delete();
+        }
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Logger.w("AvatarDiskCache - unable to create " + mDirectory);
+            return;
+        }
+
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        //Oldest first, so the access order continues from the previous run
+        final long[] modified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+
+        for (Integer i : order) {
+            final File file = files[i];
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                //Left over from an interrupted write
+                file.delete();
+            } else {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+        trim();
+    }
+
+    private static String fileName(String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            //Half the digest is plenty to keep urls apart
+            for (int i = 0; i < digest.length / 2; ++i) {
+                name.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //SHA-256 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+}
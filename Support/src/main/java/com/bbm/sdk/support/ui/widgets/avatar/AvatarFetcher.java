@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+
+/**
+ * Network layer used by the {@link AvatarPipeline} to download avatar images.
+ * The default is {@link HttpAvatarFetcher}, an app can provide its own to add authentication or use another http client.
+ */
+public interface AvatarFetcher {
+
+    /**
+     * Download the encoded image, this is called on a background thread.
+     *
+     * @param url the avatar url from {@link com.bbm.sdk.support.identity.user.AppUser#getAvatarUrl()}
+     * @return the encoded image data
+     * @throws IOException if the image could not be downloaded
+     */
+    @WorkerThread
+    @NonNull
+    byte[] fetch(@NonNull String url) throws IOException;
+}
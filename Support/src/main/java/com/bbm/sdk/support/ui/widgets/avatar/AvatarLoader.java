@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.widget.ImageView;
+
+import com.bbm.sdk.support.R;
+import com.bbm.sdk.support.util.Clock;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows avatar images in ImageViews, loaded through an {@link AvatarPipeline} of bitmaps.
+ * Views are expected to be recycled, call {@link #cancel(ImageView)} when a view no longer shows the avatar so
+ * a late load doesn't replace what the view shows next.
+ */
+public final class AvatarLoader {
+
+    private static final String DISK_CACHE_DIRECTORY = "avatars";
+    private static final long DISK_CACHE_BYTES = 10 * 1024 * 1024;
+    //Two downloads at a time, decoding the small avatars is quick
+    private static final int LOAD_THREADS = 2;
+
+    private static AvatarLoader sInstance;
+
+    private final AvatarPipeline<Bitmap> mPipeline;
+
+    /**
+     * What a view is showing, kept in the view tag
+     */
+    private static final class Binding {
+        final String mUrl;
+        final int mSize;
+        AvatarPipeline<Bitmap>.Request mRequest;
+        boolean mFailed;
+
+        Binding(String url, int size) {
+            mUrl = url;
+            mSize = size;
+        }
+    }
+
+    /**
+     * Decodes to the smallest power of 2 sample size that covers the avatar size, then scales down to the size.
+     */
+    static final class BitmapDecoder implements AvatarPipeline.Decoder<Bitmap> {
+        @Nullable
+        @Override
+        public Bitmap decode(@NonNull byte[] data, int size) {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, size);
+            options.inJustDecodeBounds = false;
+            final Bitmap sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (sampled == null) {
+                return null;
+            }
+
+            //The avatar is cropped to fill the view, so scale the shorter side to the size
+            final float scale = (float) size / Math.min(sampled.getWidth(), sampled.getHeight());
+            if (scale >= 1) {
+                return sampled;
+            }
+            final Bitmap scaled = Bitmap.createScaledBitmap(sampled, Math.max(1, Math.round(sampled.getWidth() * scale)),
+                    Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+            if (scaled != sampled) {
+                sampled.recycle();
+            }
+            return scaled;
+        }
+
+        @Override
+        public int sizeOf(@NonNull Bitmap image) {
+            return image.getAllocationByteCount();
+        }
+    }
+
+    /**
+     * @return the largest power of 2 sample size that keeps both sides at least the requested size
+     */
+    static int calculateInSampleSize(int width, int height, int size) {
+        int inSampleSize = 1;
+        if (size <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= size && height / (inSampleSize * 2) >= size) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * @return the loader, created on first use with an {@link HttpAvatarFetcher}
+     */
+    public static synchronized AvatarLoader getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new AvatarLoader(context.getApplicationContext(), new HttpAvatarFetcher());
+        }
+        return sInstance;
+    }
+
+    private AvatarLoader(Context context, AvatarFetcher fetcher) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        final Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                mainHandler.post(command);
+            }
+        };
+        final AvatarDiskCache diskCache = new AvatarDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_BYTES);
+        //Avatars are small, 1/32 of the heap holds a screen full many times over
+        final int memoryCacheBytes = (int) (Runtime.getRuntime().maxMemory() / 32);
+        mPipeline = new AvatarPipeline<>(fetcher, diskCache, new BitmapDecoder(), memoryCacheBytes,
+                Executors.newFixedThreadPool(LOAD_THREADS), mainExecutor, Clock.SYSTEM);
+    }
+
+    /**
+     * Replace the network layer, for example to add authentication to avatar requests.
+     */
+    public void setFetcher(@NonNull AvatarFetcher fetcher) {
+        mPipeline.setFetcher(fetcher);
+    }
+
+    /**
+     * @return the pipeline, for its cache statistics
+     */
+    @NonNull
+    public AvatarPipeline<Bitmap> getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Show the avatar in the view. The placeholder is shown until the avatar is loaded, or if it can't be loaded.
+     *
+     * @param view        the view to show the avatar in
+     * @param url         the avatar url, the placeholder is shown if this is empty
+     * @param size        the width and height of the view in pixels, the avatar is scaled down to this
+     * @param placeholder the image to show when there is no avatar
+     */
+    @MainThread
+    public void load(@NonNull final ImageView view, @Nullable String url, int size, @DrawableRes final int placeholder) {
+        Binding binding = (Binding) view.getTag(R.id.avatar_loader_binding);
+        if (binding != null) {
+            if (!binding.mFailed && binding.mUrl.equals(url) && binding.mSize == size) {
+                //Already showing or loading this avatar
+                return;
+            }
+            binding.mRequest.cancel();
+            view.setTag(R.id.avatar_loader_binding, null);
+        }
+
+        if (TextUtils.isEmpty(url)) {
+            view.setImageResource(placeholder);
+            return;
+        }
+
+        final Binding newBinding = new Binding(url, size);
+        view.setTag(R.id.avatar_loader_binding, newBinding);
+        newBinding.mRequest = mPipeline.load(url, size, new AvatarPipeline.Callback<Bitmap>() {
+            @Override
+            public void onLoaded(@NonNull Bitmap image) {
+                view.setImageBitmap(image);
+            }
+
+            @Override
+            public void onFailed() {
+                newBinding.mFailed = true;
+                view.setImageResource(placeholder);
+            }
+        });
+        if (!newBinding.mRequest.isDone()) {
+            view.setImageResource(placeholder);
+        }
+    }
+
+    /**
+     * Stop loading the avatar for the view, call when the view is recycled.
+     * The view keeps its current image.
+     */
+    @MainThread
+    public void cancel(@NonNull ImageView view) {
+        final Binding binding = (Binding) view.getTag(R.id.avatar_loader_binding);
+        if (binding != null) {
+            binding.mRequest.cancel();
+            view.setTag(R.id.avatar_loader_binding, null);
+        }
+    }
+
+    /**
+     * Drop the decoded avatars, call when the app is asked to trim memory.
+     */
+    @MainThread
+    public void clearMemory() {
+        mPipeline.clearMemory();
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads avatar images through a memory cache, then the {@link AvatarDiskCache}, then the {@link AvatarFetcher}.
+ * Images are decoded to the requested size in the background and kept in a size bounded LRU memory cache.
+ * Requests for the same url and size while it is loading share the one load, and a load stops at its next step
+ * once every request for it has been cancelled.
+ * <p>
+ * The type of the decoded image is left to the {@link Decoder}, {@link AvatarLoader} uses bitmaps.
+ * Apart from the {@link Decoder} and the {@link AvatarFetcher} everything runs on the main thread.
+ *
+ * @param <T> the type of the decoded image
+ */
+public class AvatarPipeline<T> {
+
+    /**
+     * How long after failing to load a url before it is tried again, so a broken avatar isn't requested on every bind
+     */
+    public static final long FAILURE_RETRY_MS = 60 * 1000;
+
+    /**
+     * Decodes the downloaded image data
+     */
+    public interface Decoder<T> {
+        /**
+         * @param data the encoded image
+         * @param size the width and height the image will be shown at, in pixels
+         * @return the image scaled down to about the size, or null if the data is not an image
+         */
+        @WorkerThread
+        @Nullable
+        T decode(@NonNull byte[] data, int size);
+
+        /**
+         * @return the number of bytes the image uses in the memory cache
+         */
+        int sizeOf(@NonNull T image);
+    }
+
+    /**
+     * Notified on the main thread when a request completes, unless the request was cancelled first
+     */
+    public interface Callback<T> {
+        void onLoaded(@NonNull T image);
+
+        void onFailed();
+    }
+
+    /**
+     * A request for an image, cancel it when the image is no longer needed.
+     */
+    public final class Request {
+        private final Job mJob;
+        private final Callback<T> mCallback;
+        private boolean mDone;
+
+        private Request(@Nullable Job job, @NonNull Callback<T> callback) {
+            mJob = job;
+            mCallback = callback;
+        }
+
+        /**
+         * @return true if the request completed or was cancelled
+         */
+        @MainThread
+        public boolean isDone() {
+            return mDone;
+        }
+
+        /**
+         * Stop waiting for the image, the callback is not called after this.
+         */
+        @MainThread
+        public void cancel() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            if (mJob != null) {
+                mJob.mWaiting.remove(this);
+                if (mJob.mWaiting.isEmpty()) {
+                    //Nobody else is waiting, the job stops at its next step unless it is requested again
+                    mJob.mCancelled = true;
+                }
+            }
+        }
+    }
+
+    private final class Job implements Runnable {
+        private final String mKey;
+        private final String mUrl;
+        private final int mSize;
+        private final ArrayList<Request> mWaiting = new ArrayList<>(1);
+        private volatile boolean mCancelled;
+
+        private Job(String key, String url, int size) {
+            mKey = key;
+            mUrl = url;
+            mSize = size;
+        }
+
+        @WorkerThread
+        @Override
+        public void run() {
+            T image = null;
+            boolean aborted = true;
+            try {
+                if (mCancelled) {
+                    return;
+                }
+                byte[] data = mDiskCache != null ? mDiskCache.get(mUrl) : null;
+                if (data != null) {
+                    mDiskHits.incrementAndGet();
+                } else {
+                    if (mCancelled) {
+                        return;
+                    }
+                    mNetworkFetches.incrementAndGet();
+                    data = mFetcher.fetch(mUrl);
+                    if (mDiskCache != null) {
+                        mDiskCache.put(mUrl, data);
+                    }
+                }
+                if (mCancelled) {
+                    return;
+                }
+                image = mDecoder.decode(data, mSize);
+                aborted = false;
+            } catch (Exception e) {
+                Logger.w(e, "AvatarPipeline - failed to load " + mUrl);
+                aborted = false;
+            } finally {
+                final T result = image;
+                final boolean wasAborted = aborted;
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        complete(Job.this, result, wasAborted);
+                    }
+                });
+            }
+        }
+    }
+
+    private volatile AvatarFetcher mFetcher;
+    private final AvatarDiskCache mDiskCache;
+    private final Decoder<T> mDecoder;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private final Clock mClock;
+
+    //url#size -> image, in access order
+    private final LinkedHashMap<String, T> mMemoryCache = new LinkedHashMap<>(64, 0.75f, true);
+    private final int mMemoryCacheMaxBytes;
+    private int mMemoryCacheBytes;
+
+    //url#size -> the job loading it
+    private final HashMap<String, Job> mJobs = new HashMap<>();
+    //url -> the time it last failed
+    private final HashMap<String, Long> mFailures = new HashMap<>();
+
+    private int mRequests;
+    private int mMemoryHits;
+    private int mCoalesced;
+    private final AtomicInteger mDiskHits = new AtomicInteger();
+    private final AtomicInteger mNetworkFetches = new AtomicInteger();
+
+    /**
+     * @param fetcher             downloads images that are not in the disk cache
+     * @param diskCache           the disk cache, or null to only cache in memory
+     * @param decoder             decodes the downloaded images
+     * @param memoryCacheMaxBytes the maximum total {@link Decoder#sizeOf(Object)} of the images kept in memory
+     * @param backgroundExecutor  runs the disk reads, downloads and decoding
+     * @param mainExecutor        runs the completion of each load on the main thread
+     * @param clock               used to expire failures
+     */
+    public AvatarPipeline(@NonNull AvatarFetcher fetcher, @Nullable AvatarDiskCache diskCache, @NonNull Decoder<T> decoder,
+                          int memoryCacheMaxBytes, @NonNull Executor backgroundExecutor, @NonNull Executor mainExecutor,
+                          @NonNull Clock clock) {
+        mFetcher = fetcher;
+        mDiskCache = diskCache;
+        mDecoder = decoder;
+        mMemoryCacheMaxBytes = memoryCacheMaxBytes;
+        mBackgroundExecutor = backgroundExecutor;
+        mMainExecutor = mainExecutor;
+        mClock = clock;
+    }
+
+    /**
+     * Replace the network layer, used for loads started after this call.
+     */
+    public void setFetcher(@NonNull AvatarFetcher fetcher) {
+        mFetcher = fetcher;
+    }
+
+    /**
+     * Load the image for the url at the size.
+     * If the image is in the memory cache, or the url failed recently, the callback is called before this returns.
+     *
+     * @param url      the avatar url
+     * @param size     the width and height the image will be shown at, in pixels
+     * @param callback notified when the image is loaded, unless the request is cancelled first
+     * @return the request, cancel it if the image is no longer needed
+     */
+    @MainThread
+    @NonNull
+    public Request load(@NonNull String url, int size, @NonNull Callback<T> callback) {
+        ++mRequests;
+        final String key = url + '#' + size;
+        final T cached = mMemoryCache.get(key);
+        if (cached != null) {
+            ++mMemoryHits;
+            final Request request = new Request(null, callback);
+            request.mDone = true;
+            callback.onLoaded(cached);
+            return request;
+        }
+
+        final Long failedAt = mFailures.get(url);
+        if (failedAt != null) {
+            if (mClock.currentTimeMillis() - failedAt < FAILURE_RETRY_MS) {
+                final Request request = new Request(null, callback);
+                request.mDone = true;
+                callback.onFailed();
+                return request;
+            }
+            mFailures.remove(url);
+        }
+
+        Job job = mJobs.get(key);
+        if (job == null) {
+            job = new Job(key, url, size);
+            mJobs.put(key, job);
+            mBackgroundExecutor.execute(job);
+        } else {
+            //Already loading, possibly for a request that was cancelled, wait for that load
+            job.mCancelled = false;
+            ++mCoalesced;
+        }
+        final Request request = new Request(job, callback);
+        job.mWaiting.add(request);
+        return request;
+    }
+
+    /**
+     * @return the image in the memory cache, or null if it isn't in the memory cache
+     */
+    @MainThread
+    @Nullable
+    public T getCached(@NonNull String url, int size) {
+        return mMemoryCache.get(url + '#' + size);
+    }
+
+    /**
+     * Drop all images from the memory cache, the disk cache is kept.
+     */
+    @MainThread
+    public void clearMemory() {
+        mMemoryCache.clear();
+        mMemoryCacheBytes = 0;
+    }
+
+    @MainThread
+    private void complete(Job job, T image, boolean aborted) {
+        if (aborted) {
+            if (job.mWaiting.isEmpty()) {
+                mJobs.remove(job.mKey);
+            } else {
+                //Requested again after it stopped, start it again
+                job.mCancelled = false;
+                mBackgroundExecutor.execute(job);
+            }
+            return;
+        }
+
+        mJobs.remove(job.mKey);
+        if (image != null) {
+            putInMemory(job.mKey, image);
+        } else {
+            mFailures.put(job.mUrl, mClock.currentTimeMillis());
+        }
+
+        final ArrayList<Request> waiting = new ArrayList<>(job.mWaiting);
+        job.mWaiting.clear();
+        for (Request request : waiting) {
+            request.mDone = true;
+            if (image != null) {
+                request.mCallback.onLoaded(image);
+            } else {
+                request.mCallback.onFailed();
+            }
+        }
+    }
+
+    private void putInMemory(String key, T image) {
+        final int size = mDecoder.sizeOf(image);
+        if (size > mMemoryCacheMaxBytes) {
+            return;
+        }
+        final T previous = mMemoryCache.put(key, image);
+        mMemoryCacheBytes += size - (previous != null ? mDecoder.sizeOf(previous) : 0);
+
+        final Iterator<Map.Entry<String, T>> iterator = mMemoryCache.entrySet().iterator();
+        while (mMemoryCacheBytes > mMemoryCacheMaxBytes && iterator.hasNext()) {
+            final T eldest = iterator.next().getValue();
+            iterator.remove();
+            mMemoryCacheBytes -= mDecoder.sizeOf(eldest);
+        }
+    }
+
+    /**
+     * @return the number of images in the memory cache
+     */
+    public int getMemoryCacheCount() {
+        return mMemoryCache.size();
+    }
+
+    /**
+     * @return the number of loads requested
+     */
+    public int getRequestCount() {
+        return mRequests;
+    }
+
+    /**
+     * @return the number of requests answered from the memory cache
+     */
+    public int getMemoryHitCount() {
+        return mMemoryHits;
+    }
+
+    /**
+     * @return the number of requests that joined a load already in progress
+     */
+    public int getCoalescedCount() {
+        return mCoalesced;
+    }
+
+    /**
+     * @return the number of loads answered from the disk cache
+     */
+    public int getDiskHitCount() {
+        return mDiskHits.get();
+    }
+
+    /**
+     * @return the number of downloads started
+     */
+    public int getNetworkFetchCount() {
+        return mNetworkFetches.get();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Downloads avatars with {@link HttpURLConnection}
+ */
+public class HttpAvatarFetcher implements AvatarFetcher {
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    //Avatars are small, anything larger than this is not worth decoding for a bubble
+    private static final int MAX_AVATAR_BYTES = 2 * 1024 * 1024;
+
+    @NonNull
+    @Override
+    public byte[] fetch(@NonNull String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        InputStream in = null;
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setInstanceFollowRedirects(true);
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Avatar request failed with " + responseCode + " for " + url);
+            }
+            final int contentLength = connection.getContentLength();
+            if (contentLength > MAX_AVATAR_BYTES) {
+                throw new IOException("Avatar too large " + contentLength + " for " + url);
+            }
+
+            in = connection.getInputStream();
+            //Chunked responses have no length, so the limit is also enforced while reading
+            return IOUtils.toByteArray(in, contentLength, MAX_AVATAR_BYTES);
+        } finally {
+            IOUtils.safeClose(in);
+            IOUtils.safeCloseAndSetNull(connection);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.chats;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.ColorInt;
+import android.support.annotation.ColorRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+
+import com.bbm.sdk.support.util.Logger;
+
+import java.util.HashMap;
+
+/**
+ * Resolves the text color resources of {@link ChatBubbleColors} once and shares the result.
+ * A {@link ChatBubbleColorProvider} can return a new ChatBubbleColors for each message, the cache hands out one
+ * {@link ResolvedChatBubbleColors} for all colors using the same resources so each chat type resolves its colors
+ * once instead of on every bind.
+ * <p>
+ * The resolved values depend on the configuration and theme, call {@link #invalidate()} when either changes.
+ * While registered with {@link #register(Context)} the cache is invalidated on configuration changes, set an
+ * {@link InvalidationListener} to bind the views again with the new colors.
+ * <p>
+ * Not thread safe, only use on the main thread.
+ */
+public final class ChatBubbleColorCache {
+
+    /**
+     * Resolves a color resource, normally with {@link ContextCompat#getColor(Context, int)}.
+     */
+    interface ColorResolver {
+        @ColorInt
+        int getColor(@ColorRes int colorId);
+    }
+
+    /**
+     * Told when the cache is invalidated, colors got before should be got again.
+     */
+    public interface InvalidationListener {
+        void onInvalidated();
+    }
+
+    private final ColorResolver mResolver;
+    private final HashMap<ChatBubbleColors, ResolvedChatBubbleColors> mResolved = new HashMap<>();
+    //Incremented by invalidate, resolved colors from an older generation are resolved again
+    private int mGeneration;
+    private int mResolveCount;
+    private InvalidationListener mInvalidationListener;
+    //The application context the configuration callbacks are registered with, null while not registered
+    private Context mRegisteredContext;
+
+    private final ComponentCallbacks mConfigurationCallbacks = new ComponentCallbacks() {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            Logger.d("ChatBubbleColorCache - configuration changed");
+            invalidate();
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    };
+
+    /**
+     * @param context the context whose theme the colors are resolved with, normally the activity
+     */
+    public ChatBubbleColorCache(@NonNull final Context context) {
+        this(new ColorResolver() {
+            @Override
+            public int getColor(int colorId) {
+                return ContextCompat.getColor(context, colorId);
+            }
+        });
+    }
+
+    ChatBubbleColorCache(@NonNull ColorResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * @return the shared resolved colors using the same resources as the given colors, or null if colors is null
+     */
+    @Nullable
+    public ResolvedChatBubbleColors get(@Nullable ChatBubbleColors colors) {
+        if (colors == null) {
+            return null;
+        }
+        if (colors instanceof ResolvedChatBubbleColors
+                && ((ResolvedChatBubbleColors) colors).mGeneration == mGeneration) {
+            //The provider kept the colors it was given before
+            return (ResolvedChatBubbleColors) colors;
+        }
+
+        ResolvedChatBubbleColors resolved = mResolved.get(colors);
+        if (resolved == null) {
+            resolved = new ResolvedChatBubbleColors(colors, mResolver, mGeneration);
+            //ChatBubbleColors are equal when they use the same resources, so a provider returning a new instance
+            //for each message still shares one resolved value per chat type
+            mResolved.put(colors, resolved);
+            ++mResolveCount;
+        }
+        return resolved;
+    }
+
+    /**
+     * Forget the resolved colors, for example after the theme was changed. Colors got before are resolved again.
+     */
+    public void invalidate() {
+        mResolved.clear();
+        ++mGeneration;
+        if (mInvalidationListener != null) {
+            mInvalidationListener.onInvalidated();
+        }
+    }
+
+    /**
+     * Set the listener told after each invalidation, including those from configuration changes.
+     */
+    public void setInvalidationListener(@Nullable InvalidationListener listener) {
+        mInvalidationListener = listener;
+    }
+
+    /**
+     * Invalidate the cache on each configuration change until {@link #unregister(Context)} is called.
+     * The callbacks are registered with the application context and keep this cache, its resolver and listener,
+     * so this must be paired with unregister, normally from onResume and onPause. Registering again does nothing.
+     */
+    public void register(@NonNull Context context) {
+        if (mRegisteredContext == null) {
+            mRegisteredContext = context.getApplicationContext();
+            mRegisteredContext.registerComponentCallbacks(mConfigurationCallbacks);
+        }
+    }
+
+    /**
+     * Stop invalidating the cache on configuration changes.
+     */
+    public void unregister(@NonNull Context context) {
+        if (mRegisteredContext != null) {
+            mRegisteredContext.unregisterComponentCallbacks(mConfigurationCallbacks);
+            mRegisteredContext = null;
+        }
+    }
+
+    /**
+     * @return true if the cache is registered for configuration changes
+     */
+    public boolean isRegistered() {
+        return mRegisteredContext != null;
+    }
+
+    /**
+     * @return the number of times colors were resolved
+     */
+    public int getResolveCount() {
+        return mResolveCount;
+    }
+}
@@ -73,6 +73,9 @@ public class ChatBubbleColors {
     @ColorRes
     final public int alertColor;
 
+    //Computed once, the colors are looked up on each bind
+    private final int mHashCode;
+
     public ChatBubbleColors(@DrawableRes final int backgroundId,
                             @ColorRes final int backgroundColorId,
                             @ColorRes final int headingColorId,
@@ -89,5 +92,43 @@ public class ChatBubbleColors {
         this.statusColor = statusColorId;
         this.errorColor = errorColorId;
         this.alertColor = alertColorId;
+
+        int hashCode = backgroundId;
+        hashCode = 31 * hashCode + backgroundColorId;
+        hashCode = 31 * hashCode + headingColorId;
+        hashCode = 31 * hashCode + normalTextColorId;
+        hashCode = 31 * hashCode + highlightedColorId;
+        hashCode = 31 * hashCode + statusColorId;
+        hashCode = 31 * hashCode + errorColorId;
+        hashCode = 31 * hashCode + alertColorId;
+        mHashCode = hashCode;
+    }
+
+    /**
+     * Colors are equal when they use the same resources, see {@link ChatBubbleColorCache}.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ChatBubbleColors)) {
+            return false;
+        }
+        final ChatBubbleColors other = (ChatBubbleColors) obj;
+        return mHashCode == other.mHashCode
+                && backgroundId == other.backgroundId
+                && backgroundColor == other.backgroundColor
+                && headingColor == other.headingColor
+                && normalTextColor == other.normalTextColor
+                && highlightedColor == other.highlightedColor
+                && statusColor == other.statusColor
+                && errorColor == other.errorColor
+                && alertColor == other.alertColor;
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
     }
 }
\ No newline at end of file
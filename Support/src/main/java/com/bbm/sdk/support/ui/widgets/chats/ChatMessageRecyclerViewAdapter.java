@@ -41,6 +41,7 @@ public class ChatMessageRecyclerViewAdapter extends MonitoredRecyclerAdapter<Dec
     private ChatMessageList mMessageList;
     private ChatMessageViewProvider mChatMessageViewProvider;
     private ChatBubbleColorProvider mColorProvider;
+    private final ChatBubbleColorCache mColorCache;
     private boolean mIsConference;
     private String mChatId;
 
@@ -124,6 +125,14 @@ public class ChatMessageRecyclerViewAdapter extends MonitoredRecyclerAdapter<Dec
 
         mChatMessageViewProvider = chatMessageViewProvider;
         mColorProvider = colorProvider;
+        mColorCache = new ChatBubbleColorCache(context);
+        //Bind the messages again with the colors resolved for the new configuration or theme
+        mColorCache.setInvalidationListener(new ChatBubbleColorCache.InvalidationListener() {
+            @Override
+            public void onInvalidated() {
+                notifyDataSetChanged();
+            }
+        });
         mRecyclerView.getViewTreeObserver().addOnGlobalLayoutListener(this);
         //Remove our GlobalLayoutListener when then user first touches the recycler view
         mRecyclerView.setOnTouchListener(new View.OnTouchListener() {
@@ -164,10 +173,13 @@ public class ChatMessageRecyclerViewAdapter extends MonitoredRecyclerAdapter<Dec
         if (mMessageList != null) {
             mMessageList.start();
         }
+
+        //Registered with the application context, pause must be called to unregister or the activity is leaked
+        mColorCache.register(mContext);
     }
 
     /**
-     * Stop loading or updating messages from the chat
+     * Stop loading or updating messages from the chat, call this when the activity or fragment is paused
      */
     public void pause() {
 
@@ -176,6 +188,16 @@ public class ChatMessageRecyclerViewAdapter extends MonitoredRecyclerAdapter<Dec
         if (mMessageList != null) {
             mMessageList.stop();
         }
+
+        mColorCache.unregister(mContext);
+    }
+
+    /**
+     * Resolve the chat bubble colors again and update the messages, call this after changing the theme.
+     * Configuration changes are handled between {@link #start()} and {@link #pause()}.
+     */
+    public void invalidateColors() {
+        mColorCache.invalidate();
     }
 
     /**
@@ -248,7 +270,8 @@ public class ChatMessageRecyclerViewAdapter extends MonitoredRecyclerAdapter<Dec
                         mColorProvider.getOneToOneIncomingMessageColors(message);
             }
 
-            return new DecoratedMessage(message, mergeBefore, mIsConference, color);
+            //Share the colors resolved for the configuration rather than resolving them on each bind
+            return new DecoratedMessage(message, mergeBefore, mIsConference, mColorCache.get(color));
         }
         return new DecoratedMessage();
     }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.chats;
+
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * {@link ChatBubbleColors} with the text color resources resolved to their ARGB values for the current configuration
+ * and theme. Created and shared by a {@link ChatBubbleColorCache}, holders can use the values without resolving the
+ * resources on every bind.
+ * <p>
+ * Only the heading, normal text and highlighted colors are resolved, those are the ones set on every bind. The other
+ * colors aren't used by all providers and may be 0, they are left as resource ids.
+ */
+public final class ResolvedChatBubbleColors extends ChatBubbleColors {
+
+    @ColorInt
+    final public int resolvedNormalTextColor;
+
+    @ColorInt
+    final public int resolvedHeadingColor;
+
+    @ColorInt
+    final public int resolvedHighlightedColor;
+
+    //The cache generation these values were resolved in
+    final int mGeneration;
+
+    ResolvedChatBubbleColors(@NonNull final ChatBubbleColors colors,
+                             @NonNull final ChatBubbleColorCache.ColorResolver resolver,
+                             final int generation) {
+        super(colors.backgroundId, colors.backgroundColor, colors.headingColor, colors.normalTextColor,
+                colors.highlightedColor, colors.statusColor, colors.errorColor, colors.alertColor);
+        resolvedNormalTextColor = resolver.getColor(colors.normalTextColor);
+        resolvedHeadingColor = resolver.getColor(colors.headingColor);
+        resolvedHighlightedColor = resolver.getColor(colors.highlightedColor);
+        mGeneration = generation;
+    }
+}
@@ -28,6 +28,7 @@ import com.bbm.sdk.support.ui.widgets.chats.ChatBubbleColors;
 import com.bbm.sdk.support.ui.widgets.chats.DecoratedMessage;
 import com.bbm.sdk.support.ui.widgets.chats.MessagePriority;
 import com.bbm.sdk.support.ui.widgets.chats.MessageStatusIcons;
+import com.bbm.sdk.support.ui.widgets.chats.ResolvedChatBubbleColors;
 import com.bbm.sdk.support.ui.widgets.util.DateUtil;
 
 
@@ -127,8 +128,14 @@ public abstract class BaseBubbleHolder {
      * @param colors   colors to be used
      */
     public void updateTextViewStyle(@NonNull final TextView textView, @NonNull final ChatBubbleColors colors) {
-        textView.setLinkTextColor(getContext().getResources().getColor(colors.highlightedColor));
-        textView.setTextColor(getContext().getResources().getColor(colors.normalTextColor));
+        if (colors instanceof ResolvedChatBubbleColors) {
+            final ResolvedChatBubbleColors resolved = (ResolvedChatBubbleColors) colors;
+            textView.setLinkTextColor(resolved.resolvedHighlightedColor);
+            textView.setTextColor(resolved.resolvedNormalTextColor);
+        } else {
+            textView.setLinkTextColor(getContext().getResources().getColor(colors.highlightedColor));
+            textView.setTextColor(getContext().getResources().getColor(colors.normalTextColor));
+        }
     }
 
     /**
@@ -27,7 +27,10 @@ import com.bbm.sdk.support.R;
 import com.bbm.sdk.support.identity.user.AppUser;
 import com.bbm.sdk.support.identity.user.UserManager;
 import com.bbm.sdk.support.util.BbmUtils;
+import com.bbm.sdk.support.ui.widgets.avatar.AvatarLoader;
+import com.bbm.sdk.support.ui.widgets.chats.ChatBubbleColors;
 import com.bbm.sdk.support.ui.widgets.chats.DecoratedMessage;
+import com.bbm.sdk.support.ui.widgets.chats.ResolvedChatBubbleColors;
 
 /**
  * A base for an incoming message bubble. The message specific content should be injected via {@link #setContentSpecificView(LayoutInflater, int)}
@@ -36,6 +39,7 @@ public class BaseIncomingBubbleHolder extends BaseBubbleHolder {
 
     private final TextView mSenderTextView;
     private final ImageView mMessagePhoto;
+    private final int mAvatarSize;
 
     protected DecoratedMessage mDecoratedMessage;
 
@@ -87,13 +91,10 @@ public class BaseIncomingBubbleHolder extends BaseBubbleHolder {
 
             if (mDecoratedMessage.showAvatar() && mMessagePhoto != null) {
                 mMessagePhoto.setVisibility(View.VISIBLE);
-                if (!TextUtils.isEmpty((appUser.getAvatarUrl()))) {
-                    //Todo - load avatar
-                    mMessagePhoto.setImageResource(R.drawable.default_avatar);
-                } else {
-                    mMessagePhoto.setImageResource(R.drawable.default_avatar);
-                }
+                AvatarLoader.getInstance(getContext()).load(mMessagePhoto, appUser.getAvatarUrl(), mAvatarSize,
+                        R.drawable.default_avatar);
             } else if (mMessagePhoto != null) {
+                AvatarLoader.getInstance(getContext()).cancel(mMessagePhoto);
                 mMessagePhoto.setVisibility(View.GONE);
             }
         }
@@ -105,6 +106,7 @@ public class BaseIncomingBubbleHolder extends BaseBubbleHolder {
 
         mSenderTextView = (TextView) getRootView().findViewById(R.id.message_sender);
         mMessagePhoto = (ImageView) getRootView().findViewById(R.id.message_photo);
+        mAvatarSize = getContext().getResources().getDimensionPixelSize(R.dimen.conversation_chat_bubble_avatar_size);
     }
 
 
@@ -126,6 +128,7 @@ public class BaseIncomingBubbleHolder extends BaseBubbleHolder {
         mDecoratedMessage = decoratedMessage;
 
         if (decoratedMessage.shouldMergeBefore() && mMessagePhoto != null) {
+            AvatarLoader.getInstance(getContext()).cancel(mMessagePhoto);
             mMessagePhoto.setVisibility(View.GONE);
         } else {
             // lazy load the app user.
@@ -137,8 +140,11 @@ public class BaseIncomingBubbleHolder extends BaseBubbleHolder {
             mObserver.changed();
         }
 
-        if(decoratedMessage.getColors() != null) {
-            mSenderTextView.setTextColor(getContext().getResources().getColor(decoratedMessage.getColors().headingColor));
+        final ChatBubbleColors colors = decoratedMessage.getColors();
+        if (colors instanceof ResolvedChatBubbleColors) {
+            mSenderTextView.setTextColor(((ResolvedChatBubbleColors) colors).resolvedHeadingColor);
+        } else if (colors != null) {
+            mSenderTextView.setTextColor(getContext().getResources().getColor(colors.headingColor));
         }
     }
 
@@ -147,13 +153,19 @@ public class BaseIncomingBubbleHolder extends BaseBubbleHolder {
         super.onRecycled();
         mSenderTextView.setText(null);
 
+        if (mMessagePhoto != null) {
+            //Stop a load still in progress from showing in the next message bound to this holder
+            AvatarLoader.getInstance(getContext()).cancel(mMessagePhoto);
+            mMessagePhoto.setImageDrawable(null);
+        }
+
         if (mUser != null) {
             mUser.removeObserver(mObserver);
             mUser = null;
         }
 
         if (mAppUser != null) {
-            mAppUser.removeObserver(mObserver);
+            mAppUser.removeObserver(mAppUserObserver);
             mAppUser = null;
         }
 
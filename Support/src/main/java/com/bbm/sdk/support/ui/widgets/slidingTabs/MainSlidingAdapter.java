@@ -16,6 +16,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.StringRes;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
+import android.view.ViewGroup;
 
 import com.bbm.sdk.support.util.Logger;
 
@@ -25,14 +26,51 @@ import java.util.ArrayList;
 
 /**
  * Implementation of BaseSlidingAdapter that used to contain a ArrayList of
- * AdapterItem
+ * AdapterItem.
+ * The fragment for each tab is created by the {@link FragmentFactory} of its item, and kept while the tab is within
+ * the preload limit of the current tab (plus one) so moving back to it doesn't create it again. The saved state of
+ * fragments further away is kept by the {@link android.support.v4.app.FragmentStatePagerAdapter}.
  */
 public class MainSlidingAdapter extends BaseSlidingAdapter {
 
+    /**
+     * Creates the fragment for a tab.
+     */
+    public interface FragmentFactory {
+        /**
+         * @return a new fragment for the tab, or null if it can't be created
+         */
+        Fragment newFragment();
+    }
+
     private final ArrayList<AdapterItem> mItems = new ArrayList<>();
+    private final TabInstanceCache<Fragment> mFragments = new TabInstanceCache<>(new TabInstanceCache.Factory<Fragment>() {
+        @Override
+        public Fragment create(int position) {
+            return mItems.get(position).mFactory.newFragment();
+        }
+    });
+    private int mPreloadLimit = 1;
 
     public MainSlidingAdapter(FragmentManager manager) {
         super(manager);
+        mFragments.setRetainDistance(mPreloadLimit + 1);
+    }
+
+    /**
+     * Set the number of tabs either side of the current tab to create ahead of being shown.
+     * The limit should match the offscreen page limit of the ViewPager.
+     *
+     * @param preloadLimit the number of neighbouring tabs to preload, at least 1
+     */
+    public void setPreloadLimit(int preloadLimit) {
+        mPreloadLimit = Math.max(1, preloadLimit);
+        //The pager destroys fragments beyond the limit, keep one more tab so they can be reused
+        mFragments.setRetainDistance(mPreloadLimit + 1);
+    }
+
+    public int getPreloadLimit() {
+        return mPreloadLimit;
     }
 
     /**
@@ -51,21 +89,21 @@ public class MainSlidingAdapter extends BaseSlidingAdapter {
             return null;
         }
 
-        Fragment fragment = null;
-        AdapterItem item = mItems.get(position);
-
-        try {
-            Constructor<? extends Fragment> ctor = item.mClazz.getConstructor();
-            fragment = ctor.newInstance();
-        } catch (NoSuchMethodException e) {
-            Logger.e(e, "Cannot find class");
-        } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
-            Logger.e(e, "Unable to create the object from the class item");
+        Fragment fragment = mFragments.get(position);
+        if (fragment != null && fragment.isAdded()) {
+            //Still attached, the pager wants a new fragment for the tab
+            mFragments.remove(position);
+            fragment = mFragments.get(position);
         }
-
         return fragment;
     }
 
+    @Override
+    public void setPrimaryItem(ViewGroup container, int position, Object object) {
+        super.setPrimaryItem(container, position, object);
+        mFragments.setCurrent(position);
+    }
+
     public @DrawableRes
     int getTabIconResource(int position) {
         if (position < 0 || position >= mItems.size()) {
@@ -114,6 +152,33 @@ public class MainSlidingAdapter extends BaseSlidingAdapter {
         return item.mDisplayedText;
     }
 
+    /**
+     * Creates the fragment with the public no argument constructor of the class, found once.
+     */
+    private static final class ReflectionFragmentFactory implements FragmentFactory {
+        private final Class<? extends Fragment> mClazz;
+        private Constructor<? extends Fragment> mConstructor;
+
+        ReflectionFragmentFactory(Class<? extends Fragment> clazz) {
+            mClazz = clazz;
+        }
+
+        @Override
+        public Fragment newFragment() {
+            try {
+                if (mConstructor == null) {
+                    mConstructor = mClazz.getConstructor();
+                }
+                return mConstructor.newInstance();
+            } catch (NoSuchMethodException e) {
+                Logger.e(e, "Cannot find class");
+            } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
+                Logger.e(e, "Unable to create the object from the class item");
+            }
+            return null;
+        }
+    }
+
     /**
      * The AdapterItem data class used to associate drawable & string resourced to the associated
      * Class file that would use them.
@@ -124,9 +189,10 @@ public class MainSlidingAdapter extends BaseSlidingAdapter {
         final public @StringRes int mStringRes;
         final public String mDisplayedText;
         final public Class mClazz;
+        final public FragmentFactory mFactory;
 
         /**
-         * Constructor
+         * Constructor, the fragment is created with the public no argument constructor of the class.
          * @param type The type of the item.
          * @param drawableRes The identifier to the drawable resource to use
          * @param stringRes The identifier to the string resource to use
@@ -135,11 +201,27 @@ public class MainSlidingAdapter extends BaseSlidingAdapter {
          */
         public AdapterItem(int type, @DrawableRes int drawableRes, @StringRes int stringRes,
                            @NonNull final String displayedText, @NonNull final Class<? extends Fragment> clazz) {
+            this(type, drawableRes, stringRes, displayedText, clazz, new ReflectionFragmentFactory(clazz));
+        }
+
+        /**
+         * Constructor
+         * @param type The type of the item.
+         * @param drawableRes The identifier to the drawable resource to use
+         * @param stringRes The identifier to the string resource to use
+         * @param displayedText The display test to use for the page Title.
+         * @param clazz The child class which extends v4 fragment class to use.
+         * @param factory Creates the fragment, for example a constructor reference such as MyFragment::new
+         */
+        public AdapterItem(int type, @DrawableRes int drawableRes, @StringRes int stringRes,
+                           @NonNull final String displayedText, @NonNull final Class<? extends Fragment> clazz,
+                           @NonNull final FragmentFactory factory) {
             mType = type;
             mDrawableRes = drawableRes;
             mStringRes = stringRes;
             mDisplayedText = displayedText;
             mClazz = clazz;
+            mFactory = factory;
         }
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.slidingTabs;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Coalesces the page scroll callbacks into one pending update of the tab strip. The same runnable is posted each
+ * time, so scrolling doesn't allocate, and only the latest scroll position is applied when it runs.
+ * <p>
+ * Only use on the main thread.
+ */
+final class ScrollUpdate implements Runnable {
+
+    interface Callback {
+        void onScrolled(int position, float offset);
+    }
+
+    private final Callback mCallback;
+    private int mPosition;
+    private float mOffset;
+    private boolean mPosted;
+
+    ScrollUpdate(@NonNull Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Set the latest scroll position.
+     *
+     * @return true if this needs to be posted, false if it is already waiting to run
+     */
+    boolean set(int position, float offset) {
+        mPosition = position;
+        mOffset = offset;
+        if (mPosted) {
+            return false;
+        }
+        mPosted = true;
+        return true;
+    }
+
+    /**
+     * Drop the pending update, call when the runnable is removed from the queue.
+     */
+    void cancel() {
+        mPosted = false;
+    }
+
+    @Override
+    public void run() {
+        if (!mPosted) {
+            return;
+        }
+        mPosted = false;
+        mCallback.onScrolled(mPosition, mOffset);
+    }
+}
@@ -54,12 +54,13 @@ public abstract class SlidingFragment extends Fragment implements SlidingTabLayo
         mSlidingTabLayout = (SlidingTabLayout) view.findViewById(R.id.main_tabstrip);
 
         mAdapter = new MainSlidingAdapter(getChildFragmentManager());
+        mAdapter.setPreloadLimit(getPreloadLimit());
         addFragments();
 
         mViewPager.setAdapter(mAdapter);
 
         // The default is 1 but set it to account for difference lib versions.
-        mViewPager.setOffscreenPageLimit(1);
+        mViewPager.setOffscreenPageLimit(mAdapter.getPreloadLimit());
 
         mSlidingTabLayout.setViewPager(mViewPager);
         mSlidingTabLayout.setViewClickListener(this);
@@ -107,5 +108,13 @@ public abstract class SlidingFragment extends Fragment implements SlidingTabLayo
     public void onSlidingIconClicked(final int position) {
     }
 
+    /**
+     * The number of tabs either side of the current tab that are created before they are shown.
+     * Override to preload more tabs, the default is 1.
+     */
+    protected int getPreloadLimit() {
+        return 1;
+    }
+
     protected abstract void addFragments();
 }
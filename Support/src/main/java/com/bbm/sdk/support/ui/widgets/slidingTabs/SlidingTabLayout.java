@@ -101,6 +101,7 @@ public class SlidingTabLayout extends HorizontalScrollView {
 
         if(mViewPager != null) {
             mViewPager.removeOnPageChangeListener(mPageListener);
+            mPageListener.cancel();
         }
 
         mViewPager = pager;
@@ -346,35 +347,58 @@ public class SlidingTabLayout extends HorizontalScrollView {
         private int mScrollState;
         private int mSelectedPosition;
 
+        //Posted for each scroll, the strip is updated with the latest scroll position when it runs
+        private final ScrollUpdate mScrollUpdate = new ScrollUpdate(new ScrollUpdate.Callback() {
+            @Override
+            public void onScrolled(int pos, float offset) {
+                if (mLinearStrip == null) {
+                    return;
+                }
+
+                int tabStripChildCount = mLinearStrip.getChildCount();
+                if ((tabStripChildCount == 0) || (pos < 0) || (pos >= tabStripChildCount)) {
+                    return;
+                }
+
+                View view = mLinearStrip.getChildAt(pos);
+                int extraOffset = (view != null)
+                        ? (int) (offset * view.getWidth())
+                        : 0;
+
+                // This is a noisy call, but needed, send the scroll state to help with activation
+                // selection
+                selectItem(pos, extraOffset, mScrollState);
+                mLinearStrip.onViewPagerPageChanged(pos, offset);
+            }
+        });
+
+        private final Runnable mSelectOnIdle = new Runnable() {
+            @Override
+            public void run() {
+                selectItem(mSelectedPosition, 0, mScrollState);
+            }
+        };
+
         @Override
         public void onPageScrolled(final int pos, final float offset, final int offsetInPix) {
             if (mLinearStrip == null) {
                 return;
             }
 
-            mLinearStrip.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (mLinearStrip == null) {
-                        return;
-                    }
-
-                    int tabStripChildCount = mLinearStrip.getChildCount();
-                    if ((tabStripChildCount == 0) || (pos < 0) || (pos >= tabStripChildCount)) {
-                        return;
-                    }
-
-                    View view = mLinearStrip.getChildAt(pos);
-                    int extraOffset = (view != null)
-                            ? (int) (offset * view.getWidth())
-                            : 0;
+            if (mScrollUpdate.set(pos, offset)) {
+                mLinearStrip.post(mScrollUpdate);
+            }
+        }
 
-                    // This is a noisy call, but needed, send the scroll state to help with activation
-                    // selection
-                    selectItem(pos, extraOffset, mScrollState);
-                    mLinearStrip.onViewPagerPageChanged(pos, offset);
-                }
-            });
+        /**
+         * Drop the pending scroll updates when the listener is removed.
+         */
+        void cancel() {
+            if (mLinearStrip != null) {
+                mLinearStrip.removeCallbacks(mScrollUpdate);
+                mLinearStrip.removeCallbacks(mSelectOnIdle);
+            }
+            mScrollUpdate.cancel();
         }
 
         @Override
@@ -392,12 +416,7 @@ public class SlidingTabLayout extends HorizontalScrollView {
                 // When the state is IDLE, then reselect the item.
 
                 if((mLinearStrip != null)) {
-                    mLinearStrip.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            selectItem(mSelectedPosition, 0, mScrollState);
-                        }
-                    });
+                    mLinearStrip.post(mSelectOnIdle);
                 }
             }
         }
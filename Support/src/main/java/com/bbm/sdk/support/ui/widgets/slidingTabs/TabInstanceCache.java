@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.slidingTabs;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps the page created for each tab while it is near the current tab, so moving back to a tab reuses the page
+ * instead of creating it again. Pages further than the retain distance from the current tab are released.
+ * <p>
+ * Not thread safe, only use on the main thread.
+ */
+final class TabInstanceCache<T> {
+
+    interface Factory<T> {
+        /**
+         * @return a new page for the tab, or null if it can't be created
+         */
+        @Nullable
+        T create(int position);
+    }
+
+    private final Factory<T> mFactory;
+    //The page of each tab, null if not created or released
+    private final ArrayList<T> mInstances = new ArrayList<>();
+    private int mCurrent;
+    private int mRetainDistance = 1;
+
+    private int mCreatedCount;
+    private int mReusedCount;
+
+    TabInstanceCache(@NonNull Factory<T> factory) {
+        mFactory = factory;
+    }
+
+    /**
+     * @return the cached page for the tab, or a new page from the factory
+     */
+    @Nullable
+    T get(int position) {
+        if (position < 0) {
+            return null;
+        }
+        final T cached = position < mInstances.size() ? mInstances.get(position) : null;
+        if (cached != null) {
+            ++mReusedCount;
+            return cached;
+        }
+
+        final T created = mFactory.create(position);
+        if (created != null) {
+            ++mCreatedCount;
+            if (isRetained(position)) {
+                while (mInstances.size() <= position) {
+                    mInstances.add(null);
+                }
+                mInstances.set(position, created);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Forget the page for the tab, the next {@link #get(int)} creates a new page.
+     */
+    void remove(int position) {
+        if (position >= 0 && position < mInstances.size()) {
+            mInstances.set(position, null);
+        }
+    }
+
+    /**
+     * Set the tab being shown, pages too far from it are released.
+     */
+    void setCurrent(int position) {
+        if (position != mCurrent) {
+            mCurrent = position;
+            trim();
+        }
+    }
+
+    /**
+     * @param retainDistance the number of tabs either side of the current tab to keep pages for
+     */
+    void setRetainDistance(int retainDistance) {
+        mRetainDistance = Math.max(0, retainDistance);
+        trim();
+    }
+
+    void clear() {
+        mInstances.clear();
+    }
+
+    /**
+     * @return the number of pages held
+     */
+    int getCachedCount() {
+        int count = 0;
+        for (T instance : mInstances) {
+            if (instance != null) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of pages the factory created
+     */
+    int getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    /**
+     * @return the number of times a cached page was returned
+     */
+    int getReusedCount() {
+        return mReusedCount;
+    }
+
+    private boolean isRetained(int position) {
+        return Math.abs(position - mCurrent) <= mRetainDistance;
+    }
+
+    private void trim() {
+        for (int i = 0; i < mInstances.size(); ++i) {
+            if (!isRetained(i)) {
+                mInstances.set(i, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds a pending value per key and hands all of them over together once they are due.
+ * They are due after a quiet period with no new values, or once the oldest has waited the max delay even if new values
+ * keep arriving. {@link #flush()} hands them over immediately.
+ * The caller is responsible for calling {@link #flushDue()} after the delay it returns.
+ * All methods are thread safe, subclasses synchronize on this object to keep their own state in step.
+ *
+ * @param <V> the pending value
+ */
+public abstract class BatchDebouncer<V> {
+
+    private final Clock mClock;
+    private final long mQuietPeriodMs;
+    private final long mMaxDelayMs;
+
+    private final LinkedHashMap<String, V> mPending = new LinkedHashMap<>();
+    private long mFirstPendingTime;
+    private long mLastChangeTime;
+
+    protected BatchDebouncer(@NonNull Clock clock, long quietPeriodMs, long maxDelayMs) {
+        mClock = clock;
+        mQuietPeriodMs = quietPeriodMs;
+        mMaxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Set the pending value for a key, this restarts the quiet period.
+     */
+    protected final synchronized void putPending(@NonNull String key, @NonNull V value) {
+        final long now = mClock.currentTimeMillis();
+        if (mPending.isEmpty()) {
+            mFirstPendingTime = now;
+        }
+        mLastChangeTime = now;
+        mPending.put(key, value);
+    }
+
+    /**
+     * @return the pending value for the key, or null if there isn't one
+     */
+    @Nullable
+    protected final synchronized V getPending(@NonNull String key) {
+        return mPending.get(key);
+    }
+
+    /**
+     * Drop the pending value for a key without handing it over.
+     */
+    protected final synchronized void removePending(@NonNull String key) {
+        mPending.remove(key);
+    }
+
+    /**
+     * @return the number of keys with a value waiting to be handed over
+     */
+    public final synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Hand over the pending values if the quiet period or max delay has passed.
+     *
+     * @return the delay in milliseconds until this should be called again, or -1 if nothing is pending
+     */
+    public final long flushDue() {
+        final long delay;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return -1;
+            }
+            final long due = Math.min(mLastChangeTime + mQuietPeriodMs, mFirstPendingTime + mMaxDelayMs);
+            delay = due - mClock.currentTimeMillis();
+        }
+        if (delay > 0) {
+            return delay;
+        }
+        flush();
+        return -1;
+    }
+
+    /**
+     * Hand over all pending values now.
+     */
+    public final void flush() {
+        final Map<String, V> batch;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = Collections.unmodifiableMap(new LinkedHashMap<>(mPending));
+            mPending.clear();
+            onBatchTaken(batch);
+        }
+        //outside the lock, the receiver may call back into this
+        onFlush(batch);
+    }
+
+    /**
+     * Called with the lock held when the batch is taken, before {@link #onFlush(Map)}. Override to record the values
+     * as handed over so that no other thread sees them as neither pending nor handed over.
+     */
+    protected void onBatchTaken(@NonNull Map<String, V> batch) {
+    }
+
+    /**
+     * Hand over the batch, called without the lock.
+     *
+     * @param batch key to value in the order the keys first became pending
+     */
+    protected abstract void onFlush(@NonNull Map<String, V> batch);
+}
@@ -16,6 +16,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v4.content.FileProvider;
 import android.text.TextUtils;
@@ -54,6 +56,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -72,6 +75,25 @@ public class BbmUtils {
 
     private static final MessageManager mMessageManager = new MessageManager();
 
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    //holds drafts while the user is typing, all the drafts that are due are written together
+    private static final DraftStore mDraftStore = new DraftStore(new DraftStore.Writer() {
+        @Override
+        public void write(@NonNull Map<String, String> drafts) {
+            for (Map.Entry<String, String> draft : drafts.entrySet()) {
+                writeDraftMessage(draft.getKey(), draft.getValue());
+            }
+        }
+    });
+
+    private static final Runnable sDraftFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduleDraftFlush();
+        }
+    };
+
 
     /**
      * Convenience method to get the local user object since first you need to get the
@@ -126,6 +148,8 @@ public class BbmUtils {
 
     /**
      * Method to save a draft message to the chat indicated in the chatId.
+     * The draft is held locally and written once there have been no changes for a short time, so this can be called
+     * on every text change. Call {@link #flushDraftMessages()} when leaving the chat to write it immediately.
      *
      * @param chatId  The chatId, should not be null
      * @param message The message to be saved
@@ -135,9 +159,32 @@ public class BbmUtils {
         if (TextUtils.isEmpty(chatId)) {
             return;
         }
+        if (mDraftStore.setDraft(chatId, message)) {
+            scheduleDraftFlush();
+        }
+    }
+
+    /**
+     * Write any drafts that are waiting for typing to stop.
+     * This should be called when leaving a chat or when the app is going to the background.
+     */
+    public static void flushDraftMessages() {
+        sHandler.removeCallbacks(sDraftFlushRunnable);
+        mDraftStore.flush();
+    }
+
+    private static void scheduleDraftFlush() {
+        sHandler.removeCallbacks(sDraftFlushRunnable);
+        final long delayMs = mDraftStore.flushDue();
+        if (delayMs >= 0) {
+            sHandler.postDelayed(sDraftFlushRunnable, delayMs);
+        }
+    }
+
+    private static void writeDraftMessage(final String chatId, final String message) {
         try {
             final JSONObject draft = new JSONObject();
-            draft.put("message", message == null ? "" : message);
+            draft.put("message", message);
 
             final JSONObject data = new JSONObject();
             data.put("draft", draft);
@@ -152,6 +199,12 @@ public class BbmUtils {
                         return false;
                     }
 
+                    //the draft loaded with the chat might already be the same
+                    final String savedMessage = getSavedDraftMessage(chat);
+                    if (message.equals(savedMessage == null ? "" : savedMessage)) {
+                        return true;
+                    }
+
                     Chat.AttributesBuilder builder = new Chat.AttributesBuilder().localData(data);
                     BBMEnterprise.getInstance().getBbmdsProtocol().send(chat.requestListChange(builder));
                     return true;
@@ -191,6 +244,8 @@ public class BbmUtils {
     /**
      * Mark all the incoming chat messages as read for the specified chat.
      * This results in the sender getting updated that the messages they sent are now read by the local user.
+     * A receipt is only sent if there are new messages since the last one, and it is sent after a short quiet period
+     * so calling this repeatedly (for example in both onPause and onResume) is cheap.
      *
      * @param chatId The chat ID
      */
@@ -198,6 +253,14 @@ public class BbmUtils {
         mMessageManager.markChatMessagesAsRead(chatId);
     }
 
+    /**
+     * Send any read receipts that are waiting for the quiet period to pass.
+     * This should be called when the app is going to the background.
+     */
+    public static void flushReadReceipts() {
+        mMessageManager.flushReadReceipts();
+    }
+
     private static final ConcurrentMap<String, ComputedList<ChatParticipant>> mConversationParticipantListMap = new com.google.common.collect.MapMaker().weakKeys().weakValues().makeMap();
 
     public static ComputedList<ChatParticipant> getChatParticipantList(final String chatId) {
@@ -281,50 +344,76 @@ public class BbmUtils {
 
     private static class MessageManager {
 
-        private final MarkMessageAsReadMonitor sMarkMessageAsReadMonitor = new MarkMessageAsReadMonitor();
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
 
-        private class MarkMessageAsReadMonitor extends SingleshotMonitor {
-
-            private String mChatId;
-
-            public void setChatId(final String chatId) {
-                mChatId = chatId;
+        //sends all the receipts that are due together
+        private final ReadReceiptTracker mReadReceiptTracker = new ReadReceiptTracker(new ReadReceiptTracker.Sender() {
+            @Override
+            public void send(@NonNull Map<String, Long> readMarks) {
+                for (Map.Entry<String, Long> mark : readMarks.entrySet()) {
+                    BBMEnterprise.getInstance().getBbmdsProtocol().send(
+                            new ChatMessageRead(mark.getKey(), mark.getValue())
+                    );
+                }
             }
+        });
 
+        private final Runnable mFlushRunnable = new Runnable() {
             @Override
-            protected boolean runUntilTrue() {
-                final Chat chat = BBMEnterprise.getInstance().getBbmdsProtocol().getChat(mChatId).get();
+            public void run() {
+                scheduleFlush();
+            }
+        };
 
-                if (chat.exists == Existence.YES) {
+        private void markChatMessagesAsRead(final String chatId) {
+            //a monitor per chat so marking several chats quickly does not drop any of them
+            SingleshotMonitor.run(new SingleshotMonitor.RunUntilTrue() {
+                @Override
+                public boolean run() {
+                    final Chat chat = BBMEnterprise.getInstance().getBbmdsProtocol().getChat(chatId).get();
+                    if (chat.exists != Existence.YES) {
+                        return false;
+                    }
                     if (chat.numMessages == 0 || chat.lastMessage == 0) {
                         // Exit out of the monitor, since there are no messages in this conversation
                         return true;
                     }
+                    if (chat.lastMessage <= mReadReceiptTracker.getAcknowledged(chatId)) {
+                        //nothing new since the last receipt, no need to wait for the message
+                        return true;
+                    }
 
-                    final ChatMessage.ChatMessageKey lookupKey = new ChatMessage.ChatMessageKey(mChatId, chat.lastMessage);
+                    final ChatMessage.ChatMessageKey lookupKey = new ChatMessage.ChatMessageKey(chatId, chat.lastMessage);
                     final ChatMessage lastMessage = BBMEnterprise.getInstance().getBbmdsProtocol().getChatMessage(lookupKey).get();
+                    if (lastMessage.exists == Existence.MAYBE) {
+                        return false;
+                    }
 
-                    if (lastMessage.exists == Existence.YES) {
-                        if ((lastMessage.hasFlag(ChatMessage.Flags.Incoming))
-                                && lastMessage.state != ChatMessage.State.Read) {
-                            BBMEnterprise.getInstance().getBbmdsProtocol().send(
-                                    new ChatMessageRead(mChatId, chat.lastMessage)
-                            );
+                    if (lastMessage.exists == Existence.YES && lastMessage.hasFlag(ChatMessage.Flags.Incoming)
+                            && lastMessage.state != ChatMessage.State.Read) {
+                        if (mReadReceiptTracker.markRead(chatId, chat.lastMessage)) {
+                            scheduleFlush();
                         }
-
-                        return true;
+                    } else {
+                        //our own message or already read, remember it so it isn't looked up again
+                        mReadReceiptTracker.setAcknowledged(chatId, chat.lastMessage);
                     }
+                    return true;
                 }
+            });
+        }
 
-
-                return false;
-            }
-
+        private void flushReadReceipts() {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mReadReceiptTracker.flush();
         }
 
-        private void markChatMessagesAsRead(final String chatId) {
-            sMarkMessageAsReadMonitor.setChatId(chatId);
-            sMarkMessageAsReadMonitor.activate();
+        private void scheduleFlush() {
+            mHandler.removeCallbacks(mFlushRunnable);
+            final long delayMs = mReadReceiptTracker.flushDue();
+            if (delayMs >= 0) {
+                mHandler.postDelayed(mFlushRunnable, delayMs);
+            }
         }
     }
 
@@ -406,6 +495,13 @@ public class BbmUtils {
         if (chat == null) {
             return null;
         }
+        //a draft still waiting to be written is newer than the one in the chat
+        final String pendingDraft = chat.chatId == null ? null : mDraftStore.getPendingDraft(chat.chatId);
+        return pendingDraft != null ? pendingDraft : getSavedDraftMessage(chat);
+    }
+
+    //the draft last written to the chat
+    private static String getSavedDraftMessage(@NonNull final Chat chat) {
         JSONObject data = chat.localData;
         try {
             if (data != null && data.has("draft")) {
@@ -12,6 +12,8 @@
 package com.bbm.sdk.support.util;
 
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 
 import com.bbm.sdk.BBMEnterprise;
@@ -32,9 +34,42 @@ import java.util.UUID;
  * Helper utility to simplify starting a new chat and listening for the creation of that chat.
  * This allows the caller to just provide a {@link ChatStartedCallback} instead of needing to
  * implement a ProtocolMessageConsumer.
+ * All chat starts share a single ProtocolMessageConsumer which routes the response to the waiting callback by cookie.
  */
 public class ChatStartHelper {
 
+    /**
+     * How long to wait for the chat to be created before the callback is told the chat start failed.
+     */
+    public static final long CHAT_START_TIMEOUT_MS = 60 * 1000;
+
+    private static final CookieDispatcher<ProtocolMessage> sDispatcher = new CookieDispatcher<>();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static boolean sConsumerAdded = false;
+
+    private static final Runnable sExpireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduleExpiry(sDispatcher.expire());
+        }
+    };
+
+    //Single consumer for all chat starts, only messages with a cookie we are waiting for are handled
+    private static final ProtocolMessageConsumer sChatStartConsumer = new ProtocolMessageConsumer() {
+        @Override
+        public void onMessage(ProtocolMessage message) {
+            final JSONObject json = message.getData();
+            if (json != null) {
+                sDispatcher.dispatch(json.optString("cookie", null), message);
+            }
+        }
+
+        @Override
+        public void resync() {
+            Logger.d("resync: ");
+        }
+    };
+
     /**
      * Start a new one to one chat with the provided regId.
      * @param regId registration id of the user to chat with
@@ -54,6 +89,28 @@ public class ChatStartHelper {
         startChat(regIds, chatSubject, false, callback);
     }
 
+    /**
+     * Start a one to one chat with each of the provided regIds.
+     * The callback is notified once for each regId.
+     * @param regIds registration ids of the users to chat with
+     * @param callback notified as each chat is created or fails to be created
+     */
+    public static void startChats(@NonNull final long[] regIds, @NonNull final BulkChatStartedCallback callback) {
+        for (final long regId : regIds) {
+            startChat(new long[]{regId}, null, true, new ChatStartedCallback() {
+                @Override
+                public void onChatStarted(@NonNull String chatId) {
+                    callback.onChatStarted(regId, chatId);
+                }
+
+                @Override
+                public void onChatStartFailed(ChatStartFailed.Reason reason) {
+                    callback.onChatStartFailed(regId, reason);
+                }
+            });
+        }
+    }
+
     private static void startChat(final long[] regIds, String chatSubject, boolean oneToOne, final ChatStartedCallback callback) {
         ArrayList<ChatStart.Invitees> invitees = new ArrayList<>();
         for (int i=0;i<regIds.length;++i) {
@@ -74,46 +131,59 @@ public class ChatStartHelper {
         Logger.d("startNewChat: about to send "+chatStart);
 
         //need to listen for when chat is created/found
-        BBMEnterprise.getInstance().getBbmdsProtocolConnector().addMessageConsumer(new ProtocolMessageConsumer() {
+        addConsumer();
+        sDispatcher.register(cookie, CHAT_START_TIMEOUT_MS, new CookieDispatcher.ResponseListener<ProtocolMessage>() {
             @Override
-            public void onMessage(ProtocolMessage message) {
-                final JSONObject json = message.getData();
+            public void onResponse(@NonNull ProtocolMessage message) {
                 Logger.d("onMessage: "+message);
-                if (cookie.equals(json.optString("cookie",""))) {
-                    //this is for us, stop listening
-                    BBMEnterprise.getInstance().getBbmdsProtocolConnector().removeMessageConsumer(this);
-
-                    if ("chatStartFailed".equals(message.getType())) {
-                        ChatStartFailed chatStartFailed = new ChatStartFailed().setAttributes(json);
-                        if (chatStartFailed.reason == ChatStartFailed.Reason.AlreadyExists) {
-                            callback.onChatStarted(chatStartFailed.chatId);
-                        } else {
-                            Logger.i("Failed to create chat with " + chatStart);
-                            callback.onChatStartFailed(chatStartFailed.reason);
-                        }
+                final JSONObject json = message.getData();
+                if ("chatStartFailed".equals(message.getType())) {
+                    ChatStartFailed chatStartFailed = new ChatStartFailed().setAttributes(json);
+                    if (chatStartFailed.reason == ChatStartFailed.Reason.AlreadyExists) {
+                        callback.onChatStarted(chatStartFailed.chatId);
                     } else {
-                        try {
-                            final JSONArray elementsArray = json.getJSONArray("elements");
-                            final Chat chat = new Chat().setAttributes(elementsArray.getJSONObject(0));
-                            callback.onChatStarted(chat.chatId);
-                        } catch (final JSONException e) {
-                            Logger.e(e, "Failed to process start chat message "+message);
-                            callback.onChatStartFailed(ChatStartFailed.Reason.Unspecified);
-                        }
+                        Logger.i("Failed to create chat with " + chatStart);
+                        callback.onChatStartFailed(chatStartFailed.reason);
+                    }
+                } else {
+                    try {
+                        final JSONArray elementsArray = json.getJSONArray("elements");
+                        final Chat chat = new Chat().setAttributes(elementsArray.getJSONObject(0));
+                        callback.onChatStarted(chat.chatId);
+                    } catch (final JSONException e) {
+                        Logger.e(e, "Failed to process start chat message "+message);
+                        callback.onChatStartFailed(ChatStartFailed.Reason.Unspecified);
                     }
                 }
             }
 
             @Override
-            public void resync() {
-                Logger.d("resync: ");
+            public void onTimeout() {
+                Logger.i("Timed out waiting for chat to be created with " + chatStart);
+                callback.onChatStartFailed(ChatStartFailed.Reason.Unspecified);
             }
         });
+        //run the expiry check now so it gets rescheduled for the earliest pending timeout
+        scheduleExpiry(0);
 
         //now ask to create it
         BBMEnterprise.getInstance().getBbmdsProtocol().send(chatStart);
     }
 
+    private static synchronized void addConsumer() {
+        if (!sConsumerAdded) {
+            BBMEnterprise.getInstance().getBbmdsProtocolConnector().addMessageConsumer(sChatStartConsumer);
+            sConsumerAdded = true;
+        }
+    }
+
+    private static void scheduleExpiry(long delayMs) {
+        sHandler.removeCallbacks(sExpireRunnable);
+        if (delayMs >= 0) {
+            sHandler.postDelayed(sExpireRunnable, delayMs);
+        }
+    }
+
     /**
      * Callback for when the chat has either been successfully started, or failed to start.
      */
@@ -121,4 +191,12 @@ public class ChatStartHelper {
         void onChatStarted(@NonNull String chatId);
         void onChatStartFailed(ChatStartFailed.Reason reason);
     }
+
+    /**
+     * Callback for {@link #startChats(long[], BulkChatStartedCallback)}, notified once per regId.
+     */
+    public interface BulkChatStartedCallback {
+        void onChatStarted(long regId, @NonNull String chatId);
+        void onChatStartFailed(long regId, ChatStartFailed.Reason reason);
+    }
 }
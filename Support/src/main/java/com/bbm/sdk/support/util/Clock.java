@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+/**
+ * Source of the current time.
+ * Time dependent helpers (timeouts, debouncing, expiry...) take a Clock so they can be driven by a fake clock in tests.
+ */
+public interface Clock {
+
+    /**
+     * Clock backed by {@link System#currentTimeMillis()}
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return the current time in milliseconds
+     */
+    long currentTimeMillis();
+}
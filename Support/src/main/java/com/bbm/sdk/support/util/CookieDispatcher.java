@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Routes responses to the request that is waiting for them using the request cookie.
+ * A single instance can be shared by any number of outstanding requests, each response is matched with
+ * one map lookup instead of being offered to a separate consumer per request.
+ * Requests that do not get a response before their timeout are removed and their listener is notified
+ * when {@link #expire()} is called.
+ *
+ * @param <T> the response type
+ */
+public class CookieDispatcher<T> {
+
+    /**
+     * Notified once with either the response for the cookie, or that the request timed out.
+     */
+    public interface ResponseListener<T> {
+        void onResponse(@NonNull T response);
+
+        void onTimeout();
+    }
+
+    private static class PendingRequest<T> implements Comparable<PendingRequest<T>> {
+        final String mCookie;
+        final long mDeadline;
+        final ResponseListener<T> mListener;
+
+        PendingRequest(String cookie, long deadline, ResponseListener<T> listener) {
+            mCookie = cookie;
+            mDeadline = deadline;
+            mListener = listener;
+        }
+
+        @Override
+        public int compareTo(@NonNull PendingRequest<T> other) {
+            return Long.compare(mDeadline, other.mDeadline);
+        }
+    }
+
+    private final Clock mClock;
+    private final HashMap<String, PendingRequest<T>> mPending = new HashMap<>();
+    /**
+     * Requests ordered by deadline. Requests that got their response are not removed from here (that would be O(n)),
+     * they are skipped when they reach the head of the queue since they are no longer in mPending.
+     */
+    private final PriorityQueue<PendingRequest<T>> mDeadlines = new PriorityQueue<>();
+
+    public CookieDispatcher() {
+        this(Clock.SYSTEM);
+    }
+
+    public CookieDispatcher(@NonNull Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Register to be notified of the response for the specified cookie.
+     *
+     * @param cookie the cookie sent with the request
+     * @param timeoutMs how long to wait for the response before {@link ResponseListener#onTimeout()} is called
+     * @param listener notified of the response or timeout
+     */
+    public synchronized void register(@NonNull String cookie, long timeoutMs, @NonNull ResponseListener<T> listener) {
+        final PendingRequest<T> request = new PendingRequest<>(cookie, mClock.currentTimeMillis() + timeoutMs, listener);
+        final PendingRequest<T> replaced = mPending.put(cookie, request);
+        if (replaced != null) {
+            Logger.w("CookieDispatcher.register: replacing existing request for cookie " + cookie);
+        }
+        mDeadlines.add(request);
+    }
+
+    /**
+     * Pass the response to the request waiting for the cookie, if there is one.
+     *
+     * @return true if a request was waiting for this cookie
+     */
+    public boolean dispatch(String cookie, @NonNull T response) {
+        final PendingRequest<T> request;
+        synchronized (this) {
+            if (cookie == null) {
+                return false;
+            }
+            request = mPending.remove(cookie);
+        }
+
+        if (request == null) {
+            return false;
+        }
+
+        //call outside the lock so the listener can start more requests
+        request.mListener.onResponse(response);
+        return true;
+    }
+
+    /**
+     * Remove all requests whose timeout has passed and notify their listeners.
+     *
+     * @return the delay in ms until the next pending request times out, or -1 if nothing is pending
+     */
+    public long expire() {
+        final ArrayList<PendingRequest<T>> expired = new ArrayList<>();
+        final long nextDeadlineDelay;
+        synchronized (this) {
+            final long now = mClock.currentTimeMillis();
+            PendingRequest<T> head;
+            while ((head = mDeadlines.peek()) != null) {
+                if (mPending.get(head.mCookie) != head) {
+                    //already completed (or replaced), just drop it
+                    mDeadlines.poll();
+                } else if (head.mDeadline <= now) {
+                    mDeadlines.poll();
+                    mPending.remove(head.mCookie);
+                    expired.add(head);
+                } else {
+                    break;
+                }
+            }
+            nextDeadlineDelay = head == null ? -1 : head.mDeadline - now;
+        }
+
+        for (PendingRequest<T> request : expired) {
+            Logger.i("CookieDispatcher: request timed out for cookie " + request.mCookie);
+            request.mListener.onTimeout();
+        }
+        return nextDeadlineDelay;
+    }
+
+    /**
+     * @return the number of requests still waiting for a response
+     */
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Holds chat drafts locally while the user is typing and writes them once typing stops.
+ * Drafts are written after a quiet period with no changes (capped by a max delay) or when {@link #flush()} is called,
+ * and all pending drafts are handed to the {@link Writer} together.
+ * The writer compares each draft with the one saved in the chat, typing back to the saved text writes nothing.
+ */
+public class DraftStore extends BatchDebouncer<String> {
+
+    /**
+     * Persists drafts.
+     */
+    public interface Writer {
+        /**
+         * @param drafts chat id to the draft text, an empty string clears the draft
+         */
+        void write(@NonNull Map<String, String> drafts);
+    }
+
+    public static final long DEFAULT_QUIET_PERIOD_MS = 1500;
+    public static final long DEFAULT_MAX_DELAY_MS = 10000;
+
+    private final Writer mWriter;
+
+    public DraftStore(@NonNull Writer writer) {
+        this(writer, Clock.SYSTEM, DEFAULT_QUIET_PERIOD_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public DraftStore(@NonNull Writer writer, @NonNull Clock clock, long quietPeriodMs, long maxDelayMs) {
+        super(clock, quietPeriodMs, maxDelayMs);
+        mWriter = writer;
+    }
+
+    /**
+     * Update the draft for a chat.
+     *
+     * @param message the draft text, null or empty clears the draft
+     * @return true if the draft changed and now needs to be written
+     */
+    public synchronized boolean setDraft(@NonNull String chatId, @Nullable String message) {
+        final String draft = message == null ? "" : message;
+        if (draft.equals(getPending(chatId))) {
+            return false;
+        }
+        putPending(chatId, draft);
+        return true;
+    }
+
+    /**
+     * @return the draft waiting to be written for the chat, or null if there isn't one
+     */
+    @Nullable
+    public String getPendingDraft(@NonNull String chatId) {
+        return getPending(chatId);
+    }
+
+    @Override
+    protected void onFlush(@NonNull Map<String, String> batch) {
+        mWriter.write(batch);
+    }
+}
@@ -56,6 +56,33 @@ public class IOUtils {
         }
     }
 
+    /**
+     * Helper to copy data from an input stream and return a byte array to the caller, without reading more than
+     * maxLength bytes. The limit applies whether or not the stream's length is known up front.
+     *
+     * @param in            The input stream to copy data from
+     * @param contentLength The expected length, or negative if unknown
+     * @param maxLength     The most bytes to accept
+     * @return A byte array of the data.
+     * @throws IOException if reading fails or the stream has more than maxLength bytes
+     */
+    public static byte[] toByteArray(final InputStream in, final int contentLength, final int maxLength)
+            throws IOException {
+        int size = (contentLength > 1024) ? Math.min(contentLength, maxLength) : 1024;
+        final ByteArrayOutputStream os = new ByteArrayOutputStream(size);
+        final byte[] buffer = new byte[4 * 1024];
+        int total = 0;
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            total += len;
+            if (total > maxLength) {
+                throw new IOException("Stream longer than " + maxLength + " bytes");
+            }
+            os.write(buffer, 0, len);
+        }
+        return os.toByteArray();
+    }
+
     public static void copy(final InputStream in, final OutputStream out) throws IOException {
         // Transfer bytes from in to out
         final byte[] buffer = new byte[4 * 1024];
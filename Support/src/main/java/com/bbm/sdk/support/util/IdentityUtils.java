@@ -12,29 +12,35 @@
 package com.bbm.sdk.support.util;
 
 import android.content.Context;
-import android.os.AsyncTask;
 
 import com.bbm.sdk.BBMEnterprise;
 import com.bbm.sdk.reactive.SingleshotMonitor;
 import com.bbm.sdk.service.BBMEnterpriseState;
 import com.bbm.sdk.support.identity.UserIdentityMapper;
+import com.bbm.sdk.support.identity.user.UserManager;
 import com.google.firebase.iid.FirebaseInstanceId;
 
+import java.util.Random;
+
 public class IdentityUtils {
 
-    private static class FirebasePushTokenTask extends AsyncTask {
-        // The call to get the token is blocking so we run it off the main UI thread
-        @Override
-        protected Object doInBackground(Object[] params) {
-            final String token = FirebaseInstanceId.getInstance().getToken();
-            if (token != null) {
-                Logger.d("Updating firebase push token " + token);
-                BBMEnterprise.getInstance().setPushToken(token);
-            } else {
-                Logger.e("Firebase push token is NULL");
-            }
-            return null;
+    private static PushTokenRegistrar sPushTokenRegistrar;
+
+    /**
+     * @return the registrar that sends the Firebase push token to the BBM Enterprise SDK when it changes
+     */
+    public static synchronized PushTokenRegistrar getPushTokenRegistrar(Context context) {
+        if (sPushTokenRegistrar == null) {
+            // The call to get the token is blocking so it is made on the registrar's own thread
+            sPushTokenRegistrar = new PushTokenRegistrar(
+                    () -> FirebaseInstanceId.getInstance().getToken(),
+                    token -> BBMEnterprise.getInstance().setPushToken(token),
+                    PushTokenRegistrar.newPreferencesStore(context),
+                    SchedulerUtil.newScheduler("PushTokenRegistrar"),
+                    new Random()
+            );
         }
+        return sPushTokenRegistrar;
     }
 
     /**
@@ -48,6 +54,8 @@ public class IdentityUtils {
      */
     public static void initUserDbSync(Context context, boolean updateFcmPushToken) {
         UserIdentityMapper.getInstance().initializeFileCache(context);
+        //show the users saved last time while the user sync catches up
+        UserManager.getInstance().initializeFileCache(context);
         //start the monitor so the appropriate user sync is started when ready
         SingleshotMonitor.run(() -> {
             BBMEnterpriseState bbmEnterpriseState = BBMEnterprise.getInstance().getState().get();
@@ -57,7 +65,7 @@ public class IdentityUtils {
             if (bbmEnterpriseState == BBMEnterpriseState.STARTED) {
                 AuthIdentityHelper.initIdentity(context);
                 if (updateFcmPushToken) {
-                    setFirebaseToken();
+                    setFirebaseToken(context);
                 }
                 return true;
             }
@@ -65,9 +73,8 @@ public class IdentityUtils {
         });
     }
 
-    private static void setFirebaseToken() {
-        //noinspection unchecked
-        new FirebasePushTokenTask().execute();
+    private static void setFirebaseToken(Context context) {
+        getPushTokenRegistrar(context).register();
     }
 
 }
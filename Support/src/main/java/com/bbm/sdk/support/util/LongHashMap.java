@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map with primitive long keys, for ids such as regIds that are looked up often.
+ * Unlike a HashMap&lt;Long, V&gt; the keys are not boxed, and unlike a LongSparseArray lookups don't slow down as
+ * the map grows.
+ * Not thread safe.
+ *
+ * @param <V> the value type
+ */
+public class LongHashMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+    //resize when the table is more than 3/4 full
+    private int mThreshold;
+
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mThreshold = capacity * 3 / 4;
+    }
+
+    private static int hash(long key) {
+        //spread the bits, regIds are not evenly distributed in the low bits
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int indexOf(long key) {
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mValues[i] != null) {
+            if (mKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value for the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final int i = indexOf(key);
+        return i < 0 ? null : (V) mValues[i];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @param value the value for the key, must not be null
+     * @return the previous value for the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mValues[i] != null) {
+            if (mKeys[i] == key) {
+                final V old = (V) mValues[i];
+                mValues[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (++mSize > mThreshold) {
+            rehash(mKeys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was removed, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        final V old = (V) mValues[i];
+        //shift following entries of the probe sequence back so lookups don't stop at the hole
+        final int mask = mKeys.length - 1;
+        int next = (i + 1) & mask;
+        while (mValues[next] != null) {
+            final int home = hash(mKeys[next]) & mask;
+            //move the entry if its home slot is not between the hole and where it sits now
+            if (((next - home) & mask) >= ((next - i) & mask)) {
+                mKeys[i] = mKeys[next];
+                mValues[i] = mValues[next];
+                i = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mKeys[i] = 0;
+        mValues[i] = null;
+        --mSize;
+        return old;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mKeys, 0);
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /**
+     * @return a copy of the keys, in no particular order
+     */
+    public long[] keys() {
+        final long[] keys = new long[mSize];
+        int k = 0;
+        for (int i = 0; i < mValues.length; ++i) {
+            if (mValues[i] != null) {
+                keys[k++] = mKeys[i];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return a copy of the values, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        final ArrayList<V> values = new ArrayList<>(mSize);
+        for (Object value : mValues) {
+            if (value != null) {
+                values.add((V) value);
+            }
+        }
+        return values;
+    }
+
+    private void rehash(int capacity) {
+        final long[] keys = mKeys;
+        final Object[] values = mValues;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int j = 0; j < values.length; ++j) {
+            if (values[j] != null) {
+                int i = hash(keys[j]) & mask;
+                while (mValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = keys[j];
+                mValues[i] = values[j];
+            }
+        }
+    }
+}
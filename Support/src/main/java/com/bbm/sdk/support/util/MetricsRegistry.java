@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.reactive.Mutable;
+import com.bbm.sdk.reactive.ObservableValue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In process metrics, a named set of counters, gauges and latency histograms.
+ * Metrics can be updated from any thread. A {@link Snapshot} of all values can be taken at any time, or published to
+ * observers with {@link #publish()}.
+ */
+public class MetricsRegistry {
+
+    /**
+     * A value that only goes up, like the number of requests made.
+     */
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void inc() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long count) {
+            mValue.addAndGet(count);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * A value sampled when a snapshot is taken, like the size of a queue.
+     */
+    public interface Gauge {
+        long get();
+    }
+
+    /**
+     * Distribution of latencies in milliseconds, kept in fixed buckets so recording never allocates.
+     */
+    public static class Histogram {
+        //upper bound of each bucket in ms, the last bucket holds everything larger
+        static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+        private final long[] mBuckets = new long[BUCKET_BOUNDS_MS.length + 1];
+        private long mCount;
+        private long mSum;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax;
+
+        public synchronized void record(long ms) {
+            if (ms < 0) {
+                ms = 0;
+            }
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+                ++bucket;
+            }
+            ++mBuckets[bucket];
+            ++mCount;
+            mSum += ms;
+            mMin = Math.min(mMin, ms);
+            mMax = Math.max(mMax, ms);
+        }
+
+        public synchronized HistogramSnapshot snapshot() {
+            return new HistogramSnapshot(mBuckets.clone(), mCount, mSum, mCount == 0 ? 0 : mMin, mMax);
+        }
+    }
+
+    /**
+     * The values of a {@link Histogram} at one point in time.
+     */
+    public static class HistogramSnapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSum;
+        private final long mMin;
+        private final long mMax;
+
+        HistogramSnapshot(long[] buckets, long count, long sum, long min, long max) {
+            mBuckets = buckets;
+            mCount = count;
+            mSum = sum;
+            mMin = min;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMin() {
+            return mMin;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket holding the percentile, capped at the largest value recorded
+         */
+        public long getPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; ++i) {
+                seen += mBuckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i < Histogram.BUCKET_BOUNDS_MS.length ? Math.min(Histogram.BUCKET_BOUNDS_MS[i], mMax) : mMax;
+                }
+            }
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + mCount + " min=" + mMin + " mean=" + getMean() + " p50=" + getPercentile(50)
+                    + " p90=" + getPercentile(90) + " p99=" + getPercentile(99) + " max=" + mMax;
+        }
+    }
+
+    /**
+     * The values of all metrics at one point in time.
+     */
+    public static class Snapshot {
+        private final long mTime;
+        private final Map<String, Long> mCounters;
+        private final Map<String, Long> mGauges;
+        private final Map<String, HistogramSnapshot> mHistograms;
+
+        Snapshot(long time, Map<String, Long> counters, Map<String, Long> gauges,
+                 Map<String, HistogramSnapshot> histograms) {
+            mTime = time;
+            mCounters = Collections.unmodifiableMap(counters);
+            mGauges = Collections.unmodifiableMap(gauges);
+            mHistograms = Collections.unmodifiableMap(histograms);
+        }
+
+        /**
+         * @return the time the snapshot was taken
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * @return the counter value, or 0 if it was never used
+         */
+        public long getCounter(@NonNull String name) {
+            final Long value = mCounters.get(name);
+            return value != null ? value : 0;
+        }
+
+        /**
+         * @return the gauge value, or 0 if there is no such gauge
+         */
+        public long getGauge(@NonNull String name) {
+            final Long value = mGauges.get(name);
+            return value != null ? value : 0;
+        }
+
+        /**
+         * @return the histogram, or an empty histogram if nothing was recorded
+         */
+        @NonNull
+        public HistogramSnapshot getHistogram(@NonNull String name) {
+            final HistogramSnapshot histogram = mHistograms.get(name);
+            return histogram != null ? histogram : new Histogram().snapshot();
+        }
+
+        public Map<String, Long> getCounters() {
+            return mCounters;
+        }
+
+        public Map<String, Long> getGauges() {
+            return mGauges;
+        }
+
+        public Map<String, HistogramSnapshot> getHistograms() {
+            return mHistograms;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Long> counter : mCounters.entrySet()) {
+                sb.append(counter.getKey()).append(" = ").append(counter.getValue()).append('\n');
+            }
+            for (Map.Entry<String, Long> gauge : mGauges.entrySet()) {
+                sb.append(gauge.getKey()).append(" = ").append(gauge.getValue()).append('\n');
+            }
+            for (Map.Entry<String, HistogramSnapshot> histogram : mHistograms.entrySet()) {
+                sb.append(histogram.getKey()).append(" ").append(histogram.getValue()).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    private final String mName;
+    private final Clock mClock;
+    private final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+    private final Mutable<Snapshot> mSnapshot;
+
+    public MetricsRegistry(@NonNull String name) {
+        this(name, Clock.SYSTEM);
+    }
+
+    public MetricsRegistry(@NonNull String name, @NonNull Clock clock) {
+        mName = name;
+        mClock = clock;
+        mSnapshot = new Mutable<>(snapshot());
+    }
+
+    public Clock getClock() {
+        return mClock;
+    }
+
+    /**
+     * @return the counter with the name, created if needed
+     */
+    @NonNull
+    public Counter counter(@NonNull String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            mCounters.putIfAbsent(name, new Counter());
+            counter = mCounters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * @return the histogram with the name, created if needed
+     */
+    @NonNull
+    public Histogram histogram(@NonNull String name) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            mHistograms.putIfAbsent(name, new Histogram());
+            histogram = mHistograms.get(name);
+        }
+        return histogram;
+    }
+
+    /**
+     * Add a gauge, replacing any gauge with the same name.
+     * The gauge is read on the thread taking the snapshot.
+     */
+    public void gauge(@NonNull String name, @NonNull Gauge gauge) {
+        mGauges.put(name, gauge);
+    }
+
+    /**
+     * @return the current value of every metric
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        final TreeMap<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, Counter> counter : mCounters.entrySet()) {
+            counters.put(counter.getKey(), counter.getValue().get());
+        }
+        final TreeMap<String, Long> gauges = new TreeMap<>();
+        for (Map.Entry<String, Gauge> gauge : mGauges.entrySet()) {
+            gauges.put(gauge.getKey(), gauge.getValue().get());
+        }
+        final TreeMap<String, HistogramSnapshot> histograms = new TreeMap<>();
+        for (Map.Entry<String, Histogram> histogram : mHistograms.entrySet()) {
+            histograms.put(histogram.getKey(), histogram.getValue().snapshot());
+        }
+        return new Snapshot(mClock.currentTimeMillis(), counters, gauges, histograms);
+    }
+
+    /**
+     * @return the snapshot last published with {@link #publish()}
+     */
+    @NonNull
+    public ObservableValue<Snapshot> getObservableSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Take a snapshot and notify observers of {@link #getObservableSnapshot()}.
+     * Must be called on the thread the observers expect, normally the main thread.
+     */
+    public void publish() {
+        mSnapshot.set(snapshot());
+    }
+
+    /**
+     * Write the current value of every metric to the log.
+     */
+    public void dump() {
+        Logger.i(mName + " metrics:\n" + snapshot());
+    }
+}
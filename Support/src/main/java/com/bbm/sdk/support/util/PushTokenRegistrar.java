@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers the push token with the BBM Enterprise SDK.
+ * The token is got and sent on the registrar's own scheduler so it doesn't wait behind other background work.
+ * The last token sent is persisted and the token is only sent again when it changes.
+ * Failures, including the source not having a token yet, are tried again after a growing, jittered delay.
+ * Thread safe.
+ */
+public final class PushTokenRegistrar {
+
+    public static final long DEFAULT_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_MAX_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+    private static final String PREFERENCES = "com.bbm.sdk.support.push";
+    private static final String LAST_TOKEN = "last_registered_push_token";
+
+    /**
+     * Gets the push token, for example from Firebase.
+     */
+    public interface PushTokenSource {
+        /**
+         * Called on the registrar's scheduler, this can block.
+         *
+         * @return the token, or null if there isn't one yet
+         */
+        @Nullable
+        String getToken() throws Exception;
+    }
+
+    /**
+     * Sends the push token, normally to {@link com.bbm.sdk.BBMEnterprise#setPushToken(String)}.
+     */
+    public interface PushTokenSender {
+        void setPushToken(@NonNull String token) throws Exception;
+    }
+
+    /**
+     * Persists the last token that was sent.
+     */
+    public interface LastTokenStore {
+        @Nullable
+        String getLastToken();
+
+        void setLastToken(@Nullable String token);
+    }
+
+    /**
+     * @return a store that keeps the last token in the app's private shared preferences
+     */
+    @NonNull
+    public static LastTokenStore newPreferencesStore(@NonNull Context context) {
+        final SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        return new LastTokenStore() {
+            @Override
+            public String getLastToken() {
+                return preferences.getString(LAST_TOKEN, null);
+            }
+
+            @Override
+            public void setLastToken(String token) {
+                preferences.edit().putString(LAST_TOKEN, token).apply();
+            }
+        };
+    }
+
+    private final PushTokenSource mSource;
+    private final PushTokenSender mSender;
+    private final LastTokenStore mStore;
+    private final Scheduler mScheduler;
+    private final Random mRandom;
+
+    private long mRetryDelayMs = DEFAULT_RETRY_DELAY_MS;
+    private long mMaxRetryDelayMs = DEFAULT_MAX_RETRY_DELAY_MS;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    //True from when a registration is scheduled until it is done or gives up
+    private boolean mRegistering;
+    //Asked to register again while registering, the token could have changed
+    private boolean mRegisterAgain;
+    private int mAttempt;
+
+    private int mSendCount;
+    private int mSkipCount;
+    private int mRetryCount;
+
+    private final Runnable mRegister = new Runnable() {
+        @Override
+        public void run() {
+            attempt();
+        }
+    };
+
+    /**
+     * @param scheduler runs the registration and the retries, see {@link SchedulerUtil#newScheduler(String)}
+     */
+    public PushTokenRegistrar(@NonNull PushTokenSource source, @NonNull PushTokenSender sender,
+                              @NonNull LastTokenStore store, @NonNull Scheduler scheduler,
+                              @NonNull Random random) {
+        mSource = source;
+        mSender = sender;
+        mStore = store;
+        mScheduler = scheduler;
+        mRandom = random;
+    }
+
+    /**
+     * @param retryDelayMs    the delay after the first failure, doubled after each failure
+     * @param maxRetryDelayMs the longest delay
+     * @param maxAttempts     the number of attempts before giving up until {@link #register()} is called again
+     */
+    public synchronized void setRetryPolicy(long retryDelayMs, long maxRetryDelayMs, int maxAttempts) {
+        mRetryDelayMs = retryDelayMs;
+        mMaxRetryDelayMs = maxRetryDelayMs;
+        mMaxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Get the push token and send it if it changed since it was last sent.
+     * Call this when the SDK is started and when the push token is refreshed.
+     */
+    public synchronized void register() {
+        if (mRegistering) {
+            mRegisterAgain = true;
+            return;
+        }
+        mRegistering = true;
+        mAttempt = 0;
+        mScheduler.schedule(mRegister, 0);
+    }
+
+    /**
+     * Forget the last token sent so the next {@link #register()} sends it, for example when the endpoint was
+     * deregistered and the SDK no longer has the token.
+     */
+    public void reset() {
+        mStore.setLastToken(null);
+    }
+
+    /**
+     * @return the number of times the token was sent
+     */
+    public synchronized int getSendCount() {
+        return mSendCount;
+    }
+
+    /**
+     * @return the number of registrations that didn't send the token because it hadn't changed
+     */
+    public synchronized int getSkipCount() {
+        return mSkipCount;
+    }
+
+    /**
+     * @return the number of attempts tried again after failing
+     */
+    public synchronized int getRetryCount() {
+        return mRetryCount;
+    }
+
+    private void attempt() {
+        synchronized (this) {
+            ++mAttempt;
+            mRegisterAgain = false;
+        }
+
+        boolean done = false;
+        try {
+            final String token = mSource.getToken();
+            if (token == null) {
+                Logger.w("PushTokenRegistrar - no push token yet");
+            } else if (token.equals(mStore.getLastToken())) {
+                Logger.d("PushTokenRegistrar - push token has not changed");
+                synchronized (this) {
+                    ++mSkipCount;
+                }
+                done = true;
+            } else {
+                Logger.d("PushTokenRegistrar - updating push token " + token);
+                mSender.setPushToken(token);
+                mStore.setLastToken(token);
+                synchronized (this) {
+                    ++mSendCount;
+                }
+                done = true;
+            }
+        } catch (Exception e) {
+            Logger.w(e, "PushTokenRegistrar - unable to register push token");
+        }
+
+        synchronized (this) {
+            if (mRegisterAgain) {
+                mAttempt = 0;
+                mScheduler.schedule(mRegister, 0);
+            } else if (!done && mAttempt < mMaxAttempts) {
+                final long delayMs = SchedulerUtil.getRetryDelayMs(mRetryDelayMs, mMaxRetryDelayMs, mAttempt, mRandom);
+                Logger.i("PushTokenRegistrar - attempt " + mAttempt + " failed, trying again in " + delayMs + "ms");
+                ++mRetryCount;
+                mScheduler.schedule(mRegister, delayMs);
+            } else {
+                if (!done) {
+                    Logger.e("PushTokenRegistrar - unable to register push token after " + mAttempt + " attempts");
+                }
+                mRegistering = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last message acknowledged as read in each chat so read receipts are only sent when it advances.
+ * Marks are held for a quiet period so a burst of marks (opening and closing a chat, messages arriving while it is
+ * open) results in one receipt per chat, and the receipts for all chats that are due are handed to the
+ * {@link Sender} together.
+ * A mark is never held longer than the max delay even if new marks keep arriving.
+ */
+public class ReadReceiptTracker extends BatchDebouncer<Long> {
+
+    /**
+     * Sends the read receipts.
+     */
+    public interface Sender {
+        /**
+         * @param readMarks chat id to the id of the last message read in it, all older messages are read as well
+         */
+        void send(@NonNull Map<String, Long> readMarks);
+    }
+
+    public static final long DEFAULT_QUIET_PERIOD_MS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MS = 5000;
+
+    private final Sender mSender;
+
+    private final HashMap<String, Long> mAcknowledged = new HashMap<>();
+
+    public ReadReceiptTracker(@NonNull Sender sender) {
+        this(sender, Clock.SYSTEM, DEFAULT_QUIET_PERIOD_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public ReadReceiptTracker(@NonNull Sender sender, @NonNull Clock clock, long quietPeriodMs, long maxDelayMs) {
+        super(clock, quietPeriodMs, maxDelayMs);
+        mSender = sender;
+    }
+
+    /**
+     * Mark the messages in the chat as read up to and including the specified message.
+     *
+     * @return true if this advanced the mark and a receipt is now pending, false if the message was already
+     * acknowledged or is already pending
+     */
+    public synchronized boolean markRead(@NonNull String chatId, long messageId) {
+        if (messageId <= getMark(chatId)) {
+            return false;
+        }
+        putPending(chatId, messageId);
+        return true;
+    }
+
+    /**
+     * Record that messages up to the specified one are already read without sending a receipt, for example when
+     * they were read on another device.
+     */
+    public synchronized void setAcknowledged(@NonNull String chatId, long messageId) {
+        Long acknowledged = mAcknowledged.get(chatId);
+        if (acknowledged == null || acknowledged < messageId) {
+            mAcknowledged.put(chatId, messageId);
+        }
+        Long pending = getPending(chatId);
+        if (pending != null && pending <= messageId) {
+            removePending(chatId);
+        }
+    }
+
+    /**
+     * @return the id of the last message acknowledged in the chat, or 0 if none
+     */
+    public synchronized long getAcknowledged(@NonNull String chatId) {
+        Long acknowledged = mAcknowledged.get(chatId);
+        return acknowledged == null ? 0 : acknowledged;
+    }
+
+    @Override
+    protected void onBatchTaken(@NonNull Map<String, Long> batch) {
+        mAcknowledged.putAll(batch);
+    }
+
+    @Override
+    protected void onFlush(@NonNull Map<String, Long> batch) {
+        mSender.send(batch);
+    }
+
+    private long getMark(String chatId) {
+        Long pending = getPending(chatId);
+        if (pending != null) {
+            return pending;
+        }
+        Long acknowledged = mAcknowledged.get(chatId);
+        return acknowledged == null ? 0 : acknowledged;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Runs tasks in the background after a delay, such as fetches and the retries of fetches that failed.
+ * See {@link SchedulerUtil#newScheduler(String)}, tests use a scheduler driven by a fake clock.
+ */
+public interface Scheduler {
+
+    /**
+     * Run the task once the delay has passed.
+     */
+    void schedule(@NonNull Runnable task, long delayMs);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for background work that is scheduled and tried again when it fails.
+ */
+public final class SchedulerUtil {
+
+    private SchedulerUtil() {
+    }
+
+    /**
+     * @return a scheduler with its own background thread, so its tasks don't wait behind other background work
+     */
+    @NonNull
+    public static Scheduler newScheduler(@NonNull final String threadName) {
+        return newScheduler(threadName, 1);
+    }
+
+    /**
+     * @param threads the number of tasks that can run at the same time, for a scheduler shared by several users
+     * @return a scheduler with its own background threads
+     */
+    @NonNull
+    public static Scheduler newScheduler(@NonNull final String threadName, int threads) {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            final Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        return (task, delayMs) -> executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The delay before trying again, doubling with each attempt up to the max. The delay is picked at random from the
+     * upper half of that range so clients that failed together don't all retry at the same time.
+     *
+     * @param attempt the number of attempts that failed, starting at 1
+     */
+    public static long getRetryDelayMs(long baseDelayMs, long maxDelayMs, int attempt, @NonNull Random random) {
+        final long delay = Math.min(maxDelayMs, baseDelayMs << Math.min(Math.max(attempt - 1, 0), 20));
+        return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+    }
+}
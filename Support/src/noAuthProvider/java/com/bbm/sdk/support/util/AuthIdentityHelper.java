@@ -27,6 +27,8 @@ public class AuthIdentityHelper {
     }
 
     public static void handleEndpointDeregistered(Context context) {
+        //The push token needs to be sent again for the new endpoint
+        IdentityUtils.getPushTokenRegistrar(context).reset();
     }
 
     public static void setActivity(Activity activity) {
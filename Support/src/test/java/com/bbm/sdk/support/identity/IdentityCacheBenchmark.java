@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.identity;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.Benchmark;
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compare the memory used by the old string prefixed maps with the typed cache for the same mappings.
+ */
+@Category(Benchmark.class)
+public class IdentityCacheBenchmark {
+
+    private static final long TTL_MS = 60 * 60 * 1000;
+    private static final long NEGATIVE_TTL_MS = 60 * 1000;
+    private static final long REFRESH_AHEAD_MS = 10 * 60 * 1000;
+
+    private final FakeClock mClock = new FakeClock();
+
+    @Test
+    public void memoryAndLookupTime() {
+        final int count = 50000;
+        final Object[] values = new Object[count];
+        final String[] uids = new String[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = new Object();
+            uids[i] = "user-" + (1000000 + i);
+        }
+
+        long before = usedMemory();
+        HashMap<String, Object> prefixed = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            long regId = 0x100000000L + i * 7919L;
+            prefixed.put("regId." + regId, values[i]);
+            prefixed.put("uid." + uids[i], values[i]);
+        }
+        long prefixedBytes = usedMemory() - before;
+
+        before = usedMemory();
+        IdentityCache<Object> cache = new IdentityCache<>(new IdentityCache.Refresher<Object>() {
+            @Override
+            public void refresh(long regId, String uid, @NonNull Object value) {
+            }
+        }, mClock, TTL_MS, NEGATIVE_TTL_MS, REFRESH_AHEAD_MS, count);
+        for (int i = 0; i < count; ++i) {
+            long regId = 0x100000000L + i * 7919L;
+            cache.put(regId, uids[i], values[i], true);
+        }
+        long cacheBytes = usedMemory() - before;
+
+        long start = System.nanoTime();
+        int hits = 0;
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < count; ++i) {
+                if (cache.getByRegId(0x100000000L + i * 7919L) != null) {
+                    ++hits;
+                }
+            }
+        }
+        long lookupNs = (System.nanoTime() - start) / (10L * count);
+
+        System.out.println(count + " mappings: prefixed HashMap " + prefixedBytes / 1024 + "KB, IdentityCache "
+                + cacheBytes / 1024 + "KB (bounded to " + IdentityCache.DEFAULT_MAX_SIZE + " entries by default), "
+                + lookupNs + "ns per regId lookup");
+        assertEquals(10 * count, hits);
+        assertEquals(2 * count, prefixed.size());
+        assertEquals(count, cache.size());
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityCacheLoaderTest {
+
+    /**
+     * Keeps the chunks it is given.
+     */
+    private static class RecordingSink implements IdentityCacheLoader.Sink {
+        final List<List<IdentityCacheLoader.Entry>> mChunks = new ArrayList<>();
+        int mLoadedCount = -1;
+
+        @Override
+        public void onChunk(@NonNull List<IdentityCacheLoader.Entry> entries) {
+            mChunks.add(entries);
+        }
+
+        @Override
+        public void onLoaded(int count) {
+            mLoadedCount = count;
+        }
+    }
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("identity_map_cache", null);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private void writeEntries(int count, String... extraLines) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(mFile));
+        for (int i = 0; i < count; ++i) {
+            writer.append(Long.toString(1000 + i)).append(' ').append("user").append(Integer.toString(i)).append('\n');
+        }
+        for (String line : extraLines) {
+            writer.append(line).append('\n');
+        }
+        writer.close();
+    }
+
+    @Test
+    public void entriesAreHandedOverInChunks() throws IOException {
+        writeEntries(1050, "", "not-a-regid user", "1 2 3", "1000 renamed");
+        RecordingSink sink = new RecordingSink();
+        new IdentityCacheLoader(mFile, 100, sink).run();
+
+        assertEquals(11, sink.mChunks.size());
+        assertEquals(100, sink.mChunks.get(0).size());
+        assertEquals(51, sink.mChunks.get(10).size());
+        assertEquals(1051, sink.mLoadedCount);
+        assertEquals(1000, sink.mChunks.get(0).get(0).regId);
+        assertEquals("user0", sink.mChunks.get(0).get(0).uid);
+
+        //later lines replace earlier ones for the same regId
+        HashMap<Long, String> map = new HashMap<>();
+        for (List<IdentityCacheLoader.Entry> chunk : sink.mChunks) {
+            for (IdentityCacheLoader.Entry entry : chunk) {
+                map.put(entry.regId, entry.uid);
+            }
+        }
+        assertEquals("renamed", map.get(1000L));
+        assertEquals(1050, map.size());
+    }
+
+    @Test
+    public void missingFileLoadsNothing() {
+        mFile.delete();
+        RecordingSink sink = new RecordingSink();
+        new IdentityCacheLoader(mFile, 100, sink).run();
+        assertTrue(sink.mChunks.isEmpty());
+        assertEquals(0, sink.mLoadedCount);
+    }
+
+    @Test
+    public void parseLine() {
+        IdentityCacheLoader.Entry entry = IdentityCacheLoader.parseLine("42 abc");
+        assertEquals(42, entry.regId);
+        assertEquals("abc", entry.uid);
+        assertNull(IdentityCacheLoader.parseLine(""));
+        assertNull(IdentityCacheLoader.parseLine("42"));
+        assertNull(IdentityCacheLoader.parseLine("x abc"));
+        assertNull(IdentityCacheLoader.parseLine("42 abc def"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityCacheTest {
+
+    private static final long TTL_MS = 60 * 60 * 1000;
+    private static final long NEGATIVE_TTL_MS = 60 * 1000;
+    private static final long REFRESH_AHEAD_MS = 10 * 60 * 1000;
+    private static final int MAX_SIZE = 100;
+
+    private FakeClock mClock;
+    private final List<String> mRefreshed = new ArrayList<>();
+    private IdentityCache<String> mCache;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mRefreshed.clear();
+        mCache = new IdentityCache<>(new IdentityCache.Refresher<String>() {
+            @Override
+            public void refresh(long regId, String uid, @NonNull String value) {
+                mRefreshed.add(value);
+            }
+        }, mClock, TTL_MS, NEGATIVE_TTL_MS, REFRESH_AHEAD_MS, MAX_SIZE);
+    }
+
+    @Test
+    public void foundByEitherId() {
+        mCache.put(11, "a", "user a", true);
+        assertEquals("user a", mCache.getByRegId(11));
+        assertEquals("user a", mCache.getByUid("a"));
+        assertEquals(1, mCache.size());
+
+        assertEquals("user a", mCache.removeByUid("a"));
+        assertNull(mCache.getByRegId(11));
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void foundExpiresAfterTtl() {
+        mCache.put(11, "a", "user a", true);
+        mClock.advance(TTL_MS - 1);
+        assertEquals("user a", mCache.getByUid("a"));
+        mClock.advance(1);
+        assertNull(mCache.getByUid("a"));
+        assertNull(mCache.getByRegId(11));
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void notFoundExpiresAfterNegativeTtl() {
+        //a regId lookup that missed only knows the regId
+        mCache.put(12, "", "missing", false);
+        mClock.advance(NEGATIVE_TTL_MS - 1);
+        assertEquals("missing", mCache.getByRegId(12));
+        assertNull(mCache.getByUid(""));
+        mClock.advance(1);
+        assertNull(mCache.getByRegId(12));
+        //misses are never refreshed
+        assertTrue(mRefreshed.isEmpty());
+    }
+
+    @Test
+    public void hotEntriesAreRefreshedAhead() {
+        mCache.put(11, "a", "user a", true);
+        mCache.put(12, "b", "user b", true);
+        mClock.advance(TTL_MS - REFRESH_AHEAD_MS - 1);
+        mCache.getByRegId(11);
+        assertTrue(mRefreshed.isEmpty());
+
+        mClock.advance(1);
+        mCache.getByRegId(11);
+        mCache.getByUid("a");
+        //only asked once while the refresh is outstanding, and entries not in use are left to expire
+        assertEquals(1, mRefreshed.size());
+        assertEquals("user a", mRefreshed.get(0));
+
+        //refresh completes
+        mCache.put(11, "a", "user a", true);
+        mClock.advance(REFRESH_AHEAD_MS);
+        assertEquals("user a", mCache.getByUid("a"));
+        assertNull(mCache.getByUid("b"));
+        assertEquals(1, mRefreshed.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        for (int i = 1; i <= MAX_SIZE; ++i) {
+            mCache.put(i, "uid" + i, "user" + i, true);
+        }
+        //touch the oldest so the second oldest is evicted instead
+        mCache.getByRegId(1);
+        mCache.put(MAX_SIZE + 1, "new", "new user", true);
+
+        assertEquals(MAX_SIZE, mCache.size());
+        assertEquals("user1", mCache.getByUid("uid1"));
+        assertNull(mCache.getByRegId(2));
+        assertNull(mCache.getByUid("uid2"));
+        assertEquals("new user", mCache.getByRegId(MAX_SIZE + 1));
+    }
+
+    @Test
+    public void putReplacesEntriesForEitherId() {
+        mCache.put(11, "", "miss", false);
+        mCache.put(0, "a", "miss a", false);
+        mCache.put(11, "a", "user a", true);
+        assertEquals(1, mCache.size());
+        assertEquals("user a", mCache.getByRegId(11));
+        assertSame(mCache.getByRegId(11), mCache.getByUid("a"));
+
+        //the uid was moved to a new regId
+        mCache.put(22, "a", "user a moved", true);
+        assertEquals(1, mCache.size());
+        assertNull(mCache.getByRegId(11));
+        assertEquals("user a moved", mCache.getByUid("a"));
+    }
+}
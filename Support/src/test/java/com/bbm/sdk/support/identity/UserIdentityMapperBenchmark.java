@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity;
+
+import com.bbm.sdk.bbmds.internal.Existence;
+import com.bbm.sdk.reactive.ObservableValue;
+import com.bbm.sdk.reactive.Observer;
+import com.bbm.sdk.support.util.Benchmark;
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.SchedulerUtil;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Time from a lookup on the mapper until it is answered from a large cache file that is still being read, for a user
+ * near the start of the file and for the last user. Before, every lookup waited for the whole file to be read.
+ */
+@Category(Benchmark.class)
+public class UserIdentityMapperBenchmark {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void lookupLatencyWhileTheCacheLoads() throws Exception {
+        final int entries = 50000;
+        final File file = mFolder.newFile("identity_map_cache");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        for (int i = 0; i < entries; ++i) {
+            writer.append(Long.toString(1000 + i)).append(' ').append("user").append(Integer.toString(i)).append('\n');
+        }
+        writer.close();
+        final long[] regIds = new long[]{1000, 1000 + entries - 1};
+
+        //warm up the file cache and the code
+        lookup(file, regIds);
+
+        final long[] latencyUs = lookup(file, regIds);
+        System.out.println("Identity lookups from a cache of " + entries + " entries (" + file.length() / 1024
+                + "KB): first user answered after " + latencyUs[0] + "us, last user after " + latencyUs[1] + "us");
+        assertTrue(latencyUs[0] < latencyUs[1]);
+    }
+
+    /**
+     * Start loading the file on a new mapper and look the regIds up right away, like the first chat list bind.
+     *
+     * @return the time until each lookup was answered, in microseconds
+     */
+    private static long[] lookup(File file, long[] regIds) throws InterruptedException, IOException {
+        final UserIdentityMapperTest.RecordingRequester requester = new UserIdentityMapperTest.RecordingRequester();
+        final UserIdentityMapper mapper = new UserIdentityMapper(requester, Runnable::run,
+                SchedulerUtil.newScheduler("UserIdentityMapperBenchmark"), Clock.SYSTEM);
+        final AtomicLongArray answeredAt = new AtomicLongArray(regIds.length);
+        final CountDownLatch answered = new CountDownLatch(regIds.length);
+
+        final long start = System.nanoTime();
+        mapper.initializeFileCache(file, loader -> new Thread(loader, "UserIdentityMapperBenchmark-cache").start());
+        for (int i = 0; i < regIds.length; ++i) {
+            final int index = i;
+            final ObservableValue<UserIdentityMapper.IdentityMapResult> result =
+                    mapper.getUidForRegId(regIds[i], false);
+            final Observer observer = new Observer() {
+                @Override
+                public void changed() {
+                    if (result.get().existence == Existence.YES && answeredAt.compareAndSet(index, 0, System.nanoTime())) {
+                        answered.countDown();
+                    }
+                }
+            };
+            result.addObserver(observer);
+            //the loader may have found it before the observer was added
+            observer.changed();
+        }
+        assertTrue(answered.await(10, TimeUnit.SECONDS));
+        //all answered from the file, nothing was sent to bbmcore
+        assertEquals(0, requester.getRequestCount());
+
+        final long[] latencyUs = new long[regIds.length];
+        for (int i = 0; i < regIds.length; ++i) {
+            latencyUs[i] = (answeredAt.get(i) - start) / 1000;
+        }
+        return latencyUs;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.bbmds.internal.Existence;
+import com.bbm.sdk.reactive.ObservableValue;
+import com.bbm.sdk.support.util.FakeClock;
+import com.bbm.sdk.support.util.FakeScheduler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserIdentityMapperTest {
+
+    /**
+     * Keeps the lookups the mapper sends to bbmcore.
+     */
+    static class RecordingRequester implements UserIdentityMapper.IdentitiesRequester {
+        final List<List<String>> mUidLookups = new ArrayList<>();
+        final List<List<Long>> mRegIdLookups = new ArrayList<>();
+
+        @Override
+        public synchronized void requestRegIds(@NonNull List<String> uids) {
+            mUidLookups.add(uids);
+        }
+
+        @Override
+        public synchronized void requestUids(@NonNull List<Long> regIds) {
+            mRegIdLookups.add(regIds);
+        }
+
+        synchronized int getRequestCount() {
+            return mUidLookups.size() + mRegIdLookups.size();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FakeClock mClock;
+    private FakeScheduler mScheduler;
+    private RecordingRequester mRequester;
+    private ArrayList<Runnable> mLoaders;
+    private UserIdentityMapper mMapper;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mScheduler = new FakeScheduler(mClock);
+        mRequester = new RecordingRequester();
+        mLoaders = new ArrayList<>();
+        mMapper = new UserIdentityMapper(mRequester, Runnable::run, mScheduler, mClock);
+    }
+
+    /**
+     * Start reading a cache file with the lines, the file is read when {@link #finishLoading()} is called.
+     */
+    private void startLoading(String... lines) throws IOException {
+        File file = mFolder.newFile("identity_map_cache");
+        FileWriter writer = new FileWriter(file);
+        for (String line : lines) {
+            writer.append(line).append('\n');
+        }
+        writer.close();
+        mMapper.initializeFileCache(file, mLoaders::add);
+    }
+
+    private void finishLoading() {
+        mLoaders.remove(0).run();
+    }
+
+    private void advance(long ms) {
+        mScheduler.runUntil(mClock.currentTimeMillis() + ms);
+    }
+
+    @Test
+    public void lookupsInTheFileAreNotRequested() throws IOException {
+        startLoading("1 uid1");
+        ObservableValue<UserIdentityMapper.IdentityMapResult> result = mMapper.getUidForRegId(1, false);
+        assertEquals(Existence.MAYBE, result.get().existence);
+
+        finishLoading();
+        assertEquals(Existence.YES, result.get().existence);
+        assertEquals("uid1", result.get().uid);
+        advance(UserIdentityMapper.MAX_FILE_CACHE_WAIT_MS * 2);
+        assertEquals(0, mRequester.getRequestCount());
+    }
+
+    @Test
+    public void eachLookupWaitsForTheFileUntilItsOwnDeadline() throws IOException {
+        startLoading("1 uid1");
+        ObservableValue<UserIdentityMapper.IdentityMapResult> first = mMapper.getUidForRegId(2, false);
+        advance(300);
+        mMapper.getRegIdForUid("uid3", false);
+
+        advance(UserIdentityMapper.MAX_FILE_CACHE_WAIT_MS - 300);
+        assertEquals(Collections.singletonList(Collections.singletonList(2L)), mRequester.mRegIdLookups);
+        assertTrue(mRequester.mUidLookups.isEmpty());
+
+        mMapper.onIdentities(true, Collections.singletonList(new IdentityCacheLoader.Entry(2, "uid2")));
+        assertEquals("uid2", first.get().uid);
+        //the second lookup still has time to be found in the file
+        assertTrue(mRequester.mUidLookups.isEmpty());
+
+        advance(300);
+        assertEquals(Collections.singletonList(Collections.singletonList("uid3")), mRequester.mUidLookups);
+    }
+
+    @Test
+    public void fileEntriesDontReplaceAnswersFromBbmcore() throws IOException {
+        //the file has an older regId for uid5 and a user that has since been removed
+        startLoading("9 uid5", "2 gone");
+        ObservableValue<UserIdentityMapper.IdentityMapResult> byUid = mMapper.getRegIdForUid("uid5", false);
+        advance(UserIdentityMapper.MAX_FILE_CACHE_WAIT_MS);
+        mMapper.onIdentities(true, Collections.singletonList(new IdentityCacheLoader.Entry(5, "uid5")));
+        ObservableValue<UserIdentityMapper.IdentityMapResult> removed = mMapper.getUidForRegId(2, false);
+        advance(UserIdentityMapper.MAX_FILE_CACHE_WAIT_MS);
+        mMapper.onIdentities(true, Collections.<IdentityCacheLoader.Entry>emptyList());
+        assertEquals(Existence.NO, removed.get().existence);
+
+        finishLoading();
+        assertEquals(5, byUid.get().regId);
+        assertEquals(5, mMapper.getRegIdForUid("uid5", false).get().regId);
+        assertEquals(Existence.NO, mMapper.getUidForRegId(2, false).get().existence);
+    }
+
+    @Test
+    public void requestedLookupsAreLeftToBbmcore() throws IOException {
+        startLoading("1 old", "3 uid3");
+        ObservableValue<UserIdentityMapper.IdentityMapResult> result = mMapper.getUidForRegId(1, false);
+        advance(UserIdentityMapper.MAX_FILE_CACHE_WAIT_MS);
+        assertEquals(1, mRequester.getRequestCount());
+
+        finishLoading();
+        assertEquals(Existence.MAYBE, result.get().existence);
+        //entries no one asked bbmcore about still fill the gaps
+        assertEquals("uid3", mMapper.getUidForRegId(3, false).get().uid);
+
+        mMapper.onIdentities(true, Collections.singletonList(new IdentityCacheLoader.Entry(1, "new")));
+        assertEquals("new", result.get().uid);
+        assertEquals(new HashSet<>(Arrays.asList(1L)), new HashSet<>(mRequester.mRegIdLookups.get(0)));
+    }
+}
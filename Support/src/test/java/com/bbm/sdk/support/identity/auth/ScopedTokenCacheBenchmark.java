@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.Benchmark;
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.SchedulerUtil;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(Benchmark.class)
+public class ScopedTokenCacheBenchmark {
+
+    /**
+     * Graph and BBM tokens asked for at the same time on the real scheduler, against one global lock around
+     * both fetches.
+     */
+    @Test
+    public void parallelScopes() throws InterruptedException {
+        final long fetchMs = 100;
+        final AtomicInteger fetches = new AtomicInteger();
+        final ScopedTokenCache cache = new ScopedTokenCache(new ScopedTokenCache.ScopedTokenSource() {
+            @Override
+            public TokenManager.Token fetchToken(@NonNull String scope, TokenManager.Token rejected) throws Exception {
+                fetches.incrementAndGet();
+                //a round trip to Azure AD
+                Thread.sleep(fetchMs);
+                return new TokenManager.Token(scope, null, System.currentTimeMillis() + ScopedTokenCacheTest.LIFETIME_MS);
+            }
+        }, SchedulerUtil.newScheduler("ScopedTokenCacheBenchmark", 2), Runnable::run, Clock.SYSTEM, new Random(), null);
+
+        final int callersPerScope = 8;
+        final CountDownLatch done = new CountDownLatch(callersPerScope * 2);
+        final TokenManager.Callback callback = new TokenManager.Callback() {
+            @Override
+            public void onToken(@NonNull TokenManager.Token token) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure() {
+            }
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < callersPerScope; ++i) {
+            new Thread(() -> cache.getToken(ScopedTokenCacheTest.GRAPH, callback)).start();
+            new Thread(() -> cache.getToken(ScopedTokenCacheTest.BBM, callback)).start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(2, fetches.get());
+        System.out.println("Tokens for " + callersPerScope * 2 + " callers across 2 scopes: " + fetches.get()
+                + " fetches in " + elapsedMs + "ms, one request at a time across scopes would take "
+                + 2 * fetchMs + "ms");
+        assertTrue("took " + elapsedMs + "ms", elapsedMs < 2 * fetchMs);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+import com.bbm.sdk.support.util.FakeScheduler;
+import com.bbm.sdk.support.util.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScopedTokenCacheTest {
+
+    static final String GRAPH = "User.ReadWrite User.ReadBasic.All";
+    static final String BBM = "api://bbm/Messaging";
+    static final long LIFETIME_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Acts like MSAL acquiring a token silently: each scope takes a while and can fail with a service error a
+     * number of times, or need the user to sign in.
+     */
+    private class FakeMsalSource implements ScopedTokenCache.ScopedTokenSource {
+        final HashMap<String, Long> mDelayMs = new HashMap<>();
+        final HashMap<String, Integer> mFailuresLeft = new HashMap<>();
+        boolean mUiRequired;
+        int mFetches;
+
+        @Override
+        public TokenManager.Token fetchToken(@NonNull String scope, TokenManager.Token rejected) throws Exception {
+            ++mFetches;
+            final Long delay = mDelayMs.get(scope);
+            if (delay != null) {
+                mClock.advance(delay);
+            }
+            final Integer failures = mFailuresLeft.get(scope);
+            if (failures != null && failures > 0) {
+                mFailuresLeft.put(scope, failures - 1);
+                throw new IOException("MsalServiceException: service unavailable");
+            }
+            if (mUiRequired) {
+                return null;
+            }
+            return new TokenManager.Token(scope + mFetches, "user", mClock.currentTimeMillis() + LIFETIME_MS);
+        }
+    }
+
+    private static class RecordingCallback implements TokenManager.Callback {
+        final ArrayList<String> mTokens = new ArrayList<>();
+        int mFailures;
+
+        @Override
+        public void onToken(@NonNull TokenManager.Token token) {
+            mTokens.add(token.getValue());
+        }
+
+        @Override
+        public void onFailure() {
+            ++mFailures;
+        }
+    }
+
+    private FakeClock mClock;
+    private FakeScheduler mScheduler;
+    private FakeMsalSource mSource;
+    private MetricsRegistry mMetrics;
+    private ScopedTokenCache mCache;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mScheduler = new FakeScheduler(mClock);
+        mSource = new FakeMsalSource();
+        mMetrics = new MetricsRegistry("tokens", mClock);
+        mCache = new ScopedTokenCache(mSource, mScheduler, Runnable::run, mClock, new Random(1), mMetrics);
+    }
+
+    @Test
+    public void eachScopeHasItsOwnToken() {
+        RecordingCallback graph = new RecordingCallback();
+        RecordingCallback bbm = new RecordingCallback();
+        mCache.getToken(GRAPH, graph);
+        mCache.getToken(BBM, bbm);
+        mCache.getToken(BBM, bbm);
+        mScheduler.runUntil(mClock.currentTimeMillis());
+
+        assertEquals(2, mSource.mFetches);
+        assertEquals(GRAPH + "1", graph.mTokens.get(0));
+        assertEquals(2, bbm.mTokens.size());
+        assertEquals(bbm.mTokens.get(0), bbm.mTokens.get(1));
+        assertEquals(1, mMetrics.snapshot().getCounter(BBM + "." + TokenManager.METRIC_COALESCED));
+
+        //rejecting one scope's token leaves the other cached
+        mCache.invalidate(GRAPH);
+        assertNull(mCache.getCachedToken(GRAPH));
+        assertEquals(bbm.mTokens.get(0), mCache.getCachedToken(BBM).getValue());
+    }
+
+    @Test
+    public void refreshLatencyIncludesDelaysAndRetries() {
+        mSource.mDelayMs.put(GRAPH, 300L);
+        mSource.mFailuresLeft.put(GRAPH, 2);
+        RecordingCallback callback = new RecordingCallback();
+        mCache.getToken(GRAPH, callback);
+        mScheduler.runUntil(mClock.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2));
+
+        assertEquals(1, callback.mTokens.size());
+        assertEquals(3, mSource.mFetches);
+        long latency = mCache.getLastFetchLatencyMs(GRAPH);
+        //three fetches plus two jittered retry delays
+        assertTrue("latency " + latency, latency >= 900 + TokenManager.DEFAULT_RETRY_DELAY_MS / 2
+                + TokenManager.DEFAULT_RETRY_DELAY_MS);
+
+        MetricsRegistry.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(3, snapshot.getCounter(GRAPH + "." + TokenManager.METRIC_FETCHES));
+        assertEquals(2, snapshot.getCounter(GRAPH + "." + TokenManager.METRIC_FETCH_FAILURES));
+        MetricsRegistry.HistogramSnapshot histogram = snapshot.getHistogram(GRAPH + "." + TokenManager.METRIC_REFRESH_LATENCY);
+        assertEquals(1, histogram.getCount());
+        assertEquals(-1, mCache.getLastFetchLatencyMs(BBM));
+    }
+
+    @Test
+    public void tokenAgeAndBackgroundRefresh() {
+        mSource.mDelayMs.put(BBM, 200L);
+        mCache.getToken(BBM, new RecordingCallback());
+        mScheduler.runUntil(mClock.currentTimeMillis());
+        assertEquals(0, mCache.getTokenAgeMs(BBM));
+        assertEquals(-1, mCache.getTokenAgeMs(GRAPH));
+
+        mClock.advance(TimeUnit.MINUTES.toMillis(10));
+        assertEquals(TimeUnit.MINUTES.toMillis(10), mMetrics.snapshot().getGauge(BBM + "." + TokenManager.METRIC_TOKEN_AGE));
+
+        //refreshed in the background before it expires, without anyone asking
+        mScheduler.runUntil(mClock.currentTimeMillis() + LIFETIME_MS - TimeUnit.MINUTES.toMillis(10));
+        assertEquals(2, mSource.mFetches);
+        assertEquals(BBM + "2", mCache.getCachedToken(BBM).getValue());
+        assertTrue(mCache.getTokenAgeMs(BBM) < TokenManager.DEFAULT_REFRESH_AHEAD_MS);
+    }
+
+    @Test
+    public void signInNeededFailsWithoutRetrying() {
+        mSource.mUiRequired = true;
+        RecordingCallback callback = new RecordingCallback();
+        mCache.getToken(BBM, callback);
+        mScheduler.runUntil(mClock.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10));
+        assertEquals(1, callback.mFailures);
+        assertEquals(1, mSource.mFetches);
+
+        //the token from the interactive sign in is cached
+        mCache.setToken(BBM, new TokenManager.Token("interactive", "user", mClock.currentTimeMillis() + LIFETIME_MS));
+        mCache.getToken(BBM, callback);
+        assertEquals("interactive", callback.mTokens.get(0));
+    }
+
+    @Test
+    public void clearDropsTokensAndFetchesInFlight() {
+        mCache.getToken(GRAPH, new RecordingCallback());
+        mScheduler.runUntil(mClock.currentTimeMillis());
+        mCache.clear();
+        assertNull(mCache.getCachedToken(GRAPH));
+        assertEquals(-1, mCache.getTokenAgeMs(GRAPH));
+
+        //a fetch started before the sign out fails its callers and isn't cached
+        RecordingCallback callback = new RecordingCallback();
+        mCache.getToken(BBM, callback);
+        mCache.clear();
+        assertEquals(1, callback.mFailures);
+        mScheduler.runUntil(mClock.currentTimeMillis() + 1000);
+        assertNull(mCache.getCachedToken(BBM));
+        assertTrue(callback.mTokens.isEmpty());
+    }
+}
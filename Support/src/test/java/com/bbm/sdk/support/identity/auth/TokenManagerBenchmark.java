@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.Benchmark;
+import com.bbm.sdk.support.util.Clock;
+import com.bbm.sdk.support.util.SchedulerUtil;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(Benchmark.class)
+public class TokenManagerBenchmark {
+
+    /**
+     * Many threads asking for a token at once on the real scheduler, against a fetch per caller.
+     */
+    @Test
+    public void concurrentCallers() throws InterruptedException {
+        final AtomicInteger fetches = new AtomicInteger();
+        final TokenManager.TokenSource slowSource = new TokenManager.TokenSource() {
+            @Override
+            public TokenManager.Token fetchToken(TokenManager.Token rejected) throws Exception {
+                fetches.incrementAndGet();
+                //a network round trip
+                Thread.sleep(50);
+                return new TokenManager.Token("token", null, System.currentTimeMillis() + TokenManagerTest.LIFETIME_MS);
+            }
+        };
+        final TokenManager manager = new TokenManager(slowSource, SchedulerUtil.newScheduler("TokenManagerBenchmark"),
+                Runnable::run, Clock.SYSTEM, new Random());
+
+        final int callers = 32;
+        final CountDownLatch done = new CountDownLatch(callers);
+        final AtomicInteger tokens = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < callers; ++i) {
+            new Thread(() -> manager.getToken(new TokenManager.Callback() {
+                @Override
+                public void onToken(@NonNull TokenManager.Token token) {
+                    tokens.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure() {
+                    done.countDown();
+                }
+            })).start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(callers, tokens.get());
+        assertEquals(1, fetches.get());
+        System.out.println("Token for " + callers + " concurrent callers: " + fetches.get() + " fetch in " + elapsedMs
+                + "ms, a fetch per caller on a serial executor would take " + callers * 50 + "ms");
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.auth;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+import com.bbm.sdk.support.util.FakeScheduler;
+import com.bbm.sdk.support.util.SchedulerUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TokenManagerTest {
+
+    static final long LIFETIME_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Hands out numbered tokens, or fails as told.
+     */
+    private class FakeTokenSource implements TokenManager.TokenSource {
+        int mFetches;
+        int mFailuresLeft;
+        boolean mNoToken;
+        TokenManager.Token mLastRejected;
+        Runnable mDuringFetch;
+
+        @Override
+        public TokenManager.Token fetchToken(TokenManager.Token rejected) throws Exception {
+            ++mFetches;
+            mLastRejected = rejected;
+            if (mDuringFetch != null) {
+                mDuringFetch.run();
+                mDuringFetch = null;
+            }
+            if (mFailuresLeft > 0) {
+                --mFailuresLeft;
+                throw new IOException("offline");
+            }
+            if (mNoToken) {
+                return null;
+            }
+            return new TokenManager.Token("token" + mFetches, "account", mClock.currentTimeMillis() + LIFETIME_MS);
+        }
+    }
+
+    private static class RecordingCallback implements TokenManager.Callback {
+        final ArrayList<String> mTokens = new ArrayList<>();
+        int mFailures;
+
+        @Override
+        public void onToken(@NonNull TokenManager.Token token) {
+            mTokens.add(token.getValue());
+        }
+
+        @Override
+        public void onFailure() {
+            ++mFailures;
+        }
+    }
+
+    private FakeClock mClock;
+    private FakeScheduler mScheduler;
+    private FakeTokenSource mSource;
+    private TokenManager mManager;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mScheduler = new FakeScheduler(mClock);
+        mSource = new FakeTokenSource();
+        mManager = new TokenManager(mSource, mScheduler, Runnable::run, mClock, new Random(1));
+    }
+
+    @Test
+    public void concurrentCallersShareOneFetch() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        mManager.getToken(first);
+        mManager.getToken(second);
+        assertEquals(0, mSource.mFetches);
+
+        mScheduler.runDue();
+        assertEquals(1, mSource.mFetches);
+        assertEquals("token1", first.mTokens.get(0));
+        assertEquals("token1", second.mTokens.get(0));
+        assertEquals(1, mManager.getCoalescedCount());
+
+        //cached until it expires
+        RecordingCallback third = new RecordingCallback();
+        mClock.advance(LIFETIME_MS / 2);
+        mManager.getToken(third);
+        assertEquals("token1", third.mTokens.get(0));
+        assertEquals(1, mManager.getCacheHitCount());
+        assertEquals(1, mSource.mFetches);
+    }
+
+    @Test
+    public void refreshedBeforeExpiry() {
+        mManager.getToken(new RecordingCallback());
+        mScheduler.runDue();
+        assertEquals(1, mScheduler.size());
+        assertEquals(LIFETIME_MS - TokenManager.DEFAULT_REFRESH_AHEAD_MS, mScheduler.nextDelay());
+
+        mClock.advance(mScheduler.nextDelay());
+        mScheduler.runDue();
+        assertEquals(2, mSource.mFetches);
+
+        //the token callers get is never expired
+        mClock.advance(TokenManager.DEFAULT_REFRESH_AHEAD_MS);
+        RecordingCallback callback = new RecordingCallback();
+        mManager.getToken(callback);
+        assertEquals("token2", callback.mTokens.get(0));
+        assertEquals(2, mSource.mFetches);
+    }
+
+    @Test
+    public void callerInRefreshWindowGetsCachedTokenAndStartsRefresh() {
+        mManager.setRefreshAheadMs(0);
+        mManager.getToken(new RecordingCallback());
+        mScheduler.runDue();
+        mManager.setRefreshAheadMs(TimeUnit.MINUTES.toMillis(10));
+
+        mClock.advance(LIFETIME_MS - TimeUnit.MINUTES.toMillis(5));
+        RecordingCallback callback = new RecordingCallback();
+        mManager.getToken(callback);
+        assertEquals("token1", callback.mTokens.get(0));
+        mScheduler.runDue();
+        assertEquals(2, mSource.mFetches);
+        assertEquals("token2", mManager.getCachedToken().getValue());
+    }
+
+    @Test
+    public void failuresAreRetriedWithGrowingJitteredDelays() {
+        mSource.mFailuresLeft = 3;
+        RecordingCallback callback = new RecordingCallback();
+        mManager.getToken(callback);
+
+        ArrayList<Long> delays = new ArrayList<>();
+        mScheduler.runDue();
+        while (callback.mTokens.isEmpty()) {
+            long delay = mScheduler.nextDelay();
+            delays.add(delay);
+            mClock.advance(delay);
+            mScheduler.runDue();
+        }
+        assertEquals(4, mSource.mFetches);
+        assertEquals(3, mManager.getRetryCount());
+        assertEquals(3, delays.size());
+        for (int i = 0; i < delays.size(); ++i) {
+            long full = TokenManager.DEFAULT_RETRY_DELAY_MS << i;
+            assertTrue(delays.toString(), delays.get(i) >= full / 2 && delays.get(i) <= full);
+        }
+        assertEquals(0, callback.mFailures);
+    }
+
+    @Test
+    public void failsAfterMaxAttempts() {
+        mManager.setRetryPolicy(1000, 4000, 3);
+        mSource.mFailuresLeft = 10;
+        RecordingCallback callback = new RecordingCallback();
+        mManager.getToken(callback);
+        for (int i = 0; i < 10; ++i) {
+            mScheduler.runDue();
+            mClock.advance(4000);
+        }
+        assertEquals(3, mSource.mFetches);
+        assertEquals(1, callback.mFailures);
+        assertNull(mManager.getCachedToken());
+
+        //a source without a token fails without retrying
+        mSource.mFailuresLeft = 0;
+        mSource.mNoToken = true;
+        mManager.getToken(callback);
+        mScheduler.runDue();
+        assertEquals(4, mSource.mFetches);
+        assertEquals(2, callback.mFailures);
+    }
+
+    @Test
+    public void rejectedTokenIsReplaced() {
+        mManager.getToken(new RecordingCallback());
+        mScheduler.runDue();
+        TokenManager.Token first = mManager.getCachedToken();
+        assertNotNull(first);
+
+        mClock.advance(60000);
+        mManager.invalidate();
+        assertNull(mManager.getCachedToken());
+        RecordingCallback callback = new RecordingCallback();
+        mManager.getToken(callback);
+        mScheduler.runDue();
+        assertSame(first, mSource.mLastRejected);
+        assertEquals("token2", callback.mTokens.get(0));
+
+        //the refresh scheduled for the rejected token does nothing
+        mClock.advance(LIFETIME_MS - TokenManager.DEFAULT_REFRESH_AHEAD_MS - 60000);
+        mScheduler.runDue();
+        assertEquals(2, mSource.mFetches);
+    }
+
+    @Test
+    public void rejectedWhileFetchingFetchesAgain() {
+        mSource.mDuringFetch = mManager::invalidate;
+        mManager.getToken(new RecordingCallback());
+        mScheduler.runDue();
+        assertEquals(2, mSource.mFetches);
+        assertEquals("token2", mManager.getCachedToken().getValue());
+    }
+
+    @Test
+    public void retryDelayIsCapped() {
+        Random random = new Random(3);
+        for (int attempt = 1; attempt < 70; ++attempt) {
+            long delay = SchedulerUtil.getRetryDelayMs(1000, 60000, attempt, random);
+            assertTrue(delay >= Math.min(60000, 1000L << Math.min(attempt - 1, 20)) / 2);
+            assertTrue(delay <= 60000);
+        }
+    }
+}
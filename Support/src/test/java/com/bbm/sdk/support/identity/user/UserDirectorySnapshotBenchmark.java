@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.identity.user;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.bbm.sdk.support.identity.user.UserDirectorySnapshotTest.USER_COUNT;
+import static com.bbm.sdk.support.identity.user.UserDirectorySnapshotTest.user;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Report how long it takes for the first user to be available with and without a saved snapshot.
+ * Without it the first user needs the whole initial load from the source, the fake source has no network
+ * latency so the real difference is larger.
+ */
+@Category(Benchmark.class)
+public class UserDirectorySnapshotBenchmark {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void timeToFirstUser() throws IOException {
+        UserDirectorySnapshotTest.FakeUserSource source = new UserDirectorySnapshotTest.FakeUserSource();
+        for (int i = 1; i <= USER_COUNT; ++i) {
+            source.mUsers.add(user(i, "User " + i));
+        }
+        File file = new File(mFolder.getRoot(), "users.dat");
+        UserDirectorySnapshotTest.SnapshotListener previousRun = new UserDirectorySnapshotTest.SnapshotListener();
+        source.addListener(previousRun);
+        source.sync();
+        source.removeListener(previousRun);
+        previousRun.mSnapshot.save(file);
+
+        //warm up so the first measurement isn't also measuring class loading
+        UserDirectorySnapshot.load(file);
+
+        //cold start with the snapshot
+        long start = System.nanoTime();
+        UserDirectorySnapshotTest.SnapshotListener withSnapshot = new UserDirectorySnapshotTest.SnapshotListener();
+        withSnapshot.addLoaded(UserDirectorySnapshot.load(file));
+        double snapshotMs = (System.nanoTime() - start) / 1e6;
+        assertEquals(USER_COUNT, withSnapshot.mUsers.size());
+
+        source.addListener(withSnapshot);
+        start = System.nanoTime();
+        source.sync();
+        double resyncMs = (System.nanoTime() - start) / 1e6;
+        assertTrue(withSnapshot.mLastApplied.isEmpty());
+        source.removeListener(withSnapshot);
+
+        //cold start without it
+        UserDirectorySnapshotTest.SnapshotListener withoutSnapshot = new UserDirectorySnapshotTest.SnapshotListener();
+        source.addListener(withoutSnapshot);
+        start = System.nanoTime();
+        source.sync();
+        double sourceMs = (System.nanoTime() - start) / 1e6;
+        assertEquals(USER_COUNT, withoutSnapshot.mUsers.size());
+
+        System.out.println(String.format("UserDirectorySnapshot: %d users (%dKB), first user after %.1fms from the snapshot"
+                        + " versus %.1fms plus network time from the source, unchanged resync applied 0 changes in %.1fms",
+                USER_COUNT, file.length() / 1024, snapshotMs, sourceMs, resyncMs));
+    }
+}
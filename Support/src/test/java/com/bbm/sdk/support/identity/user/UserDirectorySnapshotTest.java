@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserDirectorySnapshotTest {
+
+    static final int USER_COUNT = 10000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Delivers its users as one initial load, the way FirebaseUserDbSync does after its first sync.
+     */
+    static class FakeUserSource extends AppSourceNotifier {
+        final ArrayList<AppUser> mUsers = new ArrayList<>();
+
+        @Override
+        public void requestUser(@NonNull String uid) {
+        }
+
+        void sync() {
+            beginInitialLoad();
+            for (AppUser user : mUsers) {
+                queueAppUserChange(EventToNotify.ADD, user);
+            }
+            endInitialLoad();
+        }
+    }
+
+    /**
+     * Applies the source changes through a snapshot the same way UserManager does, and records what was applied.
+     */
+    static class SnapshotListener implements AppUserListener {
+        final UserDirectorySnapshot mSnapshot = new UserDirectorySnapshot();
+        final HashMap<String, AppUser> mUsers = new HashMap<>();
+        List<AppUserChange> mLastApplied;
+
+        void addLoaded(List<AppUser> loaded) {
+            for (AppUser user : mSnapshot.addLoaded(loaded)) {
+                mUsers.put(user.getUid(), user);
+            }
+        }
+
+        @Override
+        public void remoteUsersChanged(@NonNull List<AppUserChange> changes, boolean initialLoadComplete) {
+            mLastApplied = initialLoadComplete ? mSnapshot.reconcile(changes) : mSnapshot.apply(changes);
+            for (AppUserChange change : mLastApplied) {
+                if (change.getType() == AppUserChange.Type.REMOVED) {
+                    mUsers.remove(change.getAppUser().getUid());
+                } else {
+                    mUsers.put(change.getAppUser().getUid(), change.getAppUser());
+                }
+            }
+        }
+
+        @Override
+        public void remoteUsersLoading() {
+        }
+
+        @Override
+        public void localUserUpdated(AppUser localAppUser) {
+        }
+
+        @Override
+        public void remoteUserAdded(AppUser remoteAppUser) {
+        }
+
+        @Override
+        public void remoteUserChanged(AppUser remoteAppUser) {
+        }
+
+        @Override
+        public void remoteUserRemoved(AppUser remoteAppUser) {
+        }
+
+        @Override
+        public void setAppUserSource(AppUserSource source) {
+        }
+    }
+
+    private FakeUserSource mSource;
+
+    @Before
+    public void setUp() {
+        mSource = new FakeUserSource();
+        for (int i = 1; i <= USER_COUNT; ++i) {
+            mSource.mUsers.add(user(i, "User " + i));
+        }
+    }
+
+    static AppUser user(long regId, String name) {
+        return new AppUser(regId, "uid" + regId, name, "user" + regId + "@example.com",
+                regId % 3 == 0 ? null : "https://example.com/avatar/" + regId);
+    }
+
+    @Test
+    public void versionChangesWithContents() {
+        assertEquals(UserDirectorySnapshot.version(user(1, "A")), UserDirectorySnapshot.version(user(1, "A")));
+        assertNotEquals(UserDirectorySnapshot.version(user(1, "A")), UserDirectorySnapshot.version(user(1, "B")));
+        assertNotEquals(UserDirectorySnapshot.version(new AppUser(1, "u", "", null, null)),
+                UserDirectorySnapshot.version(new AppUser(1, "u", null, "", null)));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        SnapshotListener listener = new SnapshotListener();
+        mSource.addListener(listener);
+        mSource.sync();
+
+        File file = new File(mFolder.getRoot(), "users.dat");
+        listener.mSnapshot.save(file);
+        List<AppUser> loaded = UserDirectorySnapshot.load(file);
+        assertEquals(USER_COUNT, loaded.size());
+        assertEquals(mSource.mUsers.get(2), loaded.get(2));
+        assertNull(loaded.get(2).getAvatarUrl());
+
+        assertTrue(UserDirectorySnapshot.load(new File(mFolder.getRoot(), "missing.dat")).isEmpty());
+
+        //saving again replaces the file without leaving a copy behind
+        mSource.mUsers.remove(0);
+        mSource.sync();
+        listener.mSnapshot.save(file);
+        assertEquals(USER_COUNT - 1, UserDirectorySnapshot.load(file).size());
+        assertEquals(1, mFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void corruptSnapshotIsRejected() throws IOException {
+        UserDirectorySnapshot snapshot = new UserDirectorySnapshot();
+        snapshot.addLoaded(mSource.mUsers.subList(0, 10));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out);
+        byte[] bytes = out.toByteArray();
+        //flip a character of a name
+        bytes[bytes.length / 2] ^= 0x01;
+        try {
+            UserDirectorySnapshot.read(new ByteArrayInputStream(bytes));
+            fail("corrupt record was read");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void syncOnlyAppliesDifferences() {
+        SnapshotListener listener = new SnapshotListener();
+        listener.addLoaded(new ArrayList<>(mSource.mUsers));
+        mSource.addListener(listener);
+
+        //while the app was closed 10 users changed, 5 were added and 3 removed
+        for (int i = 0; i < 10; ++i) {
+            int index = i * 100;
+            mSource.mUsers.set(index, user(index + 1, "Renamed " + i));
+        }
+        for (int i = 0; i < 5; ++i) {
+            mSource.mUsers.add(user(USER_COUNT + 1 + i, "New " + i));
+        }
+        AppUser removed = mSource.mUsers.remove(5000);
+        mSource.mUsers.remove(6000);
+        mSource.mUsers.remove(7000);
+
+        mSource.sync();
+
+        int added = 0;
+        int changed = 0;
+        int removedCount = 0;
+        for (AppUserChange change : listener.mLastApplied) {
+            switch (change.getType()) {
+                case ADDED:
+                    ++added;
+                    break;
+                case CHANGED:
+                    ++changed;
+                    break;
+                case REMOVED:
+                    ++removedCount;
+                    break;
+            }
+        }
+        assertEquals(5, added);
+        assertEquals(10, changed);
+        assertEquals(3, removedCount);
+        assertEquals(USER_COUNT + 5 - 3, listener.mUsers.size());
+        assertNull(listener.mUsers.get(removed.getUid()));
+        assertEquals("Renamed 1", listener.mUsers.get("uid101").getName());
+
+        //a second sync with nothing new applies nothing
+        mSource.sync();
+        assertTrue(listener.mLastApplied.isEmpty());
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserLookupCoalescerTest {
+
+    private static final long WINDOW_MS = 50;
+    private static final long NEGATIVE_TTL_MS = 60000;
+    private static final int MAX_BATCH_SIZE = 10;
+
+    /**
+     * In memory user directory that counts round trips and can hold results back to simulate a slow network.
+     */
+    private static class FakeBackend implements UserLookupCoalescer.Backend<String> {
+        final Map<String, String> mUsers = new HashMap<>();
+        final List<Set<String>> mRequests = new ArrayList<>();
+        final List<Runnable> mHeld = new ArrayList<>();
+        //uids whose read is cancelled, the rest of their batch still succeeds
+        final Set<String> mCancelled = new HashSet<>();
+        boolean mHold;
+        boolean mFail;
+
+        @Override
+        public void lookup(@NonNull Set<String> uids, @NonNull UserLookupCoalescer.Callback<String> callback) {
+            mRequests.add(uids);
+            final boolean fail = mFail;
+            Runnable respond = () -> {
+                if (fail) {
+                    callback.onError(new Exception("network"));
+                    return;
+                }
+                HashMap<String, String> found = new HashMap<>();
+                HashSet<String> failed = new HashSet<>();
+                for (String uid : uids) {
+                    if (mCancelled.contains(uid)) {
+                        failed.add(uid);
+                    } else if (mUsers.containsKey(uid)) {
+                        found.put(uid, mUsers.get(uid));
+                    }
+                }
+                callback.onResult(found, failed);
+            };
+            if (mHold) {
+                mHeld.add(respond);
+            } else {
+                respond.run();
+            }
+        }
+
+        void release() {
+            List<Runnable> held = new ArrayList<>(mHeld);
+            mHeld.clear();
+            for (Runnable respond : held) {
+                respond.run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements UserLookupCoalescer.Listener<String> {
+        final Map<String, String> mFound = new HashMap<>();
+        final List<String> mNotFound = new ArrayList<>();
+
+        @Override
+        public void onUserFound(@NonNull String uid, @NonNull String user) {
+            mFound.put(uid, user);
+        }
+
+        @Override
+        public void onUserNotFound(@NonNull String uid) {
+            mNotFound.add(uid);
+        }
+    }
+
+    private FakeClock mClock;
+    private FakeBackend mBackend;
+    private RecordingListener mListener;
+    private UserLookupCoalescer<String> mCoalescer;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mBackend = new FakeBackend();
+        mListener = new RecordingListener();
+        for (int i = 0; i < 200; ++i) {
+            mBackend.mUsers.put("uid" + i, "name" + i);
+        }
+        mCoalescer = new UserLookupCoalescer<>(mBackend, mListener, mClock, WINDOW_MS, NEGATIVE_TTL_MS,
+                MAX_BATCH_SIZE);
+    }
+
+    @Test
+    public void requestsInWindowShareOneRoundTrip() {
+        assertTrue(mCoalescer.request("uid1"));
+        assertEquals(WINDOW_MS, mCoalescer.flushDue());
+        mClock.advance(20);
+        assertTrue(mCoalescer.request("uid2"));
+        assertTrue(mCoalescer.request("uid3"));
+        //the window is measured from the first request, later ones don't push it back
+        assertEquals(WINDOW_MS - 20, mCoalescer.flushDue());
+        assertEquals(0, mBackend.mRequests.size());
+
+        mClock.advance(WINDOW_MS);
+        assertEquals(-1, mCoalescer.flushDue());
+        assertEquals(1, mBackend.mRequests.size());
+        assertEquals(3, mBackend.mRequests.get(0).size());
+        assertEquals("name2", mListener.mFound.get("uid2"));
+        assertEquals(3, mListener.mFound.size());
+        assertEquals(-1, mCoalescer.flushDue());
+    }
+
+    @Test
+    public void duplicateRequestsAreDropped() {
+        assertTrue(mCoalescer.request("uid1"));
+        assertFalse(mCoalescer.request("uid1"));
+        assertEquals(1, mCoalescer.getPendingCount());
+
+        mBackend.mHold = true;
+        mCoalescer.flush();
+        assertEquals(1, mCoalescer.getInFlightCount());
+        //already in flight, don't ask again
+        assertFalse(mCoalescer.request("uid1"));
+        assertEquals(0, mCoalescer.getPendingCount());
+
+        mBackend.release();
+        assertEquals(0, mCoalescer.getInFlightCount());
+        assertEquals(1, mBackend.mRequests.size());
+        assertEquals("name1", mListener.mFound.get("uid1"));
+
+        //found users are not cached here, the user manager keeps them
+        assertTrue(mCoalescer.request("uid1"));
+    }
+
+    @Test
+    public void notFoundIsCachedUntilExpiry() {
+        mCoalescer.request("missing");
+        mCoalescer.request("uid1");
+        mCoalescer.flush();
+        assertEquals(1, mListener.mNotFound.size());
+        assertEquals("missing", mListener.mNotFound.get(0));
+
+        mClock.advance(NEGATIVE_TTL_MS - 1);
+        assertFalse(mCoalescer.request("missing"));
+        mClock.advance(1);
+        assertTrue(mCoalescer.request("missing"));
+        mCoalescer.flush();
+        assertEquals(2, mBackend.mRequests.size());
+        assertEquals(2, mListener.mNotFound.size());
+    }
+
+    @Test
+    public void errorAllowsRetry() {
+        mBackend.mFail = true;
+        mCoalescer.request("uid1");
+        mCoalescer.flush();
+        assertEquals(0, mCoalescer.getInFlightCount());
+        assertTrue(mListener.mFound.isEmpty());
+        assertTrue(mListener.mNotFound.isEmpty());
+
+        //a failure isn't a negative result
+        mBackend.mFail = false;
+        assertTrue(mCoalescer.request("uid1"));
+        mCoalescer.flush();
+        assertEquals("name1", mListener.mFound.get("uid1"));
+    }
+
+    @Test
+    public void cancelledUsersFailAlone() {
+        mBackend.mCancelled.add("uid2");
+        mCoalescer.request("uid1");
+        mCoalescer.request("uid2");
+        mCoalescer.request("missing");
+        mCoalescer.flush();
+        assertEquals(0, mCoalescer.getInFlightCount());
+        assertEquals("name1", mListener.mFound.get("uid1"));
+        assertEquals(1, mListener.mFound.size());
+        //the cancelled user isn't cached as missing
+        assertEquals(1, mListener.mNotFound.size());
+        assertEquals("missing", mListener.mNotFound.get(0));
+
+        mBackend.mCancelled.clear();
+        assertTrue(mCoalescer.request("uid2"));
+        assertFalse(mCoalescer.request("missing"));
+        mCoalescer.flush();
+        assertEquals("name2", mListener.mFound.get("uid2"));
+    }
+
+    @Test
+    public void largeRequestsAreSplitIntoBatches() {
+        for (int i = 0; i < 25; ++i) {
+            mCoalescer.request("uid" + i);
+        }
+        mCoalescer.flush();
+        assertEquals(3, mBackend.mRequests.size());
+        assertEquals(MAX_BATCH_SIZE, mBackend.mRequests.get(0).size());
+        assertEquals(MAX_BATCH_SIZE, mBackend.mRequests.get(1).size());
+        assertEquals(5, mBackend.mRequests.get(2).size());
+        assertEquals(25, mListener.mFound.size());
+    }
+
+    /**
+     * Opening a group chat asks for every participant, one at a time as the participant list is bound, and asks
+     * again for participants that haven't arrived yet.
+     */
+    @Test
+    public void groupChatRoundTrips() {
+        final int participants = 150;
+        final int requestsPerParticipant = 3;
+        mCoalescer = new UserLookupCoalescer<>(mBackend, mListener, mClock, WINDOW_MS, NEGATIVE_TTL_MS,
+                UserLookupCoalescer.DEFAULT_MAX_BATCH_SIZE);
+        mBackend.mHold = true;
+
+        for (int round = 0; round < requestsPerParticipant; ++round) {
+            for (int i = 0; i < participants; ++i) {
+                //a few unknown users in the chat
+                String uid = i % 50 == 0 ? "gone" + i : "uid" + i;
+                //the user manager only asks for users it doesn't have yet
+                if (!mListener.mFound.containsKey(uid)) {
+                    mCoalescer.request(uid);
+                }
+                mClock.advance(1);
+                if (mCoalescer.flushDue() < 0) {
+                    mBackend.release();
+                }
+            }
+        }
+        mCoalescer.flush();
+        mBackend.release();
+
+        assertEquals(participants - 3, mListener.mFound.size());
+        assertEquals(3, mListener.mNotFound.size());
+        //one round trip per window instead of one per participant
+        assertTrue(mBackend.mRequests.size() <= participants / WINDOW_MS + 1);
+    }
+}
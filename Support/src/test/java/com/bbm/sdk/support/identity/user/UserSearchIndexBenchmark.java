@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Latency of each keystroke while typing queries into a picker over 50k users, against the scan and sort it replaces.
+ */
+@Category(Benchmark.class)
+public class UserSearchIndexBenchmark {
+
+    @Test
+    public void keystrokes() {
+        final int userCount = 50000;
+        List<AppUser> users = UserSearchIndexTest.directory(userCount);
+        UserSearchIndex index = new UserSearchIndex();
+        long start = System.nanoTime();
+        for (AppUser user : users) {
+            index.put(user);
+        }
+        long buildMs = (System.nanoTime() - start) / 1000000;
+        //first query computes the name order
+        start = System.nanoTime();
+        index.search(null, null);
+        long orderMs = (System.nanoTime() - start) / 1000000;
+
+        final String[] typed = {"jennifer sm", "jose garcia", "o'brien", "zoe@"};
+        //warm up
+        for (int i = 0; i < 3; ++i) {
+            for (String query : typed) {
+                for (int length = 1; length <= query.length(); ++length) {
+                    index.search(query.substring(0, length), null);
+                }
+            }
+        }
+
+        long worstNs = 0;
+        long totalNs = 0;
+        int keystrokes = 0;
+        long scanNs = 0;
+        for (String query : typed) {
+            for (int length = 1; length <= query.length(); ++length) {
+                String prefix = query.substring(0, length);
+                start = System.nanoTime();
+                index.search(prefix, null);
+                long elapsed = System.nanoTime() - start;
+                totalNs += elapsed;
+                worstNs = Math.max(worstNs, elapsed);
+                ++keystrokes;
+
+                start = System.nanoTime();
+                UserSearchIndexTest.scan(users, prefix);
+                scanNs += System.nanoTime() - start;
+            }
+        }
+
+        //a user changing, then the next keystroke
+        start = System.nanoTime();
+        index.put(new AppUser(1, users.get(0).getUid(), "Jennifer Smithson", "jen@corp.example.com", null));
+        index.search("jennifer smi", null);
+        long changeUs = (System.nanoTime() - start) / 1000;
+        assertEquals("Jennifer Smithson", index.search("smithson", null).get(0).getName());
+
+        //building again now that it is warmed up
+        UserSearchIndex rebuilt = new UserSearchIndex();
+        start = System.nanoTime();
+        for (AppUser user : users) {
+            rebuilt.put(user);
+        }
+        rebuilt.search(null, null);
+        long rebuildMs = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("User search over " + userCount + " users: build " + buildMs + "ms, name order "
+                + orderMs + "ms, per keystroke " + totalNs / keystrokes / 1000 + "us average "
+                + worstNs / 1000 + "us worst, scan and sort " + scanNs / keystrokes / 1000
+                + "us average, change then keystroke " + changeUs + "us, warm build and sort " + rebuildMs + "ms");
+    }
+}
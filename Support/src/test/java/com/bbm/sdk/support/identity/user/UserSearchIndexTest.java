@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.identity.user;
+
+import com.bbm.sdk.support.search.SearchTerms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserSearchIndexTest {
+
+    private static final String[] FIRST_NAMES = {"John", "Jennifer", "Joanna", "José", "Zoë", "Mary-Jo", "Ahmed",
+            "Chloé", "Jean", "Wei", "Priya", "Søren", "Michael", "Sarah", "Ángel", "Olivia", "Noah", "Emma", "Liam",
+            "Ava", "Lucas", "Mia", "Ethan", "Isabella", "Mateo", "Sofia", "Oliver", "Amelia", "Elijah", "Harper"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "García", "Miller",
+            "Davis", "Rodríguez", "Martínez", "Hernández", "López", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor",
+            "Moore", "Jackson", "Martin", "Lee", "Pérez", "Thompson", "White", "Harris", "Sánchez", "Clark", "O'Brien",
+            "Lewis", "Robinson", "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill"};
+
+    private UserSearchIndex mIndex;
+
+    private static AppUser user(String uid, String name, String email) {
+        return new AppUser(Math.abs(uid.hashCode()) + 1, uid, name, email, null);
+    }
+
+    private static String names(List<AppUser> users) {
+        StringBuilder names = new StringBuilder();
+        for (AppUser user : users) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(user.getName());
+        }
+        return names.toString();
+    }
+
+    @Before
+    public void setUp() {
+        mIndex = new UserSearchIndex();
+        mIndex.put(user("u1", "John Smith", "john.smith@example.com"));
+        mIndex.put(user("u2", "Joanna Smithers", "jo@smithco.com"));
+        mIndex.put(user("u3", "Zoë Ångström", "zoe@example.com"));
+        mIndex.put(user("u4", "Mary-Jo O'Brien", "mjob@example.org"));
+        mIndex.put(user("Xk9qP2", "Bob Jones", null));
+    }
+
+    @Test
+    public void wordsMatchByPrefix() {
+        assertEquals("Joanna Smithers, John Smith", names(mIndex.search("smi", null)));
+        assertEquals("Joanna Smithers, John Smith", names(mIndex.search("jo smith@", null)));
+        assertEquals("John Smith", names(mIndex.search("john sm", null)));
+        assertEquals("Joanna Smithers, John Smith", names(mIndex.search("sm jo", null)));
+        //every word has to match
+        assertEquals("", names(mIndex.search("john jones", null)));
+        //email and uid
+        assertEquals("Joanna Smithers", names(mIndex.search("smithco", null)));
+        assertEquals("Bob Jones", names(mIndex.search("xk9", null)));
+        assertEquals("Mary-Jo O'Brien", names(mIndex.search("example.org", null)));
+        //only the start of words
+        assertEquals("", names(mIndex.search("mith", null)));
+    }
+
+    @Test
+    public void caseAndAccentsAreIgnored() {
+        assertEquals("Zoë Ångström", names(mIndex.search("ZOE ang", null)));
+        assertEquals("Zoë Ångström", names(mIndex.search("zoë", null)));
+        assertEquals("Mary-Jo O'Brien", names(mIndex.search("brie", null)));
+        assertEquals("Mary-Jo O'Brien", names(mIndex.search("o'bri", null)));
+    }
+
+    @Test
+    public void emptyQueryReturnsAllInNameOrder() {
+        assertEquals("Bob Jones, Joanna Smithers, John Smith, Mary-Jo O'Brien, Zoë Ångström", names(mIndex.search("  ", null)));
+        assertEquals("Joanna Smithers, John Smith", names(mIndex.search(null, new AppUserFilter() {
+            @Override
+            public boolean matches(AppUser appUser) {
+                return appUser.getEmail() != null && appUser.getEmail().startsWith("jo");
+            }
+        })));
+    }
+
+    @Test
+    public void updatesAreIncremental() {
+        mIndex.put(user("u1", "Jonathan Smythe", "jon@example.com"));
+        assertEquals(5, mIndex.size());
+        assertEquals("Joanna Smithers", names(mIndex.search("smi", null)));
+        assertEquals("Jonathan Smythe", names(mIndex.search("smy", null)));
+
+        mIndex.remove("u2");
+        assertEquals("", names(mIndex.search("smi", null)));
+        assertEquals("Bob Jones, Jonathan Smythe, Mary-Jo O'Brien", names(mIndex.search("jo", null)));
+
+        //the removed user's number is reused
+        mIndex.put(user("u6", "Amy Smith", "amy@example.com"));
+        assertEquals("Amy Smith", names(mIndex.search("smi", null)));
+        assertEquals(5, mIndex.size());
+
+        mIndex.clear();
+        assertEquals(0, mIndex.size());
+        assertTrue(mIndex.search("", null).isEmpty());
+    }
+
+    /**
+     * Users without a uid can't be replaced or removed so they are left out, the user manager never lists them.
+     */
+    @Test
+    public void usersWithoutUidAreNotIndexed() {
+        mIndex.put(new AppUser(99, null, "Adam Nouid", "adam@example.com", null));
+        assertEquals(5, mIndex.size());
+        assertTrue(mIndex.search("adam", null).isEmpty());
+        assertEquals("Bob Jones, Joanna Smithers, John Smith, Mary-Jo O'Brien, Zoë Ångström", names(mIndex.search(null, null)));
+        mIndex.remove(null);
+        assertEquals(5, mIndex.size());
+    }
+
+    static List<AppUser> directory(int count) {
+        Random random = new Random(42);
+        ArrayList<AppUser> users = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String uid = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            String email = SearchTerms.normalize(first).replace("-", "") + "."
+                    + SearchTerms.normalize(last).replace("'", "") + i + "@corp.example.com";
+            users.add(new AppUser(i + 1, uid, first + " " + last, email, null));
+        }
+        return users;
+    }
+
+    /**
+     * The same result as scanning all the users the way a picker without the index would.
+     */
+    @Test
+    public void matchesLinearScan() {
+        UserSearchIndex index = new UserSearchIndex();
+        List<AppUser> users = directory(2000);
+        for (AppUser user : users) {
+            index.put(user);
+        }
+        for (String query : new String[]{"j", "jo", "jos", "jose g", "s", "an", "mar", "o'b", "corp", "2"}) {
+            assertEquals(query, names(scan(users, query)), names(index.search(query, null)));
+        }
+    }
+
+    static List<AppUser> scan(List<AppUser> users, String query) {
+        final List<String> tokens = SearchTerms.tokenize(query);
+        ArrayList<AppUser> results = new ArrayList<>();
+        for (AppUser user : users) {
+            ArrayList<String> words = new ArrayList<>();
+            words.addAll(SearchTerms.tokenize(user.getName()));
+            words.addAll(SearchTerms.tokenize(user.getEmail()));
+            words.addAll(SearchTerms.tokenize(user.getUid()));
+            boolean all = true;
+            for (String token : tokens) {
+                boolean found = false;
+                for (String word : words) {
+                    found |= word.startsWith(token);
+                }
+                all &= found;
+            }
+            if (all) {
+                results.add(user);
+            }
+        }
+        Collections.sort(results, new Comparator<AppUser>() {
+            @Override
+            public int compare(AppUser a, AppUser b) {
+                int result = SearchTerms.normalize(a.getName()).compareTo(SearchTerms.normalize(b.getName()));
+                return result != 0 ? result : a.getUid().compareTo(b.getUid());
+            }
+        });
+        return results;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.protect;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChatMailboxIndexTest {
+
+    private FakeChatList mChatList;
+    private ChatMailboxIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mChatList = new FakeChatList();
+        mIndex = new ChatMailboxIndex(mChatList);
+    }
+
+    @Test
+    public void indexFollowsTheChatList() {
+        assertFalse(mIndex.isStarted());
+        mChatList.start(mIndex, 5);
+        assertTrue(mIndex.isStarted());
+        assertEquals("chat3", mIndex.getChatId("mailbox3"));
+
+        mChatList.moveToTop(3);
+        assertEquals("chat3", mIndex.getChatId("mailbox3"));
+        assertTrue(mIndex.containsChat("chat3"));
+
+        mChatList.remove(0, 1);
+        assertNull(mIndex.getChatId("mailbox3"));
+
+        //a mailbox assigned after the chat was added
+        mChatList.add(0, "chat9", "");
+        assertNull(mIndex.getChatId("mailbox9"));
+        mChatList.change(0, "mailbox9");
+        assertEquals("chat9", mIndex.getChatId("mailbox9"));
+
+        mIndex.stop();
+        assertFalse(mIndex.isStarted());
+        assertNull(mIndex.getChatId("mailbox9"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.protect;
+
+import com.bbm.sdk.support.util.Benchmark;
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Failure handling for a batch of failed mailboxes against the scan of the chat list for each mailbox it replaces.
+ */
+@Category(Benchmark.class)
+public class DefaultKeyImportFailureListenerBenchmark {
+
+    @Test
+    public void leaveChatsAgainstScan() {
+        final int chatCount = 5000;
+        final int failedCount = 500;
+        FakeChatList chatList = new FakeChatList();
+        ChatMailboxIndex index = new ChatMailboxIndex(chatList);
+        ArrayList<List<String>> leaves = new ArrayList<>();
+        DefaultKeyImportFailureListener listener = new DefaultKeyImportFailureListener(
+                new FakeStorageProvider(new FakeClock()), index, chatIds -> leaves.add(chatIds));
+        chatList.start(index, chatCount);
+
+        Random random = new Random(7);
+        ArrayList<String> failed = new ArrayList<>(failedCount);
+        for (int i = 0; i < failedCount; ++i) {
+            failed.add("mailbox" + random.nextInt(chatCount));
+        }
+
+        //warm up
+        for (int i = 0; i < 5; ++i) {
+            listener.leaveChats(failed);
+            scan(chatList, failed);
+        }
+
+        final int runs = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; ++i) {
+            leaves.clear();
+            listener.leaveChats(failed);
+        }
+        long indexUs = (System.nanoTime() - start) / runs / 1000;
+
+        ArrayList<String> scanned = null;
+        start = System.nanoTime();
+        for (int i = 0; i < runs; ++i) {
+            scanned = scan(chatList, failed);
+        }
+        long scanUs = (System.nanoTime() - start) / runs / 1000;
+
+        int left = 0;
+        for (List<String> leave : leaves) {
+            left += leave.size();
+        }
+        assertEquals(new LinkedHashSet<>(scanned).size(), left);
+
+        //keeping the index current while chats move to the top of the list
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; ++i) {
+            chatList.moveToTop(random.nextInt(chatCount));
+        }
+        long moveUs = (System.nanoTime() - start) / 1000 / 1000;
+        assertEquals(chatCount, index.getChatCount());
+
+        System.out.println("Chat key import failure for " + failedCount + " mailboxes in " + chatCount + " chats: index "
+                + indexUs + "us, scan " + scanUs + "us, index update per moved chat " + moveUs + "us");
+    }
+
+    /**
+     * The scan of the whole chat list for each failed mailbox.
+     */
+    private static ArrayList<String> scan(FakeChatList chatList, List<String> mailboxIds) {
+        ArrayList<String> chatsToLeave = new ArrayList<>();
+        for (String mailboxId : mailboxIds) {
+            for (String[] chat : chatList.mChats) {
+                if (chat[1].equals(mailboxId)) {
+                    chatsToLeave.add(chat[0]);
+                }
+            }
+        }
+        return chatsToLeave;
+    }
+}
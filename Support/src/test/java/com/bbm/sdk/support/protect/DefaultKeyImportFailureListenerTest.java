@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.protect;
+
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultKeyImportFailureListenerTest {
+
+    private FakeChatList mChatList;
+    private ChatMailboxIndex mIndex;
+    private ArrayList<List<String>> mLeaves;
+    private DefaultKeyImportFailureListener mListener;
+
+    @Before
+    public void setUp() {
+        mChatList = new FakeChatList();
+        mIndex = new ChatMailboxIndex(mChatList);
+        mLeaves = new ArrayList<>();
+        mListener = new DefaultKeyImportFailureListener(new FakeStorageProvider(new FakeClock()),
+                mIndex, chatIds -> mLeaves.add(chatIds));
+    }
+
+    @Test
+    public void leavesChatsOfFailedMailboxes() {
+        mChatList.start(mIndex, 5);
+        mListener.leaveChats(Arrays.asList("mailbox1", "unknown", "mailbox4", "mailbox1"));
+        assertEquals(1, mLeaves.size());
+        assertEquals(Arrays.asList("chat1", "chat4"), mLeaves.get(0));
+
+        mLeaves.clear();
+        mListener.leaveChats(Collections.singletonList("unknown"));
+        assertTrue(mLeaves.isEmpty());
+    }
+
+    @Test
+    public void leavesAreSplitAtTheCap() {
+        final int chats = DefaultKeyImportFailureListener.MAX_CHATS_PER_LEAVE * 2 + 5;
+        mChatList.start(mIndex, chats);
+        ArrayList<String> mailboxIds = new ArrayList<>();
+        for (int i = 0; i < chats; ++i) {
+            mailboxIds.add("mailbox" + i);
+        }
+        mListener.leaveChats(mailboxIds);
+
+        assertEquals(3, mLeaves.size());
+        assertEquals(DefaultKeyImportFailureListener.MAX_CHATS_PER_LEAVE, mLeaves.get(0).size());
+        assertEquals(DefaultKeyImportFailureListener.MAX_CHATS_PER_LEAVE, mLeaves.get(1).size());
+        assertEquals(5, mLeaves.get(2).size());
+        assertEquals("chat0", mLeaves.get(0).get(0));
+        assertEquals("chat" + (chats - 1), mLeaves.get(2).get(4));
+    }
+}
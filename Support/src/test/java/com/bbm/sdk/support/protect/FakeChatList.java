@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import java.util.ArrayList;
+
+/**
+ * A chat list that notifies the index of each change, like the bbmds chat list.
+ * Each chat is held as {chatId, mailboxId}.
+ */
+class FakeChatList implements ChatMailboxIndex.ChatSource {
+    final ArrayList<String[]> mChats = new ArrayList<>();
+    ChatMailboxIndex mIndex;
+
+    @Override
+    public int size() {
+        return mChats.size();
+    }
+
+    @Override
+    public String getChatId(int position) {
+        return mChats.get(position)[0];
+    }
+
+    @Override
+    public String getMailboxId(int position) {
+        return mChats.get(position)[1];
+    }
+
+    /**
+     * Add the chats chat0..chatN-1 with the mailboxes mailbox0..mailboxN-1, then start the index on the list.
+     */
+    void start(ChatMailboxIndex index, int chats) {
+        for (int i = 0; i < chats; ++i) {
+            add(i, "chat" + i, "mailbox" + i);
+        }
+        index.start();
+        mIndex = index;
+    }
+
+    void add(int position, String chatId, String mailboxId) {
+        mChats.add(position, new String[]{chatId, mailboxId});
+        if (mIndex != null) {
+            mIndex.onItemsInserted(position, 1);
+        }
+    }
+
+    void remove(int position, int count) {
+        mChats.subList(position, position + count).clear();
+        if (mIndex != null) {
+            mIndex.onItemsRemoved(position, count);
+        }
+    }
+
+    void change(int position, String mailboxId) {
+        mChats.get(position)[1] = mailboxId;
+        if (mIndex != null) {
+            mIndex.onItemsChanged(position, 1);
+        }
+    }
+
+    /**
+     * A new message moves the chat to the top of the list.
+     */
+    void moveToTop(int position) {
+        String[] chat = mChats.get(position);
+        remove(position, 1);
+        add(0, chat[0], chat[1]);
+    }
+}
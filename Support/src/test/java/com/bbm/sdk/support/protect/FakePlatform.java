@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.protect;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Runs the protected manager without a device or bbmcore. Posts run straight away, storage requests run when they are
+ * executed or with mHoldRequests set wait for {@link #runHeldRequests()}, and the messages to bbmcore are recorded.
+ * Keys are derived at the lowest cost and the decrypted management keys are kept in memory.
+ */
+class FakePlatform implements ProtectedManager.Platform {
+    //chat keys given to bbmcore by mailbox id
+    final Map<String, String> mImportedChatKeys = new LinkedHashMap<>();
+    final List<String> mLeftChats = new ArrayList<>();
+    final List<AsyncTaskStorageRequest<?>> mHeldRequests = new ArrayList<>();
+    boolean mHoldRequests;
+    final String mRegId = "1234567890";
+    final String mUserDomain = "test-domain";
+    byte[] mSavedManagementKey;
+    byte[] mSavedManagementHmacKey;
+
+    @Override
+    public void post(Runnable runnable) {
+        runnable.run();
+    }
+
+    @Override
+    public void execute(AsyncTaskStorageRequest<?> request) {
+        request.onPreExecute();
+        if (mHoldRequests) {
+            mHeldRequests.add(request);
+        } else {
+            run(request);
+        }
+    }
+
+    void runHeldRequests() {
+        List<AsyncTaskStorageRequest<?>> held = new ArrayList<>(mHeldRequests);
+        mHeldRequests.clear();
+        for (AsyncTaskStorageRequest<?> request : held) {
+            run(request);
+        }
+    }
+
+    private static void run(AsyncTaskStorageRequest<?> request) {
+        request.doInBackground();
+        request.onPostExecute(null);
+    }
+
+    @Override
+    public void importChatKey(String mailboxId, String chatKey) {
+        mImportedChatKeys.put(mailboxId, chatKey);
+    }
+
+    @Override
+    public void leaveChat(String chatId) {
+        mLeftChats.add(chatId);
+    }
+
+    @Override
+    public String getRegId() {
+        return mRegId;
+    }
+
+    @Override
+    public String getUserDomain() {
+        return mUserDomain;
+    }
+
+    @Override
+    public int getKeyDerivationCost(KeyDerivationFunction function, long targetMs) {
+        return function.getMinimumCost();
+    }
+
+    @Override
+    public Key saveManagementEncryptionKey(byte[] keyBytes) {
+        mSavedManagementKey = keyBytes;
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+
+    @Override
+    public Key saveManagementHmacKey(byte[] keyBytes) {
+        mSavedManagementHmacKey = keyBytes;
+        return new SecretKeySpec(keyBytes, "HmacSHA256");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * In memory storage provider. Each request takes mLatencyMs on the fake clock, mailboxes in mFailing fail, and
+ * with mHold set responses wait for {@link #release()}. Profile keys aren't stored.
+ */
+class FakeStorageProvider implements KeyStorageProvider {
+    final FakeClock mClock;
+    final HashMap<String, EncryptedPayload> mChatKeys = new HashMap<>();
+    final HashSet<String> mFailing = new HashSet<>();
+    final List<Runnable> mHeld = new ArrayList<>();
+    EncryptedManagementKeys mManagementKeys;
+    int mManagementKeysWrites;
+    long mLatencyMs = 20;
+    boolean mHold;
+
+    FakeStorageProvider(FakeClock clock) {
+        mClock = clock;
+    }
+
+    private void respond(Runnable response) {
+        if (mHold) {
+            mHeld.add(response);
+        } else {
+            mClock.advance(mLatencyMs);
+            response.run();
+        }
+    }
+
+    void release() {
+        List<Runnable> held = new ArrayList<>(mHeld);
+        mHeld.clear();
+        for (Runnable response : held) {
+            mClock.advance(mLatencyMs);
+            response.run();
+        }
+    }
+
+    @Override
+    public void readChatKey(@NonNull String mailboxId, @NonNull KeyStorageResponse<EncryptedPayload> response) {
+        respond(() -> {
+            if (mFailing.contains(mailboxId)) {
+                response.onFailure();
+            } else {
+                response.onSuccess(mChatKeys.get(mailboxId));
+            }
+        });
+    }
+
+    @Override
+    public void writeChatKey(@NonNull String mailboxId, @NonNull EncryptedPayload chatKey,
+                             @NonNull KeyStorageResponse<Void> response) {
+        respond(() -> {
+            if (mFailing.contains(mailboxId)) {
+                response.onFailure();
+            } else {
+                mChatKeys.put(mailboxId, chatKey);
+                response.onSuccess(null);
+            }
+        });
+    }
+
+    @Override
+    public void writeProfileKeys(@NonNull EncryptedProfileKeys keys, @NonNull EncryptedManagementKeys managementKeys,
+                                 @NonNull KeyStorageResponse<Void> response) {
+        respond(() -> response.onSuccess(null));
+    }
+
+    @Override
+    public void removeProfileKeys(@NonNull KeyStorageResponse<Void> response) {
+        respond(() -> response.onSuccess(null));
+    }
+
+    @Override
+    public void removeChatKey(@NonNull String mailboxId, @NonNull KeyStorageResponse<Void> response) {
+        respond(() -> {
+            mChatKeys.remove(mailboxId);
+            response.onSuccess(null);
+        });
+    }
+
+    @Override
+    public void readPrivateKeys(@NonNull KeyStorageResponse<PrivateKeyPair> response) {
+        respond(() -> response.onSuccess(null));
+    }
+
+    @Override
+    public void readPublicKeys(@NonNull String uid, @NonNull KeyStorageResponse<KeyPair> response) {
+        respond(() -> response.onSuccess(null));
+    }
+
+    @Override
+    public void readManagementKeys(@NonNull KeyStorageResponse<EncryptedManagementKeys> response) {
+        respond(() -> response.onSuccess(mManagementKeys));
+    }
+
+    @Override
+    public void writeManagementKeys(@NonNull EncryptedManagementKeys encryptedManagementKeys,
+                                    @NonNull KeyStorageResponse<Void> response) {
+        respond(() -> {
+            mManagementKeys = encryptedManagementKeys;
+            ++mManagementKeysWrites;
+            response.onSuccess(null);
+        });
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cost curves of the derivation functions, and the single SHA-512 pass they replace.
+ */
+@Category(Benchmark.class)
+public class KeyDerivationBenchmark {
+
+    @Test
+    public void costCurves() throws Exception {
+        byte[] password = "correct horse battery staple".getBytes(StandardCharsets.UTF_8);
+        byte[] salt = new byte[KeyDerivation.SALT_LENGTH];
+        StringBuilder results = new StringBuilder();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; ++i) {
+            EncryptionHelper.createDerivedKey("correct horse battery staple", "1234567890", "domain");
+        }
+        results.append("sha512 single pass: ").append((System.nanoTime() - start) / 1000 / 1000).append("us\n");
+
+        Pbkdf2KeyDerivation.pbkdf2(password, salt, Pbkdf2KeyDerivation.MIN_ITERATIONS, 64);
+        for (int iterations = Pbkdf2KeyDerivation.MIN_ITERATIONS; iterations <= 160000; iterations *= 2) {
+            start = System.nanoTime();
+            Pbkdf2KeyDerivation.pbkdf2(password, salt, iterations, 64);
+            results.append("pbkdf2-sha256 iterations=").append(iterations).append(": ")
+                    .append((System.nanoTime() - start) / 1000000).append("ms\n");
+        }
+
+        //From below the minimum cost to show the curve, through the static function as derive rejects those
+        ScryptKeyDerivation.scrypt(password, salt, 1 << 10, ScryptKeyDerivation.BLOCK_SIZE, 1, 64);
+        for (int n = 1 << 10; n <= ScryptKeyDerivation.MAX_COST; n *= 2) {
+            start = System.nanoTime();
+            ScryptKeyDerivation.scrypt(password, salt, n, ScryptKeyDerivation.BLOCK_SIZE, 1, 64);
+            results.append("scrypt N=").append(n).append(" r=8 p=1 (").append(128 * 8 * n / 1024).append("KB): ")
+                    .append((System.nanoTime() - start) / 1000000).append("ms\n");
+        }
+        System.out.print(results);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyDerivationTest {
+
+    private static final String REG_ID = "1234567890";
+    private static final String DOMAIN = "domain";
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test vectors from RFC 7914
+     */
+    @Test
+    public void pbkdf2Sha256Vector() throws GeneralSecurityException {
+        assertEquals("55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                        + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783",
+                KeyDerivation.toHex(Pbkdf2KeyDerivation.pbkdf2(bytes("passwd"), bytes("salt"), 1, 64)));
+    }
+
+    @Test
+    public void scryptVectors() throws GeneralSecurityException {
+        assertEquals("77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442"
+                        + "fcd0069ded0948f8326a753a0fc81f17e8d3e0fb2e0d3628cf35e20c38d18906",
+                KeyDerivation.toHex(ScryptKeyDerivation.scrypt(bytes(""), bytes(""), 16, 1, 1, 64)));
+        assertEquals("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                        + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640",
+                KeyDerivation.toHex(ScryptKeyDerivation.scrypt(bytes("password"), bytes("NaCl"), 1024, 8, 16, 64)));
+    }
+
+    @Test
+    public void legacyKeysWithoutParams() throws Exception {
+        EncryptionHelper.DerivedRootKey legacy = EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN);
+        EncryptionHelper.DerivedRootKey noParams = EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN, null);
+        assertArrayEquals(legacy.derivedEncryptionKey.getEncoded(), noParams.derivedEncryptionKey.getEncoded());
+        assertArrayEquals(legacy.derivedHmacKey.getEncoded(), noParams.derivedHmacKey.getEncoded());
+    }
+
+    @Test
+    public void needsMigration() {
+        Pbkdf2KeyDerivation pbkdf2 = new Pbkdf2KeyDerivation();
+        ScryptKeyDerivation scrypt = new ScryptKeyDerivation();
+        //keys stored before the parameters were
+        assertTrue(KeyDerivation.needsMigration(null, pbkdf2));
+        assertFalse(KeyDerivation.needsMigration(KeyDerivation.newParams(pbkdf2, 0), pbkdf2));
+        assertTrue(KeyDerivation.needsMigration(pbkdf2.createParams(Pbkdf2KeyDerivation.MIN_ITERATIONS - 1, "00"), pbkdf2));
+        assertTrue(KeyDerivation.needsMigration(KeyDerivation.newParams(pbkdf2, 0), scrypt));
+        assertFalse(KeyDerivation.needsMigration(KeyDerivation.newParams(scrypt, 0), scrypt));
+    }
+
+    /**
+     * Keys migrated from the SHA-512 derivation are different, and the stored parameters derive the same key again.
+     */
+    @Test
+    public void migratedKeysDeriveAgainFromStoredParams() throws Exception {
+        EncryptionHelper.DerivedRootKey legacy = EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN, null);
+
+        for (KeyDerivationFunction function : new KeyDerivationFunction[]{new Pbkdf2KeyDerivation(), new ScryptKeyDerivation()}) {
+            KeyDerivationParams params = KeyDerivation.newParams(function, 0);
+            assertEquals(KeyDerivation.SALT_LENGTH * 2, params.getSalt().length());
+            EncryptionHelper.DerivedRootKey migrated = EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN, params);
+            assertFalse(Arrays.equals(legacy.derivedEncryptionKey.getEncoded(), migrated.derivedEncryptionKey.getEncoded()));
+
+            //as read back from the storage provider
+            KeyDerivationParams stored = new KeyDerivationParams(params.getAlgorithm(), params.getCost(),
+                    params.getBlockSize(), params.getParallelism(), params.getSalt());
+            assertEquals(params, stored);
+            EncryptionHelper.DerivedRootKey again = EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN, stored);
+            assertArrayEquals(migrated.derivedEncryptionKey.getEncoded(), again.derivedEncryptionKey.getEncoded());
+            assertArrayEquals(migrated.derivedHmacKey.getEncoded(), again.derivedHmacKey.getEncoded());
+
+            EncryptionHelper.DerivedRootKey wrongPasscode = EncryptionHelper.createDerivedKey("Passcode", REG_ID, DOMAIN, stored);
+            assertFalse(Arrays.equals(migrated.derivedEncryptionKey.getEncoded(), wrongPasscode.derivedEncryptionKey.getEncoded()));
+
+            //each migration uses a new salt
+            EncryptionHelper.DerivedRootKey newSalt = EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN,
+                    KeyDerivation.newParams(function, 0));
+            assertFalse(Arrays.equals(migrated.derivedEncryptionKey.getEncoded(), newSalt.derivedEncryptionKey.getEncoded()));
+        }
+    }
+
+    /**
+     * The stored parameters can't make the derivation weaker than the minimum or run for longer than the maximum.
+     */
+    @Test
+    public void costOutsideTheBoundsIsRejected() {
+        Pbkdf2KeyDerivation pbkdf2 = new Pbkdf2KeyDerivation();
+        ScryptKeyDerivation scrypt = new ScryptKeyDerivation();
+        KeyDerivationParams[] invalid = new KeyDerivationParams[]{
+                pbkdf2.createParams(Pbkdf2KeyDerivation.MIN_ITERATIONS - 1, "00"),
+                pbkdf2.createParams(Pbkdf2KeyDerivation.MAX_ITERATIONS + 1, "00"),
+                scrypt.createParams(ScryptKeyDerivation.MIN_COST / 2, "00"),
+                scrypt.createParams(ScryptKeyDerivation.MAX_COST * 2, "00"),
+                new KeyDerivationParams(KeyDerivation.SCRYPT, ScryptKeyDerivation.MIN_COST, 1024, 1, "00"),
+                new KeyDerivationParams(KeyDerivation.SCRYPT, ScryptKeyDerivation.MIN_COST, 8, 64, "00")
+        };
+        for (KeyDerivationParams params : invalid) {
+            try {
+                EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN, params);
+                fail("Derived a key with " + params);
+            } catch (Exception e) {
+                assertTrue(e instanceof GeneralSecurityException);
+            }
+        }
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void unknownFunction() throws Exception {
+        EncryptionHelper.createDerivedKey("passcode", REG_ID, DOMAIN, new KeyDerivationParams("md5", 1, 0, 0, "00"));
+    }
+
+    /**
+     * A function that takes 1ms for every 1000 cost on the fake clock.
+     */
+    private static class TimedFunction extends Pbkdf2KeyDerivation {
+        private final FakeClock mClock;
+
+        TimedFunction(FakeClock clock) {
+            mClock = clock;
+        }
+
+        @NonNull
+        @Override
+        public byte[] derive(@NonNull byte[] password, @NonNull byte[] salt, @NonNull KeyDerivationParams params, int length) {
+            mClock.advance(params.getCost() / 1000);
+            return new byte[length];
+        }
+    }
+
+    @Test
+    public void calibrationHitsTarget() throws GeneralSecurityException {
+        FakeClock clock = new FakeClock();
+        TimedFunction function = new TimedFunction(clock);
+        assertEquals(300000, KeyDerivation.calibrate(function, 300, clock));
+        //capped at the maximum
+        assertEquals(Pbkdf2KeyDerivation.MAX_ITERATIONS, KeyDerivation.calibrate(function, 100000, clock));
+        //never below the minimum
+        assertEquals(Pbkdf2KeyDerivation.MIN_ITERATIONS, KeyDerivation.calibrate(function, 1, clock));
+
+        ScryptKeyDerivation scrypt = new ScryptKeyDerivation();
+        assertEquals(1 << 14, scrypt.scaleCost(1 << 14, 1.9));
+        assertEquals(1 << 15, scrypt.scaleCost(1 << 14, 2.5));
+        assertEquals(ScryptKeyDerivation.MAX_COST, scrypt.scaleCost(1 << 14, 100));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compare the incremental tracker with rebuilding the chatId to mailbox map on every chat list change.
+ */
+@Category(Benchmark.class)
+public class MailboxRemovalTrackerBenchmark {
+
+    @Test
+    public void incrementalAgainstRebuild() {
+        final int chats = 5000;
+        final int updates = 20000;
+        FakeChatList chatList = new FakeChatList();
+        MailboxRemovalTracker tracker = new MailboxRemovalTracker(chatList, () -> {
+        });
+        chatList.start(tracker, chats);
+
+        //the full rebuild the ProtectedManager monitor used to do for each change
+        HashMap<String, String> chatIdToMailbox = new HashMap<>();
+        for (String[] chat : chatList.mChats) {
+            chatIdToMailbox.put(chat[0], chat[1]);
+        }
+        Random random = new Random(7);
+        int rebuildRemovals = 0;
+        long rebuildNs = 0;
+        long trackerNs = 0;
+        int next = chats;
+        for (int i = 0; i < updates; ++i) {
+            long start = System.nanoTime();
+            int position = random.nextInt(chatList.size());
+            int action = random.nextInt(100);
+            if (action < 90) {
+                chatList.moveToTop(position);
+            } else if (action < 95) {
+                chatList.add(0, "chat" + next, "mailbox" + next);
+                ++next;
+            } else {
+                chatList.remove(position, 1);
+            }
+            tracker.getMailboxesToRemove();
+            trackerNs += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            HashMap<String, String> known = new HashMap<>(chatList.size());
+            for (String[] chat : chatList.mChats) {
+                known.put(chat[0], chat[1]);
+                chatIdToMailbox.remove(chat[0]);
+            }
+            rebuildRemovals += chatIdToMailbox.size();
+            chatIdToMailbox.clear();
+            chatIdToMailbox.putAll(known);
+            rebuildNs += System.nanoTime() - start;
+        }
+
+        System.out.println(chats + " chats, " + updates + " updates: full rebuild " + rebuildNs / updates / 1000
+                + "us per update, incremental " + trackerNs / updates / 1000 + "us per update (includes the list change)");
+        assertEquals(rebuildRemovals, tracker.getMailboxesToRemove().size());
+        assertEquals(chatList.size(), tracker.getChatCount());
+    }
+}
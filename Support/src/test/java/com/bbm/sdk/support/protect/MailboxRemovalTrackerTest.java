@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.protect;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MailboxRemovalTrackerTest {
+
+    private FakeChatList mChatList;
+    private MailboxRemovalTracker mTracker;
+    private int mRemovalsPending;
+
+    @Before
+    public void setUp() {
+        mChatList = new FakeChatList();
+        mTracker = new MailboxRemovalTracker(mChatList, () -> ++mRemovalsPending);
+        mRemovalsPending = 0;
+    }
+
+    private void start(int chats) {
+        mChatList.start(mTracker, chats);
+    }
+
+    @Test
+    public void removedChatsNeedMailboxRemoval() {
+        start(5);
+        assertEquals(5, mTracker.getChatCount());
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+
+        mChatList.remove(1, 2);
+        assertEquals(1, mRemovalsPending);
+        Map<String, String> toRemove = mTracker.getMailboxesToRemove();
+        assertEquals(2, toRemove.size());
+        assertEquals("chat1", toRemove.get("mailbox1"));
+        assertEquals("chat2", toRemove.get("mailbox2"));
+        assertEquals(3, mTracker.getChatCount());
+
+        //kept until removed from the key storage, so failures are tried again
+        mTracker.onMailboxRemoved("mailbox1");
+        assertEquals(1, mTracker.getMailboxesToRemove().size());
+        mTracker.onMailboxRemoved("mailbox2");
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+    }
+
+    @Test
+    public void movedChatsAreKept() {
+        start(5);
+        mChatList.moveToTop(3);
+        mChatList.moveToTop(4);
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+        assertEquals("chat4", mChatList.getChatId(0));
+        assertEquals(5, mTracker.getChatCount());
+
+        //a change the tracker doesn't know is a move
+        mChatList.mChats.add(0, mChatList.mChats.remove(4));
+        mTracker.onDataSetChanged();
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+
+        mChatList.remove(0, 1);
+        assertEquals(1, mTracker.getMailboxesToRemove().size());
+    }
+
+    @Test
+    public void mailboxAssignedLater() {
+        start(2);
+        mChatList.add(0, "new", "");
+        mChatList.change(0, "newMailbox");
+        mChatList.remove(0, 1);
+        assertEquals("new", mTracker.getMailboxesToRemove().get("newMailbox"));
+    }
+
+    @Test
+    public void chatsWithoutMailboxAreIgnored() {
+        start(2);
+        mChatList.add(2, "noMailbox", "");
+        mChatList.remove(2, 1);
+        assertEquals(0, mRemovalsPending);
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+    }
+
+    @Test
+    public void resyncsWhenOutOfStep() {
+        start(3);
+        //removed without a notification
+        mChatList.mChats.remove(2);
+        mChatList.remove(0, 1);
+        Map<String, String> toRemove = mTracker.getMailboxesToRemove();
+        assertEquals(2, toRemove.size());
+        assertTrue(toRemove.containsKey("mailbox0"));
+        assertTrue(toRemove.containsKey("mailbox2"));
+        assertEquals(1, mTracker.getChatCount());
+    }
+
+    @Test
+    public void stopForgetsEverything() {
+        start(3);
+        mChatList.remove(0, 1);
+        mTracker.stop();
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+        mChatList.remove(0, 1);
+        assertEquals(0, mTracker.getChatCount());
+        assertTrue(mTracker.getMailboxesToRemove().isEmpty());
+    }
+}
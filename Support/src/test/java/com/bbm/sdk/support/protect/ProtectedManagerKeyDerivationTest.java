@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.protect;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+import com.bbm.sdk.support.util.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Management keys stored before the key derivation was configurable are protected with the SHA-512 derivation,
+ * once decrypted with the passcode they are protected again with the current key derivation and written back.
+ */
+public class ProtectedManagerKeyDerivationTest {
+
+    private static final String PASSCODE = "correct horse battery staple";
+
+    private FakePlatform mPlatform;
+    private FakeStorageProvider mProvider;
+    //key derivations wait here until the test runs them
+    private final List<Runnable> mDerivations = new ArrayList<>();
+    private final List<Integer> mErrors = new ArrayList<>();
+    private int mPasscodeRequests;
+    private ProtectedManager mManager;
+    private Key mManagementKey;
+    private Key mManagementHmacKey;
+
+    @Before
+    public void setUp() throws Exception {
+        mPlatform = new FakePlatform();
+        FakeClock clock = new FakeClock();
+        mProvider = new FakeStorageProvider(clock);
+        PasscodeProvider passcodeProvider = new PasscodeProvider() {
+            @Override
+            public void provideExistingPasscode(boolean allowCancel, @NonNull PasscodeError previousError) {
+                ++mPasscodeRequests;
+            }
+
+            @Override
+            public void requestNewPasscode(boolean allowCancel, @NonNull PasscodeError previousError) {
+            }
+        };
+        mManager = new ProtectedManager(mPlatform, mDerivations::add, new MetricsRegistry("test", clock),
+                mProvider, passcodeProvider, mErrors::add);
+
+        KeyGenerator aes = KeyGenerator.getInstance("AES");
+        aes.init(256);
+        mManagementKey = aes.generateKey();
+        mManagementHmacKey = KeyGenerator.getInstance("HmacSHA256").generateKey();
+    }
+
+    /**
+     * The management keys as stored before the key derivation parameters were, derived with SHA-512.
+     */
+    private EncryptedManagementKeys legacyManagementKeys() throws Exception {
+        EncryptionHelper.DerivedRootKey rootKey =
+                EncryptionHelper.createDerivedKey(PASSCODE, mPlatform.mRegId, mPlatform.mUserDomain, null);
+        Mac mac = EncryptionHelper.createHMAC(rootKey.derivedHmacKey);
+        return new EncryptedManagementKeys(new PrivateKeyPair(
+                EncryptionHelper.protect(mManagementKey.getEncoded(), rootKey.derivedEncryptionKey, mac),
+                EncryptionHelper.protect(mManagementHmacKey.getEncoded(), rootKey.derivedEncryptionKey, mac)));
+    }
+
+    private void runDerivation() {
+        mDerivations.remove(0).run();
+    }
+
+    /**
+     * Read the stored management keys and answer the passcode challenge, as the key state monitor and the app do.
+     */
+    private void providePasscode() {
+        mManager.readManagementKeys();
+        mManager.requestExistingPasscode();
+        mManager.setPasscode(PASSCODE);
+    }
+
+    @Test
+    public void legacyKeysAreMigratedOnceDecrypted() throws Exception {
+        EncryptedManagementKeys legacy = legacyManagementKeys();
+        mProvider.mManagementKeys = legacy;
+        providePasscode();
+        assertEquals(1, mPasscodeRequests);
+
+        //decrypted with the SHA-512 derivation they were stored with
+        assertEquals(1, mDerivations.size());
+        runDerivation();
+        assertArrayEquals(mManagementKey.getEncoded(), mPlatform.mSavedManagementKey);
+        assertArrayEquals(mManagementHmacKey.getEncoded(), mPlatform.mSavedManagementHmacKey);
+        assertSame(legacy, mProvider.mManagementKeys);
+
+        //then protected again with a new salt and the calibrated cost
+        assertEquals(1, mDerivations.size());
+        runDerivation();
+        assertEquals(1, mProvider.mManagementKeysWrites);
+        EncryptedManagementKeys migrated = mProvider.mManagementKeys;
+        KeyDerivationParams kdf = migrated.getKeyDerivation();
+        assertNotNull(kdf);
+        assertEquals(KeyDerivation.PBKDF2_HMAC_SHA256, kdf.getAlgorithm());
+        assertEquals(Pbkdf2KeyDerivation.MIN_ITERATIONS, kdf.getCost());
+        assertTrue(mErrors.isEmpty());
+
+        //the passcode still opens them, with the stored kdf
+        EncryptionHelper.DerivedRootKey rootKey =
+                EncryptionHelper.createDerivedKey(PASSCODE, mPlatform.mRegId, mPlatform.mUserDomain, kdf);
+        Mac mac = EncryptionHelper.createHMAC(rootKey.derivedHmacKey);
+        assertArrayEquals(mManagementKey.getEncoded(),
+                EncryptionHelper.unprotectToByteArray(migrated.getEncrypt(), rootKey.derivedEncryptionKey, mac));
+        assertArrayEquals(mManagementHmacKey.getEncoded(),
+                EncryptionHelper.unprotectToByteArray(migrated.getSign(), rootKey.derivedEncryptionKey, mac));
+
+        //nothing left to migrate the next time
+        assertTrue(mDerivations.isEmpty());
+        providePasscode();
+        runDerivation();
+        assertTrue(mDerivations.isEmpty());
+        assertEquals(1, mProvider.mManagementKeysWrites);
+    }
+
+    @Test
+    public void derivedKeyIsDroppedWhenTheKeysAreReplaced() throws Exception {
+        EncryptedManagementKeys legacy = legacyManagementKeys();
+        mProvider.mManagementKeys = legacy;
+        providePasscode();
+
+        //the keys are read again while the key is being derived
+        mProvider.mManagementKeys = legacyManagementKeys();
+        mManager.readManagementKeys();
+        runDerivation();
+
+        assertNull(mPlatform.mSavedManagementKey);
+        assertTrue(mDerivations.isEmpty());
+        assertEquals(0, mProvider.mManagementKeysWrites);
+        assertTrue(mErrors.isEmpty());
+    }
+}
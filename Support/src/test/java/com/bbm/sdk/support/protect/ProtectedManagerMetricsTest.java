@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.protect;
+
+import com.bbm.sdk.support.util.FakeClock;
+import com.bbm.sdk.support.util.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.KeyGenerator;
+
+import static com.bbm.sdk.support.protect.ProtectedManager.READ_CHAT_KEY_REQUEST;
+import static com.bbm.sdk.support.protect.ProtectedManager.WRITE_CHAT_KEY_REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProtectedManagerMetricsTest {
+
+    private FakeClock mClock;
+    private FakeStorageProvider mProvider;
+    private FakePlatform mPlatform;
+    private MetricsRegistry mRegistry;
+    private final List<Integer> mErrors = new ArrayList<>();
+    private ProtectedManager mManager;
+    private Key mEncryptionKey;
+    private Key mHmacKey;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        mClock = new FakeClock();
+        mProvider = new FakeStorageProvider(mClock);
+        mPlatform = new FakePlatform();
+        mRegistry = new MetricsRegistry("test", mClock);
+        mErrors.clear();
+        mManager = new ProtectedManager(mPlatform, Runnable::run, mRegistry, mProvider, null, mErrors::add);
+
+        KeyGenerator aes = KeyGenerator.getInstance("AES");
+        aes.init(256);
+        mEncryptionKey = aes.generateKey();
+        mHmacKey = KeyGenerator.getInstance("HmacSHA256").generateKey();
+        mManager.setManagementKeys(mEncryptionKey, mHmacKey);
+    }
+
+    private EncryptedPayload encrypt(String chatKey) throws Exception {
+        return EncryptionHelper.protect(chatKey, mEncryptionKey, EncryptionHelper.createHMAC(mHmacKey));
+    }
+
+    @Test
+    public void chatKeyImportOutcomes() throws Exception {
+        mProvider.mChatKeys.put("m1", encrypt("key1"));
+        mProvider.mChatKeys.put("m2", encrypt("key2"));
+        mProvider.mFailing.add("m4");
+        //stored with some other management keys
+        mProvider.mChatKeys.put("m5", EncryptionHelper.protect("key5", mEncryptionKey,
+                EncryptionHelper.createHMAC(KeyGenerator.getInstance("HmacSHA256").generateKey())));
+
+        for (int i = 1; i <= 5; ++i) {
+            mManager.readChatKey("c" + i, "m" + i);
+        }
+
+        assertEquals("key1", mPlatform.mImportedChatKeys.get("m1"));
+        assertEquals("key2", mPlatform.mImportedChatKeys.get("m2"));
+        assertEquals(2, mPlatform.mImportedChatKeys.size());
+        assertEquals(Arrays.asList("c3", "c5"), mPlatform.mLeftChats);
+        assertEquals(Arrays.asList(ErrorHandler.KEY_STORAGE_PROVIDER_ERROR, ErrorHandler.DECRYPTION_ERROR), mErrors);
+
+        MetricsRegistry.Snapshot snapshot = mRegistry.snapshot();
+        assertEquals(5, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REQUESTED));
+        assertEquals(2, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORTED));
+        assertEquals(1, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_MISSING));
+        assertEquals(2, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_FAILED));
+        //a missing key or one that can't be decrypted is still a successful read
+        assertEquals(4, snapshot.getCounter(ProtectedManagerMetrics.storageSuccess(READ_CHAT_KEY_REQUEST)));
+        assertEquals(1, snapshot.getCounter(ProtectedManagerMetrics.storageFailure(READ_CHAT_KEY_REQUEST)));
+        assertEquals(0, snapshot.getCounter(ProtectedManagerMetrics.storageFailure(WRITE_CHAT_KEY_REQUEST)));
+
+        MetricsRegistry.HistogramSnapshot latency =
+                snapshot.getHistogram(ProtectedManagerMetrics.storageLatency(READ_CHAT_KEY_REQUEST));
+        assertEquals(5, latency.getCount());
+        assertEquals(20, latency.getMin());
+        assertEquals(20, latency.getMax());
+        assertEquals(0, snapshot.getGauge(ProtectedManagerMetrics.STORAGE_IN_FLIGHT));
+        assertEquals(0, snapshot.getGauge(ProtectedManagerMetrics.PENDING_TASKS));
+    }
+
+    @Test
+    public void exportRetryAfterFailure() throws Exception {
+        final List<String> written = new ArrayList<>();
+        mProvider.mFailing.add("m1");
+        mManager.writeChatKey("c1", "m1", "key1", () -> written.add("c1"));
+        mManager.writeChatKey("c2", "m2", "key2", () -> written.add("c2"));
+
+        //the provider recovers and the app retries the failed events
+        mProvider.mFailing.clear();
+        mManager.writeChatKey("c1", "m1", "key1", () -> written.add("c1"));
+
+        assertEquals(Arrays.asList("c2", "c1"), written);
+        assertEquals(Collections.singletonList(ErrorHandler.KEY_STORAGE_PROVIDER_ERROR), mErrors);
+        assertEquals("key1", EncryptionHelper.unprotectToString(mProvider.mChatKeys.get("m1"), mEncryptionKey,
+                EncryptionHelper.createHMAC(mHmacKey)));
+        assertEquals(2, mProvider.mChatKeys.size());
+
+        MetricsRegistry.Snapshot snapshot = mRegistry.snapshot();
+        assertEquals(2, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_EXPORTED));
+        assertEquals(1, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_EXPORT_FAILED));
+        assertEquals(2, snapshot.getCounter(ProtectedManagerMetrics.storageSuccess(WRITE_CHAT_KEY_REQUEST)));
+        assertEquals(1, snapshot.getCounter(ProtectedManagerMetrics.storageFailure(WRITE_CHAT_KEY_REQUEST)));
+    }
+
+    @Test
+    public void slowProviderLatencyAndInFlight() throws Exception {
+        mProvider.mHold = true;
+        for (int i = 0; i < 10; ++i) {
+            mProvider.mChatKeys.put("m" + i, encrypt("key" + i));
+            mManager.readChatKey("c" + i, "m" + i);
+        }
+        MetricsRegistry.Snapshot snapshot = mRegistry.snapshot();
+        assertEquals(10, snapshot.getGauge(ProtectedManagerMetrics.STORAGE_IN_FLIGHT));
+        assertEquals(0, snapshot.getHistogram(ProtectedManagerMetrics.storageLatency(READ_CHAT_KEY_REQUEST)).getCount());
+
+        //responses arrive one after the other, 100ms apart
+        mProvider.mLatencyMs = 100;
+        mProvider.release();
+
+        assertEquals(10, mPlatform.mImportedChatKeys.size());
+        snapshot = mRegistry.snapshot();
+        assertEquals(0, snapshot.getGauge(ProtectedManagerMetrics.STORAGE_IN_FLIGHT));
+        assertEquals(10, snapshot.getGauge(ProtectedManagerMetrics.STORAGE_IN_FLIGHT_MAX));
+        MetricsRegistry.HistogramSnapshot latency =
+                snapshot.getHistogram(ProtectedManagerMetrics.storageLatency(READ_CHAT_KEY_REQUEST));
+        assertEquals(10, latency.getCount());
+        assertEquals(100, latency.getMin());
+        assertEquals(1000, latency.getMax());
+        assertEquals(550, latency.getMean());
+        assertEquals(500, latency.getPercentile(50));
+        assertEquals(1000, latency.getPercentile(90));
+    }
+
+    @Test
+    public void pendingTasksHighWaterMark() throws Exception {
+        mPlatform.mHoldRequests = true;
+        for (int i = 0; i < 5; ++i) {
+            mProvider.mChatKeys.put("m" + i, encrypt("key" + i));
+            mManager.readChatKey("c" + i, "m" + i);
+        }
+        //already being read
+        mManager.readChatKey("c0", "m0");
+
+        MetricsRegistry.Snapshot snapshot = mRegistry.snapshot();
+        assertEquals(5, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REQUESTED));
+        assertEquals(5, snapshot.getGauge(ProtectedManagerMetrics.PENDING_TASKS));
+
+        mPlatform.runHeldRequests();
+        mPlatform.mHoldRequests = false;
+        mManager.readChatKey("c0", "m0");
+
+        snapshot = mRegistry.snapshot();
+        assertEquals(6, snapshot.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REQUESTED));
+        assertEquals(0, snapshot.getGauge(ProtectedManagerMetrics.PENDING_TASKS));
+        assertEquals(5, snapshot.getGauge(ProtectedManagerMetrics.PENDING_TASKS_MAX));
+    }
+
+    @Test
+    public void repeatedResponseIsCountedOnce() {
+        MetricsRegistry registry = new MetricsRegistry("test", mClock);
+        ProtectedManagerMetrics metrics = new ProtectedManagerMetrics(registry, () -> { });
+        final int[] delivered = {0};
+        KeyStorageResponse<Void> response = metrics.timed(WRITE_CHAT_KEY_REQUEST, new KeyStorageResponse<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                ++delivered[0];
+            }
+
+            @Override
+            public void onFailure() {
+                ++delivered[0];
+            }
+        });
+        response.onSuccess(null);
+        response.onFailure();
+
+        MetricsRegistry.Snapshot snapshot = registry.snapshot();
+        assertEquals(1, snapshot.getCounter(ProtectedManagerMetrics.storageSuccess(WRITE_CHAT_KEY_REQUEST)));
+        assertEquals(0, snapshot.getCounter(ProtectedManagerMetrics.storageFailure(WRITE_CHAT_KEY_REQUEST)));
+        assertEquals(0, snapshot.getGauge(ProtectedManagerMetrics.STORAGE_IN_FLIGHT));
+        //the result is still passed on so the request behaves as it did without metrics
+        assertEquals(2, delivered[0]);
+    }
+
+    @Test
+    public void publishedSnapshot() {
+        MetricsRegistry registry = new MetricsRegistry("test", mClock);
+        final int[] changes = {0};
+        ProtectedManagerMetrics metrics = new ProtectedManagerMetrics(registry, () -> ++changes[0]);
+        MetricsRegistry.Snapshot initial = registry.getObservableSnapshot().get();
+        metrics.count(ProtectedManagerMetrics.MAILBOX_REMOVALS_REQUESTED);
+        metrics.count(ProtectedManagerMetrics.USER_KEYS_IMPORT_REJECTED, 3);
+        //nothing rejected, nothing to report
+        metrics.count(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REJECTED, 0);
+        assertEquals(2, changes[0]);
+
+        //observers only see changes once published
+        assertSame(initial, registry.getObservableSnapshot().get());
+        mClock.advance(500);
+        registry.publish();
+        MetricsRegistry.Snapshot published = registry.getObservableSnapshot().get();
+        assertEquals(mClock.currentTimeMillis(), published.getTime());
+        assertEquals(1, published.getCounter(ProtectedManagerMetrics.MAILBOX_REMOVALS_REQUESTED));
+        assertEquals(3, published.getCounter(ProtectedManagerMetrics.USER_KEYS_IMPORT_REJECTED));
+        assertEquals(0, published.getCounter(ProtectedManagerMetrics.CHAT_KEYS_IMPORT_REJECTED));
+        assertTrue(published.toString().contains(ProtectedManagerMetrics.USER_KEYS_IMPORT_REJECTED + " = 3"));
+    }
+}
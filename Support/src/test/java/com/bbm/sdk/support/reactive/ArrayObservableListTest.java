@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.reactive;
+
+import com.bbm.sdk.bbmds.internal.lists.IncrementalListObserver;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArrayObservableListTest {
+
+    /**
+     * Keeps each notification as a string, for example "changed 2+3".
+     */
+    private static class RecordingObserver implements IncrementalListObserver {
+        final ArrayList<String> mNotifications = new ArrayList<>();
+
+        @Override
+        public void onItemsInserted(int fromPosition, int itemCount) {
+            mNotifications.add("inserted " + fromPosition + "+" + itemCount);
+        }
+
+        @Override
+        public void onItemsRemoved(int fromPosition, int itemCount) {
+            mNotifications.add("removed " + fromPosition + "+" + itemCount);
+        }
+
+        @Override
+        public void onItemsChanged(int fromPosition, int itemCount) {
+            mNotifications.add("changed " + fromPosition + "+" + itemCount);
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            mNotifications.add("data set changed");
+        }
+    }
+
+    private ArrayObservableList<String> mList;
+    private RecordingObserver mObserver;
+
+    @Before
+    public void setUp() {
+        mList = new ArrayObservableList<>();
+        mList.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+        mObserver = new RecordingObserver();
+        mList.addIncrementalListObserver(mObserver);
+    }
+
+    private List<String> notifications(String... expected) {
+        return Arrays.asList(expected);
+    }
+
+    @Test
+    public void changesOutsideABatchAreEachNotified() {
+        mList.set(1, "B");
+        mList.remove(4);
+        assertEquals(notifications("changed 1+1", "removed 4+1"), mObserver.mNotifications);
+    }
+
+    @Test
+    public void batchedChangesAreNotifiedAsOneRange() {
+        mList.beginBatch();
+        mList.set(3, "D");
+        mList.set(1, "B");
+        assertEquals(Collections.<String>emptyList(), mObserver.mNotifications);
+        mList.endBatch();
+        assertEquals(notifications("changed 1+3"), mObserver.mNotifications);
+        assertEquals(Arrays.asList("a", "B", "c", "D", "e"), mList.get());
+    }
+
+    @Test
+    public void batchedRemovalsFromTheEndAreOneRange() {
+        mList.beginBatch();
+        mList.remove(3);
+        mList.remove(2);
+        mList.endBatch();
+        assertEquals(notifications("removed 2+2"), mObserver.mNotifications);
+    }
+
+    @Test
+    public void batchedAppendsAreOneRange() {
+        mList.beginBatch();
+        mList.add("f");
+        mList.addAll(Arrays.asList("g", "h"));
+        mList.addAll(Collections.<String>emptyList());
+        mList.endBatch();
+        assertEquals(notifications("inserted 5+3"), mObserver.mNotifications);
+    }
+
+    @Test
+    public void mixedBatchIsOneDataSetChange() {
+        mList.beginBatch();
+        mList.beginBatch();
+        mList.remove(4);
+        mList.set(1, "B");
+        mList.endBatch();
+        mList.add("f");
+        mList.endBatch();
+        assertEquals(notifications("data set changed"), mObserver.mNotifications);
+        assertEquals(Arrays.asList("a", "B", "c", "d", "f"), mList.get());
+
+        //an empty batch notifies nothing
+        mList.beginBatch();
+        mList.endBatch();
+        assertEquals(1, mObserver.mNotifications.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endBatchWithoutBeginThrows() {
+        mList.endBatch();
+    }
+}
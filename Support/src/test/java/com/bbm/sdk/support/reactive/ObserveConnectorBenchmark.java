@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.reactive;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+
+@Category(Benchmark.class)
+public class ObserveConnectorBenchmark {
+
+    /**
+     * Connections made and disconnected while many others are connected, like view holders binding as a list
+     * scrolls.
+     */
+    @Test
+    public void connectDisconnectChurn() {
+        final ObserveConnector connector = new ObserveConnector();
+        final int live = 10000;
+        final int churn = 200000;
+        final ObserveConnectorTest.WeakObservable[] observables = new ObserveConnectorTest.WeakObservable[64];
+        for (int i = 0; i < observables.length; ++i) {
+            observables[i] = new ObserveConnectorTest.WeakObservable();
+        }
+        for (int i = 0; i < live; ++i) {
+            connector.connect(observables[i % observables.length], new ObserveConnectorTest.CountingObserver());
+        }
+
+        final ObserveConnector.Connection[] recent = new ObserveConnector.Connection[32];
+        //warm up
+        churn(connector, recent, observables, churn);
+        long start = System.nanoTime();
+        churn(connector, recent, observables, churn);
+        long churnNs = (System.nanoTime() - start) / churn;
+        for (ObserveConnector.Connection connection : recent) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+        assertEquals(live, connector.size());
+
+        start = System.nanoTime();
+        connector.removeObservers();
+        long removeAllUs = (System.nanoTime() - start) / 1000;
+        assertEquals(0, connector.size());
+
+        System.out.println("ObserveConnector with " + live + " connections: connect and disconnect " + churnNs
+                + "ns, removeObservers " + removeAllUs + "us including the observables removing them");
+    }
+
+    private static void churn(ObserveConnector connector, ObserveConnector.Connection[] recent,
+                              ObserveConnectorTest.WeakObservable[] observables, int count) {
+        for (int i = 0; i < count; ++i) {
+            int slot = i % recent.length;
+            if (recent[slot] != null) {
+                recent[slot].disconnect();
+            }
+            recent[slot] = connector.connect(observables[i % observables.length],
+                    new ObserveConnectorTest.CountingObserver());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.reactive;
+
+import com.bbm.sdk.reactive.Observable;
+import com.bbm.sdk.reactive.Observer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ObserveConnectorTest {
+
+    /**
+     * Keeps a set of weak references to its observers, like the SDK observables.
+     */
+    static class WeakObservable implements Observable {
+        final ArrayList<WeakReference<Observer>> mObservers = new ArrayList<>();
+
+        @Override
+        public void addObserver(Observer observer) {
+            for (WeakReference<Observer> reference : mObservers) {
+                if (reference.get() == observer) {
+                    return;
+                }
+            }
+            mObservers.add(new WeakReference<>(observer));
+        }
+
+        @Override
+        public void removeObserver(Observer observer) {
+            for (Iterator<WeakReference<Observer>> it = mObservers.iterator(); it.hasNext(); ) {
+                if (it.next().get() == observer) {
+                    it.remove();
+                    return;
+                }
+            }
+        }
+
+        void notifyObservers() {
+            for (WeakReference<Observer> reference : new ArrayList<>(mObservers)) {
+                Observer observer = reference.get();
+                if (observer != null) {
+                    observer.changed();
+                }
+            }
+        }
+
+        int liveObservers() {
+            int count = 0;
+            for (WeakReference<Observer> reference : mObservers) {
+                if (reference.get() != null) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+
+    static class CountingObserver implements Observer {
+        int mChanges;
+
+        @Override
+        public void changed() {
+            ++mChanges;
+        }
+    }
+
+    /**
+     * Stands in for an activity or view holder, its observer references it like an anonymous inner class would.
+     */
+    private static class Owner {
+        final ObserveConnector mConnector;
+        int mChanges;
+
+        Owner(ObserveConnector connector, Observable observable) {
+            mConnector = connector;
+            mConnector.connect(observable, new Observer() {
+                @Override
+                public void changed() {
+                    ++mChanges;
+                }
+            });
+        }
+    }
+
+    private ObserveConnector mConnector;
+    private WeakObservable mObservable;
+
+    @Before
+    public void setUp() {
+        mConnector = new ObserveConnector();
+        mObservable = new WeakObservable();
+    }
+
+    @Test
+    public void connectKeepsTheObserver() {
+        final int[] changes = new int[1];
+        mConnector.connect(mObservable, new Observer() {
+            @Override
+            public void changed() {
+                ++changes[0];
+            }
+        });
+        forceGc(null);
+        mObservable.notifyObservers();
+        assertEquals(1, changes[0]);
+        assertEquals(1, mConnector.size());
+    }
+
+    @Test
+    public void weakConnectionIsDroppedWhenTheObserverIsCollected() {
+        CountingObserver observer = new CountingObserver();
+        ObserveConnector.Connection connection = mConnector.connectWeakly(mObservable, observer);
+        mObservable.notifyObservers();
+        assertEquals(1, observer.mChanges);
+        assertTrue(connection.isConnected());
+
+        WeakReference<Observer> collected = new WeakReference<Observer>(observer);
+        observer = null;
+        forceGc(collected);
+        assertNull(collected.get());
+        assertFalse(connection.isConnected());
+        assertEquals(0, mConnector.size());
+    }
+
+    @Test
+    public void disconnectRemovesOnlyThatConnection() {
+        CountingObserver first = new CountingObserver();
+        CountingObserver second = new CountingObserver();
+        WeakObservable other = new WeakObservable();
+        ObserveConnector.Connection connection = mConnector.connect(mObservable, first);
+        mConnector.connect(other, first);
+        mConnector.connect(mObservable, second);
+        //connecting the same pair again keeps one connection
+        mConnector.connect(mObservable, second);
+        assertEquals(3, mConnector.size());
+
+        connection.disconnect();
+        connection.disconnect();
+        assertFalse(connection.isConnected());
+        mObservable.notifyObservers();
+        other.notifyObservers();
+        assertEquals(1, first.mChanges);
+        assertEquals(1, second.mChanges);
+        assertEquals(2, mConnector.size());
+
+        assertTrue(mConnector.remove(first));
+        assertFalse(mConnector.remove(first));
+        assertEquals(1, mConnector.size());
+
+        mConnector.removeObservers();
+        assertEquals(0, mConnector.size());
+        assertEquals(0, mObservable.liveObservers());
+    }
+
+    @Test
+    public void removedObserverCanBeCollected() {
+        Observer observer = new CountingObserver();
+        mConnector.connect(mObservable, observer);
+        mConnector.remove(observer);
+        WeakReference<Observer> collected = new WeakReference<>(observer);
+        observer = null;
+        forceGc(collected);
+        assertNull(collected.get());
+    }
+
+    @Test
+    public void scopesAreRemovedWithTheirParent() {
+        ObserveConnector fragment = mConnector.newScope();
+        ObserveConnector holder = mConnector.newScope();
+        CountingObserver activityObserver = new CountingObserver();
+        CountingObserver fragmentObserver = new CountingObserver();
+        CountingObserver holderObserver = new CountingObserver();
+        mConnector.connect(mObservable, activityObserver);
+        fragment.connect(mObservable, fragmentObserver);
+        holder.connect(mObservable, holderObserver);
+
+        //the holder is recycled
+        holder.removeObservers();
+        mObservable.notifyObservers();
+        assertEquals(1, fragmentObserver.mChanges);
+        assertEquals(0, holderObserver.mChanges);
+
+        //the activity is destroyed
+        mConnector.removeObservers();
+        mObservable.notifyObservers();
+        assertEquals(1, activityObserver.mChanges);
+        assertEquals(1, fragmentObserver.mChanges);
+        assertEquals(0, fragment.size());
+    }
+
+    @Test
+    public void ownersOfScopesAreNotLeaked() {
+        Owner owner = new Owner(mConnector.newScope(), mObservable);
+        mObservable.notifyObservers();
+        assertEquals(1, owner.mChanges);
+
+        //never removed, the shared connector doesn't keep it
+        WeakReference<Owner> collected = new WeakReference<>(owner);
+        owner = null;
+        forceGc(collected);
+        assertNull(collected.get());
+        assertEquals(0, mObservable.liveObservers());
+        mConnector.removeObservers();
+    }
+
+    /**
+     * Run the garbage collector until the reference is cleared, or a few times if there is none.
+     */
+    private static void forceGc(WeakReference<?> reference) {
+        for (int i = 0; i < 20 && (reference == null ? i < 3 : reference.get() != null); ++i) {
+            System.gc();
+            System.runFinalization();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
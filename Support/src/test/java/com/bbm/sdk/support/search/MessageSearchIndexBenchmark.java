@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.search;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Index one million synthetic messages spread over 1000 chats and time some typical queries.
+ */
+@Category(Benchmark.class)
+public class MessageSearchIndexBenchmark {
+
+    @Test
+    public void oneMillionMessages() throws Exception {
+        final MessageSearchIndex index = new MessageSearchIndex();
+        final String[] words = {"cake", "chocolate", "vanilla", "order", "pickup", "delivery", "birthday", "wedding",
+                "tomorrow", "today", "price", "thanks", "strawberry", "cupcakes", "dozen", "frosting"};
+        final int messageCount = 1000000;
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < messageCount; ++i) {
+            StringBuilder text = new StringBuilder();
+            int wordCount = 4 + random.nextInt(8);
+            for (int w = 0; w < wordCount; ++w) {
+                //skewed so some words are much rarer than others
+                text.append(words[(int) (words.length * Math.pow(random.nextDouble(), 2))]).append(' ');
+            }
+            //a unique-ish word per message to grow the dictionary like real text
+            text.append("ref").append(random.nextInt(100000));
+            index.put("chat" + (i % 1000), i / 1000, i, text.toString());
+        }
+        long indexMs = (System.nanoTime() - start) / 1000000;
+
+        String[] queries = {"cake", "choc", "frost", "wedding cake", "straw cup", "ref1234", "d"};
+        for (String query : queries) {
+            index.search(query, 20);
+        }
+        StringBuilder report = new StringBuilder();
+        for (String query : queries) {
+            final int runs = 5;
+            start = System.nanoTime();
+            List<MessageSearchIndex.SearchHit> hits = null;
+            for (int i = 0; i < runs; ++i) {
+                hits = index.search(query, 20);
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / runs;
+            assertFalse(query, hits.isEmpty());
+            report.append(String.format("  \"%s\": %.2fms%n", query, ms));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        start = System.nanoTime();
+        index.write(out);
+        long saveMs = (System.nanoTime() - start) / 1000000;
+        MessageSearchIndex loaded = new MessageSearchIndex();
+        start = System.nanoTime();
+        loaded.read(new ByteArrayInputStream(out.toByteArray()));
+        long loadMs = (System.nanoTime() - start) / 1000000;
+        assertEquals(messageCount, loaded.size());
+
+        System.out.println("MessageSearchIndex: indexed " + messageCount + " messages in " + indexMs + "ms, saved "
+                + out.size() / 1024 + "KB in " + saveMs + "ms, loaded in " + loadMs + "ms\n" + report);
+    }
+}
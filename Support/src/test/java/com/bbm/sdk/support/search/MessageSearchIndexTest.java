@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.search;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageSearchIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MessageSearchIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new MessageSearchIndex();
+    }
+
+    @Test
+    public void matchesWordPrefixesAcrossChats() {
+        mIndex.put("chatA", 1, 100, "Can I order a chocolate cake?");
+        mIndex.put("chatB", 7, 200, "Chocolates are sold out");
+        mIndex.put("chatB", 8, 300, "Carrot cake is ready");
+
+        List<MessageSearchIndex.SearchHit> hits = mIndex.search("choc", 10);
+        assertEquals(2, hits.size());
+        assertEquals("chatB", hits.get(0).chatId);
+        assertEquals(7, hits.get(0).messageId);
+        assertEquals("chatA", hits.get(1).chatId);
+
+        //every word must match
+        hits = mIndex.search("choc cake", 10);
+        assertEquals(1, hits.size());
+        assertEquals(1, hits.get(0).messageId);
+
+        assertTrue(mIndex.search("vanilla", 10).isEmpty());
+        assertTrue(mIndex.search("cake vanilla", 10).isEmpty());
+    }
+
+    @Test
+    public void caseAndAccentsAreIgnored() {
+        mIndex.put("chat", 1, 100, "Crème brûlée for Zoë");
+
+        assertEquals(1, mIndex.search("creme brulee", 10).size());
+        assertEquals(1, mIndex.search("ZOË", 10).size());
+        assertEquals(1, mIndex.search("zoe", 10).size());
+    }
+
+    @Test
+    public void rareWordsRankAboveCommonOnes() {
+        for (int i = 0; i < 20; ++i) {
+            mIndex.put("chat", i, 1000 + i, "cake order " + i);
+        }
+        mIndex.put("chat", 100, 1, "cake cheesecake");
+
+        //"cake" is a prefix of both words in the last message, it should not count twice but
+        //"cheesecake" is rare so the older message still wins on "c"
+        List<MessageSearchIndex.SearchHit> hits = mIndex.search("c", 3);
+        assertEquals(3, hits.size());
+        assertEquals(100, hits.get(0).messageId);
+
+        //equal scores are newest first
+        hits = mIndex.search("order", 3);
+        assertEquals(19, hits.get(0).messageId);
+        assertEquals(18, hits.get(1).messageId);
+        assertEquals(17, hits.get(2).messageId);
+    }
+
+    @Test
+    public void queryWordCountsOncePerMessage() {
+        mIndex.put("chat", 1, 50, "cake");
+        mIndex.put("chat", 2, 100, "cake cakes");
+        mIndex.put("chat", 3, 200, "cakes");
+
+        //"cake" and "cakes" are as rare as each other, matching both doesn't score higher
+        List<MessageSearchIndex.SearchHit> hits = mIndex.search("cake", 3);
+        assertEquals(3, hits.get(0).messageId);
+        assertEquals(2, hits.get(1).messageId);
+        assertEquals(1, hits.get(2).messageId);
+        assertEquals(hits.get(0).score, hits.get(1).score, 0);
+    }
+
+    @Test
+    public void updatesAndRemovalsAreApplied() {
+        mIndex.put("chat", 1, 100, "birthday cake");
+        mIndex.put("chat", 2, 200, "wedding cake");
+        assertEquals(2, mIndex.search("cake", 10).size());
+
+        //recalled messages have their text replaced
+        mIndex.put("chat", 1, 100, "");
+        assertFalse(mIndex.contains("chat", 1));
+        assertEquals(1, mIndex.search("cake", 10).size());
+        assertTrue(mIndex.search("birthday", 10).isEmpty());
+
+        mIndex.put("chat", 2, 200, "wedding cupcakes");
+        assertTrue(mIndex.search("cake", 10).isEmpty());
+        assertEquals(1, mIndex.search("cup", 10).size());
+
+        mIndex.remove("chat", 2);
+        assertTrue(mIndex.search("cup", 10).isEmpty());
+        assertEquals(0, mIndex.size());
+    }
+
+    @Test
+    public void retainRangeAndRemoveChat() {
+        for (int i = 1; i <= 10; ++i) {
+            mIndex.put("chatA", i, i, "message " + i);
+            mIndex.put("chatB", i, i, "message " + i);
+        }
+        mIndex.retainRange("chatA", 6, 11);
+        assertEquals(15, mIndex.size());
+        assertFalse(mIndex.contains("chatA", 5));
+        assertTrue(mIndex.contains("chatA", 6));
+
+        mIndex.removeChat("chatB");
+        List<MessageSearchIndex.SearchHit> hits = mIndex.search("message", 100);
+        assertEquals(5, hits.size());
+        for (MessageSearchIndex.SearchHit hit : hits) {
+            assertEquals("chatA", hit.chatId);
+        }
+    }
+
+    @Test
+    public void savedIndexLoadsWithoutDeletedMessages() throws Exception {
+        mIndex.put("chatA", 1, 100, "lemon tart");
+        mIndex.put("chatA", 2, 200, "lemon cake");
+        mIndex.put("chatB", 1, 300, "lemon drizzle");
+        mIndex.remove("chatA", 2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mIndex.write(out);
+        MessageSearchIndex loaded = new MessageSearchIndex();
+        loaded.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, loaded.size());
+        List<MessageSearchIndex.SearchHit> hits = loaded.search("lem", 10);
+        assertEquals(2, hits.size());
+        assertEquals("chatB", hits.get(0).chatId);
+        assertEquals(300, hits.get(0).timestamp);
+        assertTrue(loaded.search("cake", 10).isEmpty());
+
+        //the loaded index keeps updating
+        loaded.put("chatA", 3, 400, "lemon meringue");
+        assertEquals(3, loaded.search("lemon", 10).size());
+        loaded.put("chatA", 1, 100, "lime tart");
+        assertEquals(2, loaded.search("lemon", 10).size());
+    }
+
+    @Test
+    public void savesAndLoadsTheFile() throws Exception {
+        File dir = mFolder.newFolder();
+        File file = new File(dir, "index");
+        try {
+            mIndex.load(file);
+            fail("nothing saved yet");
+        } catch (FileNotFoundException e) {
+            //expected
+        }
+
+        mIndex.put("chat", 1, 100, "lemon tart");
+        mIndex.save(file);
+        mIndex.put("chat", 2, 200, "lemon cake");
+        mIndex.save(file);
+
+        MessageSearchIndex loaded = new MessageSearchIndex();
+        loaded.load(file);
+        assertEquals(2, loaded.search("lemon", 10).size());
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void deletedEntriesAreCompacted() {
+        for (int i = 0; i < 3000; ++i) {
+            mIndex.put("chat", i, i, "cake " + (i % 10 == 0 ? "chocolate" : "lemon"));
+        }
+        //each edit leaves a deleted entry behind until there are as many deleted as live
+        for (int i = 0; i < 2999; ++i) {
+            mIndex.put("chat", i, i, "cake lemon");
+        }
+        assertEquals(2999, mIndex.getDeletedCount());
+        mIndex.put("chat", 2999, 2999, "cake vanilla");
+        assertEquals(0, mIndex.getDeletedCount());
+
+        assertEquals(3000, mIndex.size());
+        assertTrue(mIndex.search("choc", 10).isEmpty());
+        assertEquals(2999, mIndex.search("lemon cake", 5000).size());
+        List<MessageSearchIndex.SearchHit> hits = mIndex.search("vanilla", 10);
+        assertEquals(1, hits.size());
+        assertEquals(2999, hits.get(0).messageId);
+
+        //still updates after being renumbered
+        mIndex.remove("chat", 2999);
+        assertTrue(mIndex.search("vanilla", 10).isEmpty());
+        mIndex.put("chat", 0, 0, "strawberry");
+        assertEquals(1, mIndex.search("straw", 10).size());
+        assertEquals(2998, mIndex.search("lemon", 5000).size());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchTermsTest {
+
+    @Test
+    public void normalizeLowerCasesAndRemovesAccents() {
+        assertEquals("zoe angstrom", SearchTerms.normalize("Zoë Ångström"));
+        assertEquals("jose", SearchTerms.normalize("JOSÉ"));
+        assertEquals("", SearchTerms.normalize(null));
+    }
+
+    @Test
+    public void tokenizeSplitsOnPunctuation() {
+        assertEquals(Arrays.asList("two", "chocolate", "cakes", "for", "5pm"),
+                SearchTerms.tokenize("Two CHOCOLATE cakes, for 5pm!"));
+        assertEquals(Arrays.asList("mary", "jo", "o", "brien"), SearchTerms.tokenize("Mary-Jo O'Brien"));
+        assertTrue(SearchTerms.tokenize("  ...  ").isEmpty());
+        assertTrue(SearchTerms.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void longWordsAreCut() {
+        char[] word = new char[SearchTerms.MAX_TERM_LENGTH + 8];
+        Arrays.fill(word, 'a');
+        assertEquals(SearchTerms.MAX_TERM_LENGTH, SearchTerms.tokenize(new String(word)).get(0).length());
+    }
+
+    @Test
+    public void prefixRangeHasTheWordsStartingWithThePrefix() {
+        TreeMap<String, SearchTerms.Postings> terms = new TreeMap<>();
+        for (String term : new String[]{"cake", "cakes", "carrot", "cheesecake", "ca"}) {
+            terms.put(term, new SearchTerms.Postings());
+        }
+
+        assertEquals(Arrays.asList("ca", "cake", "cakes", "carrot"),
+                Arrays.asList(SearchTerms.prefixRange(terms, "ca").keySet().toArray()));
+        assertTrue(SearchTerms.prefixRange(terms, "d").isEmpty());
+    }
+
+    @Test
+    public void postingsRemoveAndRenumber() {
+        SearchTerms.Postings postings = new SearchTerms.Postings();
+        for (int doc = 0; doc < 5; ++doc) {
+            postings.add(doc);
+        }
+
+        //the last document takes the place of the removed one
+        postings.remove(1);
+        assertEquals(4, postings.size());
+        assertEquals(4, postings.get(1));
+
+        postings = new SearchTerms.Postings(new int[]{0, 2, 3, 5}, 4);
+        postings.renumber(new int[]{0, -1, 1, -1, 2, 3});
+        assertEquals(3, postings.size());
+        assertEquals(0, postings.get(0));
+        assertEquals(1, postings.get(1));
+        assertEquals(3, postings.get(2));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import com.bbm.sdk.support.util.Benchmark;
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scroll through a conversation with recycled holders, as the chat list does, and report the cache hit rates.
+ * Loads complete between frames, so holders scrolled past before then cancel their load.
+ */
+@Category(Benchmark.class)
+public class AvatarPipelineBenchmark {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final AvatarPipelineTest.QueueExecutor mBackground = new AvatarPipelineTest.QueueExecutor();
+    private final AvatarPipelineTest.QueueExecutor mMain = new AvatarPipelineTest.QueueExecutor();
+    private final AvatarPipelineTest.FakeFetcher mFetcher = new AvatarPipelineTest.FakeFetcher();
+    private final AvatarPipelineTest.FakeDecoder mDecoder = new AvatarPipelineTest.FakeDecoder();
+    private final FakeClock mClock = new FakeClock();
+
+    private void runLoads() {
+        while (mBackground.runAll() + mMain.runAll() > 0) {
+            //until both are idle
+        }
+    }
+
+    @Test
+    public void scrollBind() throws IOException {
+        final int messages = 5000;
+        final int senders = 400;
+        final int holders = 14;
+        final int rowsPerFrame = 3;
+
+        //Most messages come from a few people
+        Random random = new Random(11);
+        String[] senderOf = new String[messages];
+        for (int i = 0; i < messages; ++i) {
+            final int sender = (int) (senders * Math.pow(random.nextDouble(), 3));
+            senderOf[i] = "http://avatars.example.com/" + sender + ".png";
+        }
+
+        //Room for 60 decoded avatars in memory
+        AvatarPipeline<String> pipeline = new AvatarPipeline<>(mFetcher,
+                new AvatarDiskCache(mFolder.newFolder("benchmark"), 10 * 1024 * 1024), mDecoder, 60 * 1000,
+                mBackground, mMain, mClock);
+        @SuppressWarnings("unchecked")
+        AvatarPipeline<String>.Request[] bound = new AvatarPipeline.Request[holders];
+        AvatarPipelineTest.RecordingCallback callback = new AvatarPipelineTest.RecordingCallback();
+
+        long bindNs = 0;
+        int binds = 0;
+        //Down to the end and back to the top
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int frame = 0; frame < messages / rowsPerFrame; ++frame) {
+                for (int row = 0; row < rowsPerFrame; ++row) {
+                    int position = frame * rowsPerFrame + row;
+                    if (pass == 1) {
+                        position = messages - 1 - position;
+                    }
+                    final int holder = position % holders;
+                    final long start = System.nanoTime();
+                    if (bound[holder] != null) {
+                        //onRecycled
+                        bound[holder].cancel();
+                    }
+                    bound[holder] = pipeline.load(senderOf[position], AvatarPipelineTest.SIZE, callback);
+                    bindNs += System.nanoTime() - start;
+                    ++binds;
+                }
+                runLoads();
+            }
+        }
+
+        System.out.println("Avatar scroll bind over " + messages + " messages from " + senders + " senders, "
+                + binds + " binds: " + bindNs / binds + "ns per bind, memory hits "
+                + pipeline.getMemoryHitCount() * 100 / pipeline.getRequestCount() + "%, coalesced "
+                + pipeline.getCoalescedCount() + ", disk hits " + pipeline.getDiskHitCount() + ", downloads "
+                + pipeline.getNetworkFetchCount() + ", decodes " + mDecoder.mDecodes);
+        //Every avatar is downloaded once at most
+        assertTrue(pipeline.getNetworkFetchCount() <= senders);
+        assertEquals(pipeline.getNetworkFetchCount(), mFetcher.mFetches.size());
+    }
+}
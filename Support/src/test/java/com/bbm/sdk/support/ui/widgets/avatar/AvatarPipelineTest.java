@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.avatar;
+
+import android.support.annotation.NonNull;
+
+import com.bbm.sdk.support.util.FakeClock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AvatarPipelineTest {
+
+    static final int SIZE = 120;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Runs tasks when told to, standing in for the background threads and the main looper
+     */
+    static class QueueExecutor implements Executor {
+        final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mTasks.add(command);
+        }
+
+        int runAll() {
+            int count = 0;
+            while (!mTasks.isEmpty()) {
+                mTasks.poll().run();
+                ++count;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Local stand-in for the avatar server, each url returns its own bytes
+     */
+    static class FakeFetcher implements AvatarFetcher {
+        final HashMap<String, Integer> mFetches = new HashMap<>();
+        final ArrayList<String> mBroken = new ArrayList<>();
+        Runnable mDuringFetch;
+
+        @NonNull
+        @Override
+        public byte[] fetch(@NonNull String url) throws IOException {
+            final Integer count = mFetches.get(url);
+            mFetches.put(url, count == null ? 1 : count + 1);
+            if (mDuringFetch != null) {
+                mDuringFetch.run();
+            }
+            if (mBroken.contains(url)) {
+                throw new IOException("404 " + url);
+            }
+            return url.getBytes(StandardCharsets.UTF_8);
+        }
+
+        int fetches(String url) {
+            final Integer count = mFetches.get(url);
+            return count == null ? 0 : count;
+        }
+    }
+
+    /**
+     * "Decodes" to a string, every image uses 1000 bytes of the memory cache
+     */
+    static class FakeDecoder implements AvatarPipeline.Decoder<String> {
+        int mDecodes;
+
+        @Override
+        public String decode(@NonNull byte[] data, int size) {
+            ++mDecodes;
+            return new String(data, StandardCharsets.UTF_8) + "@" + size;
+        }
+
+        @Override
+        public int sizeOf(@NonNull String image) {
+            return 1000;
+        }
+    }
+
+    static class RecordingCallback implements AvatarPipeline.Callback<String> {
+        final ArrayList<String> mLoaded = new ArrayList<>();
+        int mFailed;
+
+        @Override
+        public void onLoaded(@NonNull String image) {
+            mLoaded.add(image);
+        }
+
+        @Override
+        public void onFailed() {
+            ++mFailed;
+        }
+    }
+
+    private QueueExecutor mBackground;
+    private QueueExecutor mMain;
+    private FakeFetcher mFetcher;
+    private FakeDecoder mDecoder;
+    private FakeClock mClock;
+    private AvatarDiskCache mDiskCache;
+    private AvatarPipeline<String> mPipeline;
+
+    @Before
+    public void setUp() throws IOException {
+        mBackground = new QueueExecutor();
+        mMain = new QueueExecutor();
+        mFetcher = new FakeFetcher();
+        mDecoder = new FakeDecoder();
+        mClock = new FakeClock();
+        mDiskCache = new AvatarDiskCache(mFolder.newFolder("avatars"), 1024 * 1024);
+        mPipeline = new AvatarPipeline<>(mFetcher, mDiskCache, mDecoder, 10 * 1000, mBackground, mMain, mClock);
+    }
+
+    private void runLoads() {
+        while (mBackground.runAll() + mMain.runAll() > 0) {
+            //until both are idle
+        }
+    }
+
+    @Test
+    public void requestsForTheSameAvatarShareOneLoad() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RecordingCallback otherSize = new RecordingCallback();
+        mPipeline.load("http://a", SIZE, first);
+        mPipeline.load("http://a", SIZE, second);
+        mPipeline.load("http://a", SIZE * 2, otherSize);
+        assertEquals(1, mPipeline.getCoalescedCount());
+        runLoads();
+
+        assertEquals("[http://a@120]", first.mLoaded.toString());
+        assertEquals("[http://a@120]", second.mLoaded.toString());
+        assertEquals("[http://a@240]", otherSize.mLoaded.toString());
+        //the second size came from the disk cache
+        assertEquals(1, mFetcher.fetches("http://a"));
+        assertEquals(1, mPipeline.getDiskHitCount());
+
+        //now from memory, before load returns
+        RecordingCallback third = new RecordingCallback();
+        assertTrue(mPipeline.load("http://a", SIZE, third).isDone());
+        assertEquals("[http://a@120]", third.mLoaded.toString());
+        assertEquals(1, mPipeline.getMemoryHitCount());
+    }
+
+    @Test
+    public void cancelledRequestsAreNotNotified() {
+        RecordingCallback recycled = new RecordingCallback();
+        RecordingCallback shown = new RecordingCallback();
+        mPipeline.load("http://a", SIZE, recycled).cancel();
+        mPipeline.load("http://a", SIZE, shown);
+        runLoads();
+
+        assertTrue(recycled.mLoaded.isEmpty());
+        assertEquals(1, shown.mLoaded.size());
+        assertEquals(1, mFetcher.fetches("http://a"));
+    }
+
+    @Test
+    public void loadStopsWhenEveryRequestIsCancelled() {
+        RecordingCallback callback = new RecordingCallback();
+        mPipeline.load("http://a", SIZE, callback).cancel();
+        runLoads();
+        //never downloaded
+        assertEquals(0, mFetcher.fetches("http://a"));
+        assertEquals(0, mDecoder.mDecodes);
+
+        //cancelled while downloading, the download is kept on disk but not decoded
+        final AvatarPipeline<String>.Request[] request = new AvatarPipeline.Request[1];
+        request[0] = mPipeline.load("http://b", SIZE, callback);
+        mFetcher.mDuringFetch = new Runnable() {
+            @Override
+            public void run() {
+                request[0].cancel();
+            }
+        };
+        runLoads();
+        mFetcher.mDuringFetch = null;
+        assertEquals(1, mFetcher.fetches("http://b"));
+        assertEquals(0, mDecoder.mDecodes);
+        assertArrayEquals("http://b".getBytes(StandardCharsets.UTF_8), mDiskCache.get("http://b"));
+        assertTrue(callback.mLoaded.isEmpty());
+    }
+
+    @Test
+    public void cancelledLoadRestartsWhenRequestedAgain() {
+        RecordingCallback callback = new RecordingCallback();
+        mPipeline.load("http://a", SIZE, new RecordingCallback()).cancel();
+        //requested again before the cancelled load ran
+        mPipeline.load("http://a", SIZE, callback);
+        runLoads();
+        assertEquals(1, callback.mLoaded.size());
+
+        //requested again after the cancelled load stopped
+        callback = new RecordingCallback();
+        final RecordingCallback again = callback;
+        final AvatarPipeline<String>.Request[] request = new AvatarPipeline.Request[1];
+        request[0] = mPipeline.load("http://b", SIZE, new RecordingCallback());
+        mFetcher.mDuringFetch = new Runnable() {
+            @Override
+            public void run() {
+                request[0].cancel();
+                mFetcher.mDuringFetch = null;
+            }
+        };
+        mBackground.runAll();
+        mPipeline.load("http://b", SIZE, again);
+        runLoads();
+        assertEquals("[http://b@120]", again.mLoaded.toString());
+        //the restart read it from disk
+        assertEquals(1, mFetcher.fetches("http://b"));
+    }
+
+    @Test
+    public void memoryCacheEvictsLeastRecentlyUsed() {
+        //10 images fit
+        for (int i = 0; i < 10; ++i) {
+            mPipeline.load("http://" + i, SIZE, new RecordingCallback());
+        }
+        runLoads();
+        assertEquals(10, mPipeline.getMemoryCacheCount());
+
+        //use the first, then add one more
+        assertTrue(mPipeline.load("http://0", SIZE, new RecordingCallback()).isDone());
+        mPipeline.load("http://10", SIZE, new RecordingCallback());
+        runLoads();
+        assertEquals(10, mPipeline.getMemoryCacheCount());
+        assertEquals("http://0@120", mPipeline.getCached("http://0", SIZE));
+        assertNull(mPipeline.getCached("http://1", SIZE));
+    }
+
+    @Test
+    public void failuresAreRetriedAfterAWhile() {
+        mFetcher.mBroken.add("http://broken");
+        RecordingCallback callback = new RecordingCallback();
+        mPipeline.load("http://broken", SIZE, callback);
+        runLoads();
+        assertEquals(1, callback.mFailed);
+
+        //not requested again straight away
+        assertTrue(mPipeline.load("http://broken", SIZE, callback).isDone());
+        assertEquals(2, callback.mFailed);
+        assertEquals(1, mFetcher.fetches("http://broken"));
+
+        mClock.advance(AvatarPipeline.FAILURE_RETRY_MS);
+        mFetcher.mBroken.clear();
+        mPipeline.load("http://broken", SIZE, callback);
+        runLoads();
+        assertEquals("[http://broken@120]", callback.mLoaded.toString());
+    }
+
+    @Test
+    public void diskCacheIsSizeCappedAndSurvivesRestart() throws IOException {
+        File directory = mFolder.newFolder("capped");
+        AvatarDiskCache cache = new AvatarDiskCache(directory, 3000);
+        cache.put("http://a", new byte[1000]);
+        cache.put("http://b", new byte[1000]);
+        cache.put("http://c", new byte[1000]);
+        assertEquals(3000, cache.getSize());
+        //a is used, so b is removed for d
+        assertEquals(1000, cache.get("http://a").length);
+        cache.put("http://d", new byte[1000]);
+        assertEquals(3, cache.getCount());
+        assertNull(cache.get("http://b"));
+        //too large to cache at all
+        cache.put("http://e", new byte[3001]);
+        assertNull(cache.get("http://e"));
+
+        //a write interrupted by the process being killed
+        assertTrue(new File(directory, "partial.tmp").createNewFile());
+
+        AvatarDiskCache restarted = new AvatarDiskCache(directory, 3000);
+        assertEquals(3, restarted.getCount());
+        assertEquals(3000, restarted.getSize());
+        assertEquals(1000, restarted.get("http://c").length);
+        assertFalse(new File(directory, "partial.tmp").exists());
+
+        restarted.clear();
+        assertEquals(0, restarted.getSize());
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void calculateInSampleSize() {
+        assertEquals(1, AvatarLoader.calculateInSampleSize(120, 120, 120));
+        assertEquals(1, AvatarLoader.calculateInSampleSize(239, 1000, 120));
+        assertEquals(2, AvatarLoader.calculateInSampleSize(240, 1000, 120));
+        assertEquals(8, AvatarLoader.calculateInSampleSize(1024, 1024, 120));
+        assertEquals(1, AvatarLoader.calculateInSampleSize(1024, 1024, 0));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+
+package com.bbm.sdk.support.ui.widgets.chats;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+
+@Category(Benchmark.class)
+public class ChatBubbleColorCacheBenchmark {
+
+    /**
+     * Color work per bind of an incoming bubble: the heading, text and link colors. Before, each was resolved from the
+     * resources on every bind, now the bind looks up the shared resolved colors of the chat type. The resolver here
+     * is only a map lookup so the uncached time is a lower bound for {@link android.content.res.Resources#getColor}.
+     */
+    @Test
+    public void bindCost() {
+        final ChatBubbleColorCacheTest.ThemeResolver resolver = new ChatBubbleColorCacheTest.ThemeResolver();
+        for (int id = 1; id <= 16; ++id) {
+            resolver.mColors.put(id, 0xff000000 | id);
+        }
+        final ChatBubbleColorCache cache = new ChatBubbleColorCache(resolver);
+        final int binds = 1000000;
+        final ChatBubbleColors[] provided = new ChatBubbleColors[]{ChatBubbleColorCacheTest.outgoing(),
+                ChatBubbleColorCacheTest.incoming()};
+        long sink = 0;
+
+        //warm up
+        sink += bindUncached(resolver, provided, binds) + bindCached(cache, provided, binds);
+
+        long start = System.nanoTime();
+        sink += bindUncached(resolver, provided, binds);
+        long uncachedNs = (System.nanoTime() - start) / binds;
+
+        start = System.nanoTime();
+        sink += bindCached(cache, provided, binds);
+        long cachedNs = (System.nanoTime() - start) / binds;
+
+        assertEquals(2, cache.getResolveCount());
+        System.out.println("Chat bubble colors per bind: resolved each bind " + uncachedNs + "ns, cached "
+                + cachedNs + "ns (" + sink + ")");
+    }
+
+    private static long bindUncached(ChatBubbleColorCache.ColorResolver resolver, ChatBubbleColors[] provided,
+                                     int binds) {
+        long sink = 0;
+        for (int i = 0; i < binds; ++i) {
+            final ChatBubbleColors colors = provided[i & 1];
+            sink += resolver.getColor(colors.headingColor);
+            sink += resolver.getColor(colors.normalTextColor);
+            sink += resolver.getColor(colors.highlightedColor);
+        }
+        return sink;
+    }
+
+    private static long bindCached(ChatBubbleColorCache cache, ChatBubbleColors[] provided, int binds) {
+        long sink = 0;
+        for (int i = 0; i < binds; ++i) {
+            final ResolvedChatBubbleColors colors = cache.get(provided[i & 1]);
+            sink += colors.resolvedHeadingColor;
+            sink += colors.resolvedNormalTextColor;
+            sink += colors.resolvedHighlightedColor;
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.chats;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Configuration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChatBubbleColorCacheTest {
+
+    /**
+     * Stands in for the resources of a theme, looking the color up like {@link android.content.res.Resources} does
+     * and failing for an id it doesn't have.
+     */
+    static class ThemeResolver implements ChatBubbleColorCache.ColorResolver {
+        final HashMap<Integer, Integer> mColors = new HashMap<>();
+        int mResolveCalls;
+
+        @Override
+        public int getColor(int colorId) {
+            ++mResolveCalls;
+            final Integer color = mColors.get(colorId);
+            if (color == null) {
+                throw new IllegalArgumentException("Resource ID #0x" + Integer.toHexString(colorId));
+            }
+            return color;
+        }
+    }
+
+    /**
+     * Stands in for the application, keeping the callbacks registered with it for the life of the process.
+     */
+    private static class FakeApplication extends ContextWrapper {
+        final ArrayList<ComponentCallbacks> mCallbacks = new ArrayList<>();
+
+        FakeApplication() {
+            super(null);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public void registerComponentCallbacks(ComponentCallbacks callback) {
+            mCallbacks.add(callback);
+        }
+
+        @Override
+        public void unregisterComponentCallbacks(ComponentCallbacks callback) {
+            mCallbacks.remove(callback);
+        }
+    }
+
+    private ThemeResolver mResolver;
+    private ChatBubbleColorCache mCache;
+
+    @Before
+    public void setUp() {
+        mResolver = new ThemeResolver();
+        for (int id = 1; id <= 16; ++id) {
+            mResolver.mColors.put(id, 0xff000000 | id);
+        }
+        mCache = new ChatBubbleColorCache(mResolver);
+    }
+
+    static ChatBubbleColors outgoing() {
+        return new ChatBubbleColors(100, 1, 2, 3, 4, 5, 6, 7);
+    }
+
+    static ChatBubbleColors incoming() {
+        return new ChatBubbleColors(101, 8, 9, 10, 11, 5, 6, 7);
+    }
+
+    @Test
+    public void colorsAreResolvedOnceAndShared() {
+        ResolvedChatBubbleColors first = mCache.get(outgoing());
+        ResolvedChatBubbleColors second = mCache.get(outgoing());
+        assertSame(first, second);
+        assertEquals(1, mCache.getResolveCount());
+        assertEquals(3, mResolver.mResolveCalls);
+
+        assertEquals(100, first.backgroundId);
+        assertEquals(2, first.headingColor);
+        assertEquals(7, first.alertColor);
+        assertEquals(0xff000002, first.resolvedHeadingColor);
+        assertEquals(0xff000003, first.resolvedNormalTextColor);
+        assertEquals(0xff000004, first.resolvedHighlightedColor);
+
+        //handing back the shared colors doesn't look them up again
+        assertSame(first, mCache.get(first));
+        assertNull(mCache.get(null));
+    }
+
+    @Test
+    public void eachChatTypeHasItsOwnColors() {
+        ResolvedChatBubbleColors outgoing = mCache.get(outgoing());
+        ResolvedChatBubbleColors incoming = mCache.get(incoming());
+        assertNotSame(outgoing, incoming);
+        assertEquals(0xff000009, incoming.resolvedHeadingColor);
+        assertEquals(2, mCache.getResolveCount());
+    }
+
+    @Test
+    public void colorsThatArentSetAreNotResolved() {
+        //a provider that only sets the text colors
+        ResolvedChatBubbleColors colors = mCache.get(new ChatBubbleColors(100, 0, 2, 3, 4, 0, 0, 0));
+        assertEquals(0xff000003, colors.resolvedNormalTextColor);
+        assertEquals(3, mResolver.mResolveCalls);
+    }
+
+    @Test
+    public void invalidateResolvesWithTheNewTheme() {
+        final int[] invalidations = new int[1];
+        mCache.setInvalidationListener(new ChatBubbleColorCache.InvalidationListener() {
+            @Override
+            public void onInvalidated() {
+                ++invalidations[0];
+            }
+        });
+        ResolvedChatBubbleColors day = mCache.get(outgoing());
+
+        //night mode
+        mResolver.mColors.put(2, 0xffffffff);
+        mCache.invalidate();
+        assertEquals(1, invalidations[0]);
+
+        ResolvedChatBubbleColors night = mCache.get(day);
+        assertNotSame(day, night);
+        assertEquals(0xffffffff, night.resolvedHeadingColor);
+        assertSame(night, mCache.get(outgoing()));
+        assertEquals(2, mCache.getResolveCount());
+    }
+
+    /**
+     * The adapter registers on start and unregisters on pause, after pause the application holds nothing that
+     * references the activity.
+     */
+    @Test
+    public void pauseUnregistersFromTheApplication() {
+        final FakeApplication application = new FakeApplication();
+        final int[] invalidations = new int[1];
+        mCache.setInvalidationListener(new ChatBubbleColorCache.InvalidationListener() {
+            @Override
+            public void onInvalidated() {
+                ++invalidations[0];
+            }
+        });
+
+        //start, the activity is resumed twice without being paused in between
+        mCache.register(application);
+        mCache.register(application);
+        assertTrue(mCache.isRegistered());
+        assertEquals(1, application.mCallbacks.size());
+
+        application.mCallbacks.get(0).onConfigurationChanged(new Configuration());
+        assertEquals(1, invalidations[0]);
+
+        //pause
+        mCache.unregister(application);
+        assertFalse(mCache.isRegistered());
+        assertTrue(application.mCallbacks.isEmpty());
+        mCache.unregister(application);
+    }
+}
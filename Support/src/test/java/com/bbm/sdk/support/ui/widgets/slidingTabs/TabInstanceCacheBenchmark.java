@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.slidingTabs;
+
+import com.bbm.sdk.support.util.Benchmark;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.assertTrue;
+
+@Category(Benchmark.class)
+public class TabInstanceCacheBenchmark {
+
+    /**
+     * Bytes allocated while the pager reports scrolling, against posting a new runnable for each callback.
+     */
+    @Test
+    public void scrollAllocations() {
+        //per thread allocation counts are only available on HotSpot based JVMs
+        final ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mxBean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        final long thread = Thread.currentThread().getId();
+        //stands in for the message queue, sized so adding doesn't grow it
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>(64);
+        final float[] indicator = new float[1];
+        final ScrollUpdate update = new ScrollUpdate(new ScrollUpdate.Callback() {
+            @Override
+            public void onScrolled(int position, float offset) {
+                indicator[0] = position + offset;
+            }
+        });
+
+        final int frames = 20000;
+        //warm up so class loading and compilation aren't counted
+        scroll(update, queue, indicator, frames, false);
+        scroll(update, queue, indicator, frames, true);
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        scroll(update, queue, indicator, frames, false);
+        long reused = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        scroll(update, queue, indicator, frames, true);
+        long perCallback = threads.getThreadAllocatedBytes(thread) - start;
+
+        System.out.println("Tab strip scroll of " + frames + " frames: " + reused + " bytes allocated, "
+                + perCallback + " bytes posting a runnable per callback");
+        assertTrue("allocated " + reused + " bytes", reused < 1024);
+    }
+
+    /**
+     * The pager reports the scroll a couple of times each frame, then the queue runs.
+     */
+    private static void scroll(final ScrollUpdate update, ArrayDeque<Runnable> queue, final float[] indicator,
+                               int frames, boolean runnablePerCallback) {
+        for (int frame = 0; frame < frames; ++frame) {
+            for (int callback = 0; callback < 2; ++callback) {
+                final int position = frame % TabInstanceCacheTest.TABS;
+                final float offset = (frame % 100) / 100f;
+                if (runnablePerCallback) {
+                    queue.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            indicator[0] = position + offset;
+                        }
+                    });
+                } else if (update.set(position, offset)) {
+                    queue.add(update);
+                }
+            }
+            Runnable next;
+            while ((next = queue.poll()) != null) {
+                next.run();
+            }
+        }
+    }
+}
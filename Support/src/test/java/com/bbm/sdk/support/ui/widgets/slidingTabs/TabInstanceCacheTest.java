@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.ui.widgets.slidingTabs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TabInstanceCacheTest {
+
+    static final int TABS = 5;
+
+    private static final class Page {
+        final int mPosition;
+
+        Page(int position) {
+            mPosition = position;
+        }
+    }
+
+    private int[] mCreated;
+    private TabInstanceCache<Page> mCache;
+
+    @Before
+    public void setUp() {
+        mCreated = new int[TABS];
+        mCache = new TabInstanceCache<>(new TabInstanceCache.Factory<Page>() {
+            @Override
+            public Page create(int position) {
+                if (position >= TABS) {
+                    return null;
+                }
+                ++mCreated[position];
+                return new Page(position);
+            }
+        });
+        mCache.setRetainDistance(2);
+    }
+
+    @Test
+    public void pagesAreCreatedOnceWhileNearTheCurrentTab() {
+        Page first = mCache.get(0);
+        assertEquals(0, first.mPosition);
+        assertSame(first, mCache.get(0));
+        assertEquals(1, mCreated[0]);
+
+        //the pager preloads the neighbours as the user moves along the tabs
+        mCache.get(1);
+        mCache.setCurrent(1);
+        mCache.get(2);
+        mCache.setCurrent(2);
+        mCache.get(3);
+        assertEquals(4, mCache.getCachedCount());
+        assertSame(first, mCache.get(0));
+        assertEquals(1, mCreated[0]);
+
+        mCache.setCurrent(3);
+        mCache.get(4);
+        //too far from the current tab
+        assertEquals(4, mCache.getCachedCount());
+        assertNotSame(first, mCache.get(0));
+        assertEquals(2, mCreated[0]);
+        assertEquals(6, mCache.getCreatedCount());
+        assertEquals(2, mCache.getReusedCount());
+    }
+
+    @Test
+    public void pagesFarFromTheCurrentTabAreNotKept() {
+        mCache.setCurrent(4);
+        mCache.get(0);
+        mCache.get(0);
+        assertEquals(2, mCreated[0]);
+        assertEquals(0, mCache.getCachedCount());
+    }
+
+    @Test
+    public void retainDistanceChanges() {
+        for (int i = 0; i < TABS; ++i) {
+            mCache.get(i);
+        }
+        assertEquals(3, mCache.getCachedCount());
+
+        mCache.setRetainDistance(0);
+        assertEquals(1, mCache.getCachedCount());
+
+        mCache.setRetainDistance(TABS);
+        for (int i = 0; i < TABS; ++i) {
+            mCache.get(i);
+        }
+        assertEquals(TABS, mCache.getCachedCount());
+    }
+
+    @Test
+    public void removeAndClear() {
+        Page page = mCache.get(1);
+        mCache.remove(1);
+        assertNotSame(page, mCache.get(1));
+
+        mCache.clear();
+        assertEquals(0, mCache.getCachedCount());
+        assertNull(mCache.get(TABS));
+        assertNull(mCache.get(-1));
+        //invalid positions are ignored
+        mCache.remove(-1);
+        mCache.remove(TABS + 10);
+    }
+
+    @Test
+    public void scrollUpdatesAreCoalesced() {
+        final float[] applied = new float[2];
+        final int[] runs = new int[1];
+        ScrollUpdate update = new ScrollUpdate(new ScrollUpdate.Callback() {
+            @Override
+            public void onScrolled(int position, float offset) {
+                applied[0] = position;
+                applied[1] = offset;
+                ++runs[0];
+            }
+        });
+
+        assertTrue(update.set(0, 0.25f));
+        assertFalse(update.set(0, 0.5f));
+        assertFalse(update.set(1, 0.1f));
+        update.run();
+        assertEquals(1, runs[0]);
+        assertEquals(1, applied[0], 0);
+        assertEquals(0.1f, applied[1], 0);
+
+        //cancelled when the listener is removed
+        assertTrue(update.set(2, 0));
+        update.cancel();
+        update.run();
+        assertEquals(1, runs[0]);
+        assertTrue(update.set(2, 0));
+    }
+}
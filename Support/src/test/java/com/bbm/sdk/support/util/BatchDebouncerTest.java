@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.bbm.sdk.support.util.RecordedBatches.runScheduledFlushes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BatchDebouncerTest {
+
+    private static final long QUIET_MS = 1000;
+    private static final long MAX_DELAY_MS = 5000;
+
+    private FakeClock mClock;
+    private RecordedBatches<Integer> mRecorded;
+    private BatchDebouncer<Integer> mDebouncer;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mRecorded = new RecordedBatches<>();
+        mDebouncer = new BatchDebouncer<Integer>(mClock, QUIET_MS, MAX_DELAY_MS) {
+            @Override
+            protected void onFlush(@NonNull Map<String, Integer> batch) {
+                mRecorded.add(batch);
+            }
+        };
+    }
+
+    @Test
+    public void waitsForQuietPeriod() {
+        assertEquals(-1, mDebouncer.flushDue());
+        mDebouncer.putPending("key", 1);
+        assertEquals(QUIET_MS, mDebouncer.flushDue());
+        mClock.advance(QUIET_MS - 1);
+        mDebouncer.putPending("key", 2);
+        //the new value restarts the quiet period
+        assertEquals(QUIET_MS, mDebouncer.flushDue());
+        mClock.advance(QUIET_MS);
+        assertEquals(-1, mDebouncer.flushDue());
+        assertEquals(1, mRecorded.mValueCount);
+        assertEquals(Integer.valueOf(2), mRecorded.mBatches.get(0).get("key"));
+    }
+
+    @Test
+    public void maxDelayCapsAContinuousBurst() {
+        final long start = mClock.currentTimeMillis();
+        int value = 1;
+        mDebouncer.putPending("key", value);
+        //a new value every half of the quiet period would otherwise hold the batch forever
+        while (mRecorded.mBatches.isEmpty()) {
+            mClock.advance(QUIET_MS / 2);
+            mDebouncer.putPending("key", ++value);
+            mDebouncer.flushDue();
+        }
+        assertEquals(MAX_DELAY_MS, mClock.currentTimeMillis() - start);
+    }
+
+    @Test
+    public void allKeysAreHandedOverInOneBatch() {
+        mDebouncer.putPending("a", 1);
+        mClock.advance(200);
+        mDebouncer.putPending("b", 2);
+        mClock.advance(200);
+        mDebouncer.putPending("c", 3);
+        mDebouncer.putPending("a", 4);
+        assertEquals(3, mDebouncer.getPendingCount());
+        runScheduledFlushes(mDebouncer, mClock);
+
+        assertEquals(1, mRecorded.mBatches.size());
+        assertEquals(3, mRecorded.mValueCount);
+        assertEquals(Integer.valueOf(4), mRecorded.mBatches.get(0).get("a"));
+        assertEquals(0, mDebouncer.getPendingCount());
+        assertNull(mDebouncer.getPending("a"));
+    }
+
+    @Test
+    public void removedValuesAreNotHandedOver() {
+        mDebouncer.putPending("a", 1);
+        mDebouncer.putPending("b", 2);
+        mDebouncer.removePending("a");
+        runScheduledFlushes(mDebouncer, mClock);
+        assertEquals(1, mRecorded.mValueCount);
+        assertNull(mRecorded.mBatches.get(0).get("a"));
+    }
+
+    @Test
+    public void flushHandsOverImmediately() {
+        mDebouncer.putPending("key", 1);
+        mDebouncer.flush();
+        assertEquals(1, mRecorded.mValueCount);
+        assertEquals(-1, mDebouncer.flushDue());
+        //nothing left for the scheduled flush
+        mDebouncer.flush();
+        assertEquals(1, mRecorded.mBatches.size());
+    }
+}
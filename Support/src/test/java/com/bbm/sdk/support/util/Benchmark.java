@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+/**
+ * JUnit category for benchmarks. They are left out of the unit tests, run them with
+ * {@code ./gradlew :Support:testGoogleDebugUnitTest -Pbenchmarks}.
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CookieDispatcherTest {
+
+    /**
+     * Stands in for the protocol, remembers the requests sent and echoes a response for each one
+     * in whatever order the test asks for.
+     */
+    private static class FakeProtocol {
+        private final CookieDispatcher<String> mDispatcher;
+        private final ArrayList<String> mSentCookies = new ArrayList<>();
+
+        FakeProtocol(CookieDispatcher<String> dispatcher) {
+            mDispatcher = dispatcher;
+        }
+
+        void send(String cookie) {
+            mSentCookies.add(cookie);
+        }
+
+        void echo(List<String> cookies) {
+            for (String cookie : cookies) {
+                mDispatcher.dispatch(cookie, "response-" + cookie);
+            }
+        }
+    }
+
+    private static class RecordingListener implements CookieDispatcher.ResponseListener<String> {
+        String mResponse;
+        int mResponseCount;
+        int mTimeoutCount;
+
+        @Override
+        public void onResponse(@NonNull String response) {
+            mResponse = response;
+            ++mResponseCount;
+        }
+
+        @Override
+        public void onTimeout() {
+            ++mTimeoutCount;
+        }
+    }
+
+    private FakeClock mClock;
+    private CookieDispatcher<String> mDispatcher;
+    private FakeProtocol mProtocol;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mDispatcher = new CookieDispatcher<>(mClock);
+        mProtocol = new FakeProtocol(mDispatcher);
+    }
+
+    private HashMap<String, RecordingListener> startRequests(int count, long timeoutMs) {
+        HashMap<String, RecordingListener> listeners = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            String cookie = "cookie" + i;
+            RecordingListener listener = new RecordingListener();
+            listeners.put(cookie, listener);
+            mDispatcher.register(cookie, timeoutMs, listener);
+            mProtocol.send(cookie);
+        }
+        return listeners;
+    }
+
+    @Test
+    public void outOfOrderResponsesReachTheirRequest() {
+        HashMap<String, RecordingListener> listeners = startRequests(500, 1000);
+
+        ArrayList<String> shuffled = new ArrayList<>(mProtocol.mSentCookies);
+        Collections.shuffle(shuffled, new Random(26));
+        mProtocol.echo(shuffled);
+
+        for (String cookie : mProtocol.mSentCookies) {
+            RecordingListener listener = listeners.get(cookie);
+            assertEquals(1, listener.mResponseCount);
+            assertEquals("response-" + cookie, listener.mResponse);
+        }
+        assertEquals(0, mDispatcher.getPendingCount());
+    }
+
+    @Test
+    public void unknownAndDuplicateResponsesAreIgnored() {
+        HashMap<String, RecordingListener> listeners = startRequests(1, 1000);
+
+        assertFalse(mDispatcher.dispatch("not-ours", "response"));
+        assertFalse(mDispatcher.dispatch(null, "response"));
+        assertTrue(mDispatcher.dispatch("cookie0", "first"));
+        assertFalse(mDispatcher.dispatch("cookie0", "second"));
+
+        assertEquals(1, listeners.get("cookie0").mResponseCount);
+        assertEquals("first", listeners.get("cookie0").mResponse);
+    }
+
+    @Test
+    public void requestsWithoutResponseTimeOutAndAreRemoved() {
+        HashMap<String, RecordingListener> listeners = startRequests(10, 1000);
+
+        //answer only the even requests, in reverse order
+        ArrayList<String> answered = new ArrayList<>();
+        for (int i = 8; i >= 0; i -= 2) {
+            answered.add("cookie" + i);
+        }
+        mProtocol.echo(answered);
+
+        mClock.advance(999);
+        assertEquals(1, mDispatcher.expire());
+        assertEquals(5, mDispatcher.getPendingCount());
+
+        mClock.advance(1);
+        assertEquals(-1, mDispatcher.expire());
+        assertEquals(0, mDispatcher.getPendingCount());
+
+        for (int i = 0; i < 10; ++i) {
+            RecordingListener listener = listeners.get("cookie" + i);
+            if (i % 2 == 0) {
+                assertEquals(1, listener.mResponseCount);
+                assertEquals(0, listener.mTimeoutCount);
+            } else {
+                assertEquals(0, listener.mResponseCount);
+                assertEquals(1, listener.mTimeoutCount);
+            }
+        }
+
+        //a late response for a timed out request is dropped
+        assertFalse(mDispatcher.dispatch("cookie1", "late"));
+        assertNull(listeners.get("cookie1").mResponse);
+    }
+
+    @Test
+    public void expireReportsDelayUntilEarliestTimeout() {
+        RecordingListener slow = new RecordingListener();
+        RecordingListener fast = new RecordingListener();
+        mDispatcher.register("slow", 5000, slow);
+        mDispatcher.register("fast", 1000, fast);
+
+        assertEquals(1000, mDispatcher.expire());
+        mClock.advance(1000);
+        assertEquals(4000, mDispatcher.expire());
+        assertEquals(1, fast.mTimeoutCount);
+        assertEquals(0, slow.mTimeoutCount);
+    }
+
+    @Test
+    public void listenerCanStartAnotherRequest() {
+        final RecordingListener second = new RecordingListener();
+        mDispatcher.register("first", 1000, new CookieDispatcher.ResponseListener<String>() {
+            @Override
+            public void onResponse(@NonNull String response) {
+                mDispatcher.register("second", 1000, second);
+            }
+
+            @Override
+            public void onTimeout() {
+            }
+        });
+
+        assertTrue(mDispatcher.dispatch("first", "response"));
+        assertTrue(mDispatcher.dispatch("second", "response"));
+        assertEquals(1, second.mResponseCount);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.bbm.sdk.support.util.RecordedBatches.runScheduledFlushes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DraftStoreTest {
+
+    private static final long QUIET_MS = 1500;
+    private static final long MAX_DELAY_MS = 10000;
+
+    private FakeClock mClock;
+    private RecordedBatches<String> mWritten;
+    private DraftStore mStore;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mWritten = new RecordedBatches<>();
+        mStore = new DraftStore(new DraftStore.Writer() {
+            @Override
+            public void write(@NonNull Map<String, String> drafts) {
+                mWritten.add(drafts);
+            }
+        }, mClock, QUIET_MS, MAX_DELAY_MS);
+    }
+
+    /**
+     * Type the text one character at a time, checking for due drafts after each keystroke like the handler would.
+     */
+    private void type(String chatId, String existing, String typed, long keystrokeMs) {
+        StringBuilder text = new StringBuilder(existing);
+        for (int i = 0; i < typed.length(); ++i) {
+            text.append(typed.charAt(i));
+            mStore.setDraft(chatId, text.toString());
+            mClock.advance(keystrokeMs);
+            mStore.flushDue();
+        }
+    }
+
+    @Test
+    public void typingSessionWritesOnce() {
+        final String message = "Can I pick up the wedding cake on Saturday?";
+        type("chat", "", message, 150);
+        assertEquals(0, mWritten.mValueCount);
+        assertEquals(message, mStore.getPendingDraft("chat"));
+
+        runScheduledFlushes(mStore, mClock);
+        assertEquals(1, mWritten.mValueCount);
+        assertEquals(message, mWritten.mBatches.get(0).get("chat"));
+        assertNull(mStore.getPendingDraft("chat"));
+    }
+
+    @Test
+    public void pausesWhileTypingWriteEachPause() {
+        type("chat", "", "Hello", 150);
+        mClock.advance(QUIET_MS);
+        mStore.flushDue();
+        type("chat", "Hello", " there", 150);
+        runScheduledFlushes(mStore, mClock);
+        assertEquals(2, mWritten.mValueCount);
+        assertEquals("Hello there", mWritten.mBatches.get(1).get("chat"));
+    }
+
+    @Test
+    public void unchangedDraftIsNotPendingAgain() {
+        assertTrue(mStore.setDraft("chat", "draft"));
+        //restoring the text into the input fires a change with the same text
+        assertFalse(mStore.setDraft("chat", "draft"));
+        runScheduledFlushes(mStore, mClock);
+        assertEquals(1, mWritten.mValueCount);
+    }
+
+    @Test
+    public void clearingADraftIsWritten() {
+        assertTrue(mStore.setDraft("chat", null));
+        mStore.flush();
+        assertEquals("", mWritten.mBatches.get(0).get("chat"));
+    }
+
+    @Test
+    public void severalChatsAreWrittenInOneBatch() {
+        type("chatA", "", "first", 100);
+        type("chatB", "", "second", 100);
+        type("chatC", "", "third", 100);
+        runScheduledFlushes(mStore, mClock);
+        assertEquals(1, mWritten.mBatches.size());
+        assertEquals(3, mWritten.mBatches.get(0).size());
+        assertEquals("second", mWritten.mBatches.get(0).get("chatB"));
+    }
+}
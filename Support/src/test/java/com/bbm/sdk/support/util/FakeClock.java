@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+/**
+ * Clock for tests that only moves when told to.
+ */
+public class FakeClock implements Clock {
+
+    private long mNow;
+
+    public FakeClock() {
+        this(1000000L);
+    }
+
+    public FakeClock(long now) {
+        mNow = now;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return mNow;
+    }
+
+    public synchronized void advance(long ms) {
+        mNow += ms;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * Scheduler for tests that keeps the tasks until told to run them, with the time on a {@link FakeClock}.
+ */
+public class FakeScheduler implements Scheduler {
+
+    private final FakeClock mClock;
+    private final ArrayList<Long> mDue = new ArrayList<>();
+    private final ArrayList<Runnable> mTasks = new ArrayList<>();
+    //Every delay asked for, in order
+    private final ArrayList<Long> mDelays = new ArrayList<>();
+
+    public FakeScheduler(@NonNull FakeClock clock) {
+        mClock = clock;
+    }
+
+    @Override
+    public void schedule(@NonNull Runnable task, long delayMs) {
+        mDue.add(mClock.currentTimeMillis() + delayMs);
+        mTasks.add(task);
+        mDelays.add(delayMs);
+    }
+
+    /**
+     * Run the task scheduled first, whatever its delay.
+     */
+    public void runNext() {
+        mDue.remove(0);
+        mTasks.remove(0).run();
+    }
+
+    /**
+     * Run the tasks in the order they were scheduled until none are left, whatever their delays.
+     */
+    public void runAll() {
+        while (!mTasks.isEmpty()) {
+            runNext();
+        }
+    }
+
+    /**
+     * Run the tasks that are due now, including tasks they schedule that are due.
+     */
+    public void runDue() {
+        runUntil(mClock.currentTimeMillis());
+    }
+
+    /**
+     * Run the tasks due before the time in order of when they are due, moving the clock forward to each one,
+     * including tasks they schedule. The clock is left at the time.
+     */
+    public void runUntil(long timeMs) {
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < mDue.size(); ++i) {
+                if (mDue.get(i) <= timeMs && (next < 0 || mDue.get(i) < mDue.get(next))) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            mClock.advance(Math.max(0, mDue.remove(next) - mClock.currentTimeMillis()));
+            mTasks.remove(next).run();
+        }
+        mClock.advance(Math.max(0, timeMs - mClock.currentTimeMillis()));
+    }
+
+    /**
+     * @return the delay until the next task is due, or -1 if none
+     */
+    public long nextDelay() {
+        long next = -1;
+        for (long due : mDue) {
+            final long delay = due - mClock.currentTimeMillis();
+            next = next < 0 ? delay : Math.min(next, delay);
+        }
+        return next;
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public int size() {
+        return mTasks.size();
+    }
+
+    /**
+     * @return every delay tasks were scheduled with, in order
+     */
+    public ArrayList<Long> getDelays() {
+        return mDelays;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+public class IOUtilsTest {
+
+    private static InputStream stream(int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Test
+    public void readsUpToTheLimit() throws IOException {
+        final byte[] expected = new byte[10000];
+        stream(10000).read(expected);
+        assertArrayEquals(expected, IOUtils.toByteArray(stream(10000), 10000, 10000));
+        //a chunked response with no content length
+        assertArrayEquals(expected, IOUtils.toByteArray(stream(10000), -1, 10000));
+    }
+
+    @Test
+    public void limitAppliesWithoutAContentLength() {
+        for (int contentLength : new int[]{-1, 100}) {
+            try {
+                IOUtils.toByteArray(stream(10001), contentLength, 10000);
+                fail("Read past the limit with content length " + contentLength);
+            } catch (IOException e) {
+                //expected
+            }
+        }
+    }
+}
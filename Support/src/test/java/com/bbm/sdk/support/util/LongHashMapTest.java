@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.put(5, "five"));
+        assertNull(map.put(-5, "minus five"));
+        assertNull(map.put(0, "zero"));
+        assertEquals("five", map.put(5, "FIVE"));
+        assertEquals(3, map.size());
+        assertEquals("FIVE", map.get(5));
+        assertEquals("zero", map.get(0));
+        assertTrue(map.containsKey(-5));
+
+        assertEquals("minus five", map.remove(-5));
+        assertNull(map.remove(-5));
+        assertFalse(map.containsKey(-5));
+        assertEquals(2, map.size());
+        assertEquals(2, map.keys().length);
+        assertEquals(2, map.values().size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+    }
+
+    /**
+     * Random puts and removes, with keys that collide, must match a HashMap.
+     */
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(42);
+        LongHashMap<Long> map = new LongHashMap<>();
+        HashMap<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200000; ++i) {
+            //small key space so the table fills, grows and has long probe runs
+            long key = (random.nextInt(5000) << 20) * 31L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key : map.keys()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        for (Long key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PushTokenRegistrarTest {
+
+    /**
+     * Stands in for Firebase and the BBM Enterprise SDK, failing as told.
+     */
+    private static class FakePush implements PushTokenRegistrar.PushTokenSource, PushTokenRegistrar.PushTokenSender {
+        String mToken = "token1";
+        int mSourceFailures;
+        int mSendFailures;
+        final ArrayList<String> mSent = new ArrayList<>();
+        Runnable mDuringGet;
+
+        @Override
+        public String getToken() throws Exception {
+            final String token = mToken;
+            if (mDuringGet != null) {
+                Runnable during = mDuringGet;
+                mDuringGet = null;
+                during.run();
+            }
+            if (mSourceFailures > 0) {
+                --mSourceFailures;
+                throw new IOException("SERVICE_NOT_AVAILABLE");
+            }
+            return token;
+        }
+
+        @Override
+        public void setPushToken(@NonNull String token) throws Exception {
+            if (mSendFailures > 0) {
+                --mSendFailures;
+                throw new IllegalStateException("not started");
+            }
+            mSent.add(token);
+        }
+    }
+
+    private static class MemoryStore implements PushTokenRegistrar.LastTokenStore {
+        String mLastToken;
+
+        @Override
+        public String getLastToken() {
+            return mLastToken;
+        }
+
+        @Override
+        public void setLastToken(String token) {
+            mLastToken = token;
+        }
+    }
+
+    private FakeScheduler mScheduler;
+    private FakePush mPush;
+    private MemoryStore mStore;
+    private PushTokenRegistrar mRegistrar;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler(new FakeClock());
+        mPush = new FakePush();
+        mStore = new MemoryStore();
+        mRegistrar = newRegistrar();
+    }
+
+    private PushTokenRegistrar newRegistrar() {
+        return new PushTokenRegistrar(mPush, mPush, mStore, mScheduler, new Random(1));
+    }
+
+    @Test
+    public void sentOnlyWhenTheTokenChanges() {
+        mRegistrar.register();
+        mScheduler.runAll();
+        assertEquals(1, mPush.mSent.size());
+        assertEquals("token1", mStore.mLastToken);
+
+        mRegistrar.register();
+        mScheduler.runAll();
+        assertEquals(1, mPush.mSent.size());
+        assertEquals(1, mRegistrar.getSkipCount());
+
+        mPush.mToken = "token2";
+        mRegistrar.register();
+        mScheduler.runAll();
+        assertEquals("token2", mPush.mSent.get(1));
+        assertEquals(2, mRegistrar.getSendCount());
+    }
+
+    @Test
+    public void lastTokenIsKeptAcrossRestarts() {
+        mRegistrar.register();
+        mScheduler.runAll();
+
+        //the app starts again with the same token
+        PushTokenRegistrar restarted = newRegistrar();
+        restarted.register();
+        mScheduler.runAll();
+        assertEquals(1, mPush.mSent.size());
+        assertEquals(0, restarted.getSendCount());
+
+        //the endpoint was deregistered
+        restarted.reset();
+        restarted.register();
+        mScheduler.runAll();
+        assertEquals(2, mPush.mSent.size());
+    }
+
+    @Test
+    public void failuresAreRetriedWithGrowingDelays() {
+        mPush.mSourceFailures = 2;
+        mPush.mSendFailures = 1;
+        mPush.mToken = null;
+        mRegistrar.register();
+        mScheduler.runNext();
+        mScheduler.runNext();
+        //Firebase hasn't got a token yet
+        mScheduler.runNext();
+        mPush.mToken = "token1";
+        mScheduler.runAll();
+
+        assertEquals(1, mPush.mSent.size());
+        assertEquals(4, mRegistrar.getRetryCount());
+        assertEquals(5, mScheduler.getDelays().size());
+        assertEquals(0, (long) mScheduler.getDelays().get(0));
+        for (int i = 1; i < mScheduler.getDelays().size(); ++i) {
+            long full = PushTokenRegistrar.DEFAULT_RETRY_DELAY_MS << (i - 1);
+            long delay = mScheduler.getDelays().get(i);
+            assertTrue(mScheduler.getDelays().toString(), delay >= full / 2 && delay <= full);
+        }
+    }
+
+    @Test
+    public void givesUpAfterMaxAttemptsUntilAskedAgain() {
+        mRegistrar.setRetryPolicy(1000, 4000, 3);
+        mPush.mSendFailures = 10;
+        mRegistrar.register();
+        mScheduler.runAll();
+        assertEquals(2, mRegistrar.getRetryCount());
+        assertEquals(0, mPush.mSent.size());
+        assertEquals(null, mStore.mLastToken);
+
+        mPush.mSendFailures = 0;
+        mRegistrar.register();
+        mScheduler.runAll();
+        assertEquals(1, mPush.mSent.size());
+    }
+
+    @Test
+    public void registerWhileRegisteringIsCoalesced() {
+        mRegistrar.register();
+        mRegistrar.register();
+        assertEquals(1, mScheduler.size());
+
+        //the token is refreshed while the old one is being sent
+        mPush.mDuringGet = () -> {
+            mPush.mToken = "token2";
+            mRegistrar.register();
+        };
+        mScheduler.runAll();
+        assertEquals(2, mPush.mSent.size());
+        assertEquals("token2", mStore.mLastToken);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.bbm.sdk.support.util.RecordedBatches.runScheduledFlushes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadReceiptTrackerTest {
+
+    private static final long QUIET_MS = 1000;
+    private static final long MAX_DELAY_MS = 5000;
+
+    private FakeClock mClock;
+    private RecordedBatches<Long> mSent;
+    private ReadReceiptTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mSent = new RecordedBatches<>();
+        mTracker = new ReadReceiptTracker(new ReadReceiptTracker.Sender() {
+            @Override
+            public void send(@NonNull Map<String, Long> readMarks) {
+                mSent.add(readMarks);
+            }
+        }, mClock, QUIET_MS, MAX_DELAY_MS);
+    }
+
+    @Test
+    public void pauseResumeWithoutNewMessagesSendsOnce() {
+        //open the chat, then switch away and back a few times
+        for (int i = 0; i < 10; ++i) {
+            mTracker.markRead("chat", 42);
+            mClock.advance(100);
+        }
+        assertEquals(0, mSent.mValueCount);
+        runScheduledFlushes(mTracker, mClock);
+        assertEquals(1, mSent.mValueCount);
+        assertEquals(Long.valueOf(42), mSent.mBatches.get(0).get("chat"));
+
+        //nothing new after the receipt
+        assertFalse(mTracker.markRead("chat", 42));
+        assertFalse(mTracker.markRead("chat", 41));
+        runScheduledFlushes(mTracker, mClock);
+        assertEquals(1, mSent.mValueCount);
+        assertEquals(42, mTracker.getAcknowledged("chat"));
+    }
+
+    @Test
+    public void onlyTheHighestMarkIsSent() {
+        assertTrue(mTracker.markRead("chat", 10));
+        assertTrue(mTracker.markRead("chat", 12));
+        assertFalse(mTracker.markRead("chat", 11));
+        runScheduledFlushes(mTracker, mClock);
+        assertEquals(1, mSent.mBatches.size());
+        assertEquals(Long.valueOf(12), mSent.mBatches.get(0).get("chat"));
+
+        assertTrue(mTracker.markRead("chat", 13));
+        runScheduledFlushes(mTracker, mClock);
+        assertEquals(2, mSent.mBatches.size());
+        assertEquals(Long.valueOf(13), mSent.mBatches.get(1).get("chat"));
+    }
+
+    @Test
+    public void alreadyReadMessagesAreNotSent() {
+        mTracker.markRead("chat", 3);
+        //read on another device before the receipt went out
+        mTracker.setAcknowledged("chat", 3);
+        assertEquals(0, mTracker.getPendingCount());
+        runScheduledFlushes(mTracker, mClock);
+        assertEquals(0, mSent.mValueCount);
+        assertFalse(mTracker.markRead("chat", 2));
+    }
+
+    @Test
+    public void rapidChatSwitchingMessageCount() {
+        //switch between 5 chats 20 times, a message arrives in each chat every 4 switches
+        long[] lastMessage = {1, 1, 1, 1, 1};
+        for (int i = 0; i < 100; ++i) {
+            int chat = i % 5;
+            if (i % 20 == 0) {
+                lastMessage[chat]++;
+            }
+            //onPause of the old chat and onResume of the new one each marked read
+            for (int call = 0; call < 2; ++call) {
+                mTracker.markRead("chat" + chat, lastMessage[chat]);
+            }
+            mClock.advance(300);
+            mTracker.flushDue();
+        }
+        runScheduledFlushes(mTracker, mClock);
+        //200 receipts without the tracker
+        assertTrue(mSent.mValueCount <= 10);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2018 BlackBerry.  All Rights Reserved.
+ *
+ * You must obtain a license from and pay any applicable license fees to
+ * BlackBerry before you may reproduce, modify or distribute this
+ * software, or any work that includes all or part of this software.
+ *
+ * This file may contain contributions from others. Please review this entire
+ * file for other proprietary rights or license notices.
+ */
+package com.bbm.sdk.support.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the batches handed over by a {@link BatchDebouncer}, for example as the writer of a {@link DraftStore}.
+ */
+public class RecordedBatches<V> {
+
+    public final List<Map<String, V>> mBatches = new ArrayList<>();
+    //the number of values in all batches, each would have been one protocol message
+    public int mValueCount;
+
+    public void add(@NonNull Map<String, V> batch) {
+        mBatches.add(new HashMap<>(batch));
+        mValueCount += batch.size();
+    }
+
+    /**
+     * Call {@link BatchDebouncer#flushDue()} after each delay it returns like the handler would, returns once nothing
+     * is pending.
+     */
+    public static void runScheduledFlushes(@NonNull BatchDebouncer<?> debouncer, @NonNull FakeClock clock) {
+        long delay = debouncer.flushDue();
+        while (delay >= 0) {
+            clock.advance(delay);
+            delay = debouncer.flushDue();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.sarii.cakecept;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures decode time and memory per gallery page, full resolution decode versus the downsampled decode
+ * used by {@link DesignImageLoader}. Results are written to logcat with the tag DesignImageBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DesignImageLoaderBenchmark {
+
+    private static final String TAG = "DesignImageBenchmark";
+    private static final int RUNS = 5;
+    private static final int[] IMAGES = {R.drawable.cakedesign1, R.drawable.cakedesign2, R.drawable.cakedesign3};
+
+    @Test
+    public void decodeTimeAndMemoryPerPage() {
+        Resources resources = InstrumentationRegistry.getTargetContext().getResources();
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+
+        for (int resId : IMAGES) {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inScaled = false;
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(resources, resId, bounds);
+            int sampleSize = DesignImageLoader.calculateInSampleSize(bounds.outWidth, bounds.outHeight,
+                    metrics.widthPixels, metrics.heightPixels);
+
+            long fullBytes = 0;
+            long sampledBytes = 0;
+            long fullNanos = 0;
+            long sampledNanos = 0;
+            for (int i = 0; i < RUNS; ++i) {
+                //what setImageResource did, a density scaled full decode
+                long start = SystemClock.elapsedRealtimeNanos();
+                Bitmap full = BitmapFactory.decodeResource(resources, resId);
+                fullNanos += SystemClock.elapsedRealtimeNanos() - start;
+                assertNotNull(full);
+                fullBytes = full.getAllocationByteCount();
+                full.recycle();
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inScaled = false;
+                options.inSampleSize = sampleSize;
+                start = SystemClock.elapsedRealtimeNanos();
+                Bitmap sampled = BitmapFactory.decodeResource(resources, resId, options);
+                sampledNanos += SystemClock.elapsedRealtimeNanos() - start;
+                assertNotNull(sampled);
+                sampledBytes = sampled.getAllocationByteCount();
+                sampled.recycle();
+            }
+
+            Log.i(TAG, resources.getResourceEntryName(resId) + " " + bounds.outWidth + "x" + bounds.outHeight
+                    + " inSampleSize=" + sampleSize
+                    + " full: " + (fullNanos / RUNS / 1000) + "us " + fullBytes + " bytes"
+                    + " sampled: " + (sampledNanos / RUNS / 1000) + "us " + sampledBytes + " bytes");
+            assertTrue(sampledBytes <= fullBytes);
+        }
+    }
+}
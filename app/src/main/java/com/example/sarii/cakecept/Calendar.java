@@ -1,19 +1,63 @@
 package com.example.sarii.cakecept;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.Toolbar;
-import android.os.Bundle;
 import android.widget.CalendarView;
 import android.widget.CalendarView.OnDateChangeListener;
-import android.widget.Toast;
-import android.app.Activity;
+import android.widget.TextView;
+
+import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
+import com.google.api.client.extensions.android.http.AndroidHttp;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.calendar.CalendarScopes;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class Calendar extends AppCompatActivity {
 
+    private static final String CALENDAR_ID = "primary";
+
     private Toolbar mToolbar;
+    private TextView mDayEvents;
+
+    private CalendarEventStore mStore;
+    private CalendarSyncEngine mSyncEngine;
+    private final ExecutorService mSyncExecutor = Executors.newSingleThreadExecutor();
+    //month queries run here so the UI never waits on the store
+    private final ExecutorService mQueryExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
 
+    //the month currently shown and the orders in it
+    private long mMonthStart = -1;
+    private List<CalendarEvent> mMonthEvents = Collections.emptyList();
+    private long mSelectedDay;
+
+    private final CalendarEventStore.Listener mStoreListener = new CalendarEventStore.Listener() {
+        @Override
+        public void onEventsChanged() {
+            //called on the sync thread
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    loadMonth(mSelectedDay, true);
+                }
+            });
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -25,7 +69,127 @@ public class Calendar extends AppCompatActivity {
         setSupportActionBar(mToolbar);
         getSupportActionBar().setHomeButtonEnabled(true);
 
+        mDayEvents = (TextView) findViewById(R.id.day_events);
+        CalendarView calendarView = (CalendarView) findViewById(R.id.calendar);
+        calendarView.setOnDateChangeListener(new OnDateChangeListener() {
+            @Override
+            public void onSelectedDayChange(CalendarView view, int year, int month, int dayOfMonth) {
+                loadMonth(new GregorianCalendar(year, month, dayOfMonth).getTimeInMillis(), false);
+            }
+        });
+
+        mStore = new CalendarEventStore(new File(getFilesDir(), "calendar_events.dat"));
+        mStore.addListener(mStoreListener);
+        //the remote calendar is set in onResume once an account is signed in
+        mSyncEngine = new CalendarSyncEngine(mStore, null, mSyncExecutor);
+        mSyncEngine.start();
+
+        loadMonth(calendarView.getDate(), false);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        //an account may have been signed in since the calendar was opened
+        if (!mSyncEngine.hasRemote()) {
+            RemoteCalendar remote = createRemoteCalendar();
+            if (remote != null) {
+                mSyncEngine.setRemote(remote);
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mStore.removeListener(mStoreListener);
+        mSyncExecutor.shutdownNow();
+        mQueryExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the Google calendar of the signed in account, or null if no account is signed in, the calendar then
+     * works from the local store only
+     */
+    @Nullable
+    private RemoteCalendar createRemoteCalendar() {
+        GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(this);
+        if (account == null || account.getAccount() == null) {
+            return null;
+        }
+        GoogleAccountCredential credential = GoogleAccountCredential.usingOAuth2(getApplicationContext(),
+                Collections.singleton(CalendarScopes.CALENDAR));
+        credential.setSelectedAccount(account.getAccount());
+        com.google.api.services.calendar.Calendar service = new com.google.api.services.calendar.Calendar.Builder(
+                AndroidHttp.newCompatibleTransport(), JacksonFactory.getDefaultInstance(), credential)
+                .setApplicationName(getString(R.string.app_name))
+                .build();
+        return new GoogleRemoteCalendar(service, CALENDAR_ID);
     }
 
+    /**
+     * Show the orders for the day, querying the store for the whole month if the day is in a different month.
+     */
+    private void loadMonth(long dayMillis, boolean force) {
+        mSelectedDay = dayMillis;
+        java.util.Calendar month = java.util.Calendar.getInstance();
+        month.setTimeInMillis(dayMillis);
+        month.set(java.util.Calendar.DAY_OF_MONTH, 1);
+        month.set(java.util.Calendar.HOUR_OF_DAY, 0);
+        month.set(java.util.Calendar.MINUTE, 0);
+        month.set(java.util.Calendar.SECOND, 0);
+        month.set(java.util.Calendar.MILLISECOND, 0);
+        final long monthStart = month.getTimeInMillis();
+        month.add(java.util.Calendar.MONTH, 1);
+        final long monthEnd = month.getTimeInMillis();
+
+        if (!force && monthStart == mMonthStart) {
+            showDay();
+            return;
+        }
+        mMonthStart = monthStart;
+        mQueryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<CalendarEvent> events = mStore.query(monthStart, monthEnd);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mMonthStart == monthStart) {
+                            mMonthEvents = events;
+                            showDay();
+                        }
+                    }
+                });
+            }
+        });
+    }
 
+    private void showDay() {
+        java.util.Calendar day = java.util.Calendar.getInstance();
+        day.setTimeInMillis(mSelectedDay);
+        day.set(java.util.Calendar.HOUR_OF_DAY, 0);
+        day.set(java.util.Calendar.MINUTE, 0);
+        day.set(java.util.Calendar.SECOND, 0);
+        day.set(java.util.Calendar.MILLISECOND, 0);
+        long dayStart = day.getTimeInMillis();
+        day.add(java.util.Calendar.DAY_OF_MONTH, 1);
+        long dayEnd = day.getTimeInMillis();
+
+        DateFormat timeFormat = android.text.format.DateFormat.getTimeFormat(this);
+        StringBuilder text = new StringBuilder();
+        for (CalendarEvent event : mMonthEvents) {
+            if (event.overlaps(dayStart, dayEnd)) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(timeFormat.format(new Date(event.startMillis))).append("  ").append(event.summary);
+            }
+        }
+        if (text.length() == 0) {
+            mDayEvents.setText(R.string.no_orders);
+        } else {
+            mDayEvents.setText(text);
+        }
+    }
 }
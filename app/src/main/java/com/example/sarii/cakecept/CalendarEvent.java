@@ -0,0 +1,59 @@
+package com.example.sarii.cakecept;
+
+import java.util.UUID;
+
+/**
+ * An event on the bakery order calendar as kept in the local {@link CalendarEventStore}.
+ * Instances are immutable, changes are made by storing a new instance with the same id.
+ */
+public class CalendarEvent {
+
+    //events created on this device use a client generated id so pushing them is idempotent
+    public final String id;
+    public final String summary;
+    public final long startMillis;
+    public final long endMillis;
+    //last modification time
+    public final long updatedMillis;
+    public final boolean cancelled;
+    //true if this event was created or changed locally and has not been pushed to the remote calendar yet
+    public final boolean pendingPush;
+
+    public CalendarEvent(String id, String summary, long startMillis, long endMillis, long updatedMillis,
+                         boolean cancelled, boolean pendingPush) {
+        this.id = id;
+        this.summary = summary;
+        this.startMillis = startMillis;
+        //treat events without a duration as lasting until their start
+        this.endMillis = Math.max(startMillis, endMillis);
+        this.updatedMillis = updatedMillis;
+        this.cancelled = cancelled;
+        this.pendingPush = pendingPush;
+    }
+
+    /**
+     * Create a new order on this device, it is pushed on the next sync.
+     */
+    public static CalendarEvent newLocalOrder(String summary, long startMillis, long endMillis, long nowMillis) {
+        //Google Calendar accepts client ids made of the base32hex characters, a UUID without dashes is valid
+        String id = UUID.randomUUID().toString().replace("-", "");
+        return new CalendarEvent(id, summary, startMillis, endMillis, nowMillis, false, true);
+    }
+
+    public CalendarEvent withPendingPush(boolean pending) {
+        return new CalendarEvent(id, summary, startMillis, endMillis, updatedMillis, cancelled, pending);
+    }
+
+    /**
+     * @return true if any part of this event falls in the range [fromMillis, toMillis)
+     */
+    public boolean overlaps(long fromMillis, long toMillis) {
+        return startMillis < toMillis && (endMillis > fromMillis || startMillis >= fromMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "CalendarEvent{id=" + id + ", summary=" + summary + ", start=" + startMillis + ", end=" + endMillis
+                + ", updated=" + updatedMillis + ", cancelled=" + cancelled + ", pendingPush=" + pendingPush + "}";
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.sarii.cakecept;
+
+import android.support.annotation.Nullable;
+import android.support.v4.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local copy of the order calendar, the month view only ever reads from here.
+ * Events are indexed by id and by start time so a month can be queried without scanning every event.
+ * Reads share a lock, so queries only wait for the short time a sync applies a page of changes.
+ * The store, including the sync token, can be saved to a file so it is available offline and across restarts.
+ */
+public class CalendarEventStore {
+
+    /**
+     * Notified after events are changed, may be called on any thread.
+     */
+    public interface Listener {
+        void onEventsChanged();
+    }
+
+    private static final int FILE_VERSION = 1;
+
+    private static final Comparator<CalendarEvent> START_ORDER = new Comparator<CalendarEvent>() {
+        @Override
+        public int compare(CalendarEvent a, CalendarEvent b) {
+            int result = Long.compare(a.startMillis, b.startMillis);
+            return result != 0 ? result : a.id.compareTo(b.id);
+        }
+    };
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<String, CalendarEvent> byId = new HashMap<>();
+    private final TreeSet<CalendarEvent> byStart = new TreeSet<>(START_ORDER);
+    //the longest event seen, a query has to look back this far for events that started earlier but overlap
+    private long maxDurationMillis = 0;
+    private String syncToken;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    @Nullable
+    private final AtomicFile file;
+
+    /**
+     * @param file where the store is saved, null to keep it in memory only
+     */
+    public CalendarEventStore(@Nullable File file) {
+        this.file = file != null ? new AtomicFile(file) : null;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : listeners) {
+            listener.onEventsChanged();
+        }
+    }
+
+    /**
+     * @return the events that overlap [fromMillis, toMillis) ordered by start time, cancelled events are left out
+     */
+    public List<CalendarEvent> query(long fromMillis, long toMillis) {
+        ArrayList<CalendarEvent> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            //events are ordered by start and id, an empty id sorts before any other event with the same start
+            CalendarEvent lower = new CalendarEvent("", null, fromMillis - maxDurationMillis, 0, 0, false, false);
+            CalendarEvent upper = new CalendarEvent("", null, toMillis, 0, 0, false, false);
+            for (CalendarEvent event : byStart.subSet(lower, true, upper, false)) {
+                if (!event.cancelled && event.overlaps(fromMillis, toMillis)) {
+                    result.add(event);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Nullable
+    public CalendarEvent get(String id) {
+        lock.readLock().lock();
+        try {
+            return byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return events created or changed locally that still need to be pushed
+     */
+    public List<CalendarEvent> getPendingPush() {
+        ArrayList<CalendarEvent> pending = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (CalendarEvent event : byId.values()) {
+                if (event.pendingPush) {
+                    pending.add(event);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return pending;
+    }
+
+    @Nullable
+    public String getSyncToken() {
+        lock.readLock().lock();
+        try {
+            return syncToken;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setSyncToken(@Nullable String token) {
+        lock.writeLock().lock();
+        try {
+            syncToken = token;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add or replace events in a single update, cancelled events are removed.
+     */
+    public void putAll(Collection<CalendarEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (CalendarEvent event : events) {
+                putLocked(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyListeners();
+    }
+
+    public void put(CalendarEvent event) {
+        lock.writeLock().lock();
+        try {
+            putLocked(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyListeners();
+    }
+
+    private void putLocked(CalendarEvent event) {
+        CalendarEvent existing = byId.remove(event.id);
+        if (existing != null) {
+            byStart.remove(existing);
+        }
+        //a cancelled event still needs to be kept if the cancellation has to be pushed
+        if (event.cancelled && !event.pendingPush) {
+            return;
+        }
+        byId.put(event.id, event);
+        byStart.add(event);
+        maxDurationMillis = Math.max(maxDurationMillis, event.endMillis - event.startMillis);
+    }
+
+    /**
+     * Remove everything that came from the remote calendar and the sync token, before a full sync.
+     * Local changes that have not been pushed are kept.
+     */
+    public void clearSynced() {
+        lock.writeLock().lock();
+        try {
+            ArrayList<CalendarEvent> pending = new ArrayList<>();
+            for (CalendarEvent event : byId.values()) {
+                if (event.pendingPush) {
+                    pending.add(event);
+                }
+            }
+            byId.clear();
+            byStart.clear();
+            maxDurationMillis = 0;
+            syncToken = null;
+            for (CalendarEvent event : pending) {
+                putLocked(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Read the saved store, does nothing if it was never saved.
+     */
+    public void load() throws IOException {
+        if (file == null) {
+            return;
+        }
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        ArrayList<CalendarEvent> events = new ArrayList<>();
+        String token;
+        try {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported calendar store version " + version);
+            }
+            token = in.readBoolean() ? in.readUTF() : null;
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                String id = in.readUTF();
+                String summary = in.readBoolean() ? in.readUTF() : null;
+                events.add(new CalendarEvent(id, summary, in.readLong(), in.readLong(), in.readLong(),
+                        in.readBoolean(), in.readBoolean()));
+            }
+        } finally {
+            in.close();
+        }
+
+        lock.writeLock().lock();
+        try {
+            syncToken = token;
+            for (CalendarEvent event : events) {
+                putLocked(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Save the store, a failed write leaves the previous copy intact.
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        ArrayList<CalendarEvent> events;
+        String token;
+        lock.readLock().lock();
+        try {
+            events = new ArrayList<>(byId.values());
+            token = syncToken;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        FileOutputStream stream = file.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(FILE_VERSION);
+            out.writeBoolean(token != null);
+            if (token != null) {
+                out.writeUTF(token);
+            }
+            out.writeInt(events.size());
+            for (CalendarEvent event : events) {
+                out.writeUTF(event.id);
+                out.writeBoolean(event.summary != null);
+                if (event.summary != null) {
+                    out.writeUTF(event.summary);
+                }
+                out.writeLong(event.startMillis);
+                out.writeLong(event.endMillis);
+                out.writeLong(event.updatedMillis);
+                out.writeBoolean(event.cancelled);
+                out.writeBoolean(event.pendingPush);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            file.failWrite(stream);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.sarii.cakecept;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the local {@link CalendarEventStore} in sync with a {@link RemoteCalendar}.
+ * The store is the source of truth for the UI, a sync:
+ * <ol>
+ * <li>pushes orders created on this device (they have client ids, so a push whose response was lost is safe to repeat)</li>
+ * <li>fetches only the changes since the last sync using the sync token, one page at a time,
+ * falling back to a full sync if the token has expired</li>
+ * <li>saves the store and the new sync token</li>
+ * </ol>
+ * If a locally created order turns out to already be on the server (its push response was lost) the remote copy
+ * replaces the pending one, so an order is never created twice. An order edited locally while it was also changed
+ * remotely keeps whichever change was made last.
+ * Until a remote calendar is set, for example while no account is signed in, the store is only loaded and nothing
+ * is synced.
+ */
+public class CalendarSyncEngine {
+
+    private static final String TAG = "CalendarSyncEngine";
+
+    /**
+     * Outcome of one sync
+     */
+    public static class SyncResult {
+        public int pushed;
+        public int pulled;
+        public int pages;
+        public int conflicts;
+        public boolean fullSync;
+        public IOException error;
+
+        @Override
+        public String toString() {
+            return "SyncResult{pushed=" + pushed + ", pulled=" + pulled + ", pages=" + pages + ", conflicts=" + conflicts
+                    + ", fullSync=" + fullSync + ", error=" + error + "}";
+        }
+    }
+
+    private final CalendarEventStore store;
+    @Nullable
+    private RemoteCalendar remote;
+    //background syncs run here, it should run one task at a time
+    private final Executor syncExecutor;
+    private boolean syncQueued = false;
+
+    /**
+     * @param remote the calendar to sync with, null to work from the local store until {@link #setRemote} is called
+     */
+    public CalendarSyncEngine(CalendarEventStore store, @Nullable RemoteCalendar remote, Executor syncExecutor) {
+        this.store = store;
+        this.remote = remote;
+        this.syncExecutor = syncExecutor;
+    }
+
+    /**
+     * Load the saved store in the background, then sync.
+     */
+    public void start() {
+        syncExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.load();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to load the saved calendar, starting with a full sync", e);
+                    store.clearSynced();
+                }
+            }
+        });
+        requestSync();
+    }
+
+    /**
+     * Start syncing with the remote calendar, for example once an account is signed in.
+     */
+    public void setRemote(RemoteCalendar remote) {
+        synchronized (this) {
+            this.remote = remote;
+        }
+        requestSync();
+    }
+
+    public synchronized boolean hasRemote() {
+        return remote != null;
+    }
+
+    /**
+     * Create an order locally, it shows in the store immediately and is pushed by the next sync.
+     */
+    public CalendarEvent createOrder(String summary, long startMillis, long endMillis) {
+        CalendarEvent order = CalendarEvent.newLocalOrder(summary, startMillis, endMillis, System.currentTimeMillis());
+        store.put(order);
+        requestSync();
+        return order;
+    }
+
+    /**
+     * Sync in the background. Requests made while a sync is waiting to run are merged into it.
+     */
+    public synchronized void requestSync() {
+        if (syncQueued || remote == null) {
+            return;
+        }
+        syncQueued = true;
+        syncExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CalendarSyncEngine.this) {
+                    syncQueued = false;
+                }
+                SyncResult result = syncNow();
+                Log.d(TAG, "sync finished " + result);
+            }
+        });
+    }
+
+    /**
+     * Sync on the calling thread
+     */
+    public SyncResult syncNow() {
+        SyncResult result = new SyncResult();
+        RemoteCalendar remote;
+        synchronized (this) {
+            remote = this.remote;
+        }
+        if (remote == null) {
+            return result;
+        }
+        try {
+            push(remote, result);
+            pull(remote, result);
+            store.save();
+        } catch (IOException e) {
+            //offline, not authorized or failed, everything not synced stays pending for the next attempt
+            Log.w(TAG, "sync failed", e);
+            result.error = e;
+        }
+        return result;
+    }
+
+    private void push(RemoteCalendar remote, SyncResult result) throws IOException {
+        for (CalendarEvent local : store.getPendingPush()) {
+            if (local.cancelled) {
+                //cancelled before it was pushed, there is nothing to send, dropping the pending copy removes it
+                if (store.get(local.id) == local) {
+                    store.put(local.withPendingPush(false));
+                }
+                continue;
+            }
+            CalendarEvent stored;
+            try {
+                stored = remote.insertEvent(local);
+            } catch (RemoteCalendar.EventExistsException e) {
+                //an earlier push got through but its response was lost, or the order was edited after it was pushed
+                ++result.conflicts;
+                stored = remote.getEvent(local.id);
+                if (stored != null && !isEcho(local, stored) && isNewer(local, stored)) {
+                    stored = remote.updateEvent(local);
+                }
+                if (stored == null) {
+                    continue;
+                }
+            }
+            //only mark as pushed if it was not changed again while pushing
+            if (store.get(local.id) == local) {
+                store.put(stored.withPendingPush(false));
+            }
+            ++result.pushed;
+        }
+    }
+
+    private void pull(RemoteCalendar remote, SyncResult result) throws IOException {
+        String syncToken = store.getSyncToken();
+        if (syncToken == null) {
+            result.fullSync = true;
+        }
+        String pageToken = null;
+        while (true) {
+            RemoteCalendar.EventPage page;
+            try {
+                page = remote.listEvents(syncToken, pageToken);
+            } catch (RemoteCalendar.SyncTokenExpiredException e) {
+                Log.i(TAG, "sync token expired, doing a full sync");
+                store.clearSynced();
+                result.fullSync = true;
+                syncToken = null;
+                pageToken = null;
+                continue;
+            }
+            ++result.pages;
+            result.pulled += page.events.size();
+            //each page is applied as it arrives so the month view fills in while a long sync runs
+            store.putAll(resolveConflicts(page.events, result));
+
+            if (page.nextPageToken != null) {
+                pageToken = page.nextPageToken;
+            } else {
+                store.setSyncToken(page.nextSyncToken);
+                return;
+            }
+        }
+    }
+
+    private List<CalendarEvent> resolveConflicts(List<CalendarEvent> remoteEvents, SyncResult result) {
+        ArrayList<CalendarEvent> toApply = new ArrayList<>(remoteEvents.size());
+        for (CalendarEvent remoteEvent : remoteEvents) {
+            CalendarEvent local = store.get(remoteEvent.id);
+            if (local != null && local.pendingPush) {
+                ++result.conflicts;
+                if (!isEcho(local, remoteEvent) && isNewer(local, remoteEvent)) {
+                    //edited here after the remote change, the local edit stays pending and is pushed by the next sync
+                    continue;
+                }
+                //either the order reached the server but the push did not see the response, so the remote copy
+                //replaces the pending one instead of it being pushed (and listed) twice, or the remote change is newer
+            }
+            toApply.add(remoteEvent.withPendingPush(false));
+        }
+        return toApply;
+    }
+
+    /**
+     * @return true if the remote copy is what pushing the local copy stored, so the local copy has nothing left to push
+     */
+    private static boolean isEcho(CalendarEvent local, CalendarEvent remoteEvent) {
+        return !local.cancelled && !remoteEvent.cancelled
+                && Objects.equals(local.summary, remoteEvent.summary)
+                && local.startMillis == remoteEvent.startMillis
+                && local.endMillis == remoteEvent.endMillis;
+    }
+
+    /**
+     * @return true if the local edit was made after the remote change. The local time is the device clock and the
+     * remote time the server clock, so edits made within the clock skew of each other may be resolved either way.
+     */
+    private static boolean isNewer(CalendarEvent local, CalendarEvent remoteEvent) {
+        return local.updatedMillis > remoteEvent.updatedMillis;
+    }
+}
@@ -19,6 +19,7 @@ import android.widget.Toast;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
@@ -52,6 +53,7 @@ import com.bbm.sdk.service.BBMEnterpriseState;
 import com.bbm.sdk.service.ProtocolMessage;
 import com.bbm.sdk.service.ProtocolMessageConsumer;
 import support.util.AuthIdentityHelper;
+import support.util.ChatStartHelper;
 import support.util.Logger;
 import support.util.SetupHelper;
 import com.google.common.collect.Lists;
@@ -330,64 +332,25 @@ public class Chat extends AppCompatActivity {
         }
 
         private void startChat(final long regId, String subject) {
-            //Create a cookie to track the chat creation
-            final String cookie = UUID.randomUUID().toString();
-
-            //Create the invitee using the registration id
-            ChatStart.Invitees invitee = new ChatStart.Invitees();
-            invitee.regId(regId);
-
             //Ask the BBM Enterprise SDK to start a new chat with the invitee and subject provided.
-            BBMEnterprise.getInstance().getBbmdsProtocol().send(new ChatStart(cookie, Lists.newArrayList(invitee)));
-
-            //Add a ProtocolMessageConsumer to track the creation of the chat.
-            BBMEnterprise.getInstance().getBbmdsProtocolConnector().addMessageConsumer(new ProtocolMessageConsumer() {
+            //The helper shares a single ProtocolMessageConsumer for all chat starts and tracks the creation by cookie.
+            ChatStartHelper.startNewChat(new long[]{regId}, subject, new ChatStartHelper.ChatStartedCallback() {
                 @Override
-                public void onMessage(ProtocolMessage message) {
-                    final JSONObject json = message.getData();
-                    Logger.d("onMessage: " + message);
-                    //If the cookie in the incoming message matches the cookie we provided
-                    //we know this message is the response to our chatStart request.
-                    if (cookie.equals(json.optString("cookie", ""))) {
-                        //this is for us, stop listening
-                        BBMEnterprise.getInstance().getBbmdsProtocolConnector().removeMessageConsumer(this);
-
-                        String chatId = null;
-                        if ("chatStartFailed".equals(message.getType())) {
-                            ChatStartFailed chatStartFailed = new ChatStartFailed().setAttributes(message.getJSON());
-                            //If the message type is chatStartFailed the BBM Enterprise SDK was unable to create the chat
-                            if (chatStartFailed.reason == ChatStartFailed.Reason.AlreadyExists) {
-                                //If the reason is AlreadyExists we can open the existing chat.
-                                chatId = chatStartFailed.chatId;
-                            } else {
-                                //If the reason wasn't AlreadyExists then display an error toast to the user
-                                Logger.i("Failed to create chat with " + regId);
-                                Toast.makeText(MainActivity.this,
-                                        "Failed to create chat for reason " + chatStartFailed.reason.toString(),
-                                        Toast.LENGTH_LONG)
-                                        .show();
-                            }
-                        } else if ("listAdd".equals(message.getType())) {
-                            //The chat was created successfully
-                            try {
-                                final JSONArray elementsArray = json.getJSONArray("elements");
-                                Chat chat = new Chat().setAttributes((JSONObject) elementsArray.get(0));
-                                chatId = chat.chatId;
-                            } catch (final JSONException e) {
-                                Logger.e(e, "Failed to process start chat message " + message);
-                            }
-                        }
-                        if (chatId != null) {
-                            //Start our chat activity
-                            Intent intent = new Intent(Chat.this, Messaging.class);
-                            intent.putExtra("chat-id", chatId);
-                            startActivity(intent);
-                        }
-                    }
+                public void onChatStarted(@NonNull String chatId) {
+                    //Start our chat activity
+                    Intent intent = new Intent(Chat.this, Messaging.class);
+                    intent.putExtra("chat-id", chatId);
+                    startActivity(intent);
                 }
 
                 @Override
-                public void resync() {
+                public void onChatStartFailed(ChatStartFailed.Reason reason) {
+                    //Display an error toast to the user
+                    Logger.i("Failed to create chat with " + regId);
+                    Toast.makeText(Chat.this,
+                            "Failed to create chat for reason " + reason.toString(),
+                            Toast.LENGTH_LONG)
+                            .show();
                 }
             });
         }
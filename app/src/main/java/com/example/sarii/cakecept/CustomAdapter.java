@@ -3,49 +3,97 @@ package com.example.sarii.cakecept;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.v4.view.PagerAdapter;
-import android.text.Layout;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.ArrayDeque;
+
 
 public class CustomAdapter extends PagerAdapter {
 
     private int[] images = {R.drawable.cakedesign1, R.drawable.cakedesign2, R.drawable.cakedesign3};
     private LayoutInflater inflater;
     private Context ctx;
+    private final DesignImageLoader imageLoader;
+    //pages removed from the pager, reused instead of inflating new ones
+    private final ArrayDeque<View> recycledPages = new ArrayDeque<>();
 
     public CustomAdapter(Context ctx){
         this.ctx = ctx;
+        inflater = (LayoutInflater) ctx.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        imageLoader = new DesignImageLoader(ctx.getResources());
     }
     @Override
     public int getCount() {
         return images.length;
     }
 
+    @NonNull
     @Override
-    public Object instantiateItem(ViewGroup container, int position) {
-        inflater = (LayoutInflater) ctx.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        View v = inflater.inflate(R.layout.swipe,container,false);
+    public Object instantiateItem(@NonNull ViewGroup container, int position) {
+        View v = recycledPages.poll();
+        if (v == null) {
+            v = inflater.inflate(R.layout.swipe, container, false);
+        }
         ImageView img = (ImageView)v.findViewById(R.id.image_view);
         TextView tv =(TextView)v.findViewById(R.id.picture_name);
-        img.setImageResource(images[position]);
+
+        //decode to the size of the pager rather than the full size of the image
+        int targetWidth = getTargetWidth(container);
+        int targetHeight = getTargetHeight(container);
+        imageLoader.load(images[position], img, targetWidth, targetHeight);
         tv.setText("Image:" +position);
         container.addView(v);
+
+        //get the neighbouring pages ready before they are swiped to
+        if (position > 0) {
+            imageLoader.prefetch(images[position - 1], targetWidth, targetHeight);
+        }
+        if (position < images.length - 1) {
+            imageLoader.prefetch(images[position + 1], targetWidth, targetHeight);
+        }
         return  v;
     }
 
     @Override
-    public void destroyItem(ViewGroup container, int position, Object object) {
-        container.invalidate();
+    public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+        View v = (View) object;
+        container.removeView(v);
+        imageLoader.release((ImageView) v.findViewById(R.id.image_view));
+        recycledPages.push(v);
     }
 
     @Override
-    public boolean isViewFromObject(View view, Object o) {
-        return false;
+    public boolean isViewFromObject(@NonNull View view, @NonNull Object o) {
+        return view == o;
     }
 
+    /**
+     * Release the cached images, call when the pager is no longer used.
+     */
+    public void shutdown() {
+        imageLoader.shutdown();
+        recycledPages.clear();
+    }
+
+    //the pager may not be laid out yet when the first pages are created, fall back to the screen size
+    private int getTargetWidth(ViewGroup container) {
+        if (container.getWidth() > 0) {
+            return container.getWidth();
+        }
+        DisplayMetrics metrics = ctx.getResources().getDisplayMetrics();
+        return metrics.widthPixels;
+    }
 
+    private int getTargetHeight(ViewGroup container) {
+        if (container.getHeight() > 0) {
+            return container.getHeight();
+        }
+        DisplayMetrics metrics = ctx.getResources().getDisplayMetrics();
+        return metrics.heightPixels;
+    }
 }
@@ -1,19 +1,23 @@
 package com.example.sarii.cakecept;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.util.TypedValue;
 
 import org.w3c.dom.Attr;
+
+import java.util.Arrays;
 //import java.nio.file.Path;
 
 
@@ -23,17 +27,31 @@ public class CustomView extends View {
     private AttributeSet attrs;
     //drawing path
     private Path drawPath;
+    //x and y of the points of the stroke in progress, the tiles along them are drawn when it is finished
+    private float[] strokePoints = new float[256];
+    private int strokePointCount;
     //drawing and canvas paint
     private Paint drawPaint, canvasPaint;
     //initial color
     private int paintColor = 0xFF660000;
-    //canvas
-    private Canvas drawCanvas;
-    //canvas bitmap
-    private Bitmap canvasBitmap;
+    //tiled backing store, tiles are only allocated where strokes are drawn
+    private final TiledCanvas tiledCanvas = new TiledCanvas();
     private float brushSize, lastBrushSize;
     private boolean erase=false;
 
+    //viewport transform from canvas to view coordinates, and its inverse for mapping touches
+    private static final float MIN_ZOOM = 0.5f;
+    private static final float MAX_ZOOM = 4f;
+    private final Matrix viewport = new Matrix();
+    private final Matrix inverseViewport = new Matrix();
+    private final float[] touchPoint = new float[2];
+    private final RectF visibleRect = new RectF();
+    private float zoom = 1f;
+    private ScaleGestureDetector scaleDetector;
+    private float lastFocusX, lastFocusY;
+    //true while a pinch is in progress, no drawing until all fingers are lifted
+    private boolean scaling = false;
+
     public CustomView(Context context, AttributeSet attrs) {
         super(context, attrs);
         setupDrawing();
@@ -54,42 +72,82 @@ public class CustomView extends View {
         drawPaint.setStrokeJoin(Paint.Join.ROUND);
         drawPaint.setStrokeCap(Paint.Cap.ROUND);
         canvasPaint = new Paint(Paint.DITHER_FLAG);
+        scaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                //a second finger went down, abandon the stroke in progress
+                scaling = true;
+                resetStroke();
+                lastFocusX = detector.getFocusX();
+                lastFocusY = detector.getFocusY();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * detector.getScaleFactor()));
+                float factor = newZoom / zoom;
+                zoom = newZoom;
+                //pan with the fingers and zoom around them
+                viewport.postTranslate(detector.getFocusX() - lastFocusX, detector.getFocusY() - lastFocusY);
+                viewport.postScale(factor, factor, detector.getFocusX(), detector.getFocusY());
+                viewport.invert(inverseViewport);
+                lastFocusX = detector.getFocusX();
+                lastFocusY = detector.getFocusY();
+                invalidate();
+                return true;
+            }
+        });
 
-
-    }
-
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-    //view given size
-        super.onSizeChanged(w, h, oldw, oldh);
-        canvasBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        drawCanvas = new Canvas(canvasBitmap);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
     //draw view
-        canvas.drawBitmap(canvasBitmap, 0, 0, canvasPaint);
-        canvas.drawPath(drawPath, drawPaint);
+        //only the tiles in the visible part of the canvas are drawn
+        visibleRect.set(0, 0, getWidth(), getHeight());
+        inverseViewport.mapRect(visibleRect);
 
+        canvas.save();
+        canvas.concat(viewport);
+        tiledCanvas.draw(canvas, visibleRect, canvasPaint);
+        canvas.drawPath(drawPath, drawPaint);
+        canvas.restore();
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         //detect user touch
-        float touchX = event.getX();
-        float touchY = event.getY();
+        scaleDetector.onTouchEvent(event);
+        if (scaling || event.getPointerCount() > 1) {
+            if (event.getActionMasked() == MotionEvent.ACTION_UP || event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+                scaling = false;
+            }
+            return true;
+        }
+
+        //map the touch into canvas coordinates
+        touchPoint[0] = event.getX();
+        touchPoint[1] = event.getY();
+        inverseViewport.mapPoints(touchPoint);
+        float touchX = touchPoint[0];
+        float touchY = touchPoint[1];
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
                 drawPath.moveTo(touchX, touchY);
+                addStrokePoint(touchX, touchY);
                 break;
             case MotionEvent.ACTION_MOVE:
                 drawPath.lineTo(touchX, touchY);
+                addStrokePoint(touchX, touchY);
                 break;
             case MotionEvent.ACTION_UP:
-                drawCanvas.drawPath(drawPath, drawPaint);
-                drawPath.reset();
+                tiledCanvas.drawPath(drawPath, strokePoints, strokePointCount, drawPaint, erase);
+                resetStroke();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                resetStroke();
                 break;
             default:
                 return false;
@@ -99,6 +157,36 @@ public class CustomView extends View {
         return true;
     }
 
+    private void addStrokePoint(float x, float y) {
+        if (strokePointCount * 2 == strokePoints.length) {
+            strokePoints = Arrays.copyOf(strokePoints, strokePoints.length * 2);
+        }
+        strokePoints[strokePointCount * 2] = x;
+        strokePoints[strokePointCount * 2 + 1] = y;
+        ++strokePointCount;
+    }
+
+    private void resetStroke() {
+        drawPath.reset();
+        strokePointCount = 0;
+    }
+
+    /**
+     * Reset the zoom and pan so the canvas origin is at the top left of the view
+     */
+    public void resetViewport() {
+        zoom = 1f;
+        viewport.reset();
+        inverseViewport.reset();
+        invalidate();
+    }
+
+    /**
+     * @return the memory used by the drawing tiles
+     */
+    public long getCanvasMemoryBytes() {
+        return tiledCanvas.getAllocatedBytes();
+    }
 
     public void setColor(String newColor){
     //set color
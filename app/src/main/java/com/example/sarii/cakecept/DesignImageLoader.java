@@ -0,0 +1,257 @@
+package com.example.sarii.cakecept;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the design images for the gallery pager.
+ * Images are decoded on a background thread, downsampled with inSampleSize to fit the view they are shown in,
+ * and kept in a size bounded LRU cache. Bitmaps evicted from the cache that are no longer shown
+ * go into a small pool so their memory can be reused for the next decode (inBitmap).
+ * Apart from the decoding itself all methods must be called on the main thread.
+ */
+public class DesignImageLoader {
+
+    private static final String TAG = "DesignImageLoader";
+    //maximum number of evicted bitmaps kept for reuse
+    private static final int REUSE_POOL_SIZE = 3;
+
+    private final Resources resources;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final LruCache<String, Bitmap> memoryCache;
+    //the bitmaps currently in memoryCache
+    private final Set<Bitmap> cached = newIdentitySet();
+    //bitmaps currently set on a page, these are never reused even if they are evicted
+    private final Set<Bitmap> inUse = newIdentitySet();
+    //decodes in progress and who is waiting for them, so the same image is only decoded once
+    private final HashMap<String, ArrayList<DecodeCallback>> inFlight = new HashMap<>();
+    //bitmaps that can be decoded into, taken from the decode thread so access is synchronized
+    private final ArrayList<Bitmap> reusePool = new ArrayList<>();
+
+    public DesignImageLoader(Resources resources) {
+        this(resources, (int) (Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    public DesignImageLoader(Resources resources, int cacheSizeBytes) {
+        this.resources = resources;
+        memoryCache = new LruCache<String, Bitmap>(cacheSizeBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                cached.remove(oldValue);
+                addToReusePool(oldValue);
+            }
+        };
+    }
+
+    private static Set<Bitmap> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    }
+
+    /**
+     * Calculate the largest power of 2 sample size that keeps the decoded image at least as large as the requested size
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while ((width / (inSampleSize * 2)) >= reqWidth && (height / (inSampleSize * 2)) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static String cacheKey(int resId, int reqWidth, int reqHeight) {
+        return resId + ":" + reqWidth + "x" + reqHeight;
+    }
+
+    /**
+     * Show the image in the view, from the cache if possible otherwise after it is decoded in the background.
+     */
+    public void load(final int resId, final ImageView target, final int reqWidth, final int reqHeight) {
+        final String key = cacheKey(resId, reqWidth, reqHeight);
+        //remember what this view should show so a late decode for a recycled view is dropped
+        target.setTag(R.id.image_loader_key, key);
+
+        Bitmap bitmap = memoryCache.get(key);
+        setBitmap(target, bitmap);
+        if (bitmap != null) {
+            return;
+        }
+
+        decode(resId, reqWidth, reqHeight, new DecodeCallback() {
+            @Override
+            public void onDecoded(Bitmap bitmap) {
+                if (key.equals(target.getTag(R.id.image_loader_key))) {
+                    setBitmap(target, bitmap);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decode the image into the cache ahead of it being shown.
+     */
+    public void prefetch(int resId, int reqWidth, int reqHeight) {
+        if (memoryCache.get(cacheKey(resId, reqWidth, reqHeight)) == null) {
+            decode(resId, reqWidth, reqHeight, null);
+        }
+    }
+
+    /**
+     * The view is no longer shown, its bitmap can be reused once it leaves the cache.
+     */
+    public void release(ImageView target) {
+        target.setTag(R.id.image_loader_key, null);
+        setBitmap(target, null);
+    }
+
+    /**
+     * Stop decoding and drop all cached bitmaps
+     */
+    public void shutdown() {
+        decodeExecutor.shutdownNow();
+        inFlight.clear();
+        memoryCache.evictAll();
+        synchronized (reusePool) {
+            reusePool.clear();
+        }
+    }
+
+    private void setBitmap(ImageView target, Bitmap bitmap) {
+        Object previous = target.getTag(R.id.image_loader_bitmap);
+        if (previous instanceof Bitmap && previous != bitmap) {
+            inUse.remove(previous);
+            if (!cached.contains(previous)) {
+                //it was evicted while it was shown, now nobody uses it
+                addToReusePool((Bitmap) previous);
+            }
+        }
+        if (bitmap != null) {
+            inUse.add(bitmap);
+        }
+        target.setTag(R.id.image_loader_bitmap, bitmap);
+        target.setImageBitmap(bitmap);
+    }
+
+    private void addToReusePool(Bitmap bitmap) {
+        if (inUse.contains(bitmap) || !bitmap.isMutable()) {
+            return;
+        }
+        synchronized (reusePool) {
+            if (reusePool.size() >= REUSE_POOL_SIZE) {
+                reusePool.remove(0);
+            }
+            reusePool.add(bitmap);
+        }
+    }
+
+    //take a pooled bitmap large enough to decode an image of the specified size into
+    private Bitmap takeReusable(int width, int height) {
+        //decodes are always ARGB_8888
+        final int bytes = width * height * 4;
+        synchronized (reusePool) {
+            Iterator<Bitmap> iterator = reusePool.iterator();
+            while (iterator.hasNext()) {
+                Bitmap candidate = iterator.next();
+                if (candidate.isRecycled()) {
+                    iterator.remove();
+                } else if (candidate.getAllocationByteCount() >= bytes) {
+                    iterator.remove();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private interface DecodeCallback {
+        void onDecoded(Bitmap bitmap);
+    }
+
+    private void decode(final int resId, final int reqWidth, final int reqHeight, DecodeCallback callback) {
+        final String key = cacheKey(resId, reqWidth, reqHeight);
+        ArrayList<DecodeCallback> waiting = inFlight.get(key);
+        if (waiting != null) {
+            //already decoding this one, just wait for it
+            if (callback != null) {
+                waiting.add(callback);
+            }
+            return;
+        }
+        waiting = new ArrayList<>();
+        if (callback != null) {
+            waiting.add(callback);
+        }
+        inFlight.put(key, waiting);
+
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decodeSampled(resId, reqWidth, reqHeight);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ArrayList<DecodeCallback> callbacks = inFlight.remove(key);
+                        if (bitmap == null || callbacks == null) {
+                            //failed, or shutdown while decoding
+                            return;
+                        }
+                        cached.add(bitmap);
+                        memoryCache.put(key, bitmap);
+                        for (DecodeCallback waitingCallback : callbacks) {
+                            waitingCallback.onDecoded(bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    //runs on the decode thread
+    private Bitmap decodeSampled(int resId, int reqWidth, int reqHeight) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        //size against the image pixels, not the density scaled size of the drawable
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = takeReusable(options.outWidth / options.inSampleSize, options.outHeight / options.inSampleSize);
+
+        try {
+            return BitmapFactory.decodeResource(resources, resId, options);
+        } catch (IllegalArgumentException e) {
+            //the pooled bitmap could not be reused, decode into a new one
+            options.inBitmap = null;
+            Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+            if (bitmap == null) {
+                Log.w(TAG, "Failed to decode image " + resId);
+            }
+            return bitmap;
+        }
+    }
+}
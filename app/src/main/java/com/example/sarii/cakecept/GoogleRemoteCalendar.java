@@ -0,0 +1,142 @@
+package com.example.sarii.cakecept;
+
+import android.support.annotation.Nullable;
+
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAuthIOException;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.calendar.model.Events;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RemoteCalendar} backed by the Google Calendar API.
+ */
+public class GoogleRemoteCalendar implements RemoteCalendar {
+
+    //the largest page the API allows
+    private static final int PAGE_SIZE = 2500;
+    private static final int HTTP_CONFLICT = 409;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_GONE = 410;
+
+    private final com.google.api.services.calendar.Calendar service;
+    private final String calendarId;
+
+    public GoogleRemoteCalendar(com.google.api.services.calendar.Calendar service, String calendarId) {
+        this.service = service;
+        this.calendarId = calendarId;
+    }
+
+    @Override
+    public EventPage listEvents(@Nullable String syncToken, @Nullable String pageToken) throws IOException, SyncTokenExpiredException {
+        com.google.api.services.calendar.Calendar.Events.List request = service.events().list(calendarId)
+                .setMaxResults(PAGE_SIZE)
+                .setSingleEvents(true)
+                //cancelled events are needed to remove them locally
+                .setShowDeleted(true)
+                .setSyncToken(syncToken)
+                .setPageToken(pageToken);
+
+        Events events;
+        try {
+            events = execute(request);
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == HTTP_GONE) {
+                throw new SyncTokenExpiredException(e);
+            }
+            throw e;
+        }
+
+        List<Event> items = events.getItems();
+        ArrayList<CalendarEvent> converted = new ArrayList<>(items == null ? 0 : items.size());
+        if (items != null) {
+            for (Event item : items) {
+                converted.add(toCalendarEvent(item));
+            }
+        }
+        return new EventPage(converted, events.getNextPageToken(), events.getNextSyncToken());
+    }
+
+    @Override
+    public CalendarEvent insertEvent(CalendarEvent event) throws IOException, EventExistsException {
+        try {
+            return toCalendarEvent(execute(service.events().insert(calendarId, toEvent(event))));
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == HTTP_CONFLICT) {
+                throw new EventExistsException(e);
+            }
+            throw e;
+        }
+    }
+
+    @Nullable
+    @Override
+    public CalendarEvent updateEvent(CalendarEvent event) throws IOException {
+        try {
+            return toCalendarEvent(execute(service.events().update(calendarId, event.id, toEvent(event))));
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == HTTP_NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Nullable
+    @Override
+    public CalendarEvent getEvent(String id) throws IOException {
+        try {
+            return toCalendarEvent(execute(service.events().get(calendarId, id)));
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == HTTP_NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run the request, failures to get a token are reported as {@link AuthException}.
+     */
+    private static <T> T execute(AbstractGoogleClientRequest<T> request) throws IOException {
+        try {
+            return request.execute();
+        } catch (GoogleAuthIOException e) {
+            //includes UserRecoverableAuthIOException, the user has to grant access again
+            throw new AuthException(e);
+        } catch (IllegalArgumentException e) {
+            //the credential has no account selected
+            throw new AuthException(e);
+        }
+    }
+
+    private static Event toEvent(CalendarEvent event) {
+        return new Event()
+                .setId(event.id)
+                .setSummary(event.summary)
+                .setStart(new EventDateTime().setDateTime(new DateTime(event.startMillis)))
+                .setEnd(new EventDateTime().setDateTime(new DateTime(event.endMillis)));
+    }
+
+    private static CalendarEvent toCalendarEvent(Event item) {
+        long updated = item.getUpdated() != null ? item.getUpdated().getValue() : 0;
+        return new CalendarEvent(item.getId(), item.getSummary(), toMillis(item.getStart()), toMillis(item.getEnd()),
+                updated, "cancelled".equals(item.getStatus()), false);
+    }
+
+    private static long toMillis(@Nullable EventDateTime time) {
+        if (time == null) {
+            //cancelled events in an incremental listing only have their id and status
+            return 0;
+        }
+        //all day events only have a date
+        DateTime dateTime = time.getDateTime() != null ? time.getDateTime() : time.getDate();
+        return dateTime != null ? dateTime.getValue() : 0;
+    }
+}
@@ -54,6 +54,12 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
     }
 
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        adapter.shutdown();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if(mDrawerToggle.onOptionsItemSelected(item)){
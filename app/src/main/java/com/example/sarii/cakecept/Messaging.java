@@ -16,11 +16,11 @@ import com.bbm.sdk.bbmds.Chat;
 import com.bbm.sdk.bbmds.ChatMessage;
 import com.bbm.sdk.bbmds.internal.Existence;
 import com.bbm.sdk.bbmds.internal.lists.IncrementalListObserver;
-import com.bbm.sdk.bbmds.outbound.ChatMessageRead;
 import com.bbm.sdk.bbmds.outbound.ChatMessageSend;
 import com.bbm.sdk.reactive.ObservableValue;
 import com.bbm.sdk.reactive.Observer;
 import support.reactive.ChatMessageList;
+import support.util.BbmUtils;
 
 public class Messaging extends AppCompatActivity {
     //The chatId for the Chat being displayed
@@ -32,9 +32,6 @@ public class Messaging extends AppCompatActivity {
     //This observer will set the chat subject as the activity title
     private Observer mChatSubjectObserver;
 
-    //This observer will mark messages read when pausing or resuming the activity
-    private Observer mMarkMessagesReadObserver;
-
     //Simple ViewHolder for display a text message
     private class MessageViewHolder extends RecyclerView.ViewHolder {
         TextView messageText;
@@ -190,8 +187,12 @@ public class Messaging extends AppCompatActivity {
         super.onPause();
         //Stop loading messages from the ChatMessageList
         mChatMessageList.stop();
-        //Mark all the messages as read when closing the chat
+        //Mark all the messages as read when closing the chat and send the receipt now rather than after the
+        //quiet period, the app may not get to run once it is in the background
         markMessagesAsRead();
+        BbmUtils.flushReadReceipts();
+        //Write the draft now instead of waiting for typing to stop
+        BbmUtils.flushDraftMessages();
     }
 
     @Override
@@ -204,32 +205,8 @@ public class Messaging extends AppCompatActivity {
     }
 
     /**
-     * Mark all messages in the chat as read
+     * Mark all messages in the chat as read, this only sends a receipt when there are new messages
      */
     private void markMessagesAsRead() {
-        final ObservableValue<Chat> obsChat = BBMEnterprise.getInstance().getBbmdsProtocol().getChat(mChatId);
-        mMarkMessagesReadObserver = new Observer() {
-            @Override
-            public void changed() {
-                final Chat chat = obsChat.get();
-                if (chat.exists == Existence.YES) {
-                    //remove ourselves as an observer so we don't get triggered again
-                    obsChat.removeObserver(this);
-                    if (chat.numMessages == 0 || chat.lastMessage == 0) {
-                        return;
-                    }
-
-                    //Ask the BBM Enterprise SDK to mark the last message in the chat as read.
-                    //All messages older then this will be marked as read.
-                    BBMEnterprise.getInstance().getBbmdsProtocol().send(
-                            new ChatMessageRead(mChatId, chat.lastMessage)
-                    );
-                }
-            }
-        };
-        //Add the chatObserver to the chat
-        obsChat.addObserver(mMarkMessagesReadObserver);
-        //Run the changed method
-        mMarkMessagesReadObserver.changed();
+        BbmUtils.markChatMessagesAsRead(mChatId);
     }}
-
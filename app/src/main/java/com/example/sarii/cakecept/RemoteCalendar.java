@@ -0,0 +1,89 @@
+package com.example.sarii.cakecept;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The remote calendar that {@link CalendarSyncEngine} keeps the local store in sync with.
+ * {@link GoogleRemoteCalendar} talks to the Google Calendar API, tests use an in memory fake.
+ * Methods are blocking and are only called from the sync thread.
+ */
+public interface RemoteCalendar {
+
+    /**
+     * One page of events from {@link #listEvents(String, String)}
+     */
+    class EventPage {
+        public final List<CalendarEvent> events;
+        //set if there are more pages to fetch for this listing
+        @Nullable
+        public final String nextPageToken;
+        //set on the last page, pass to the next listing to only get changes since this one
+        @Nullable
+        public final String nextSyncToken;
+
+        public EventPage(List<CalendarEvent> events, @Nullable String nextPageToken, @Nullable String nextSyncToken) {
+            this.events = events;
+            this.nextPageToken = nextPageToken;
+            this.nextSyncToken = nextSyncToken;
+        }
+    }
+
+    /**
+     * The sync token is no longer valid, a full sync is required.
+     */
+    class SyncTokenExpiredException extends Exception {
+        public SyncTokenExpiredException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * The request could not be authorized, for example no account is selected or access has to be granted again.
+     */
+    class AuthException extends IOException {
+        public AuthException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * An event with the same id already exists on the remote calendar.
+     */
+    class EventExistsException extends Exception {
+        public EventExistsException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * List events, including cancelled ones so deletions are synced.
+     *
+     * @param syncToken null for a full listing, otherwise only changes since the listing that returned it
+     * @param pageToken null for the first page
+     */
+    EventPage listEvents(@Nullable String syncToken, @Nullable String pageToken) throws IOException, SyncTokenExpiredException;
+
+    /**
+     * Create the event with its client generated id.
+     *
+     * @return the event as stored remotely
+     */
+    CalendarEvent insertEvent(CalendarEvent event) throws IOException, EventExistsException;
+
+    /**
+     * Replace the remote copy of the event with this one.
+     *
+     * @return the event as stored remotely, or null if it does not exist
+     */
+    @Nullable
+    CalendarEvent updateEvent(CalendarEvent event) throws IOException;
+
+    /**
+     * @return the remote copy of the event, or null if it does not exist
+     */
+    @Nullable
+    CalendarEvent getEvent(String id) throws IOException;
+}
@@ -0,0 +1,240 @@
+package com.example.sarii.cakecept;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Bookkeeping for a sparse grid of fixed size square tiles covering an unbounded drawing surface.
+ * Tiles are only created for the regions that are drawn on, anything else stays unallocated.
+ * This has no Android dependencies so the tile logic can be unit tested on the JVM,
+ * {@link TiledCanvas} uses it with a Bitmap per tile.
+ *
+ * @param <T> the tile contents
+ */
+public class TileGrid<T> {
+
+    /**
+     * Creates the contents for a tile the first time something is drawn in it.
+     */
+    public interface TileFactory<T> {
+        T createTile(int tileX, int tileY);
+    }
+
+    /**
+     * Called for each tile that overlaps a region.
+     */
+    public interface TileVisitor<T> {
+        void visitTile(int tileX, int tileY, T tile);
+    }
+
+    private final int mTileSize;
+    private final TileFactory<T> mFactory;
+    private final HashMap<Long, T> mTiles = new HashMap<>();
+    //the tiles visited by the line being visited, reused so each tile is visited once per line
+    private final HashSet<Long> mLineTiles = new HashSet<>();
+
+    public TileGrid(int tileSize, TileFactory<T> factory) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+        }
+        mTileSize = tileSize;
+        mFactory = factory;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * @return the index of the tile row or column containing the coordinate, coordinates can be negative
+     */
+    public int tileIndex(float coordinate) {
+        return (int) Math.floor(coordinate / mTileSize);
+    }
+
+    static long key(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the tile at the tile coordinates, or null if nothing has been drawn there
+     */
+    public T getTile(int tileX, int tileY) {
+        return mTiles.get(key(tileX, tileY));
+    }
+
+    /**
+     * Visit the tiles overlapping the rectangle.
+     *
+     * @param allocate if true missing tiles are created (drawing), otherwise only existing tiles are visited (rendering, erasing)
+     * @return the number of tiles visited
+     */
+    public int visitTiles(float left, float top, float right, float bottom, boolean allocate, TileVisitor<T> visitor) {
+        if (right <= left || bottom <= top) {
+            return 0;
+        }
+        final int firstX = tileIndex(left);
+        final int firstY = tileIndex(top);
+        //the right/bottom edges are exclusive
+        final int lastX = (int) Math.ceil(right / mTileSize) - 1;
+        final int lastY = (int) Math.ceil(bottom / mTileSize) - 1;
+
+        int visited = 0;
+        for (int tileY = firstY; tileY <= lastY; ++tileY) {
+            for (int tileX = firstX; tileX <= lastX; ++tileX) {
+                final Long key = key(tileX, tileY);
+                T tile = mTiles.get(key);
+                if (tile == null) {
+                    if (!allocate) {
+                        continue;
+                    }
+                    tile = mFactory.createTile(tileX, tileY);
+                    mTiles.put(key, tile);
+                }
+                visitor.visitTile(tileX, tileY, tile);
+                ++visited;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Visit the tiles within padding of a line through the points, each tile once.
+     * Only the tiles the line passes near are visited, not every tile in its bounds, so a long diagonal stroke
+     * allocates the tiles along it rather than the whole rectangle it spans.
+     *
+     * @param points     x and y of each point along the line, a single point visits the tiles around it
+     * @param pointCount the number of points, the array may be longer
+     * @param padding    how far from the line the tiles are visited, normally half the stroke width
+     * @param allocate   if true missing tiles are created (drawing), otherwise only existing tiles are visited (erasing)
+     * @return the number of tiles visited
+     */
+    public int visitTilesAlongLine(float[] points, int pointCount, float padding, boolean allocate,
+                                   TileVisitor<T> visitor) {
+        if (pointCount <= 0) {
+            return 0;
+        }
+        mLineTiles.clear();
+        int visited = 0;
+        for (int i = 0; i < Math.max(1, pointCount - 1); ++i) {
+            final float x1 = points[i * 2];
+            final float y1 = points[i * 2 + 1];
+            final int next = Math.min(i + 1, pointCount - 1);
+            final float x2 = points[next * 2];
+            final float y2 = points[next * 2 + 1];
+
+            final int firstX = tileIndex(Math.min(x1, x2) - padding);
+            final int firstY = tileIndex(Math.min(y1, y2) - padding);
+            final int lastX = tileIndex(Math.max(x1, x2) + padding);
+            final int lastY = tileIndex(Math.max(y1, y2) + padding);
+            for (int tileY = firstY; tileY <= lastY; ++tileY) {
+                for (int tileX = firstX; tileX <= lastX; ++tileX) {
+                    final Long key = key(tileX, tileY);
+                    if (mLineTiles.contains(key)
+                            || distanceToTile(x1, y1, x2, y2, tileX, tileY) > padding) {
+                        continue;
+                    }
+                    mLineTiles.add(key);
+                    T tile = mTiles.get(key);
+                    if (tile == null) {
+                        if (!allocate) {
+                            continue;
+                        }
+                        tile = mFactory.createTile(tileX, tileY);
+                        mTiles.put(key, tile);
+                    }
+                    visitor.visitTile(tileX, tileY, tile);
+                    ++visited;
+                }
+            }
+        }
+        mLineTiles.clear();
+        return visited;
+    }
+
+    /**
+     * @return the distance from the segment to the closest point of the tile, 0 if the segment crosses it
+     */
+    float distanceToTile(float x1, float y1, float x2, float y2, int tileX, int tileY) {
+        final float left = tileX * mTileSize;
+        final float top = tileY * mTileSize;
+        final float right = left + mTileSize;
+        final float bottom = top + mTileSize;
+        if (segmentCrossesRect(x1, y1, x2, y2, left, top, right, bottom)) {
+            return 0;
+        }
+        //otherwise the closest points are an end of the segment or a corner of the tile
+        float distance = Math.min(distanceToRect(x1, y1, left, top, right, bottom),
+                distanceToRect(x2, y2, left, top, right, bottom));
+        distance = Math.min(distance, distanceToSegment(left, top, x1, y1, x2, y2));
+        distance = Math.min(distance, distanceToSegment(right, top, x1, y1, x2, y2));
+        distance = Math.min(distance, distanceToSegment(left, bottom, x1, y1, x2, y2));
+        distance = Math.min(distance, distanceToSegment(right, bottom, x1, y1, x2, y2));
+        return distance;
+    }
+
+    private static float distanceToRect(float x, float y, float left, float top, float right, float bottom) {
+        final float dx = Math.max(0, Math.max(left - x, x - right));
+        final float dy = Math.max(0, Math.max(top - y, y - bottom));
+        return (float) Math.hypot(dx, dy);
+    }
+
+    private static float distanceToSegment(float x, float y, float x1, float y1, float x2, float y2) {
+        final float dx = x2 - x1;
+        final float dy = y2 - y1;
+        final float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return (float) Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+
+    /**
+     * @return true if any part of the segment is inside the rectangle: their bounds overlap and the corners of the
+     * rectangle are not all on the same side of the segment's line
+     */
+    private static boolean segmentCrossesRect(float x1, float y1, float x2, float y2,
+                                              float left, float top, float right, float bottom) {
+        if (Math.max(x1, x2) < left || Math.min(x1, x2) > right
+                || Math.max(y1, y2) < top || Math.min(y1, y2) > bottom) {
+            return false;
+        }
+        final float topLeft = side(x1, y1, x2, y2, left, top);
+        final float topRight = side(x1, y1, x2, y2, right, top);
+        final float bottomLeft = side(x1, y1, x2, y2, left, bottom);
+        final float bottomRight = side(x1, y1, x2, y2, right, bottom);
+        return !(topLeft > 0 && topRight > 0 && bottomLeft > 0 && bottomRight > 0)
+                && !(topLeft < 0 && topRight < 0 && bottomLeft < 0 && bottomRight < 0);
+    }
+
+    //positive on one side of the line through the segment, negative on the other and 0 on the line
+    private static float side(float x1, float y1, float x2, float y2, float x, float y) {
+        return (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+    }
+
+    /**
+     * @return all the allocated tiles
+     */
+    public List<T> getTiles() {
+        return new ArrayList<>(mTiles.values());
+    }
+
+    public int getTileCount() {
+        return mTiles.size();
+    }
+
+    /**
+     * @return the memory used by the tile pixels
+     */
+    public long getAllocatedBytes(int bytesPerPixel) {
+        return (long) mTiles.size() * mTileSize * mTileSize * bytesPerPixel;
+    }
+
+    /**
+     * Remove all tiles, the caller is responsible for releasing them first if needed.
+     */
+    public void clear() {
+        mTiles.clear();
+    }
+}
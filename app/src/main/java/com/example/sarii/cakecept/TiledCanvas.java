@@ -0,0 +1,102 @@
+package com.example.sarii.cakecept;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Raster backing store for the drawing made up of fixed size tiles.
+ * A tile bitmap is only allocated when a stroke touches it, so a sparse drawing on a large canvas
+ * uses a fraction of the memory of a single full size bitmap.
+ * All coordinates are canvas coordinates, the view is responsible for mapping them to the screen.
+ */
+public class TiledCanvas {
+
+    public static final int TILE_SIZE = 256;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final TileGrid<Bitmap> mTiles = new TileGrid<>(TILE_SIZE, new TileGrid.TileFactory<Bitmap>() {
+        @Override
+        public Bitmap createTile(int tileX, int tileY) {
+            return Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        }
+    });
+
+    //reused for every stroke and frame so drawing does not allocate
+    private final Canvas mTileCanvas = new Canvas();
+    private Path mStrokePath;
+    private Paint mStrokePaint;
+    private Canvas mTargetCanvas;
+    private Paint mTargetPaint;
+
+    private final TileGrid.TileVisitor<Bitmap> mStrokeVisitor = new TileGrid.TileVisitor<Bitmap>() {
+        @Override
+        public void visitTile(int tileX, int tileY, Bitmap tile) {
+            mTileCanvas.setBitmap(tile);
+            mTileCanvas.save();
+            mTileCanvas.translate(-tileX * TILE_SIZE, -tileY * TILE_SIZE);
+            mTileCanvas.drawPath(mStrokePath, mStrokePaint);
+            mTileCanvas.restore();
+        }
+    };
+
+    private final TileGrid.TileVisitor<Bitmap> mRenderVisitor = new TileGrid.TileVisitor<Bitmap>() {
+        @Override
+        public void visitTile(int tileX, int tileY, Bitmap tile) {
+            mTargetCanvas.drawBitmap(tile, tileX * TILE_SIZE, tileY * TILE_SIZE, mTargetPaint);
+        }
+    };
+
+    /**
+     * Draw a finished stroke into the tiles it covers.
+     * Only the tiles within the stroke width of its line are allocated, not every tile in its bounds.
+     *
+     * @param path       the stroke
+     * @param points     x and y of each point the path's line passes through, in order
+     * @param pointCount the number of points, the array may be longer
+     * @param erase      true if the paint clears pixels, in that case no new tiles are allocated since there is nothing to clear
+     */
+    public void drawPath(Path path, float[] points, int pointCount, Paint paint, boolean erase) {
+        //the stroke extends past the path by half its width (plus a pixel for anti aliasing)
+        final float padding = paint.getStrokeWidth() / 2 + 1;
+
+        mStrokePath = path;
+        mStrokePaint = paint;
+        mTiles.visitTilesAlongLine(points, pointCount, padding, !erase, mStrokeVisitor);
+        mStrokePath = null;
+        mStrokePaint = null;
+        mTileCanvas.setBitmap(null);
+    }
+
+    /**
+     * Render the tiles visible in the specified canvas region.
+     * The canvas must already have the viewport transform applied.
+     */
+    public void draw(Canvas canvas, RectF visible, Paint paint) {
+        mTargetCanvas = canvas;
+        mTargetPaint = paint;
+        mTiles.visitTiles(visible.left, visible.top, visible.right, visible.bottom, false, mRenderVisitor);
+        mTargetCanvas = null;
+        mTargetPaint = null;
+    }
+
+    /**
+     * Release all the tiles
+     */
+    public void clear() {
+        for (Bitmap tile : mTiles.getTiles()) {
+            tile.recycle();
+        }
+        mTiles.clear();
+    }
+
+    public int getTileCount() {
+        return mTiles.getTileCount();
+    }
+
+    public long getAllocatedBytes() {
+        return mTiles.getAllocatedBytes(BYTES_PER_PIXEL);
+    }
+}
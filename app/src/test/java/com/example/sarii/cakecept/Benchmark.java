@@ -0,0 +1,8 @@
+package com.example.sarii.cakecept;
+
+/**
+ * JUnit category for benchmarks. They are left out of the unit tests, run them with
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,56 @@
+package com.example.sarii.cakecept;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times loading and querying the {@link CalendarEventStore} with 50k events.
+ */
+@Category(Benchmark.class)
+public class CalendarEventStoreBenchmark {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+    private static final long MONTH = 30 * DAY;
+
+    private static CalendarEvent event(String id, long start, long end) {
+        return new CalendarEvent(id, id, start, end, 0, false, false);
+    }
+
+    @Test
+    public void monthQueryBenchmark() {
+        final int eventCount = 50000;
+        final long span = 5 * 365 * DAY;
+        Random random = new Random(29);
+        ArrayList<CalendarEvent> events = new ArrayList<>(eventCount);
+        for (int i = 0; i < eventCount; ++i) {
+            long start = (long) (random.nextDouble() * span);
+            events.add(event("e" + i, start, start + HOUR + random.nextInt(8) * HOUR));
+        }
+        CalendarEventStore store = new CalendarEventStore(null);
+        long loadStart = System.nanoTime();
+        store.putAll(events);
+        long loadNanos = System.nanoTime() - loadStart;
+
+        //warm up then time every month in the range
+        int months = (int) (span / MONTH) + 1;
+        for (int m = 0; m < months; ++m) {
+            store.query(m * MONTH, (m + 1) * MONTH);
+        }
+        long queryStart = System.nanoTime();
+        int found = 0;
+        for (int m = 0; m < months; ++m) {
+            found += store.query(m * MONTH, (m + 1) * MONTH).size();
+        }
+        long perQueryMicros = (System.nanoTime() - queryStart) / months / 1000;
+
+        System.out.println("calendar store: loaded " + eventCount + " events in " + loadNanos / 1000000 + "ms, "
+                + months + " month queries averaged " + perQueryMicros + "us (" + found / months + " events per month)");
+        assertTrue(found >= eventCount);
+    }
+}
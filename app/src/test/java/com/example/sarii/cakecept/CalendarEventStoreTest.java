@@ -0,0 +1,81 @@
+package com.example.sarii.cakecept;
+
+import android.support.v4.util.AtomicFile;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for the {@link CalendarEventStore} month query and saving.
+ */
+public class CalendarEventStoreTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+    private static final long MONTH = 30 * DAY;
+
+    private static CalendarEvent event(String id, long start, long end) {
+        return new CalendarEvent(id, id, start, end, 0, false, false);
+    }
+
+    @Test
+    public void queryIncludesEventsOverlappingTheRange() {
+        CalendarEventStore store = new CalendarEventStore(null);
+        ArrayList<CalendarEvent> events = new ArrayList<>();
+        events.add(event("before", 0, DAY));
+        //starts in the previous month, ends in this one
+        events.add(event("spanning", MONTH - 2 * DAY, MONTH + 2 * DAY));
+        events.add(event("inside", MONTH + 5 * DAY, MONTH + 5 * DAY + HOUR));
+        events.add(event("zeroLength", MONTH, MONTH));
+        events.add(event("after", 2 * MONTH, 2 * MONTH + HOUR));
+        store.putAll(events);
+
+        List<CalendarEvent> month = store.query(MONTH, 2 * MONTH);
+
+        assertEquals(3, month.size());
+        assertEquals("spanning", month.get(0).id);
+        assertEquals("zeroLength", month.get(1).id);
+        assertEquals("inside", month.get(2).id);
+    }
+
+    @Test
+    public void replacedAndCancelledEventsAreReindexed() {
+        CalendarEventStore store = new CalendarEventStore(null);
+        store.put(event("a", 0, HOUR));
+        store.put(event("a", MONTH, MONTH + HOUR));
+        assertEquals(0, store.query(0, DAY).size());
+        assertEquals(1, store.query(MONTH, MONTH + DAY).size());
+
+        store.put(new CalendarEvent("a", "a", MONTH, MONTH + HOUR, 1, true, false));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void saveInterruptedPartWayKeepsThePreviousCopy() throws IOException {
+        File file = File.createTempFile("calendar", ".dat");
+        try {
+            CalendarEventStore store = new CalendarEventStore(file);
+            store.put(event("a", 0, HOUR));
+            store.save();
+
+            //the process dies while the next save is writing
+            FileOutputStream partial = new AtomicFile(file).startWrite();
+            partial.write(new byte[]{0, 0});
+            partial.close();
+
+            CalendarEventStore reloaded = new CalendarEventStore(file);
+            reloaded.load();
+            assertEquals(1, reloaded.size());
+            assertEquals("a", reloaded.get("a").id);
+        } finally {
+            new AtomicFile(file).delete();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.sarii.cakecept;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link CalendarSyncEngine} against an in memory remote calendar.
+ */
+public class CalendarSyncEngineTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private FakeRemoteCalendar remote;
+    private CalendarEventStore store;
+    private CalendarSyncEngine engine;
+    //background syncs are only queued, the tests call syncNow to control when a sync happens
+    private final ArrayList<Runnable> queuedSyncs = new ArrayList<>();
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            queuedSyncs.add(command);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        remote = new FakeRemoteCalendar(10);
+        store = new CalendarEventStore(null);
+        engine = new CalendarSyncEngine(store, remote, queueingExecutor);
+    }
+
+    private static CalendarEvent remoteEvent(String id, long start) {
+        return new CalendarEvent(id, "order " + id, start, start + HOUR, 1, false, false);
+    }
+
+    @Test
+    public void fullSyncFetchesAllPages() {
+        for (int i = 0; i < 25; ++i) {
+            remote.putRemote(remoteEvent("e" + i, i * HOUR));
+        }
+
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertNull(result.error);
+        assertTrue(result.fullSync);
+        assertEquals(3, result.pages);
+        assertEquals(25, store.size());
+        assertNotNull(store.getSyncToken());
+    }
+
+    @Test
+    public void incrementalSyncOnlyFetchesChanges() {
+        for (int i = 0; i < 25; ++i) {
+            remote.putRemote(remoteEvent("e" + i, i * HOUR));
+        }
+        engine.syncNow();
+
+        remote.putRemote(new CalendarEvent("e3", "changed", 3 * HOUR, 4 * HOUR, 2, false, false));
+        remote.cancelRemote("e4", 2);
+        remote.putRemote(remoteEvent("new", 100 * HOUR));
+
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertFalse(result.fullSync);
+        assertEquals(1, result.pages);
+        assertEquals(3, result.pulled);
+        assertEquals("changed", store.get("e3").summary);
+        assertNull(store.get("e4"));
+        assertNotNull(store.get("new"));
+        assertEquals(25, store.size());
+    }
+
+    @Test
+    public void expiredSyncTokenFallsBackToFullSync() {
+        remote.putRemote(remoteEvent("a", 0));
+        engine.syncNow();
+        CalendarEvent order = engine.createOrder("local order", 5 * HOUR, 6 * HOUR);
+        remote.offline = true;
+        engine.syncNow();
+        remote.offline = false;
+
+        remote.putRemote(remoteEvent("b", HOUR));
+        remote.expireTokens();
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertNull(result.error);
+        assertTrue(result.fullSync);
+        assertNotNull(store.get("a"));
+        assertNotNull(store.get("b"));
+        //the order was pushed before the full sync so it is not lost
+        assertFalse(store.get(order.id).pendingPush);
+        assertNotNull(remote.getRemote(order.id));
+    }
+
+    @Test
+    public void ordersCreatedOfflineArePushedLater() {
+        remote.offline = true;
+        CalendarEvent order = engine.createOrder("wedding cake", 10 * HOUR, 12 * HOUR);
+        assertEquals(1, queuedSyncs.size());
+        CalendarSyncEngine.SyncResult offlineResult = engine.syncNow();
+
+        assertNotNull(offlineResult.error);
+        //visible locally straight away
+        assertEquals(1, store.query(0, 24 * HOUR).size());
+        assertTrue(store.get(order.id).pendingPush);
+
+        remote.offline = false;
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertEquals(1, result.pushed);
+        assertFalse(store.get(order.id).pendingPush);
+        assertEquals("wedding cake", remote.getRemote(order.id).summary);
+        assertTrue(store.getPendingPush().isEmpty());
+    }
+
+    @Test
+    public void lostInsertResponseDoesNotDuplicateOrder() {
+        CalendarEvent order = engine.createOrder("birthday cake", 0, HOUR);
+        remote.loseNextInsertResponse = true;
+        engine.syncNow();
+
+        //the insert landed but we never saw the response
+        assertTrue(store.get(order.id).pendingPush);
+        assertNotNull(remote.getRemote(order.id));
+
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertNull(result.error);
+        assertEquals(1, result.conflicts);
+        assertFalse(store.get(order.id).pendingPush);
+        assertEquals(1, store.size());
+        assertEquals(2, remote.insertCalls);
+    }
+
+    @Test
+    public void editedLocallyWhileChangedRemotelyKeepsTheNewerEdit() {
+        remote.putRemote(remoteEvent("a", 0));
+        engine.syncNow();
+        //changed on another device, then edited here after the push and before the listing
+        remote.putRemote(new CalendarEvent("a", "changed remotely", 0, HOUR, 3, false, false));
+        remote.beforeNextList = new Runnable() {
+            @Override
+            public void run() {
+                store.put(new CalendarEvent("a", "edited locally", 0, 2 * HOUR, 5, false, true));
+            }
+        };
+
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertNull(result.error);
+        assertEquals(1, result.conflicts);
+        assertEquals("edited locally", store.get("a").summary);
+        assertTrue(store.get("a").pendingPush);
+
+        result = engine.syncNow();
+
+        assertNull(result.error);
+        assertEquals(1, remote.updateCalls);
+        assertEquals("edited locally", remote.getRemote("a").summary);
+        assertEquals(2 * HOUR, remote.getRemote("a").endMillis);
+        //the pushed edit comes back in the listing and replaces the pending copy
+        assertFalse(store.get("a").pendingPush);
+        assertEquals("edited locally", store.get("a").summary);
+    }
+
+    @Test
+    public void remoteChangeNewerThanLocalEditWins() {
+        remote.putRemote(remoteEvent("a", 0));
+        engine.syncNow();
+        store.put(new CalendarEvent("a", "edited locally", 0, 2 * HOUR, 2, false, true));
+        remote.putRemote(new CalendarEvent("a", "changed remotely", 0, HOUR, 3, false, false));
+
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertNull(result.error);
+        assertEquals(0, remote.updateCalls);
+        assertEquals("changed remotely", remote.getRemote("a").summary);
+        assertEquals("changed remotely", store.get("a").summary);
+        assertFalse(store.get("a").pendingPush);
+    }
+
+    @Test
+    public void nothingIsSyncedUntilThereIsARemote() {
+        engine = new CalendarSyncEngine(store, null, queueingExecutor);
+        CalendarEvent order = engine.createOrder("no account yet", 0, HOUR);
+        assertTrue(queuedSyncs.isEmpty());
+        assertNull(engine.syncNow().error);
+        assertTrue(store.get(order.id).pendingPush);
+
+        engine.setRemote(remote);
+        assertEquals(1, queuedSyncs.size());
+        queuedSyncs.remove(0).run();
+        assertFalse(store.get(order.id).pendingPush);
+        assertNotNull(remote.getRemote(order.id));
+    }
+
+    @Test
+    public void authFailureIsASyncFailure() {
+        CalendarEvent order = engine.createOrder("signed out", 0, HOUR);
+        remote.unauthorized = true;
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertTrue(result.error instanceof RemoteCalendar.AuthException);
+        assertTrue(store.get(order.id).pendingPush);
+    }
+
+    @Test
+    public void orderCancelledBeforeItIsPushedIsDropped() {
+        CalendarEvent order = engine.createOrder("cancelled", 0, HOUR);
+        store.put(new CalendarEvent(order.id, order.summary, order.startMillis, order.endMillis, 2, true, true));
+
+        CalendarSyncEngine.SyncResult result = engine.syncNow();
+
+        assertNull(result.error);
+        assertEquals(0, result.pushed);
+        assertEquals(0, remote.insertCalls);
+        assertNull(store.get(order.id));
+        assertTrue(store.getPendingPush().isEmpty());
+    }
+
+    @Test
+    public void storeIsSavedAndReloaded() throws IOException {
+        File file = File.createTempFile("calendar", ".dat");
+        try {
+            store = new CalendarEventStore(file);
+            engine = new CalendarSyncEngine(store, remote, queueingExecutor);
+            remote.putRemote(remoteEvent("a", 0));
+            engine.syncNow();
+            remote.offline = true;
+            CalendarEvent order = engine.createOrder("pending", HOUR, 2 * HOUR);
+            store.save();
+
+            CalendarEventStore reloaded = new CalendarEventStore(file);
+            reloaded.load();
+
+            assertEquals(store.getSyncToken(), reloaded.getSyncToken());
+            assertEquals(2, reloaded.size());
+            assertTrue(reloaded.get(order.id).pendingPush);
+            List<CalendarEvent> events = reloaded.query(0, 3 * HOUR);
+            assertEquals("a", events.get(0).id);
+            assertEquals(order.id, events.get(1).id);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.sarii.cakecept;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for the downsampling used by {@link DesignImageLoader}.
+ */
+public class DesignImageLoaderTest {
+
+    @Test
+    public void sampleSizeKeepsImageAtLeastTargetSize() {
+        //smaller than the target, never upsampled
+        assertEquals(1, DesignImageLoader.calculateInSampleSize(800, 600, 1080, 1920));
+        //just under twice the target
+        assertEquals(1, DesignImageLoader.calculateInSampleSize(2000, 3000, 1080, 1920));
+        assertEquals(2, DesignImageLoader.calculateInSampleSize(2160, 3840, 1080, 1920));
+        assertEquals(4, DesignImageLoader.calculateInSampleSize(4000, 6000, 1000, 1000));
+    }
+
+    @Test
+    public void sampleSizeLimitedByTheSmallerRatio() {
+        //wide panorama, the height limits the downsampling
+        assertEquals(2, DesignImageLoader.calculateInSampleSize(8000, 1000, 500, 500));
+    }
+
+    @Test
+    public void unknownTargetSizeDecodesFullSize() {
+        assertEquals(1, DesignImageLoader.calculateInSampleSize(4000, 3000, 0, 0));
+    }
+}
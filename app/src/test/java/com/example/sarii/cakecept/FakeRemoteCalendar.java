@@ -0,0 +1,139 @@
+package com.example.sarii.cakecept;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * In memory {@link RemoteCalendar} for tests.
+ * Every change is given an increasing version, a sync token is the version it was issued at
+ * so incremental listings return only events changed after it.
+ */
+class FakeRemoteCalendar implements RemoteCalendar {
+
+    private final int pageSize;
+    private final LinkedHashMap<String, CalendarEvent> events = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Long> versions = new LinkedHashMap<>();
+    private long version = 0;
+    //tokens issued before this version are rejected as expired
+    private long oldestValidToken = 0;
+
+    boolean offline = false;
+    //requests fail as they do when no account is selected
+    boolean unauthorized = false;
+    //the next insert is stored but fails as if the response was lost
+    boolean loseNextInsertResponse = false;
+    //runs before the next listing, to make local changes while a sync is running
+    Runnable beforeNextList;
+    int listCalls = 0;
+    int insertCalls = 0;
+    int updateCalls = 0;
+
+    FakeRemoteCalendar(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * A change made from another device
+     */
+    void putRemote(CalendarEvent event) {
+        events.put(event.id, event);
+        versions.put(event.id, ++version);
+    }
+
+    void cancelRemote(String id, long updatedMillis) {
+        CalendarEvent event = events.get(id);
+        putRemote(new CalendarEvent(id, event.summary, event.startMillis, event.endMillis, updatedMillis, true, false));
+    }
+
+    void expireTokens() {
+        oldestValidToken = version + 1;
+    }
+
+    CalendarEvent getRemote(String id) {
+        return events.get(id);
+    }
+
+    @Override
+    public EventPage listEvents(@Nullable String syncToken, @Nullable String pageToken) throws IOException, SyncTokenExpiredException {
+        checkOnline();
+        ++listCalls;
+        if (beforeNextList != null) {
+            Runnable run = beforeNextList;
+            beforeNextList = null;
+            run.run();
+        }
+        long since = 0;
+        if (syncToken != null) {
+            since = Long.parseLong(syncToken);
+            if (since < oldestValidToken) {
+                throw new SyncTokenExpiredException(null);
+            }
+        }
+
+        ArrayList<CalendarEvent> changed = new ArrayList<>();
+        for (String id : events.keySet()) {
+            if (versions.get(id) > since && (syncToken != null || !events.get(id).cancelled)) {
+                changed.add(events.get(id));
+            }
+        }
+
+        int offset = pageToken == null ? 0 : Integer.parseInt(pageToken);
+        int end = Math.min(changed.size(), offset + pageSize);
+        List<CalendarEvent> page = new ArrayList<>(changed.subList(offset, end));
+        if (end < changed.size()) {
+            return new EventPage(page, String.valueOf(end), null);
+        }
+        return new EventPage(page, null, String.valueOf(version));
+    }
+
+    @Override
+    public CalendarEvent insertEvent(CalendarEvent event) throws IOException, EventExistsException {
+        checkOnline();
+        ++insertCalls;
+        if (events.containsKey(event.id)) {
+            throw new EventExistsException(null);
+        }
+        CalendarEvent stored = new CalendarEvent(event.id, event.summary, event.startMillis, event.endMillis,
+                event.updatedMillis, false, false);
+        putRemote(stored);
+        if (loseNextInsertResponse) {
+            loseNextInsertResponse = false;
+            throw new IOException("connection reset");
+        }
+        return stored;
+    }
+
+    @Nullable
+    @Override
+    public CalendarEvent updateEvent(CalendarEvent event) throws IOException {
+        checkOnline();
+        ++updateCalls;
+        if (!events.containsKey(event.id)) {
+            return null;
+        }
+        CalendarEvent stored = new CalendarEvent(event.id, event.summary, event.startMillis, event.endMillis,
+                event.updatedMillis, false, false);
+        putRemote(stored);
+        return stored;
+    }
+
+    @Nullable
+    @Override
+    public CalendarEvent getEvent(String id) throws IOException {
+        checkOnline();
+        return events.get(id);
+    }
+
+    private void checkOnline() throws IOException {
+        if (offline) {
+            throw new IOException("offline");
+        }
+        if (unauthorized) {
+            throw new AuthException(new IllegalArgumentException("the name must not be empty: null"));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.sarii.cakecept;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the tile bookkeeping behind {@link TiledCanvas}.
+ */
+public class TileGridTest {
+
+    private static final int TILE_SIZE = 256;
+    //a high density tablet screen
+    private static final int SCREEN_WIDTH = 2560;
+    private static final int SCREEN_HEIGHT = 1600;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private int created;
+    private TileGrid<int[]> grid;
+
+    private final TileGrid.TileVisitor<int[]> noop = new TileGrid.TileVisitor<int[]>() {
+        @Override
+        public void visitTile(int tileX, int tileY, int[] tile) {
+        }
+    };
+
+    @Before
+    public void setUp() {
+        created = 0;
+        grid = new TileGrid<>(TILE_SIZE, new TileGrid.TileFactory<int[]>() {
+            @Override
+            public int[] createTile(int tileX, int tileY) {
+                ++created;
+                return new int[]{tileX, tileY};
+            }
+        });
+    }
+
+    //visits the tiles along a straight stroke the same way TiledCanvas does, padded by half the brush
+    private void stroke(float x1, float y1, float x2, float y2, float brush) {
+        grid.visitTilesAlongLine(new float[]{x1, y1, x2, y2}, 2, brush / 2 + 1, true, noop);
+    }
+
+    @Test
+    public void tileIndexHandlesNegativeCoordinates() {
+        assertEquals(0, grid.tileIndex(0));
+        assertEquals(0, grid.tileIndex(255.9f));
+        assertEquals(1, grid.tileIndex(256));
+        assertEquals(-1, grid.tileIndex(-0.5f));
+        assertEquals(-2, grid.tileIndex(-257));
+    }
+
+    @Test
+    public void tilesAreAllocatedLazilyOnlyWhereDrawn() {
+        assertEquals(0, grid.getTileCount());
+
+        //inside a single tile
+        stroke(50, 50, 100, 100, 20);
+        assertEquals(1, grid.getTileCount());
+        assertNotNull(grid.getTile(0, 0));
+        assertNull(grid.getTile(1, 0));
+
+        //same tile again does not allocate
+        stroke(60, 60, 80, 80, 20);
+        assertEquals(1, created);
+
+        //crossing the corner of 4 tiles
+        stroke(250, 250, 260, 260, 4);
+        assertEquals(4, grid.getTileCount());
+        assertEquals(4, created);
+    }
+
+    @Test
+    public void onlyTilesAlongTheLineAreAllocated() {
+        //a diagonal across 10 by 10 tiles
+        stroke(100, 0, 2500, 2500, 20);
+        //the 19 tiles a line can cross in 10 columns and rows and a few it passes within the brush of,
+        //rather than all 100 in its bounds
+        assertTrue(grid.getTileCount() < 25);
+        assertNotNull(grid.getTile(0, 0));
+        assertNotNull(grid.getTile(9, 9));
+        assertNull(grid.getTile(9, 0));
+        assertNull(grid.getTile(0, 9));
+    }
+
+    @Test
+    public void circleOutlineDoesNotAllocateItsInside() {
+        //a circle of radius 1000 around the origin as 64 segments
+        final int segments = 64;
+        final float[] points = new float[(segments + 1) * 2];
+        for (int i = 0; i <= segments; ++i) {
+            points[i * 2] = (float) (1000 * Math.cos(2 * Math.PI * i / segments));
+            points[i * 2 + 1] = (float) (1000 * Math.sin(2 * Math.PI * i / segments));
+        }
+        final int[] visits = new int[1];
+        int visited = grid.visitTilesAlongLine(points, segments + 1, 11, true, new TileGrid.TileVisitor<int[]>() {
+            @Override
+            public void visitTile(int tileX, int tileY, int[] tile) {
+                ++visits[0];
+            }
+        });
+        //each tile is drawn once even though several segments pass through it
+        assertEquals(grid.getTileCount(), visited);
+        assertEquals(visited, visits[0]);
+        assertEquals(visited, created);
+        assertNull(grid.getTile(0, 0));
+        assertNull(grid.getTile(-1, -1));
+        //the bounds span 8 by 8 tiles
+        assertTrue(grid.getTileCount() < 64 / 2);
+    }
+
+    @Test
+    public void singlePointAllocatesTheTilesAroundIt() {
+        grid.visitTilesAlongLine(new float[]{256, 100}, 1, 11, true, noop);
+        assertEquals(2, grid.getTileCount());
+        assertNotNull(grid.getTile(0, 0));
+        assertNotNull(grid.getTile(1, 0));
+        assertEquals(0, grid.visitTilesAlongLine(new float[0], 0, 11, true, noop));
+    }
+
+    @Test
+    public void rightAndBottomEdgesAreExclusive() {
+        int visited = grid.visitTiles(0, 0, 256, 256, true, noop);
+        assertEquals(1, visited);
+        assertNull(grid.getTile(1, 1));
+    }
+
+    @Test
+    public void renderingAndErasingDoNotAllocate() {
+        stroke(10, 10, 20, 20, 2);
+        final ArrayList<int[]> visitedTiles = new ArrayList<>();
+        int visited = grid.visitTiles(-1000, -1000, 1000, 1000, false, new TileGrid.TileVisitor<int[]>() {
+            @Override
+            public void visitTile(int tileX, int tileY, int[] tile) {
+                visitedTiles.add(tile);
+            }
+        });
+        assertEquals(1, visited);
+        assertSame(grid.getTile(0, 0), visitedTiles.get(0));
+        assertEquals(1, grid.getTileCount());
+    }
+
+    @Test
+    public void canvasLargerThanScreen() {
+        //strokes far off the original screen, in both directions
+        stroke(-5000, -5000, -4990, -4990, 10);
+        stroke(20000, 30000, 20010, 30010, 10);
+        assertEquals(2, grid.getTileCount());
+        assertNotNull(grid.getTile(grid.tileIndex(-5000), grid.tileIndex(-5000)));
+        assertNotNull(grid.getTile(grid.tileIndex(20000), grid.tileIndex(30000)));
+    }
+
+    @Test
+    public void memorySparseVersusDense() {
+        long fullScreen = (long) SCREEN_WIDTH * SCREEN_HEIGHT * BYTES_PER_PIXEL;
+
+        //sparse: a few decorations on the cake
+        stroke(400, 300, 700, 320, 20);
+        stroke(1200, 800, 1250, 1100, 20);
+        stroke(2000, 400, 2010, 410, 30);
+        long sparse = grid.getAllocatedBytes(BYTES_PER_PIXEL);
+        assertTrue(sparse < fullScreen / 8);
+
+        //dense: horizontal strokes covering the whole screen
+        for (int y = 20; y < SCREEN_HEIGHT - 20; y += 40) {
+            stroke(20, y, SCREEN_WIDTH - 20, y, 20);
+        }
+        //covering the screen costs at most the partial tiles along the edges more than a full bitmap
+        int tilesAcross = (SCREEN_WIDTH + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesDown = (SCREEN_HEIGHT + TILE_SIZE - 1) / TILE_SIZE;
+        assertTrue(grid.getTileCount() <= tilesAcross * tilesDown);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.sarii.cakecept;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the tiles {@link TiledCanvas} allocates for a stroke.
+ * The Android graphics classes do nothing here, so this counts the tiles without drawing into them.
+ */
+public class TiledCanvasTest {
+
+    private static final int TILE_SIZE = TiledCanvas.TILE_SIZE;
+
+    @Test
+    public void diagonalStrokeAllocatesOnlyTheTilesItCrosses() {
+        final TiledCanvas canvas = new TiledCanvas();
+        final int tiles = 10;
+        //a single straight segment from the top left to the bottom right of 10 by 10 tiles
+        final float[] points = new float[]{100, 0, tiles * TILE_SIZE - 60, tiles * TILE_SIZE - 60};
+        canvas.drawPath(new Path(), points, 2, new Paint(), false);
+
+        //the tiles on the diagonal and the ones it cuts through or passes within a pixel of beside it,
+        //rather than the 100 in its bounds
+        assertTrue(canvas.getTileCount() >= tiles);
+        assertTrue(canvas.getTileCount() <= 2 * tiles);
+        assertEquals((long) canvas.getTileCount() * TILE_SIZE * TILE_SIZE * 4, canvas.getAllocatedBytes());
+    }
+
+    @Test
+    public void erasingDoesNotAllocate() {
+        final TiledCanvas canvas = new TiledCanvas();
+        canvas.drawPath(new Path(), new float[]{0, 0, 2000, 2000}, 2, new Paint(), true);
+        assertEquals(0, canvas.getTileCount());
+    }
+}